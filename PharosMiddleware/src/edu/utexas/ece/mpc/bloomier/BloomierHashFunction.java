@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2011, The University of Texas at Austin
+ * Produced in the Mobile and Pervasive Computing Lab
+ * Originally written by Evan Grim
+ *
+ * All rights reserved.
+ *
+ * See included LICENSE.txt for licensing details
+ *
+ */
+
+package edu.utexas.ece.mpc.bloomier;
+
+/**
+ * The hash functions used to map a key to its neighborhood and mask. A filter can only be read using
+ * the hash function it was created with, so the function's id is transmitted along with the table.
+ */
+public enum BloomierHashFunction {
+    /**
+     * The original salted MD5 digest stream. It is slow but remains decodable by older nodes.
+     */
+    MD5(0),
+
+    /**
+     * A seeded stream of 64-bit values produced by the MurmurHash3 finalizer. It allocates nothing
+     * and produces the neighborhood and mask from a single pass.
+     */
+    MURMUR3(1);
+
+    private final int id;
+
+    private BloomierHashFunction(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public static BloomierHashFunction fromId(int id) {
+        for (BloomierHashFunction function: values()) {
+            if (function.id == id) {
+                return function;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash function id: " + id);
+    }
+}
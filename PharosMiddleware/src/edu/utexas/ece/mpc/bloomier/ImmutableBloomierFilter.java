@@ -26,8 +26,22 @@ import edu.utexas.ece.mpc.bloomier.internal.OrderAndMatch;
 import edu.utexas.ece.mpc.bloomier.internal.OrderAndMatchFinder;
 
 public class ImmutableBloomierFilter<K, V> {
-    protected final Kryo kryo;
-    protected final ObjectBuffer kryoSerializer;
+    // Kryo is not thread safe, so each thread encodes and decodes values with its own instance. This lets
+    // any number of threads read a filter concurrently and keeps copies of a filter cheap to create.
+    private static final ThreadLocal<Kryo> kryos = new ThreadLocal<Kryo>() {
+        @Override
+        protected Kryo initialValue() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationOptional(true);
+            return kryo;
+        }
+    };
+    private static final ThreadLocal<ObjectBuffer> kryoSerializers = new ThreadLocal<ObjectBuffer>() {
+        @Override
+        protected ObjectBuffer initialValue() {
+            return new ObjectBuffer(kryos.get(), DEFAULT_OBJECT_BUFFER_INITIAL_SIZE, Integer.MAX_VALUE);
+        }
+    };
 
     protected final Class<V> valueClass;
 
@@ -36,22 +50,20 @@ public class ImmutableBloomierFilter<K, V> {
     protected final int q;
 
     protected long hashSeed;
+    protected BloomierHashFunction hashFunction;
     protected BloomierHasher<K> hasher;
 
     protected byte[][] table;
     protected int tableEntrySize;
 
-    private ImmutableBloomierFilter(int m, int k, int q, Class<V> valueClass) {
-        kryo = new Kryo();
-        kryo.setRegistrationOptional(true);
-        kryoSerializer = new ObjectBuffer(kryo, DEFAULT_OBJECT_BUFFER_INITIAL_SIZE,
-                                          Integer.MAX_VALUE);
-
+    private ImmutableBloomierFilter(int m, int k, int q, Class<V> valueClass,
+                                    BloomierHashFunction hashFunction) {
         this.m = m;
         this.k = k;
         this.q = q;
 
         this.valueClass = valueClass;
+        this.hashFunction = hashFunction;
 
         // Create table with correctly sized byte arrays for encoded entries
         tableEntrySize = q / 8;
@@ -62,7 +74,7 @@ public class ImmutableBloomierFilter<K, V> {
 
     public ImmutableBloomierFilter(Map<K, V> map, int m, int k, int q, Class<V> valueClass,
                                    int timeoutMs) throws TimeoutException {
-        this(m, k, q, valueClass);
+        this(m, k, q, valueClass, BloomierHashFunction.MD5);
 
         OrderAndMatchFinder<K> oamf = new OrderAndMatchFinder<K>(map.keySet(), m, k, q);
         OrderAndMatch<K> oam = oamf.find(timeoutMs);
@@ -71,10 +83,15 @@ public class ImmutableBloomierFilter<K, V> {
 
     public ImmutableBloomierFilter(Map<K, V> map, int m, int k, int q, Class<V> valueClass,
                                    long hashSeedHint) {
-        this(m, k, q, valueClass);
+        this(map, m, k, q, valueClass, hashSeedHint, BloomierHashFunction.MD5);
+    }
+
+    public ImmutableBloomierFilter(Map<K, V> map, int m, int k, int q, Class<V> valueClass,
+                                   long hashSeedHint, BloomierHashFunction hashFunction) {
+        this(m, k, q, valueClass, hashFunction);
 
         OrderAndMatchFinder<K> oamf = new OrderAndMatchFinder<K>(map.keySet(), m, k, q,
-                                                                 hashSeedHint);
+                                                                 hashSeedHint, hashFunction);
         OrderAndMatch<K> oam;
         try {
             oam = oamf.find(Integer.MAX_VALUE);
@@ -86,10 +103,16 @@ public class ImmutableBloomierFilter<K, V> {
 
     public ImmutableBloomierFilter(Map<K, V> map, int m, int k, int q, Class<V> valueClass,
                                    int timeoutMs, long hashSeedHint) throws TimeoutException {
-        this(m, k, q, valueClass);
+        this(map, m, k, q, valueClass, timeoutMs, hashSeedHint, BloomierHashFunction.MD5);
+    }
+
+    public ImmutableBloomierFilter(Map<K, V> map, int m, int k, int q, Class<V> valueClass,
+                                   int timeoutMs, long hashSeedHint, BloomierHashFunction hashFunction)
+            throws TimeoutException {
+        this(m, k, q, valueClass, hashFunction);
 
         OrderAndMatchFinder<K> oamf = new OrderAndMatchFinder<K>(map.keySet(), m, k, q,
-                                                                 hashSeedHint);
+                                                                 hashSeedHint, hashFunction);
         OrderAndMatch<K> oam = oamf.find(timeoutMs);
         create(map, oam);
     }
@@ -97,23 +120,28 @@ public class ImmutableBloomierFilter<K, V> {
     // This package private constructor can be used by entities that want to supply their own OrderAndMatch
     ImmutableBloomierFilter(Map<K, V> map, int m, int k, int q, Class<V> valueClass,
                             OrderAndMatch<K> oam) {
-        this(m, k, q, valueClass);
+        this(m, k, q, valueClass, oam.getHashFunction());
 
         create(map, oam);
     }
 
     public ImmutableBloomierFilter(int m, int k, int q, Class<V> valueClass, long hashSeed,
                                       byte[][] table) {
-        this(m, k, q, valueClass);
+        this(m, k, q, valueClass, hashSeed, table, BloomierHashFunction.MD5);
+    }
+
+    public ImmutableBloomierFilter(int m, int k, int q, Class<V> valueClass, long hashSeed,
+                                   byte[][] table, BloomierHashFunction hashFunction) {
+        this(m, k, q, valueClass, hashFunction);
 
         this.hashSeed = hashSeed;
         this.table = table;
 
-        hasher = new BloomierHasher<K>(hashSeed, m, k, q);
+        hasher = new BloomierHasher<K>(hashSeed, m, k, q, hashFunction);
     }
 
     public ImmutableBloomierFilter(ImmutableBloomierFilter<K, V> orig) {
-        this(orig.m, orig.k, orig.q, orig.valueClass, orig.hashSeed, orig.table); // TODO: it should be okay to share
+        this(orig.m, orig.k, orig.q, orig.valueClass, orig.hashSeed, orig.table, orig.hashFunction); // TODO: it should be okay to share
                                                                                   // the underlying table since it's
                                                                                   // immutable, but beware this might
                                                                                   // not be true
@@ -121,18 +149,19 @@ public class ImmutableBloomierFilter<K, V> {
 
     private void create(Map<K, V> map, OrderAndMatch<K> oam) {
         hashSeed = oam.getHashSeed();
-        hasher = new BloomierHasher<K>(hashSeed, m, k, q);
+        hasher = new BloomierHasher<K>(hashSeed, m, k, q, hashFunction);
 
         List<K> pi = oam.getPi();
         List<Integer> tau = oam.getTau();
 
+        int[] neighborhood = new int[k];
+        byte[] mask = new byte[tableEntrySize];
         for (int i = 0; i < pi.size(); i++) {
             K key = pi.get(i);
             V value = map.get(key);
             byte[] encodedValue = encode(value);
 
-            int[] neighborhood = hasher.getNeighborhood(key);
-            byte[] mask = hasher.getM(key);
+            hasher.hash(key, neighborhood, mask);
 
             int indexOfStorage = neighborhood[tau.get(i)];
             byte[] valueToStore = new byte[tableEntrySize];
@@ -151,12 +180,11 @@ public class ImmutableBloomierFilter<K, V> {
     }
 
     public V get(K key) {
-        int[] neighborhood = hasher.getNeighborhood(key);
-        byte[] mask = hasher.getM(key);
-
+        int[] neighborhood = new int[k];
         byte[] resultArray = new byte[tableEntrySize];
 
-        byteArrayXor(resultArray, mask);
+        // The mask is written directly into the result
+        hasher.hash(key, neighborhood, resultArray);
         for (int hash: neighborhood) {
             byteArrayXor(resultArray, table[hash]);
         }
@@ -180,6 +208,10 @@ public class ImmutableBloomierFilter<K, V> {
         return hashSeed;
     }
 
+    public BloomierHashFunction getHashFunction() {
+        return hashFunction;
+    }
+
     public byte[][] getTable() {
         return table;
     }
@@ -194,7 +226,7 @@ public class ImmutableBloomierFilter<K, V> {
     }
 
     private byte[] encode(V value) {
-        byte[] serializedValue = kryoSerializer.writeObjectData(value);
+        byte[] serializedValue = kryoSerializers.get().writeObjectData(value);
         if (serializedValue.length > tableEntrySize) {
             throw new IllegalArgumentException("Encoded values are too big to fit in table (q=" + q
                                                + "; must be >= " + serializedValue.length
@@ -209,7 +241,7 @@ public class ImmutableBloomierFilter<K, V> {
         ByteBuffer buffer = ByteBuffer.wrap(value);
         V result;
         try {
-            result = (V) kryo.readObjectData(buffer, valueClass);
+            result = (V) kryos.get().readObjectData(buffer, valueClass);
         } catch (SerializationException e) {
             return null; // Serialization exception likely caused by trying to decode non existent entry
         }
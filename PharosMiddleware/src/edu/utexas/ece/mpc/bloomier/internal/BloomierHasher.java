@@ -2,110 +2,211 @@
  * Copyright (c) 2011, The University of Texas at Austin
  * Produced in the Mobile and Pervasive Computing Lab
  * Originally written by Evan Grim
- * 
+ *
  * All rights reserved.
- * 
+ *
  * See included LICENSE.txt for licensing details
- * 
+ *
  */
 
 package edu.utexas.ece.mpc.bloomier.internal;
 
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayDeque;
-import java.util.Queue;
+
+import edu.utexas.ece.mpc.bloomier.BloomierHashFunction;
 
 public class BloomierHasher<K> {
-    // TODO: memoize/cache hashes
+    private static final int MD5_DIGEST_LENGTH = 16;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // MessageDigest is not thread safe, and a hasher is shared by every thread reading its filter, so each
+    // thread hashes with its own digest and scratch arrays.
+    private static final ThreadLocal<MD5State> md5States = new ThreadLocal<MD5State>() {
+        @Override
+        protected MD5State initialValue() {
+            return new MD5State();
+        }
+    };
+
     private long hashSeed;
 
     private int m;
     private int k;
     private int q;
 
+    private BloomierHashFunction hashFunction;
+
     public BloomierHasher(long hashSeed, int m, int k, int q) {
+        this(hashSeed, m, k, q, BloomierHashFunction.MD5);
+    }
+
+    public BloomierHasher(long hashSeed, int m, int k, int q, BloomierHashFunction hashFunction) {
         this.hashSeed = hashSeed;
         this.m = m;
         this.k = k;
         this.q = q;
+        this.hashFunction = hashFunction;
     }
 
-    public int[] getNeighborhood(K key) {
-        DataInputStream stream = new DataInputStream(new HashInputStream(key));
+    public BloomierHashFunction getHashFunction() {
+        return hashFunction;
+    }
 
+    public int[] getNeighborhood(K key) {
         int[] hashes = new int[k];
-        for (int i = 0; i < hashes.length; i++) {
-            try {
-                hashes[i] = Math.abs(stream.readInt()) % m; // Massage value to be in [0,m)
-            } catch (IOException e) {
-                // Shouldn't be possible
-                throw new IllegalStateException("Hash generation failed", e);
-            }
-        }
-
+        hash(key, hashes, null);
         return hashes;
     }
 
     public byte[] getM(K key) {
-        DataInputStream stream = new DataInputStream(new HashInputStream(key));
-
         byte[] hashes = new byte[q / Byte.SIZE + 1];
-        for (int i = 0; i < hashes.length; i++) {
-            try {
-                hashes[i] = stream.readByte();
-            } catch (IOException e) {
-                // Shouldn't be possible
-                throw new IllegalStateException("Hash generation failed", e);
+        hash(key, null, hashes);
+        return hashes;
+    }
+
+    /**
+     * Computes a key's neighborhood and mask with a single hash computation. Both are read from the start
+     * of the same hash stream, which matches what getNeighborhood() and getM() return.
+     *
+     * @param key the key to hash
+     * @param neighborhood receives the k table indices of the key, or null if they are not needed
+     * @param mask receives the mask of the key (up to q / 8 + 1 bytes), or null if it is not needed
+     */
+    public void hash(K key, int[] neighborhood, byte[] mask) {
+        switch (hashFunction) {
+            case MURMUR3:
+                hashMurmur3(key.hashCode(), neighborhood, mask);
+                break;
+            default:
+                hashMD5(key.hashCode(), neighborhood, mask);
+        }
+    }
+
+    private void hashMurmur3(int keyHash, int[] neighborhood, byte[] mask) {
+        long state = fmix64(hashSeed * GOLDEN_GAMMA + keyHash);
+
+        // Each 64-bit value provides two indices, which are mapped into [0,m) without a division
+        long value = 0;
+        if (neighborhood != null) {
+            for (int i = 0; i < neighborhood.length; i++) {
+                if ((i & 1) == 0) {
+                    value = fmix64(state += GOLDEN_GAMMA);
+                } else {
+                    value >>>= 32;
+                }
+                neighborhood[i] = (int) (((value & 0xFFFFFFFFL) * m) >>> 32);
             }
         }
 
-        return hashes;
+        // The mask is taken from the values that follow the neighborhood
+        if (mask != null) {
+            state += GOLDEN_GAMMA * ((k + 1) / 2);
+            for (int i = 0; i < mask.length; i++) {
+                if ((i & 7) == 0) {
+                    value = fmix64(state += GOLDEN_GAMMA);
+                } else {
+                    value >>>= 8;
+                }
+                mask[i] = (byte) value;
+            }
+        }
     }
 
-    private class HashInputStream extends InputStream {
-        private byte[] data;
-        private long salt;
-        private MessageDigest md;
+    /**
+     * The finalizer of MurmurHash3, which mixes all bits of the input into all bits of the output.
+     */
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Produces the same values as the original implementation, which read the neighborhood and the mask as
+     * separate streams of salted MD5 digests. Each byte was offset by -Byte.MIN_VALUE when it was read,
+     * which flips its top bit.
+     */
+    private void hashMD5(int keyHash, int[] neighborhood, byte[] mask) {
+        int neighborhoodBytes = neighborhood == null ? 0 : neighborhood.length * 4;
+        int maskBytes = mask == null ? 0 : mask.length;
+        int numDigests = (Math.max(neighborhoodBytes, maskBytes) + MD5_DIGEST_LENGTH - 1)
+                         / MD5_DIGEST_LENGTH;
+
+        MD5State state = md5States.get();
+        MessageDigest md = state.md;
+
+        // TODO: use .toString instead of hashCode to get a better hash range
+        byte[] data = state.data;
+        putInt(data, 8, keyHash);
+
+        byte[] stream = state.getStream(numDigests * MD5_DIGEST_LENGTH);
+        long salt = hashSeed;
+        try {
+            for (int i = 0; i < numDigests; i++) {
+                putInt(data, 0, (int) (salt >>> 32));
+                putInt(data, 4, (int) salt);
+                md.update(data);
+                md.digest(stream, i * MD5_DIGEST_LENGTH, MD5_DIGEST_LENGTH);
+                salt++;
+            }
+        } catch (DigestException e) {
+            throw new RuntimeException("Unable to compute MD5 digest", e);
+        }
+
+        if (neighborhood != null) {
+            for (int i = 0; i < neighborhood.length; i++) {
+                int value = ((stream[4 * i] ^ 0x80) & 0xFF) << 24
+                            | ((stream[4 * i + 1] ^ 0x80) & 0xFF) << 16
+                            | ((stream[4 * i + 2] ^ 0x80) & 0xFF) << 8
+                            | ((stream[4 * i + 3] ^ 0x80) & 0xFF);
+                neighborhood[i] = Math.abs(value) % m; // Massage value to be in [0,m)
+            }
+        }
 
-        private Queue<Byte> buffer;
+        if (mask != null) {
+            for (int i = 0; i < mask.length; i++) {
+                mask[i] = (byte) (stream[i] ^ 0x80);
+            }
+        }
+    }
 
-        public HashInputStream(K key) {
-            this.data = ByteBuffer.allocate(Integer.SIZE / Byte.SIZE).putInt(key.hashCode())
-                                  .array(); // TODO: use .toString instead of hashCode to get a better hash range
-            this.salt = hashSeed;
+    /**
+     * A thread's MD5 digest and the arrays hashMD5() reuses between keys.
+     */
+    private static class MD5State {
+        final MessageDigest md;
+        final byte[] data = new byte[Long.SIZE / Byte.SIZE + Integer.SIZE / Byte.SIZE];
+        private byte[] stream = new byte[0];
 
+        MD5State() {
             try {
                 md = MessageDigest.getInstance("MD5");
             } catch (NoSuchAlgorithmException e) {
                 throw new RuntimeException("Missing required hashing algorithm", e);
             }
-
-            buffer = new ArrayDeque<Byte>(md.getDigestLength());
-            topOff();
         }
 
-        @Override
-        public int read() {
-            if (buffer.isEmpty()) {
-                topOff();
+        /**
+         * @return a scratch array of at least the given length
+         */
+        byte[] getStream(int length) {
+            if (stream.length < length) {
+                stream = new byte[length];
             }
-            return buffer.remove() - Byte.MIN_VALUE;
+            return stream;
         }
+    }
 
-        private void topOff() {
-            md.update(ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(salt).array());
-            md.update(data);
-
-            for (byte b: md.digest()) {
-                buffer.add(b);
-            }
-
-            salt++;
-        }
+    private static void putInt(byte[] array, int offset, int value) {
+        array[offset] = (byte) (value >>> 24);
+        array[offset + 1] = (byte) (value >>> 16);
+        array[offset + 2] = (byte) (value >>> 8);
+        array[offset + 3] = (byte) value;
     }
-}
\ No newline at end of file
+}
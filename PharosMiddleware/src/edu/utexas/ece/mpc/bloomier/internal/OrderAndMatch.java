@@ -13,14 +13,23 @@ package edu.utexas.ece.mpc.bloomier.internal;
 
 import java.util.List;
 
+import edu.utexas.ece.mpc.bloomier.BloomierHashFunction;
+
 public class OrderAndMatch<K> {
 
     private long hashSeed;
+    private BloomierHashFunction hashFunction;
     private List<K> pi;
     private List<Integer> tau;
 
     public OrderAndMatch(long hashSeed, List<K> pi, List<Integer> tau) {
+        this(hashSeed, BloomierHashFunction.MD5, pi, tau);
+    }
+
+    public OrderAndMatch(long hashSeed, BloomierHashFunction hashFunction, List<K> pi,
+                         List<Integer> tau) {
         this.hashSeed = hashSeed;
+        this.hashFunction = hashFunction;
         this.pi = pi;
         this.tau = tau;
     }
@@ -36,4 +45,8 @@ public class OrderAndMatch<K> {
     public long getHashSeed() {
         return hashSeed;
     }
+
+    public BloomierHashFunction getHashFunction() {
+        return hashFunction;
+    }
 }
@@ -2,32 +2,50 @@
  * Copyright (c) 2011, The University of Texas at Austin
  * Produced in the Mobile and Pervasive Computing Lab
  * Originally written by Evan Grim
- * 
+ *
  * All rights reserved.
- * 
+ *
  * See included LICENSE.txt for licensing details
- * 
+ *
  */
 
 package edu.utexas.ece.mpc.bloomier.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import edu.utexas.ece.mpc.bloomier.BloomierHashFunction;
+
+/**
+ * Searches for a hash seed under which the keys can be ordered so that each key has a table location
+ * (its match) that none of the keys before it use. Each seed is tried by peeling: a location used by
+ * exactly one remaining key is matched to that key, the key is removed, and this repeats until every
+ * key is matched or no such location remains. Create the filter in the reverse of the peeling order.
+ *
+ * Large key sets try several seeds at once, one per core. The lowest successful seed is always returned,
+ * so the result does not depend on the number of cores.
+ */
 public class OrderAndMatchFinder<K> {
+    // Key sets smaller than this are searched on the calling thread
+    private static final int PARALLEL_THRESHOLD = 128;
+
+    private static final int NUM_WORKERS = Runtime.getRuntime().availableProcessors();
+
+    private static ExecutorService executor;
+
     long hashSeed = Long.MIN_VALUE;
+    BloomierHashFunction hashFunction = BloomierHashFunction.MD5;
     BloomierHasher<K> hasher;
 
-    List<K> pi;
-    List<Integer> tau;
-
     OrderAndMatch<K> oam;
 
     Collection<K> keys;
@@ -48,51 +66,86 @@ public class OrderAndMatchFinder<K> {
         hashSeed = hashSeedHint;
     }
 
+    public OrderAndMatchFinder(Collection<K> keys, int m, int k, int q, long hashSeedHint,
+                               BloomierHashFunction hashFunction) {
+        this(keys, m, k, q, hashSeedHint);
+
+        this.hashFunction = hashFunction;
+    }
+
     public OrderAndMatch<K> find(long timeoutMs) throws TimeoutException {
-        final AtomicBoolean hasTimedOut = new AtomicBoolean(false);
-        Timer timer = null;
-        try {
-            if (timeoutMs < Long.MAX_VALUE) {
-                timer = new Timer(true);
-                timer.schedule(new TimerTask() {
+        @SuppressWarnings("unchecked")
+        final K[] keyArray = (K[]) keys.toArray();
+        final long deadline = getDeadline(timeoutMs);
+
+        // Seeds are handed out in order; a seed's offset from the first one ranks it
+        final AtomicLong nextOffset = new AtomicLong(0);
+        final AtomicLong bestOffset = new AtomicLong(Long.MAX_VALUE);
 
+        Attempt best;
+        int numWorkers = keyArray.length < PARALLEL_THRESHOLD ? 1 : NUM_WORKERS;
+        if (numWorkers == 1) {
+            best = new Attempt(keyArray).search(nextOffset, bestOffset, deadline);
+        } else {
+            List<Future<Attempt>> futures = new ArrayList<Future<Attempt>>(numWorkers);
+            for (int i = 0; i < numWorkers; i++) {
+                futures.add(getExecutor().submit(new Callable<Attempt>() {
                     @Override
-                    public void run() {
-                        hasTimedOut.set(true);
+                    public Attempt call() {
+                        return new Attempt(keyArray).search(nextOffset, bestOffset, deadline);
                     }
-                }, timeoutMs);
+                }));
             }
 
-            for (long i = 0; i < Long.MAX_VALUE; i++) {
-                // First check for timeout
-                if (hasTimedOut.get()) {
-                    throw new TimeoutException(
-                                               String.format("Could not find order and matching for key set in alloted time with specified parameters (m=%d;k=%d;q=%d)",
-                                                             m, k, q));
+            best = null;
+            for (Future<Attempt> future: futures) {
+                Attempt attempt;
+                try {
+                    attempt = future.get();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Order and match search failed", e);
                 }
-
-                hasher = new BloomierHasher<K>(hashSeed, m, k, q);
-
-                pi = new ArrayList<K>(keys.size());
-                tau = new ArrayList<Integer>(keys.size());
-
-                if (findMatch(new ArrayList<K>(keys))) { // findMatch modifies key collection, so make copy
-                    oam = new OrderAndMatch<K>(hashSeed, pi, tau);
-                    break;
+                if (attempt != null && (best == null || attempt.seedOffset < best.seedOffset)) {
+                    best = attempt;
                 }
-
-                hashSeed++; // will wrap around if a hashSeedHint was provided
             }
+        }
 
-        } finally {
-            if (timer != null) {
-                timer.cancel();
-            }
+        if (best == null) {
+            throw new TimeoutException(
+                                       String.format("Could not find order and matching for key set in alloted time with specified parameters (m=%d;k=%d;q=%d)",
+                                                     m, k, q));
         }
 
+        hashSeed = best.hashSeed;
+        hasher = best.hasher;
+        oam = best.toOrderAndMatch();
         return oam;
     }
 
+    private static long getDeadline(long timeoutMs) {
+        if (timeoutMs >= Long.MAX_VALUE / 1000000) {
+            return Long.MAX_VALUE;
+        }
+        long now = System.nanoTime();
+        long deadline = now + timeoutMs * 1000000;
+        return deadline < now ? Long.MAX_VALUE : deadline;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(NUM_WORKERS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "OrderAndMatchFinder");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
     public boolean isFound() {
         if (oam == null) {
             return false;
@@ -109,40 +162,135 @@ public class OrderAndMatchFinder<K> {
         return hasher;
     }
 
-    private boolean findMatch(Collection<K> remainingKeys) {
-        if (remainingKeys.isEmpty()) {
-            return true;
-        }
+    /**
+     * The working state of one thread of the search. Its arrays are reused for every seed it tries.
+     */
+    private class Attempt {
+        final K[] keyArray;
+        final int n;
 
-        Queue<K> piQueue = new LinkedList<K>();
-        Queue<Integer> tauQueue = new LinkedList<Integer>();
+        // The neighborhood of key i is at [i * k, (i + 1) * k)
+        final int[] neighborhoods;
+        final int[] neighborhood;
 
-        SingletonFindingTweaker<K> tweaker = new SingletonFindingTweaker<K>(remainingKeys, hasher);
+        // For each location, the number of remaining keys using it and the XOR of their indices
+        final int[] counts;
+        final int[] xorKeys;
+        final int[] singletons;
 
-        for (K key: remainingKeys) {
-            Integer iota = tweaker.tweak(key);
-            if (iota != null) {
-                piQueue.add(key);
-                tauQueue.add(iota);
-            }
-        }
+        // The keys in the order they were peeled and the index of their match in their neighborhood
+        final int[] order;
+        final int[] iotas;
 
-        if (piQueue.isEmpty()) {
-            return false;
+        long seedOffset;
+        long hashSeed;
+        BloomierHasher<K> hasher;
+
+        Attempt(K[] keyArray) {
+            this.keyArray = keyArray;
+            n = keyArray.length;
+            neighborhoods = new int[n * k];
+            neighborhood = new int[k];
+            counts = new int[m];
+            xorKeys = new int[m];
+            singletons = new int[m];
+            order = new int[n];
+            iotas = new int[n];
         }
 
-        // Only pass along non-"easy" keys to next iteration
-        remainingKeys.removeAll(piQueue);
+        /**
+         * Tries seeds until one succeeds, a lower seed succeeds on another thread, or the deadline passes.
+         *
+         * @return this attempt if it holds the lowest successful seed it tried, otherwise null
+         */
+        Attempt search(AtomicLong nextOffset, AtomicLong bestOffset, long deadline) {
+            while (true) {
+                long offset = nextOffset.getAndIncrement();
+                if (offset > bestOffset.get()) {
+                    return null;
+                }
+                if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+                    return null;
+                }
 
-        if (remainingKeys.isEmpty() == false) {
-            if (findMatch(remainingKeys) == false) {
-                return false;
+                long seed = OrderAndMatchFinder.this.hashSeed + offset; // will wrap around if a hashSeedHint was provided
+                BloomierHasher<K> candidate = new BloomierHasher<K>(seed, m, k, q, hashFunction);
+                if (peel(candidate)) {
+                    // Keep the lowest successful offset across all threads
+                    long best;
+                    while (offset < (best = bestOffset.get())) {
+                        if (bestOffset.compareAndSet(best, offset)) {
+                            seedOffset = offset;
+                            hashSeed = seed;
+                            hasher = candidate;
+                            return this;
+                        }
+                    }
+                    return null;
+                }
             }
         }
 
-        pi.addAll(piQueue);
-        tau.addAll(tauQueue);
+        private boolean peel(BloomierHasher<K> candidate) {
+            Arrays.fill(counts, 0);
+            Arrays.fill(xorKeys, 0);
+
+            for (int i = 0; i < n; i++) {
+                candidate.hash(keyArray[i], neighborhood, null);
+                for (int j = 0; j < k; j++) {
+                    int location = neighborhood[j];
+                    neighborhoods[i * k + j] = location;
+                    counts[location]++;
+                    xorKeys[location] ^= i;
+                }
+            }
+
+            int numSingletons = 0;
+            for (int location = 0; location < m; location++) {
+                if (counts[location] == 1) {
+                    singletons[numSingletons++] = location;
+                }
+            }
+
+            // A key that uses a location twice adds 2 to its count, so the location is never its match
+            int numPeeled = 0;
+            while (numSingletons > 0) {
+                int location = singletons[--numSingletons];
+                if (counts[location] != 1) {
+                    continue; // another key was peeled from this location since it was queued
+                }
 
-        return true;
+                int key = xorKeys[location];
+                int base = key * k;
+                int iota = 0;
+                while (neighborhoods[base + iota] != location) {
+                    iota++;
+                }
+                order[numPeeled] = key;
+                iotas[numPeeled] = iota;
+                numPeeled++;
+
+                for (int j = 0; j < k; j++) {
+                    int neighbor = neighborhoods[base + j];
+                    counts[neighbor]--;
+                    xorKeys[neighbor] ^= key;
+                    if (counts[neighbor] == 1) {
+                        singletons[numSingletons++] = neighbor;
+                    }
+                }
+            }
+
+            return numPeeled == n;
+        }
+
+        OrderAndMatch<K> toOrderAndMatch() {
+            List<K> pi = new ArrayList<K>(n);
+            List<Integer> tau = new ArrayList<Integer>(n);
+            for (int i = n - 1; i >= 0; i--) {
+                pi.add(keyArray[order[i]]);
+                tau.add(iotas[i]);
+            }
+            return new OrderAndMatch<K>(hashSeed, hashFunction, pi, tau);
+        }
     }
-}
\ No newline at end of file
+}
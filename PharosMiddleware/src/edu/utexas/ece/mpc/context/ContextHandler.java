@@ -2,14 +2,15 @@ package edu.utexas.ece.mpc.context;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
-import java.util.concurrent.ConcurrentHashMap;
 
+import edu.utexas.ece.mpc.bloomier.BloomierHashFunction;
 import edu.utexas.ece.mpc.context.group.GroupDefinition;
 import edu.utexas.ece.mpc.context.logger.ContextLoggingDelegate;
 import edu.utexas.ece.mpc.context.logger.NullContextLogger;
@@ -18,6 +19,14 @@ import edu.utexas.ece.mpc.context.summary.GroupContextSummary;
 import edu.utexas.ece.mpc.context.summary.HashMapGroupContextSummary;
 import edu.utexas.ece.mpc.context.summary.WireContextSummary;
 
+/**
+ * Holds the local context summary, the group summaries, and the summaries received from other nodes.
+ *
+ * The summaries are published as an immutable snapshot that is replaced whenever they change. Readers,
+ * such as the context shims preparing or decoding a packet, work against the current snapshot without
+ * taking a lock. Updates are serialized with each other and build the next snapshot from copies of the
+ * summaries they change, so a published summary is never modified.
+ */
 public class ContextHandler {
     public static enum WireSummaryType {
         BLOOMIER, LABELED
@@ -25,22 +34,35 @@ public class ContextHandler {
 
     private static final int DEFAULT_TAU = 3;
 
+    private static final long DEFAULT_SUMMARY_REFRESH_INTERVAL_MS = 5000;
+
     private static ContextHandler singleton;
 
-    private WireContextSummary myContext;
-    private Map<Integer, GroupContextSummary> groupContext = new ConcurrentHashMap<Integer, GroupContextSummary>();
-    private Map<Integer, WireContextSummary> receivedSummaries = new ConcurrentHashMap<Integer, WireContextSummary>();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    // Guards updates to the snapshot and to the fields below
+    private final Object updateLock = new Object();
+
+    // The last wire copy of each group summary and the group content it was made from. The copy is reused
+    // while the group is unchanged so that it keeps its timestamp and is not resent by the shims.
+    private Map<Integer, WireContextSummary> groupWireCopies = new HashMap<Integer, WireContextSummary>();
+    private Map<Integer, HashMapGroupContextSummary> groupWireCopySources = new HashMap<Integer, HashMapGroupContextSummary>();
 
-    private ContextLoggingDelegate loggingDelegate = new NullContextLogger();
+    private Map<Integer, GroupDefinition> groupDefinitions = new HashMap<Integer, GroupDefinition>();
+
+    private volatile ContextLoggingDelegate loggingDelegate = new NullContextLogger();
 
     private ContextObservable preReceivedSummaryUpdateHook = new ContextObservable();
     private ContextObservable postReceivedSummaryUpdateHook = new ContextObservable();
 
-    private int tau;
+    private volatile int tau;
+
+    private volatile long summaryRefreshIntervalMs = DEFAULT_SUMMARY_REFRESH_INTERVAL_MS;
     
-    private WireSummaryType wireSummaryType = WireSummaryType.BLOOMIER;
+    private volatile WireSummaryType wireSummaryType = WireSummaryType.BLOOMIER;
 
-    private Map<Integer, GroupDefinition> groupDefinitions = new HashMap<Integer, GroupDefinition>();
+    // Nodes running older versions can only decode summaries hashed with MD5, so MURMUR3 is opt-in
+    private volatile BloomierHashFunction bloomierHashFunction = BloomierHashFunction.MD5;
 
 //    private WireSummaryType wireSummaryType = WireSummaryType.LABELED;
 
@@ -61,71 +83,88 @@ public class ContextHandler {
         return singleton;
     }
 
-    public synchronized void updateLocalSummary(ContextSummary summary) {
-        myContext = summary.getWireCopy();
+    public void updateLocalSummary(ContextSummary summary) {
+        synchronized (updateLock) {
+            Snapshot current = snapshot;
+            WireContextSummary myContext = summary.getWireCopy();
 
-        for (GroupDefinition groupDefinition: groupDefinitions.values()) {
-            int gId = groupDefinition.getId();
-            GroupContextSummary groupSummary = groupContext.get(gId);
-            groupDefinition.handleContextSummary(groupSummary, myContext);
+            Map<Integer, GroupContextSummary> groupContext = copyGroups(current.groupContext);
+            for (GroupDefinition groupDefinition: groupDefinitions.values()) {
+                int gId = groupDefinition.getId();
+                GroupContextSummary groupSummary = groupContext.get(gId);
+                groupDefinition.handleContextSummary(groupSummary, myContext);
+            }
+
+            publish(myContext, groupContext, current.receivedSummaries);
+            logDbg("Updated local summary: " + myContext);
         }
-        logDbg("Updated local summary: " + myContext);
     }
 
-    public synchronized void removeLocalSummary() {
-        logDbg("Removing local summary: " + myContext);
-        myContext = null;
+    public void removeLocalSummary() {
+        synchronized (updateLock) {
+            Snapshot current = snapshot;
+            logDbg("Removing local summary: " + current.myContext);
+            publish(null, current.groupContext, current.receivedSummaries);
+        }
     }
 
-    public synchronized void handleIncomingSummaries(Collection<WireContextSummary> summaries) {
-        Collection<WireContextSummary> summariesToPut = new ArrayList<WireContextSummary>();
+    public void handleIncomingSummaries(Collection<WireContextSummary> summaries) {
+        synchronized (updateLock) {
+            Snapshot current = snapshot;
+            Collection<WireContextSummary> summariesToPut = new ArrayList<WireContextSummary>();
 
-        logDbg("Adding/updating received summaries");
-        for (WireContextSummary summary: summaries) {
-            int id = summary.getId();
+            logDbg("Adding/updating received summaries");
+            for (WireContextSummary summary: summaries) {
+                int id = summary.getId();
 
-            // Bump hop counter
-            summary.incrementHops();
+                // Bump hop counter
+                summary.incrementHops();
 
-            // Is received summary local?
-            if (myContext != null && myContext.getId() == id) {
-                logDbg("Skipping summary (local): " + summary);
-                continue;
-            }
-
-            // Do we already have the best version of this summary?
-            if (receivedSummaries.containsKey(id)) {
-                WireContextSummary existing = receivedSummaries.get(id);
-                if ((summary.getTimestamp() < existing.getTimestamp())
-                    || (summary.getTimestamp() == existing.getTimestamp() && summary.getHops() >= existing.getHops())) {
-                    logDbg("Skipping summary (not new or with less hops): " + summary);
+                // Is received summary local?
+                if (current.myContext != null && current.myContext.getId() == id) {
+                    logDbg("Skipping summary (local): " + summary);
                     continue;
                 }
+
+                // Do we already have the best version of this summary?
+                WireContextSummary existing = current.receivedSummaries.get(id);
+                if (existing != null) {
+                    if ((summary.getTimestamp() < existing.getTimestamp())
+                        || (summary.getTimestamp() == existing.getTimestamp() && summary.getHops() >= existing.getHops())) {
+                        logDbg("Skipping summary (not new or with less hops): " + summary);
+                        continue;
+                    }
+                }
+
+                summariesToPut.add(summary);
+                logDbg("Marking  summary for add/update: " + summary);
             }
 
-            summariesToPut.add(summary);
-            logDbg("Marking  summary for add/update: " + summary);
-        }
+            if (summariesToPut.isEmpty()) {
+                return;
+            }
 
-        if (!summariesToPut.isEmpty()) {
             preReceivedSummaryUpdateHook.setChanged();
             preReceivedSummaryUpdateHook.notifyObservers(summariesToPut);
-        }
-        
-        performGroupFormations(summariesToPut);
 
-        for (WireContextSummary summaryToPut: summariesToPut) {
-            receivedSummaries.put(summaryToPut.getId(), summaryToPut);
-            logDbg("Summary put in receivedSummaries: " + summaryToPut);
-        }
+            Map<Integer, GroupContextSummary> groupContext = copyGroups(current.groupContext);
+            performGroupFormations(groupContext, summariesToPut);
+
+            Map<Integer, WireContextSummary> receivedSummaries = new HashMap<Integer, WireContextSummary>(current.receivedSummaries);
+            for (WireContextSummary summaryToPut: summariesToPut) {
+                receivedSummaries.put(summaryToPut.getId(), summaryToPut);
+                logDbg("Summary put in receivedSummaries: " + summaryToPut);
+            }
+
+            publish(current.myContext, groupContext, receivedSummaries);
 
-        if (!summariesToPut.isEmpty()) {
             postReceivedSummaryUpdateHook.setChanged();
             postReceivedSummaryUpdateHook.notifyObservers(summariesToPut);
         }
     }
 
-    private void performGroupFormations(Collection<WireContextSummary> summaries) {
+    private void performGroupFormations(Map<Integer, GroupContextSummary> groupContext,
+                                        Collection<WireContextSummary> summaries) {
         for (GroupDefinition groupDefinition: groupDefinitions.values()) {
             int gId = groupDefinition.getId();
             GroupContextSummary groupSummary = groupContext.get(gId);
@@ -141,24 +180,52 @@ public class ContextHandler {
         }
     }
 
-    public synchronized ContextSummary get(int id) {
-        if (myContext != null && id == myContext.getId()) {
-            return myContext.getCopy();
+    /**
+     * Copies the group summaries of a snapshot so that they can be updated without affecting readers.
+     */
+    private Map<Integer, GroupContextSummary> copyGroups(Map<Integer, GroupContextSummary> groupContext) {
+        Map<Integer, GroupContextSummary> copy = new HashMap<Integer, GroupContextSummary>();
+        for (GroupContextSummary groupSummary: groupContext.values()) {
+            copy.put(groupSummary.getId(), groupSummary.getGroupCopy());
+        }
+        return copy;
+    }
+
+    /**
+     * Makes the given summaries visible to readers. The maps and the summaries in them must not be modified
+     * afterwards. Must be called while holding updateLock.
+     */
+    private void publish(WireContextSummary myContext, Map<Integer, GroupContextSummary> groupContext,
+                         Map<Integer, WireContextSummary> receivedSummaries) {
+        List<WireContextSummary> summariesToSend = new ArrayList<WireContextSummary>();
+
+        if (myContext != null) {
+            summariesToSend.add(myContext);
         }
 
-        if (groupContext.containsKey(id)) {
-            return groupContext.get(id).getCopy();
+        for (GroupContextSummary groupSummary: groupContext.values()) {
+            summariesToSend.add(getGroupWireCopy(groupSummary));
         }
 
-        if (receivedSummaries.containsKey(id)) {
-            return receivedSummaries.get(id).getCopy();
+        for (WireContextSummary summary: receivedSummaries.values()) {
+            if (summary.getHops() < tau) {
+                summariesToSend.add(summary);
+            } else {
+                logDbg("Received summary not included due to tau: " + summary);
+            }
         }
 
-        return null;
+        snapshot = new Snapshot(myContext, groupContext, receivedSummaries, summariesToSend);
+    }
+
+    public ContextSummary get(int id) {
+        ContextSummary summary = snapshot.get(id);
+        return summary == null ? null : summary.getCopy();
     }
 
     public Integer get(int id, String key) {
-        ContextSummary summary = get(id);
+        // Look up the key in place rather than through a copy of the summary
+        ContextSummary summary = snapshot.get(id);
         if (summary == null) {
             return null;
         }
@@ -166,76 +233,95 @@ public class ContextHandler {
         return summary.get(key);
     }
 
-    public synchronized ArrayList<WireContextSummary> getSummariesToSend() {
-        ArrayList<WireContextSummary> summaries = new ArrayList<WireContextSummary>();
-        
-        if (myContext != null) {
-            summaries.add(myContext);
-        }
-        
-        for (GroupContextSummary groupSummary: groupContext.values()) {
-            summaries.add(groupSummary.getWireCopy());
-        }
+    public ArrayList<WireContextSummary> getSummariesToSend() {
+        ArrayList<WireContextSummary> summaries = new ArrayList<WireContextSummary>(snapshot.summariesToSend);
 
-        for (WireContextSummary summary: receivedSummaries.values()) {
-            if (summary.getHops() < tau) {
-                summaries.add(summary);
-            } else {
-                logDbg("Received summary not included due to tau: " + summary);
+        if (isDebugEnabled()) {
+            logDbg("Prepared outgoing summaries:");
+            for (ContextSummary summary: summaries) {
+                logDbg("  " + summary);
             }
         }
 
-        logDbg("Prepared outgoing summaries:");
-        for (ContextSummary summary: summaries) {
-            logDbg("  " + summary);
-        }
-
         return summaries;
     }
 
-    public synchronized List<ContextSummary> getReceivedSummaries() {
+    private WireContextSummary getGroupWireCopy(GroupContextSummary groupSummary) {
+        int gId = groupSummary.getId();
+        WireContextSummary wireCopy = groupWireCopies.get(gId);
+        if (wireCopy == null || !groupSummary.equals(groupWireCopySources.get(gId))) {
+            wireCopy = groupSummary.getWireCopy();
+            groupWireCopies.put(gId, wireCopy);
+            groupWireCopySources.put(gId, (HashMapGroupContextSummary) groupSummary.getGroupCopy());
+        }
+        return wireCopy;
+    }
+
+    public List<ContextSummary> getReceivedSummaries() {
         List<ContextSummary> summaries = new ArrayList<ContextSummary>();
-        for (WireContextSummary summary: receivedSummaries.values()) {
+        for (WireContextSummary summary: snapshot.receivedSummaries.values()) {
             summaries.add(summary.getCopy());
         }
 
         return summaries;
     }
 
-    public synchronized void resetAllSummaryData() {
-        myContext = null;
-        groupContext.clear();
-        receivedSummaries.clear();
-        logDbg("All summary data reset");
+    public void resetAllSummaryData() {
+        synchronized (updateLock) {
+            groupWireCopies.clear();
+            groupWireCopySources.clear();
+            snapshot = Snapshot.EMPTY;
+            logDbg("All summary data reset");
+        }
     }
 
-    public synchronized void setLoggerDelegate(ContextLoggingDelegate delegate) {
+    public void setLoggerDelegate(ContextLoggingDelegate delegate) {
         loggingDelegate = delegate;
     }
 
-    public synchronized void setTau(int newTau) {
-        tau = newTau;
+    public void setTau(int newTau) {
+        synchronized (updateLock) {
+            tau = newTau;
 
-        for (WireContextSummary summary: receivedSummaries.values()) {
-            if (summary.getHops() >= tau) {
-                receivedSummaries.remove(summary.getId());
+            Snapshot current = snapshot;
+            Map<Integer, WireContextSummary> receivedSummaries = new HashMap<Integer, WireContextSummary>();
+            for (WireContextSummary summary: current.receivedSummaries.values()) {
+                if (summary.getHops() < tau) {
+                    receivedSummaries.put(summary.getId(), summary);
+                }
             }
+            publish(current.myContext, current.groupContext, receivedSummaries);
         }
     }
     
-    public synchronized void log(String msg) {
+    public long getSummaryRefreshInterval() {
+        return summaryRefreshIntervalMs;
+    }
+
+    /**
+     * Sets how often the context shims resend every summary. In between, a shim only sends the summaries that
+     * are new or have changed since it last sent to the same destination. Zero sends every summary on every
+     * packet.
+     *
+     * @param intervalMs the refresh interval in milliseconds
+     */
+    public void setSummaryRefreshInterval(long intervalMs) {
+        summaryRefreshIntervalMs = intervalMs;
+    }
+
+    public void log(String msg) {
         loggingDelegate.log(msg);
     }
 
-    public synchronized void logError(String msg) {
+    public void logError(String msg) {
         loggingDelegate.logError(msg);
     }
 
-    public synchronized void logDbg(String msg) {
+    public void logDbg(String msg) {
         loggingDelegate.logDebug(msg);
     }
 
-    public synchronized boolean isDebugEnabled() {
+    public boolean isDebugEnabled() {
         return loggingDelegate.isDebugEnabled();
     }
 
@@ -255,45 +341,105 @@ public class ContextHandler {
         }
     }
 
-    public synchronized WireSummaryType getWireSummaryType() {
+    public WireSummaryType getWireSummaryType() {
         return wireSummaryType;
     }
 
-    public synchronized void setWireSummaryType(WireSummaryType type) {
-        wireSummaryType = type;
-        resetAllSummaryData();
-        logDbg("Wire summary changed to " + wireSummaryType + " and stored context was cleared");
+    public void setWireSummaryType(WireSummaryType type) {
+        synchronized (updateLock) {
+            wireSummaryType = type;
+            resetAllSummaryData();
+            logDbg("Wire summary changed to " + wireSummaryType + " and stored context was cleared");
+        }
     }
 
-    public synchronized void addGroupDefinition(GroupDefinition groupDefinition) {
-        int gId = groupDefinition.getId();
-        GroupContextSummary groupSummary = new HashMapGroupContextSummary(gId);
+    public BloomierHashFunction getBloomierHashFunction() {
+        return bloomierHashFunction;
+    }
 
-        groupContext.put(gId, groupSummary);
-        
-        groupDefinitions.put(gId, groupDefinition);
-        
-        if (myContext != null) {
-            groupDefinition.handleContextSummary(groupSummary, myContext);
-        }
+    /**
+     * Selects the hash function of the Bloomier filters in locally built summaries. The default
+     * is MD5. Only switch to MURMUR3 once every peer can decode the hash function id in the
+     * serialized summary; older nodes mis-decode every MURMUR3 summary.
+     */
+    public void setBloomierHashFunction(BloomierHashFunction hashFunction) {
+        bloomierHashFunction = hashFunction;
+        logDbg("Bloomier hash function changed to " + bloomierHashFunction);
+    }
+
+    public void addGroupDefinition(GroupDefinition groupDefinition) {
+        synchronized (updateLock) {
+            Snapshot current = snapshot;
+            int gId = groupDefinition.getId();
+            GroupContextSummary groupSummary = new HashMapGroupContextSummary(gId);
+
+            Map<Integer, GroupContextSummary> groupContext = copyGroups(current.groupContext);
+            groupContext.put(gId, groupSummary);
+
+            groupDefinitions.put(gId, groupDefinition);
+
+            if (current.myContext != null) {
+                groupDefinition.handleContextSummary(groupSummary, current.myContext);
+            }
+
+            // A received summary of one of our groups is merged into the group rather than kept
+            Map<Integer, WireContextSummary> receivedSummaries = new HashMap<Integer, WireContextSummary>(current.receivedSummaries);
+            performGroupFormations(groupContext, receivedSummaries.values());
 
-        performGroupFormations(receivedSummaries.values());
+            publish(current.myContext, groupContext, receivedSummaries);
+        }
     }
 
-    public synchronized GroupContextSummary getGroupSummary(int gId) {
-        GroupContextSummary groupSummary = groupContext.get(gId);
+    public GroupContextSummary getGroupSummary(int gId) {
+        GroupContextSummary groupSummary = snapshot.groupContext.get(gId);
         if (groupSummary != null) {
             return groupSummary.getGroupCopy();
         } else {
             return null;
         }
     }
-    public synchronized List<GroupContextSummary> getGroupSummaries() {
+    public List<GroupContextSummary> getGroupSummaries() {
         List<GroupContextSummary> summaries = new ArrayList<GroupContextSummary>();
-        for (GroupContextSummary summary: groupContext.values()) {
+        for (GroupContextSummary summary: snapshot.groupContext.values()) {
             summaries.add(summary.getGroupCopy());
         }
 
         return summaries;
     }
+
+    /**
+     * The summaries known at one point in time. Neither the maps nor the summaries in them are modified once
+     * the snapshot is published.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(null, new HashMap<Integer, GroupContextSummary>(),
+                                                   new HashMap<Integer, WireContextSummary>(),
+                                                   new ArrayList<WireContextSummary>());
+
+        final WireContextSummary myContext;
+        final Map<Integer, GroupContextSummary> groupContext;
+        final Map<Integer, WireContextSummary> receivedSummaries;
+        final List<WireContextSummary> summariesToSend;
+
+        Snapshot(WireContextSummary myContext, Map<Integer, GroupContextSummary> groupContext,
+                 Map<Integer, WireContextSummary> receivedSummaries, List<WireContextSummary> summariesToSend) {
+            this.myContext = myContext;
+            this.groupContext = Collections.unmodifiableMap(groupContext);
+            this.receivedSummaries = Collections.unmodifiableMap(receivedSummaries);
+            this.summariesToSend = Collections.unmodifiableList(summariesToSend);
+        }
+
+        ContextSummary get(int id) {
+            if (myContext != null && id == myContext.getId()) {
+                return myContext;
+            }
+
+            ContextSummary summary = groupContext.get(id);
+            if (summary != null) {
+                return summary;
+            }
+
+            return receivedSummaries.get(id);
+        }
+    }
 }
@@ -38,7 +38,7 @@ public class ContextShimmedDatagramSocket extends DatagramSocket {
     }
 
     @Override
-    public synchronized void receive(DatagramPacket p) throws IOException {
+    public void receive(DatagramPacket p) throws IOException {
         DatagramPacket receivePacket = shim.getReceivePacket(p);
         super.receive(receivePacket);
         shim.processReceivedPacket(receivePacket, p);
@@ -33,7 +33,7 @@ public class ContextShimmedMulticastSocket extends MulticastSocket {
     }
 
     @Override
-    public synchronized void receive(DatagramPacket p) throws IOException {
+    public void receive(DatagramPacket p) throws IOException {
         DatagramPacket receivePacket = shim.getReceivePacket(p);
         super.receive(receivePacket);
         shim.processReceivedPacket(receivePacket, p);
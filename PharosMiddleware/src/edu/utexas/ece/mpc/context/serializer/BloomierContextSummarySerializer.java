@@ -5,10 +5,18 @@ import java.nio.ByteBuffer;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
 
+import edu.utexas.ece.mpc.bloomier.BloomierHashFunction;
 import edu.utexas.ece.mpc.context.ContextHandler;
 import edu.utexas.ece.mpc.context.summary.BloomierContextSummary;
 
 public class BloomierContextSummarySerializer extends Serializer {
+    // The hash function id is stored above k so MD5 summaries keep the encoding older nodes expect.
+    // Nodes that predate this field read a MURMUR3 summary's k as k | 1 << 16 and mis-decode it, so
+    // MURMUR3 must not be enabled (ContextHandler.setBloomierHashFunction) until every peer can
+    // decode the hash function id.
+    private static final int HASH_FUNCTION_SHIFT = 16;
+    private static final int K_MASK = (1 << HASH_FUNCTION_SHIFT) - 1;
+
     private final Kryo kryo;
     private final ContextHandler contextHandler = ContextHandler.getInstance();
 
@@ -33,6 +41,7 @@ public class BloomierContextSummarySerializer extends Serializer {
         int q = summary.getQ();
 
         long hashSeed = summary.getHashSeed();
+        BloomierHashFunction hashFunction = summary.getHashFunction();
 
         byte[][] table = summary.getTable();
         int tableDimension1 = table.length;
@@ -42,7 +51,7 @@ public class BloomierContextSummarySerializer extends Serializer {
         int hops = summary.getHops();
         long timestamp = summary.getTimestamp();
 
-        kryo.writeObjectData(buffer, k);
+        kryo.writeObjectData(buffer, k | (hashFunction.getId() << HASH_FUNCTION_SHIFT));
         kryo.writeObjectData(buffer, q);
         kryo.writeObjectData(buffer, hashSeed);
 
@@ -64,7 +73,9 @@ public class BloomierContextSummarySerializer extends Serializer {
     public <T> T readObjectData(ByteBuffer buffer, Class<T> type) {
         int bufferStart = buffer.position();
 
-        int k = kryo.readObjectData(buffer, int.class);
+        int kAndHashFunction = kryo.readObjectData(buffer, int.class);
+        int k = kAndHashFunction & K_MASK;
+        BloomierHashFunction hashFunction = BloomierHashFunction.fromId(kAndHashFunction >>> HASH_FUNCTION_SHIFT);
         int q = kryo.readObjectData(buffer, int.class);
 
         long hashSeed = kryo.readObjectData(buffer, long.class);
@@ -85,7 +96,8 @@ public class BloomierContextSummarySerializer extends Serializer {
         long timestamp = kryo.readObjectData(buffer, long.class);
 
         @SuppressWarnings("unchecked")
-        T summary = (T) new BloomierContextSummary(m, k, q, hashSeed, table, id, hops, timestamp);
+        T summary = (T) new BloomierContextSummary(m, k, q, hashSeed, hashFunction, table, id, hops,
+                                                    timestamp);
 
         int summarySize = buffer.position() - bufferStart;
         contextHandler.logDbg(String.format("Decoded context summary (size=%d): %s", summarySize,
@@ -2,9 +2,15 @@ package edu.utexas.ece.mpc.context.shim;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.ObjectBuffer;
+import com.esotericsoftware.kryo.SerializationException;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.minlog.Log;
 
@@ -18,19 +24,38 @@ import edu.utexas.ece.mpc.context.summary.LabeledContextSummary;
 import edu.utexas.ece.mpc.context.summary.WireContextSummary;
 
 public class ContextShim {
+    // The number of destinations whose sent summaries are remembered
+    private static final int MAX_DESTINATIONS = 64;
 
     protected ContextHandler contextHandler;
-    protected Kryo kryo;
-    protected ObjectBuffer buffer;
 
-    public ContextShim() {
-        kryo = new Kryo();
-        kryo.register(ArrayList.class, new ContextSummarySerializer());
-        kryo.register(BloomierContextSummary.class, new BloomierContextSummarySerializer(kryo));
-        kryo.register(LabeledContextSummary.class, new LabeledContextSummarySerializer(kryo));
+    // Kryo is not thread safe, so each thread serializes with its own instance. Sends and receives on
+    // different threads therefore only share the ContextHandler snapshot, which they read without locking.
+    private final ThreadLocal<Kryo> kryos = new ThreadLocal<Kryo>() {
+        @Override
+        protected Kryo initialValue() {
+            return createKryo();
+        }
+    };
+    private final ThreadLocal<ObjectBuffer> buffers = new ThreadLocal<ObjectBuffer>() {
+        @Override
+        protected ObjectBuffer initialValue() {
+            return new ObjectBuffer(kryos.get(), 2 * 1024, Integer.MAX_VALUE);
+        }
+    };
 
-        buffer = new ObjectBuffer(kryo, 2 * 1024, Integer.MAX_VALUE);
+    // The summaries last sent to each destination, by destination (null when unknown). Guarded by itself.
+    private Map<Object, SentSummaries> sentSummaries = new LinkedHashMap<Object, SentSummaries>(16, 0.75f,
+                                                                                                true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, SentSummaries> eldest) {
+            return size() > MAX_DESTINATIONS;
+        }
+    };
 
+    public ContextShim() {
         contextHandler = ContextHandler.getInstance();
 
         if (contextHandler.isDebugEnabled()) {
@@ -38,19 +63,110 @@ public class ContextShim {
         }
     }
 
+    private Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        kryo.register(ArrayList.class, new ContextSummarySerializer(kryo));
+        kryo.register(BloomierContextSummary.class, new BloomierContextSummarySerializer(kryo));
+        kryo.register(LabeledContextSummary.class, new LabeledContextSummarySerializer(kryo));
+        return kryo;
+    }
+
     public byte[] getContextBytes() {
+        return getContextBytes(null);
+    }
+
+    /**
+     * Serializes the summaries that are new or have changed since the last packet to the destination. Every
+     * summary is sent once per refresh interval so that new neighbors and lost packets are caught up.
+     *
+     * @param destination the address the context is sent to, or null if it is not known
+     * @return the serialized summaries
+     */
+    public byte[] getContextBytes(Object destination) {
+        return buffers.get().writeObjectData(getSummariesToSend(destination));
+    }
+
+    /**
+     * Selects the summaries to include in the next packet to the destination and records them as sent.
+     *
+     * @param destination the address the context is sent to, or null if it is not known
+     * @return the summaries to pass to writeContext()
+     */
+    protected ArrayList<WireContextSummary> getSummariesToSend(Object destination) {
         ArrayList<WireContextSummary> summaries = contextHandler.getSummariesToSend();
-        return buffer.writeObjectData(summaries);
+        int numSummaries = summaries.size();
+
+        synchronized (sentSummaries) {
+            SentSummaries sent = sentSummaries.get(destination);
+            if (sent == null) {
+                sent = new SentSummaries();
+                sentSummaries.put(destination, sent);
+            }
+            summaries = sent.selectSummariesToSend(summaries, contextHandler.getSummaryRefreshInterval());
+        }
+
+        contextHandler.logDbg(String.format("Sending %d of %d summaries to %s", summaries.size(),
+                                            numSummaries, destination));
+        return summaries;
+    }
+
+    /**
+     * Serializes summaries directly into a buffer, starting at its position.
+     *
+     * @throws SerializationException caused by a BufferOverflowException if the buffer is too small
+     */
+    protected void writeContext(ByteBuffer buffer, ArrayList<WireContextSummary> summaries) {
+        kryos.get().writeObjectData(buffer, summaries);
     }
 
     public void processContextBytes(ByteBuffer buffer) {
         @SuppressWarnings("unchecked")
-        ArrayList<WireContextSummary> summaries = (ArrayList<WireContextSummary>) kryo.readObjectData(buffer,
-                                                                                                              ArrayList.class);
+        ArrayList<WireContextSummary> summaries = (ArrayList<WireContextSummary>) kryos.get().readObjectData(buffer,
+                                                                                                                     ArrayList.class);
         contextHandler.handleIncomingSummaries(summaries);
     }
 
+    /**
+     * The version, i.e., the timestamp and hop count, of each summary last sent to a destination.
+     */
+    private static class SentSummaries {
+        private Map<Integer, long[]> versions = new HashMap<Integer, long[]>();
+        private long lastRefreshMs = Long.MIN_VALUE;
+
+        ArrayList<WireContextSummary> selectSummariesToSend(ArrayList<WireContextSummary> summaries,
+                                                            long refreshIntervalMs) {
+            long now = System.currentTimeMillis();
+            boolean refresh = refreshIntervalMs <= 0 || lastRefreshMs == Long.MIN_VALUE
+                              || now - lastRefreshMs >= refreshIntervalMs;
+            if (refresh) {
+                lastRefreshMs = now;
+            }
+
+            ArrayList<WireContextSummary> result = new ArrayList<WireContextSummary>(summaries.size());
+            Set<Integer> ids = new HashSet<Integer>();
+            for (WireContextSummary summary: summaries) {
+                ids.add(summary.getId());
+                long[] version = versions.get(summary.getId());
+                if (refresh || version == null || version[0] != summary.getTimestamp()
+                    || version[1] != summary.getHops()) {
+                    result.add(summary);
+                    versions.put(summary.getId(), new long[] { summary.getTimestamp(), summary.getHops() });
+                }
+            }
+
+            // Forget summaries that are no longer sent so they are sent again if they return
+            versions.keySet().retainAll(ids);
+
+            return result;
+        }
+    }
+
     private class ContextSummarySerializer extends Serializer {
+        private final Kryo kryo;
+
+        public ContextSummarySerializer(Kryo kryo) {
+            this.kryo = kryo;
+        }
 
         @Override
         public void writeObjectData(ByteBuffer buffer, Object object) {
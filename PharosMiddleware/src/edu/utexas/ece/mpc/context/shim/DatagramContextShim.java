@@ -2,53 +2,82 @@ package edu.utexas.ece.mpc.context.shim;
 
 import java.net.DatagramPacket;
 import java.net.SocketException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 
+import com.esotericsoftware.kryo.SerializationException;
+
+import edu.utexas.ece.mpc.context.summary.WireContextSummary;
+
+/**
+ * Appends context to outgoing datagrams and strips it from incoming ones. A shimmed datagram holds the
+ * payload length, the payload, and the serialized context summaries.
+ *
+ * Each thread has its own send and receive buffers and packets, which are reused from one datagram to the
+ * next. The context is serialized directly into the send buffer behind the payload, and is decoded in place
+ * from the receive buffer. The packets returned by getSendPacket() and getReceivePacket() are therefore only
+ * valid until the next call to the same method on the same thread.
+ */
 public class DatagramContextShim extends ContextShim {
 
     public DatagramPacket getSendPacket(DatagramPacket p) throws SocketException {
-        byte[] contextBytes = getContextBytes();
-        contextHandler.logDbg("Packet prepared for send has context with size="
-                              + contextBytes.length);
-
+        ArrayList<WireContextSummary> summaries = getSummariesToSend(p.getSocketAddress());
         int payloadLength = p.getLength();
 
-        byte[] bytesToSend = new byte[PAYLOAD_LENGTH_FIELD_SIZE + payloadLength
-                                      + contextBytes.length];
-
-        ByteBuffer bytesToSendBuffer = ByteBuffer.wrap(bytesToSend);
-        bytesToSendBuffer.putInt(payloadLength);
-        bytesToSendBuffer.put(p.getData(), p.getOffset(), p.getLength());
-        bytesToSendBuffer.put(contextBytes);
+        ByteBuffer sendBuffer = sendBuffers.get();
+        while (true) {
+            sendBuffer.clear();
+            if (sendBuffer.remaining() >= PAYLOAD_LENGTH_FIELD_SIZE + payloadLength) {
+                sendBuffer.putInt(payloadLength);
+                sendBuffer.put(p.getData(), p.getOffset(), payloadLength);
+                int start = sendBuffer.position();
+                try {
+                    writeContext(sendBuffer, summaries);
+                    contextHandler.logDbg("Packet prepared for send has context with size="
+                                          + (sendBuffer.position() - start));
+                    break;
+                } catch (SerializationException e) {
+                    if (!e.causedBy(BufferOverflowException.class)) {
+                        throw e;
+                    }
+                }
+            }
+            sendBuffer = increaseBufferSize(sendBuffers, PAYLOAD_LENGTH_FIELD_SIZE + payloadLength);
+        }
 
-        return new DatagramPacket(bytesToSend, bytesToSend.length, p.getSocketAddress());
+        DatagramPacket sendPacket = sendPackets.get();
+        sendPacket.setData(sendBuffer.array(), 0, sendBuffer.position());
+        sendPacket.setSocketAddress(p.getSocketAddress());
+        return sendPacket;
     }
 
     public DatagramPacket getReceivePacket(DatagramPacket p) {
-        DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
-        while (receivePacket.getLength() < p.getLength() + PAYLOAD_LENGTH_FIELD_SIZE) {
-            increaseReceiveBufferSize();
-            receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+        ByteBuffer receiveBuffer = receiveBuffers.get();
+        if (receiveBuffer.capacity() < p.getLength() + PAYLOAD_LENGTH_FIELD_SIZE) {
+            receiveBuffer = increaseBufferSize(receiveBuffers, p.getLength() + PAYLOAD_LENGTH_FIELD_SIZE);
         }
 
+        DatagramPacket receivePacket = receivePackets.get();
+        receivePacket.setData(receiveBuffer.array(), 0, receiveBuffer.capacity());
         return receivePacket;
     }
 
     public void processReceivedPacket(DatagramPacket receivePacket, DatagramPacket p) {
-        ByteBuffer receivedBytesBuffer = ByteBuffer.wrap(receivePacket.getData(),
-                                                         receivePacket.getOffset(),
-                                                         receivePacket.getLength());
-        int payloadLength = receivedBytesBuffer.getInt();
-        byte[] payloadData = new byte[payloadLength];
-        receivedBytesBuffer.get(payloadData);
-
-        int packetLength;
-        int packetOffset = p.getOffset();
-        byte[] packetData = p.getData();
-        for (packetLength = 0; packetLength < p.getLength() && packetLength < payloadLength; packetLength++) {
-            packetData[packetOffset + packetLength] = payloadData[packetLength];
+        ByteBuffer receivedBytesBuffer = receiveBuffers.get();
+        if (receivePacket.getData() != receivedBytesBuffer.array()) {
+            receivedBytesBuffer = ByteBuffer.wrap(receivePacket.getData());
         }
+        receivedBytesBuffer.limit(receivePacket.getOffset() + receivePacket.getLength());
+        receivedBytesBuffer.position(receivePacket.getOffset());
+
+        // The payload is copied straight into the caller's packet, truncated to fit as DatagramSocket does
+        int payloadLength = receivedBytesBuffer.getInt();
+        int payloadStart = receivedBytesBuffer.position();
+        System.arraycopy(receivedBytesBuffer.array(), payloadStart, p.getData(), p.getOffset(),
+                         Math.min(p.getLength(), payloadLength));
         p.setLength(payloadLength);
+        receivedBytesBuffer.position(payloadStart + payloadLength);
 
         try {
             int start = receivedBytesBuffer.position();
@@ -57,17 +86,44 @@ public class DatagramContextShim extends ContextShim {
                                   + (receivedBytesBuffer.position() - start));
         } catch (Exception e) { // FIXME: catch (or modify context shim to throw) appropriate exception
             contextHandler.logDbg("Receive buffer size exceeded (context information discarded), growing buffer");
-            increaseReceiveBufferSize();
+            increaseBufferSize(receiveBuffers, 0);
         }
     }
 
-    private void increaseReceiveBufferSize() {
-        receiveBuffer = new byte[receiveBuffer.length * 2];
-        contextHandler.logDbg("Receive buffer size increased to " + receiveBuffer.length);
+    private ByteBuffer increaseBufferSize(ThreadLocal<ByteBuffer> buffers, int minimumSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(buffers.get().capacity() * 2, minimumSize));
+        buffers.set(buffer);
+        contextHandler.logDbg("Buffer size increased to " + buffer.capacity());
+        return buffer;
     }
 
     private static final int PAYLOAD_LENGTH_FIELD_SIZE = Integer.SIZE / Byte.SIZE;
 
-    private byte[] receiveBuffer = new byte[DEFAULT_RECEIVE_PACKET_SIZE];
+    // DatagramSocket only reads and writes byte arrays, so the buffers are array-backed rather than direct
+    private final ThreadLocal<ByteBuffer> sendBuffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(DEFAULT_SEND_PACKET_SIZE);
+        }
+    };
+    private final ThreadLocal<ByteBuffer> receiveBuffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(DEFAULT_RECEIVE_PACKET_SIZE);
+        }
+    };
+    private final ThreadLocal<DatagramPacket> sendPackets = new ThreadLocal<DatagramPacket>() {
+        @Override
+        protected DatagramPacket initialValue() {
+            return new DatagramPacket(new byte[0], 0);
+        }
+    };
+    private final ThreadLocal<DatagramPacket> receivePackets = new ThreadLocal<DatagramPacket>() {
+        @Override
+        protected DatagramPacket initialValue() {
+            return new DatagramPacket(new byte[0], 0);
+        }
+    };
+    private static final int DEFAULT_SEND_PACKET_SIZE = 2 * 1024;
     private static final int DEFAULT_RECEIVE_PACKET_SIZE = 2 * 1024;
 }
@@ -1,5 +1,6 @@
 package edu.utexas.ece.mpc.context.summary;
 
+import edu.utexas.ece.mpc.bloomier.BloomierHashFunction;
 import edu.utexas.ece.mpc.bloomier.ImmutableBloomierFilter;
 
 public class BloomierContextSummary implements WireContextSummary {
@@ -11,8 +12,14 @@ public class BloomierContextSummary implements WireContextSummary {
 
     public BloomierContextSummary(int m, int k, int q, long hashSeed, byte[][] table, int id,
                                   int hops, long timestamp) {
+        this(m, k, q, hashSeed, BloomierHashFunction.MD5, table, id, hops, timestamp);
+    }
+
+    public BloomierContextSummary(int m, int k, int q, long hashSeed,
+                                  BloomierHashFunction hashFunction, byte[][] table, int id,
+                                  int hops, long timestamp) {
         this.filter = new ImmutableBloomierFilter<String, Integer>(m, k, q, Integer.class,
-                                                                   hashSeed, table);
+                                                                   hashSeed, table, hashFunction);
 
         this.id = id;
         this.hops = hops;
@@ -20,6 +27,11 @@ public class BloomierContextSummary implements WireContextSummary {
     }
 
     public BloomierContextSummary(HashMapContextSummary other, long hashSeedHint) {
+        this(other, hashSeedHint, BloomierHashFunction.MD5);
+    }
+
+    public BloomierContextSummary(HashMapContextSummary other, long hashSeedHint,
+                                  BloomierHashFunction hashFunction) {
         // FIXME: make these calculations tunable (get rid of 'magic')
         int m = Math.max(1, (int) (other.keySet().size() * 1.20)); // make m 20% bigger than map size
         int k = (m < 40) ? 2 : 3; // FIXME: found through manual tweaking - need better way to do this
@@ -28,7 +40,7 @@ public class BloomierContextSummary implements WireContextSummary {
         int q = (int) (Integer.SIZE * 1.30); // make q 30% bigger than the Integers being stored
         
         filter = new ImmutableBloomierFilter<String, Integer>(other, m, k, q, Integer.class,
-                                                              hashSeedHint);
+                                                              hashSeedHint, hashFunction);
 
         id = other.getId();
         hops = 0;
@@ -45,8 +57,9 @@ public class BloomierContextSummary implements WireContextSummary {
 
     @Override
     public String toString() {
-        return String.format("BloomierContextSummary with id=%d m=%d k=%d q=%d hashSeed=%d timestamp=%d hops=%d",
+        return String.format("BloomierContextSummary with id=%d m=%d k=%d q=%d hashSeed=%d hash=%s timestamp=%d hops=%d",
                              id, filter.getM(), filter.getK(), filter.getQ(), filter.getHashSeed(),
+                             filter.getHashFunction(),
                              timestamp, hops);
     }
 
@@ -71,6 +84,10 @@ public class BloomierContextSummary implements WireContextSummary {
         return filter.getHashSeed();
     }
 
+    public BloomierHashFunction getHashFunction() {
+        return filter.getHashFunction();
+    }
+
     public byte[][] getTable() {
         return filter.getTable();
     }
@@ -101,7 +101,8 @@ public class HashMapContextSummary extends HashMap<String, Integer> implements C
         ContextHandler handler = ContextHandler.getInstance();
         switch (handler.getWireSummaryType()) {
             case BLOOMIER:
-                BloomierContextSummary bSummary = new BloomierContextSummary(this, hashSeedHint);
+                BloomierContextSummary bSummary = new BloomierContextSummary(this, hashSeedHint,
+                                                                           handler.getBloomierHashFunction());
                 hashSeedHint = bSummary.getHashSeed();
                 summary = bSummary;
                 break;
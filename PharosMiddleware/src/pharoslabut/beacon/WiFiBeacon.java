@@ -85,6 +85,24 @@ public class WiFiBeacon implements java.io.Serializable {
 	public void updateTimestamp() {
 		timestamp = System.currentTimeMillis();
 	}
+
+	/**
+	 * Sets the timestamp.  This is used by WiFiBeaconFormat when decoding a beacon.
+	 *
+	 * @param timestamp The timestamp as recorded by the transmitter's system clock.
+	 */
+	void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Sets the sequence number.  This is used by WiFiBeaconFormat when decoding a beacon.
+	 *
+	 * @param seqNum The sequence number.
+	 */
+	void setSeqNum(long seqNum) {
+		this.seqNum = seqNum;
+	}
 	
 	/**
 	 * Increments the sequence number.
@@ -1,13 +1,12 @@
 package pharoslabut.beacon;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 
+import pharoslabut.logger.EventLog;
 import pharoslabut.logger.Logger;
 import edu.utexas.ece.mpc.context.net.ContextShimmedMulticastSocket;
 
@@ -27,6 +26,12 @@ public class WiFiBeaconBroadcaster extends BeaconBroadcaster {
     private int mCastPort;
     private MulticastSocket mSocket = null;    
 
+    /**
+     * Encodes the beacons into a buffer that is reused for each beacon.
+     */
+    private final WiFiBeaconFormat format = new WiFiBeaconFormat();
+    private final DatagramPacket beaconPacket;
+
     /**
      * Creates a BeaconBroadcaster that does not shim context and does not
      * have a beacon initially.   To set the beacon, call the setBeacon() method. 
@@ -75,6 +80,7 @@ public class WiFiBeaconBroadcaster extends BeaconBroadcaster {
         this.mCastAddr = mCastAddr;
         this.mCastPort = mCastPort;
         this.beacon = beacon;
+        this.beaconPacket = new DatagramPacket(new byte[0], 0, mCastAddr, mCastPort);
         
         try{
         	InetSocketAddress ina = new InetSocketAddress(interfaceIPAddr, mCastPort);
@@ -123,26 +129,20 @@ public class WiFiBeaconBroadcaster extends BeaconBroadcaster {
      */
     protected void sendBeacon() {
     	if (mSocket != null && beacon != null){
-			byte[] beaconBytes;
-
 			try{
-				ByteArrayOutputStream bs = new ByteArrayOutputStream();
-				ObjectOutputStream os = new ObjectOutputStream(bs);
-				beacon.updateTimestamp();
-				os.writeObject(beacon);
-				os.flush();
-				os.close();
-				bs.close();
-				beaconBytes = bs.toByteArray();
-
-				// package up beacon in DatagramPacket
-				DatagramPacket beaconPacket
-				= new DatagramPacket(beaconBytes,  beaconBytes.length, mCastAddr, mCastPort);
+				// The format and packet are reused, so only one beacon is encoded at a time.
+				synchronized(format) {
+					beacon.updateTimestamp();
+					int length = format.encode(beacon);
+					beaconPacket.setData(format.getBuffer(), 0, length);
 
-				Logger.logDbg("Broadcasting Beacon: " + beacon + ", num bytes = " + beaconBytes.length);
+					if (Logger.isDebugEnabled())
+						Logger.logDbg("Broadcasting Beacon: " + beacon + ", num bytes = " + length);
+					EventLog.logWiFiBeaconTx(beacon.getAddress(), beacon.getPort(), beacon.getSeqNum());
 
-				// broadcast the beacon
-				mSocket.send(beaconPacket);
+					// broadcast the beacon
+					mSocket.send(beaconPacket);
+				}
 				beacon.incSeqNum();
 			} catch (Exception e){
 				e.printStackTrace();
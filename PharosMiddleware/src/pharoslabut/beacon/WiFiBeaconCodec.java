@@ -0,0 +1,37 @@
+package pharoslabut.beacon;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Encodes and decodes the fields that a subclass of WiFiBeacon adds to the
+ * beacon.  The fields common to all beacons, i.e., the address, port, sequence
+ * number, and timestamp, are written by the WiFiBeaconFormat.
+ * 
+ * @param <B> The type of beacon handled by this codec.
+ * @see WiFiBeaconFormat
+ */
+public interface WiFiBeaconCodec<B extends WiFiBeacon> {
+
+	/**
+	 * Writes the fields that the beacon's class adds to WiFiBeacon.
+	 * 
+	 * @param beacon The beacon to encode.
+	 * @param out The output to write to.
+	 * @throws IOException If the beacon cannot be written.
+	 */
+	public void encode(B beacon, DataOutput out) throws IOException;
+	
+	/**
+	 * Creates a beacon and reads the fields written by encode().
+	 * 
+	 * @param address The address in the beacon.
+	 * @param port The port in the beacon.
+	 * @param in The input to read from.
+	 * @return The decoded beacon.
+	 * @throws IOException If the beacon cannot be read.
+	 */
+	public B decode(InetAddress address, int port, DataInput in) throws IOException;
+}
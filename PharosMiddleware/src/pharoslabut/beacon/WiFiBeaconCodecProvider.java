@@ -0,0 +1,19 @@
+package pharoslabut.beacon;
+
+/**
+ * Registers the codecs of the WiFiBeacon subclasses defined by a package.
+ * Providers are listed in META-INF/services/pharoslabut.beacon.WiFiBeaconCodecProvider
+ * and are instantiated by a ServiceLoader when the format is first used.  A
+ * provider must have a public no-argument constructor.
+ * 
+ * @see WiFiBeaconFormat
+ */
+public interface WiFiBeaconCodecProvider {
+
+	/**
+	 * Registers this provider's codecs.
+	 * 
+	 * @see WiFiBeaconFormat#register(int, Class, WiFiBeaconCodec)
+	 */
+	public void registerCodecs();
+}
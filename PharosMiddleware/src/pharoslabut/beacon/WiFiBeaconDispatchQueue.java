@@ -0,0 +1,271 @@
+package pharoslabut.beacon;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import pharoslabut.logger.Logger;
+
+/**
+ * Delivers beacons from a WiFiBeaconReceiver to one WiFiBeaconListener.
+ * The receive thread only appends the beacon to a bounded queue, and a
+ * thread dedicated to the listener delivers the queued beacons in batches.
+ * A slow listener therefore only delays its own beacons, rather than the
+ * draining of the socket and the other listeners.
+ *
+ * <p>When the queue is full, the oldest beacon is dropped since newer beacons
+ * carry more current information.  A coalescing queue holds at most one
+ * beacon per sender, which is replaced when a newer beacon from the same
+ * sender arrives.  This suits listeners that only care about the latest state
+ * of each neighbor.  The counters of the queue show whether the listener is
+ * keeping up.</p>
+ *
+ * <p>Define the system property "PharosMiddleware.syncBeaconDispatch" to
+ * deliver each beacon on the receive thread, as was done previously.</p>
+ *
+ * @see WiFiBeaconReceiver#addBeaconListener(WiFiBeaconListener, int, boolean)
+ */
+public class WiFiBeaconDispatchQueue implements Runnable {
+
+	/**
+	 * Whether beacons are delivered by the receive thread.
+	 */
+	public static final boolean SYNC = System.getProperty("PharosMiddleware.syncBeaconDispatch") != null;
+
+	/**
+	 * The default capacity of a queue.
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private final WiFiBeaconListener listener;
+	private final int capacity;
+	private final boolean coalesce;
+
+	/**
+	 * The pending beacons.  A coalescing queue uses senderQueue, which maps each
+	 * sender to its latest beacon in order of the sender's first pending beacon.
+	 * Both are guarded by this object.
+	 */
+	private final ArrayDeque<WiFiBeaconEvent> fifoQueue;
+	private final LinkedHashMap<Long, WiFiBeaconEvent> senderQueue;
+
+	private volatile long numOffered = 0;
+	private volatile long numDelivered = 0;
+	private volatile long numDropped = 0;
+	private volatile long numCoalesced = 0;
+	private volatile int maxDepth = 0;
+
+	/**
+	 * The thread that delivers beacons, or null if this queue is stopped.
+	 */
+	private Thread thread;
+
+	/**
+	 * The constructor.  The queue does not deliver beacons until start() is called.
+	 *
+	 * @param listener The listener to which beacons are delivered.
+	 * @param capacity The maximum number of pending beacons.
+	 * @param coalesce Whether to only keep the latest beacon from each sender.
+	 */
+	WiFiBeaconDispatchQueue(WiFiBeaconListener listener, int capacity, boolean coalesce) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Invalid queue capacity " + capacity);
+		this.listener = listener;
+		this.capacity = capacity;
+		this.coalesce = coalesce;
+		if (coalesce) {
+			fifoQueue = null;
+			senderQueue = new LinkedHashMap<Long, WiFiBeaconEvent>();
+		} else {
+			fifoQueue = new ArrayDeque<WiFiBeaconEvent>(Math.min(capacity, 1024));
+			senderQueue = null;
+		}
+	}
+
+	/**
+	 * Starts the thread that delivers beacons to the listener.  A stopped queue
+	 * may be started again.
+	 */
+	synchronized void start() {
+		if (SYNC || thread != null)
+			return;
+		thread = new Thread(this, "WiFiBeaconDispatch-" + listener.getClass().getSimpleName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the thread that delivers beacons.  Pending beacons are discarded.
+	 */
+	synchronized void stop() {
+		thread = null;
+		if (coalesce)
+			senderQueue.clear();
+		else
+			fifoQueue.clear();
+		notifyAll();
+	}
+
+	/**
+	 * Queues a beacon for delivery to the listener.  This is called by the receive thread.
+	 *
+	 * @param be The beacon.
+	 */
+	void offer(WiFiBeaconEvent be) {
+		numOffered++;
+		if (SYNC) {
+			deliver(be);
+			return;
+		}
+
+		boolean dropped = false;
+		synchronized(this) {
+			int depth;
+			if (coalesce) {
+				Long sender = getSenderKey(be.getBeacon());
+				if (senderQueue.put(sender, be) != null)
+					numCoalesced++;
+				else if (senderQueue.size() > capacity) {
+					Iterator<Long> i = senderQueue.keySet().iterator();
+					i.next();
+					i.remove();
+					dropped = true;
+				}
+				depth = senderQueue.size();
+			} else {
+				if (fifoQueue.size() == capacity) {
+					fifoQueue.pollFirst();
+					dropped = true;
+				}
+				fifoQueue.addLast(be);
+				depth = fifoQueue.size();
+			}
+			if (depth > maxDepth)
+				maxDepth = depth;
+			notifyAll();
+		}
+
+		if (dropped) {
+			long n = ++numDropped;
+			if ((n & (n - 1)) == 0)  // 1, 2, 4, 8...
+				Logger.logWarn("Listener " + listener.getClass().getName() + " is falling behind, dropped "
+						+ n + " beacons so far (capacity = " + capacity + ").");
+		}
+	}
+
+	/**
+	 * Identifies the sender of a beacon by its address and port.
+	 */
+	private static Long getSenderKey(WiFiBeacon beacon) {
+		InetAddress address = beacon.getAddress();
+		long hash = address == null ? 0 : address.hashCode();
+		return Long.valueOf((hash << 32) | (beacon.getPort() & 0xffffffffL));
+	}
+
+	/**
+	 * Removes all of the pending beacons, waiting until there is at least one.
+	 *
+	 * @return The beacons, or null if this queue was stopped, which ends the calling thread.
+	 */
+	private synchronized WiFiBeaconEvent[] takeAll() throws InterruptedException {
+		// A thread that was replaced by stop() and start() also ends here
+		while (thread == Thread.currentThread() && getDepth() == 0)
+			wait();
+		if (thread != Thread.currentThread())
+			return null;
+
+		WiFiBeaconEvent[] batch;
+		if (coalesce) {
+			batch = senderQueue.values().toArray(new WiFiBeaconEvent[senderQueue.size()]);
+			senderQueue.clear();
+		} else {
+			batch = fifoQueue.toArray(new WiFiBeaconEvent[fifoQueue.size()]);
+			fifoQueue.clear();
+		}
+		return batch;
+	}
+
+	/**
+	 * Delivers the queued beacons to the listener.
+	 */
+	public void run() {
+		try {
+			WiFiBeaconEvent[] batch;
+			while ((batch = takeAll()) != null) {
+				for (int i = 0; i < batch.length; i++)
+					deliver(batch[i]);
+			}
+		} catch(InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void deliver(WiFiBeaconEvent be) {
+		try {
+			listener.beaconReceived(be);
+		} catch(RuntimeException e) {
+			Logger.logErr("RuntimeException in beacon listener " + listener.getClass().getName() + ": " + e);
+			e.printStackTrace();
+		}
+		numDelivered++;
+	}
+
+	/**
+	 * @return The listener to which this queue delivers beacons.
+	 */
+	public WiFiBeaconListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * @return The number of beacons received for the listener.
+	 */
+	public long getNumOffered() {
+		return numOffered;
+	}
+
+	/**
+	 * @return The number of beacons delivered to the listener.
+	 */
+	public long getNumDelivered() {
+		return numDelivered;
+	}
+
+	/**
+	 * @return The number of beacons discarded because the queue was full.
+	 */
+	public long getNumDropped() {
+		return numDropped;
+	}
+
+	/**
+	 * @return The number of beacons replaced by a newer beacon from the same sender.
+	 */
+	public long getNumCoalesced() {
+		return numCoalesced;
+	}
+
+	/**
+	 * @return The number of pending beacons.
+	 */
+	public synchronized int getDepth() {
+		return coalesce ? senderQueue.size() : fifoQueue.size();
+	}
+
+	/**
+	 * @return The largest number of pending beacons so far.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return A String representation of this class.
+	 */
+	public String toString() {
+		return listener.getClass().getName() + ": offered = " + numOffered + ", delivered = " + numDelivered
+			+ ", dropped = " + numDropped + ", coalesced = " + numCoalesced + ", depth = " + getDepth()
+			+ ", max depth = " + maxDepth + " (capacity = " + capacity + (coalesce ? ", coalescing)" : ")");
+	}
+}
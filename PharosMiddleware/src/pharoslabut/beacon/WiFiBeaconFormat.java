@@ -0,0 +1,323 @@
+package pharoslabut.beacon;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import pharoslabut.logger.Logger;
+
+/**
+ * Encodes WiFi beacons into the compact binary format that is broadcast by the
+ * WiFiBeaconBroadcaster, and decodes them in the WiFiBeaconReceiver.  A beacon
+ * has the following fixed layout, with all values big-endian:
+ *
+ * <pre>
+ *   byte magic, byte version, short type id, long sequence number, long timestamp,
+ *   byte address length, address, int port, unsigned short extension length, extension
+ * </pre>
+ *
+ * <p>The extension contains the fields added by a subclass of WiFiBeacon and is
+ * written by the codec registered for the subclass.  The type ids are fixed so
+ * every robot agrees on them:</p>
+ *
+ * <ul>
+ * <li>0 is used by beacons without a codec, whose extension is the beacon in
+ * Java serialized form.</li>
+ * <li>1-99 are used by pharoslabut.beacon.</li>
+ * <li>100-199 are used by the autonomous intersection demo.</li>
+ * <li>200-299 are used by the multi-robot patrol 2 demo.</li>
+ * <li>300-399 are used by the indoor multi-robot patrol demo.</li>
+ * </ul>
+ *
+ * <p>A receiver that does not know a beacon's type id still obtains the common
+ * fields as a plain WiFiBeacon.  Beacons sent using Java serialization by older
+ * versions of the middleware are also accepted.  Define the system property
+ * "PharosMiddleware.serializedBeacons" to broadcast beacons using Java
+ * serialization so older receivers can decode them.</p>
+ *
+ * <p>Each instance reuses its buffers for every beacon and is not thread safe.</p>
+ *
+ * @see WiFiBeaconCodec
+ */
+public class WiFiBeaconFormat {
+
+	/**
+	 * Whether beacons are broadcast using Java serialization instead of this format.
+	 */
+	public static final boolean USE_SERIALIZATION = System.getProperty("PharosMiddleware.serializedBeacons") != null;
+
+	public static final byte MAGIC = (byte)0xB7;
+	public static final byte VERSION = 1;
+
+	/**
+	 * The type id of beacons that do not have a codec.
+	 */
+	public static final short SERIALIZED_TYPE_ID = 0;
+
+	/**
+	 * The largest beacon that fits in a UDP datagram.
+	 */
+	public static final int MAX_BEACON_SIZE = 65507;
+
+	/**
+	 * The first two bytes of a Java serialization stream.
+	 */
+	private static final int SERIALIZATION_MAGIC = 0xACED;
+
+	/**
+	 * A registered codec and its type id.
+	 */
+	private static class Entry {
+		final short typeId;
+		final Class<? extends WiFiBeacon> beaconClass;
+		final WiFiBeaconCodec<WiFiBeacon> codec;
+
+		@SuppressWarnings("unchecked")
+		Entry(short typeId, Class<? extends WiFiBeacon> beaconClass, WiFiBeaconCodec<? extends WiFiBeacon> codec) {
+			this.typeId = typeId;
+			this.beaconClass = beaconClass;
+			this.codec = (WiFiBeaconCodec<WiFiBeacon>)codec;
+		}
+	}
+
+	private static HashMap<Class<? extends WiFiBeacon>, Entry> classMap
+		= new HashMap<Class<? extends WiFiBeacon>, Entry>();
+	private static HashMap<Short, Entry> idMap = new HashMap<Short, Entry>();
+	private static boolean providersLoaded = false;
+
+	static {
+		register(1, WiFiBeacon.class, new WiFiBeaconCodec<WiFiBeacon>() {
+			public void encode(WiFiBeacon beacon, DataOutput out) {
+			}
+			public WiFiBeacon decode(InetAddress address, int port, DataInput in) {
+				return new WiFiBeacon(address, port);
+			}
+		});
+	}
+
+	/**
+	 * Registers a codec.
+	 *
+	 * @param typeId The type id, which must be between 1 and Short.MAX_VALUE.
+	 * @param beaconClass The class of beacon handled by the codec.  Subclasses
+	 * are not covered and must be registered separately.
+	 * @param codec The codec.
+	 */
+	public static synchronized <B extends WiFiBeacon> void register(int typeId, Class<B> beaconClass,
+			WiFiBeaconCodec<B> codec)
+	{
+		if (typeId <= SERIALIZED_TYPE_ID || typeId > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid beacon type id " + typeId);
+		Entry existing = idMap.get((short)typeId);
+		if (existing != null && existing.beaconClass != beaconClass)
+			throw new IllegalArgumentException("Beacon type id " + typeId + " is already used by "
+					+ existing.beaconClass.getName());
+
+		Entry entry = new Entry((short)typeId, beaconClass, codec);
+		classMap.put(beaconClass, entry);
+		idMap.put(entry.typeId, entry);
+	}
+
+	/**
+	 * Loads the codec providers listed in the META-INF/services/pharoslabut.beacon.WiFiBeaconCodecProvider
+	 * resources on the class path when a beacon is first encoded or decoded, so pharoslabut.beacon
+	 * does not depend on the demos.  Providers that cannot be loaded are skipped.
+	 */
+	private static synchronized void loadProviders() {
+		if (providersLoaded)
+			return;
+		providersLoaded = true;
+		Iterator<WiFiBeaconCodecProvider> providers
+			= ServiceLoader.load(WiFiBeaconCodecProvider.class, WiFiBeaconFormat.class.getClassLoader()).iterator();
+		while (true) {
+			try {
+				if (!providers.hasNext())
+					break;
+				providers.next().registerCodecs();
+			} catch (ServiceConfigurationError e) {
+				Logger.logErr("Unable to load beacon codec provider: " + e.getMessage());
+			} catch (RuntimeException e) {
+				Logger.logErr("Unable to register beacon codecs: " + e.getMessage());
+			}
+		}
+	}
+
+	private static synchronized Entry getEntry(Class<? extends WiFiBeacon> beaconClass) {
+		loadProviders();
+		return classMap.get(beaconClass);
+	}
+
+	private static synchronized Entry getEntry(short typeId) {
+		loadProviders();
+		return idMap.get(typeId);
+	}
+
+	/**
+	 * A ByteArrayOutputStream whose buffer can be accessed and modified without copying it.
+	 */
+	private static class BeaconOutputStream extends ByteArrayOutputStream {
+		BeaconOutputStream() {
+			super(256);
+		}
+
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+
+	/**
+	 * A ByteArrayInputStream that can be pointed at a new region of a buffer.
+	 */
+	private static class BeaconInputStream extends ByteArrayInputStream {
+		BeaconInputStream() {
+			super(new byte[0]);
+		}
+
+		void setBuffer(byte[] buf, int offset, int length) {
+			this.buf = buf;
+			this.pos = offset;
+			this.count = Math.min(offset + length, buf.length);
+			this.mark = offset;
+		}
+	}
+
+	private final BeaconOutputStream bos = new BeaconOutputStream();
+	private final DataOutputStream out = new DataOutputStream(bos);
+	private final BeaconInputStream bis = new BeaconInputStream();
+	private final DataInputStream in = new DataInputStream(bis);
+
+	/**
+	 * Encodes a beacon.  The result is in the buffer returned by getBuffer()
+	 * and remains valid until the next call to this method.
+	 *
+	 * @param beacon The beacon.
+	 * @return The number of bytes in the encoded beacon.
+	 * @throws IOException If the beacon cannot be encoded or is too large.
+	 */
+	public int encode(WiFiBeacon beacon) throws IOException {
+		bos.reset();
+		if (USE_SERIALIZATION) {
+			ObjectOutputStream oos = new ObjectOutputStream(bos);
+			oos.writeObject(beacon);
+			oos.close();
+		} else {
+			Entry entry = getEntry(beacon.getClass());
+
+			out.writeByte(MAGIC);
+			out.writeByte(VERSION);
+			out.writeShort(entry == null ? SERIALIZED_TYPE_ID : entry.typeId);
+			out.writeLong(beacon.getSeqNum());
+			out.writeLong(beacon.getTimestamp());
+			byte[] addr = beacon.getAddress() == null ? new byte[0] : beacon.getAddress().getAddress();
+			out.writeByte(addr.length);
+			out.write(addr);
+			out.writeInt(beacon.getPort());
+
+			// Write the extension, then go back and fill in its length.
+			int lengthPos = bos.size();
+			out.writeShort(0);
+			if (entry == null) {
+				ObjectOutputStream oos = new ObjectOutputStream(bos);
+				oos.writeObject(beacon);
+				oos.flush();
+			} else
+				entry.codec.encode(beacon, out);
+			out.flush();
+
+			int extLength = bos.size() - lengthPos - 2;
+			if (extLength > 0xffff)
+				throw new IOException("Beacon extension is too large: " + extLength + " bytes");
+			bos.getBuffer()[lengthPos] = (byte)(extLength >>> 8);
+			bos.getBuffer()[lengthPos + 1] = (byte)extLength;
+		}
+
+		if (bos.size() > MAX_BEACON_SIZE)
+			throw new IOException("Beacon is too large: " + bos.size() + " bytes");
+		return bos.size();
+	}
+
+	/**
+	 * @return The buffer containing the most recently encoded beacon.
+	 */
+	public byte[] getBuffer() {
+		return bos.getBuffer();
+	}
+
+	/**
+	 * Decodes a beacon.
+	 *
+	 * @param buf The buffer containing the beacon.
+	 * @param offset The offset of the beacon within the buffer.
+	 * @param length The length of the beacon.
+	 * @return The beacon.
+	 * @throws IOException If the data is not a beacon.
+	 */
+	public WiFiBeacon decode(byte[] buf, int offset, int length) throws IOException {
+		bis.setBuffer(buf, offset, length);
+		if (length >= 2 && (((buf[offset] & 0xff) << 8) | (buf[offset + 1] & 0xff)) == SERIALIZATION_MAGIC)
+			return readSerialized();
+
+		if (in.readByte() != MAGIC)
+			throw new IOException("Not a WiFi beacon");
+		byte version = in.readByte();
+		if (version != VERSION)
+			throw new IOException("Unsupported WiFi beacon version: " + version);
+
+		short typeId = in.readShort();
+		long seqNum = in.readLong();
+		long timestamp = in.readLong();
+		InetAddress address = null;
+		int addrLength = in.readUnsignedByte();
+		if (addrLength > 0) {
+			byte[] addr = new byte[addrLength];
+			in.readFully(addr);
+			address = InetAddress.getByAddress(addr);
+		}
+		int port = in.readInt();
+		int extLength = in.readUnsignedShort();
+		if (in.available() < extLength)
+			throw new IOException("Truncated WiFi beacon");
+
+		WiFiBeacon beacon = null;
+		if (typeId == SERIALIZED_TYPE_ID) {
+			try {
+				beacon = readSerialized();
+			} catch(IOException e) {
+				Logger.logDbg("Unable to deserialize beacon extension: " + e);
+			}
+		} else {
+			Entry entry = getEntry(typeId);
+			if (entry != null)
+				beacon = entry.codec.decode(address, port, in);
+		}
+
+		// Beacons of unknown types are delivered as plain WiFiBeacons.
+		if (beacon == null)
+			beacon = new WiFiBeacon(address, port);
+		beacon.setSeqNum(seqNum);
+		beacon.setTimestamp(timestamp);
+		return beacon;
+	}
+
+	private WiFiBeacon readSerialized() throws IOException {
+		try {
+			Object o = new ObjectInputStream(bis).readObject();
+			if (o instanceof WiFiBeacon)
+				return (WiFiBeacon)o;
+			throw new IOException("Received object is not a WiFiBeacon: " + o);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unknown beacon class: " + e.getMessage());
+		}
+	}
+}
@@ -1,16 +1,14 @@
 package pharoslabut.beacon;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.net.NetworkInterface;
-import java.util.Vector;
 
 import pharoslabut.exceptions.PharosException;
+import pharoslabut.logger.EventLog;
 import pharoslabut.logger.Logger;
 import edu.utexas.ece.mpc.context.net.ContextShimmedMulticastSocket;
 
@@ -37,9 +35,11 @@ public class WiFiBeaconReceiver implements Runnable {
     private MulticastSocket mSocket;
     
     /**
-     * Holds the beacon listeners registered on this receiver.
+     * The queues of the beacon listeners registered on this receiver.  The array
+     * is replaced when a listener is added or removed so the receive thread can
+     * iterate over it without locking.
      */
-    private Vector<WiFiBeaconListener> bListeners;
+    private volatile WiFiBeaconDispatchQueue[] bListeners = new WiFiBeaconDispatchQueue[0];
     
     /**
      * The thread that receives beacons.
@@ -86,17 +86,52 @@ public class WiFiBeaconReceiver implements Runnable {
         this.mcastport = mcastport;
         this.networkInterfaceName = networkInterfaceName;
         this.shimContext = shimContext;
-        bListeners = new Vector<WiFiBeaconListener>();
     }
 
     /**
      * Adds a beaconListener to this server.  The beacon listener
-     * will be notified each time a beacon is received.
+     * will be notified each time a beacon is received.  Beacons are delivered
+     * by a separate thread through a queue with the default capacity.
      *
      * @param beaconListener the BeaconListener to be added.
+     * @return The queue through which beacons are delivered to the listener.
      */
-    public void addBeaconListener(WiFiBeaconListener beaconListener) {
-        bListeners.addElement(beaconListener);
+    public WiFiBeaconDispatchQueue addBeaconListener(WiFiBeaconListener beaconListener) {
+        return addBeaconListener(beaconListener, WiFiBeaconDispatchQueue.DEFAULT_CAPACITY, false);
+    }
+    
+    /**
+     * Adds a beaconListener to this server.  The beacon listener
+     * will be notified each time a beacon is received.  Beacons are delivered
+     * by a separate thread through a bounded queue.
+     *
+     * @param beaconListener the BeaconListener to be added.
+     * @param capacity The maximum number of beacons waiting to be delivered to the listener.
+     * @param coalesce Whether to only deliver the latest beacon from each sender
+     * when the listener falls behind.
+     * @return The queue through which beacons are delivered to the listener.
+     */
+    public synchronized WiFiBeaconDispatchQueue addBeaconListener(WiFiBeaconListener beaconListener,
+    		int capacity, boolean coalesce) 
+    {
+        WiFiBeaconDispatchQueue queue = new WiFiBeaconDispatchQueue(beaconListener, capacity, coalesce);
+        queue.start();
+        
+        WiFiBeaconDispatchQueue[] queues = new WiFiBeaconDispatchQueue[bListeners.length + 1];
+        System.arraycopy(bListeners, 0, queues, 0, bListeners.length);
+        queues[bListeners.length] = queue;
+        bListeners = queues;
+        return queue;
+    }
+    
+    /**
+     * Returns the queues through which beacons are delivered to the listeners.
+     * Their counters show whether the listeners are keeping up.
+     *
+     * @return The queues of the registered listeners.
+     */
+    public WiFiBeaconDispatchQueue[] getDispatchQueues() {
+        return bListeners.clone();
     }
     
     /**
@@ -122,8 +157,17 @@ public class WiFiBeaconReceiver implements Runnable {
      *
      * @param beaconListener the BeaconListener to be added.
      */
-    public void removeBeaconListener(WiFiBeaconListener beaconListener) {
-        bListeners.removeElement(beaconListener);
+    public synchronized void removeBeaconListener(WiFiBeaconListener beaconListener) {
+        for (int i = 0; i < bListeners.length; i++) {
+            if (bListeners[i].getListener() == beaconListener) {
+                bListeners[i].stop();
+                WiFiBeaconDispatchQueue[] queues = new WiFiBeaconDispatchQueue[bListeners.length - 1];
+                System.arraycopy(bListeners, 0, queues, 0, i);
+                System.arraycopy(bListeners, i + 1, queues, i, queues.length - i);
+                bListeners = queues;
+                return;
+            }
+        }
     }
     
     /**
@@ -148,6 +192,11 @@ public class WiFiBeaconReceiver implements Runnable {
                 System.exit(1);
             }
             
+            // Restart the dispatch threads of the listeners if this receiver was stopped
+            WiFiBeaconDispatchQueue[] queues = bListeners;
+            for (int i = 0; i < queues.length; i++)
+                queues[i].start();
+            
             bThread = new Thread(this);
             bThread.start();
             running = true;
@@ -155,7 +204,9 @@ public class WiFiBeaconReceiver implements Runnable {
     }
     
     /**
-     * Stops this BeaconReceiver from listening for beacons.
+     * Stops this BeaconReceiver from listening for beacons, and stops the threads
+     * that deliver beacons to the listeners.  The listeners remain registered and
+     * receive beacons again if the receiver is restarted.
      */
     public synchronized void stop() {
         if (running && bThread != null) {
@@ -172,58 +223,60 @@ public class WiFiBeaconReceiver implements Runnable {
                 e.printStackTrace();
             }
             bThread = null;
+            
+            WiFiBeaconDispatchQueue[] queues = bListeners;
+            for (int i = 0; i < queues.length; i++) {
+                queues[i].stop();
+                Logger.log("Beacon dispatch statistics: " + queues[i]);
+            }
         }
     }
     
     /**
-     * Notifies each of the listeners of the new beacon.
+     * Queues the new beacon for delivery to each of the listeners.
      */
     private void distributeBeacon(WiFiBeacon beacon) {
-    	Logger.logDbg("Received beacon: " + beacon);
+    	if (Logger.isDebugEnabled())
+    		Logger.logDbg("Received beacon: " + beacon);
+    	EventLog.logWiFiBeaconRx(beacon.getAddress(), beacon.getPort(), beacon.getSeqNum());
     	
     	WiFiBeaconEvent be = new WiFiBeaconEvent(beacon);
-        for (int i = 0; i < bListeners.size(); i++) {
-            WiFiBeaconListener bl = bListeners.elementAt(i);
-            bl.beaconReceived(be);
-        }
+    	WiFiBeaconDispatchQueue[] queues = bListeners;
+        for (int i = 0; i < queues.length; i++)
+            queues[i].offer(be);
     }
     
     /**
-     * Sites in a loop waiting for beacons.
+     * Sites in a loop waiting for beacons.  The receive buffer and packet are
+     * allocated once and reused for every beacon.
      */
     public void run() {
+        byte[] buf = new byte[WiFiBeaconFormat.MAX_BEACON_SIZE];
+        DatagramPacket packet = new DatagramPacket(buf, buf.length);
+        WiFiBeaconFormat format = new WiFiBeaconFormat();
         
         try {
             while (running) {
                 
                 // read in data from the multicast socket
-                byte[] buf = new byte[10000];
-                DatagramPacket packet = new DatagramPacket(buf,buf.length);
-                
+                packet.setLength(buf.length);
                 mSocket.receive(packet);
                 
-                // convert the data read in into an object
-                ObjectInputStream ois = new ObjectInputStream(
-                    new ByteArrayInputStream(packet.getData()));
-                
-               
-               	Object value = ois.readObject();
-
-               	// check the object type and perform required actions
-               	if (value instanceof WiFiBeacon)
-               		distributeBeacon((WiFiBeacon) value);
+                // convert the data read in into a beacon
+                WiFiBeacon beacon;
+                try {
+                	beacon = format.decode(packet.getData(), packet.getOffset(), packet.getLength());
+                } catch(IOException ioe) {
+                	Logger.logErr("Unable to decode beacon from " + packet.getAddress() + ": " + ioe);
+                	continue;
+                }
+                distributeBeacon(beacon);
             }
         } catch(IOException ioe) {
 //            if (mSocket != null && !mSocket.isClosed())
 //                ioe.printStackTrace();
         	Logger.logErr("IOException when receiving beacon: " + ioe);
         }
-        catch (ClassNotFoundException cnfe) {
-//			if (mSocket != null && !mSocket.isClosed())
-                cnfe.printStackTrace();
-                
-                Logger.logErr("ClassNotFoundException when receiving beacon: " + cnfe);
-        }
         catch(RuntimeException rte) {
         	Logger.logErr("RuntimeException when receiving beacon: " + rte);
         	rte.printStackTrace();
@@ -3,6 +3,7 @@ package pharoslabut.demo.autoIntersection.clientDaemons.V2VParallel;
 import java.net.InetAddress;
 
 import pharoslabut.demo.autoIntersection.clientDaemons.V2VSerial.V2VSerialBeacon;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2VSerial.VehicleStatus;
 
 /**
  * This is the beacon used in the ad hoc / parallel autonomous intersection.
@@ -37,6 +38,23 @@ public class V2VParallelBeacon extends V2VSerialBeacon {
 		this.exitPointID = exitPointID;
 	}
 	
+	/**
+	 * A constructor that is used when decoding a received beacon.
+	 * 
+	 * @param address The address of the host that sent the beacon.
+	 * @param port The single-cast port number being used.
+	 * @param status The status of the vehicle that sent the beacon.
+	 * @param entryPointID The entry point.
+	 * @param exitPointID The exit point.
+	 */
+	public V2VParallelBeacon(InetAddress address, int port, VehicleStatus status, 
+			String entryPointID, String exitPointID) 
+	{
+		super(address, port, status);
+		this.entryPointID = entryPointID;
+		this.exitPointID = exitPointID;
+	}
+	
 	/**
 	 * 
 	 * @return The entry point.
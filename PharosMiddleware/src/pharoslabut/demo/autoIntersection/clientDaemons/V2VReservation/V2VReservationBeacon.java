@@ -2,6 +2,8 @@ package pharoslabut.demo.autoIntersection.clientDaemons.V2VReservation;
 
 import java.net.InetAddress;
 
+import pharoslabut.demo.autoIntersection.clientDaemons.V2VSerial.VehicleStatus;
+
 /**
  * This is the beacon used in the V2V-Reservation autonomous intersection policy.
  * It includes an estimated time to traverse the intersection.
@@ -38,6 +40,25 @@ public class V2VReservationBeacon extends pharoslabut.demo.autoIntersection.clie
 		this.timeToCross = timeToCross;
 	}
 	
+	/**
+	 * A constructor that is used when decoding a received beacon.
+	 * 
+	 * @param address The address of the host that sent the beacon.
+	 * @param port The single-cast port number being used.
+	 * @param status The status of the vehicle that sent the beacon.
+	 * @param entryPointID The entry point.
+	 * @param exitPointID The exit point.
+	 * @param timeToCross The time in milliseconds the transmitter will take to cross the intersection.
+	 * @param entryTime The estimated time the transmitter will enter the intersection.
+	 */
+	public V2VReservationBeacon(InetAddress address, int port, VehicleStatus status,
+			String entryPointID, String exitPointID, long timeToCross, long entryTime) 
+	{
+		super(address, port, status, entryPointID, exitPointID);
+		this.timeToCross = timeToCross;
+		this.entryTime = entryTime;
+	}
+	
 	public long getTimeToCross() {
 		return timeToCross;
 	}
@@ -30,6 +30,18 @@ public class V2VSerialBeacon extends WiFiBeacon {
 		super(address, port);
 	}
 	
+	/**
+	 * A constructor that is used when decoding a received beacon.
+	 * 
+	 * @param address The address of the host that sent the beacon.
+	 * @param port The single-cast port number being used.
+	 * @param status The status of the vehicle that sent the beacon.
+	 */
+	public V2VSerialBeacon(InetAddress address, int port, VehicleStatus status) {
+		super(address, port);
+		this.status = status;
+	}
+	
 	/**
 	 * Sets the vehicle status.
 	 * 
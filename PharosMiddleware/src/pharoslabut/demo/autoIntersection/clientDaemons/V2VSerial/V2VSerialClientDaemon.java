@@ -10,6 +10,7 @@ import pharoslabut.sensors.Position2DBuffer;
 import pharoslabut.beacon.BeaconBroadcaster;
 import pharoslabut.beacon.WiFiBeacon;
 import pharoslabut.beacon.WiFiBeaconBroadcaster;
+import pharoslabut.beacon.WiFiBeaconDispatchQueue;
 import pharoslabut.beacon.WiFiBeaconEvent;
 import pharoslabut.beacon.WiFiBeaconListener;
 import pharoslabut.beacon.WiFiBeaconReceiver;
@@ -158,7 +159,9 @@ public class V2VSerialClientDaemon extends ClientDaemon implements IntersectionE
 		
 		Logger.log("Creating the beacon receiver.");
 		beaconReceiver = new WiFiBeaconReceiver(mCastAddress, mCastPort, pharosNI);
-		beaconReceiver.addBeaconListener(this);
+		
+		// The neighbor list only needs the latest beacon from each neighbor.
+		beaconReceiver.addBeaconListener(this, WiFiBeaconDispatchQueue.DEFAULT_CAPACITY, true);
 	}
 
 	protected void createBeacon(String pharosIP) {
@@ -0,0 +1,75 @@
+package pharoslabut.demo.autoIntersection.msgs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.InetAddress;
+
+import pharoslabut.beacon.WiFiBeaconCodec;
+import pharoslabut.beacon.WiFiBeaconCodecProvider;
+import pharoslabut.beacon.WiFiBeaconFormat;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2VParallel.V2VParallelBeacon;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2VReservation.V2VReservationBeacon;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2VSerial.V2VSerialBeacon;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2VSerial.VehicleStatus;
+import pharoslabut.io.BinaryMessageFormat;
+
+/**
+ * Registers the binary codecs of the beacons used by the V2V autonomous
+ * intersection policies.  They use type ids 100-199.
+ * 
+ * @see pharoslabut.beacon.WiFiBeaconFormat
+ */
+public class AutoIntersectionBeaconCodecs implements WiFiBeaconCodecProvider {
+
+	@Override
+	public void registerCodecs() {
+		WiFiBeaconFormat.register(100, V2VSerialBeacon.class, new WiFiBeaconCodec<V2VSerialBeacon>() {
+			public void encode(V2VSerialBeacon beacon, DataOutput out) throws IOException {
+				writeStatus(out, beacon.getStatus());
+			}
+			public V2VSerialBeacon decode(InetAddress address, int port, DataInput in) throws IOException {
+				return new V2VSerialBeacon(address, port, readStatus(in));
+			}
+		});
+		
+		WiFiBeaconFormat.register(101, V2VParallelBeacon.class, new WiFiBeaconCodec<V2VParallelBeacon>() {
+			public void encode(V2VParallelBeacon beacon, DataOutput out) throws IOException {
+				writeStatus(out, beacon.getStatus());
+				BinaryMessageFormat.writeString(out, beacon.getEntryPointID());
+				BinaryMessageFormat.writeString(out, beacon.getExitPointID());
+			}
+			public V2VParallelBeacon decode(InetAddress address, int port, DataInput in) throws IOException {
+				return new V2VParallelBeacon(address, port, readStatus(in),
+						BinaryMessageFormat.readString(in), BinaryMessageFormat.readString(in));
+			}
+		});
+		
+		WiFiBeaconFormat.register(102, V2VReservationBeacon.class, new WiFiBeaconCodec<V2VReservationBeacon>() {
+			public void encode(V2VReservationBeacon beacon, DataOutput out) throws IOException {
+				writeStatus(out, beacon.getStatus());
+				BinaryMessageFormat.writeString(out, beacon.getEntryPointID());
+				BinaryMessageFormat.writeString(out, beacon.getExitPointID());
+				out.writeLong(beacon.getTimeToCross());
+				out.writeLong(beacon.getEntryTime());
+			}
+			public V2VReservationBeacon decode(InetAddress address, int port, DataInput in) throws IOException {
+				return new V2VReservationBeacon(address, port, readStatus(in),
+						BinaryMessageFormat.readString(in), BinaryMessageFormat.readString(in),
+						in.readLong(), in.readLong());
+			}
+		});
+	}
+	
+	private static void writeStatus(DataOutput out, VehicleStatus status) throws IOException {
+		out.writeByte(status.ordinal());
+	}
+	
+	private static VehicleStatus readStatus(DataInput in) throws IOException {
+		int ordinal = in.readUnsignedByte();
+		VehicleStatus[] values = VehicleStatus.values();
+		if (ordinal >= values.length)
+			throw new IOException("Invalid vehicle status: " + ordinal);
+		return values[ordinal];
+	}
+}
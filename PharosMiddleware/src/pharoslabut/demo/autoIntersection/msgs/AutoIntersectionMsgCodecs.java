@@ -0,0 +1,119 @@
+package pharoslabut.demo.autoIntersection.msgs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import pharoslabut.demo.autoIntersection.ExpType;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2I.ExitingMsg;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2I.GrantAccessMsg;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2I.RequestAccessMsg;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2IReservation.GrantAccessReservationMsg;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2IReservation.RequestReservationMsg;
+import pharoslabut.io.BinaryMessageFormat;
+import pharoslabut.io.MessageCodec;
+import pharoslabut.io.MessageCodecProvider;
+import pharoslabut.io.MessageCodecRegistry;
+
+/**
+ * Registers the binary codecs of the messages used in the autonomous
+ * intersection demo.  They use type ids 100-199.
+ * 
+ * @see pharoslabut.io.MessageCodecRegistry
+ */
+public class AutoIntersectionMsgCodecs implements MessageCodecProvider {
+
+	@Override
+	public void registerCodecs(MessageCodecRegistry registry) {
+		registry.register(100, RequestAccessMsg.class, new MessageCodec<RequestAccessMsg>() {
+			public void encode(RequestAccessMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeAddress(out, msg.getIP());
+				out.writeInt(msg.getPort());
+				BinaryMessageFormat.writeString(out, msg.getEntryPoint());
+				BinaryMessageFormat.writeString(out, msg.getExitPoint());
+			}
+			public RequestAccessMsg decode(DataInput in) throws IOException {
+				return new RequestAccessMsg(BinaryMessageFormat.readAddress(in), in.readInt(),
+						BinaryMessageFormat.readString(in), BinaryMessageFormat.readString(in));
+			}
+		});
+		
+		registry.register(101, GrantAccessMsg.class, new MessageCodec<GrantAccessMsg>() {
+			public void encode(GrantAccessMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeAddress(out, msg.getIP());
+				out.writeInt(msg.getPort());
+			}
+			public GrantAccessMsg decode(DataInput in) throws IOException {
+				return new GrantAccessMsg(BinaryMessageFormat.readAddress(in), in.readInt());
+			}
+		});
+		
+		registry.register(102, ExitingMsg.class, new MessageCodec<ExitingMsg>() {
+			public void encode(ExitingMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeAddress(out, msg.getIP());
+				out.writeInt(msg.getPort());
+			}
+			public ExitingMsg decode(DataInput in) throws IOException {
+				return new ExitingMsg(BinaryMessageFormat.readAddress(in), in.readInt());
+			}
+		});
+		
+		registry.register(103, RequestReservationMsg.class, new MessageCodec<RequestReservationMsg>() {
+			public void encode(RequestReservationMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeAddress(out, msg.getIP());
+				out.writeInt(msg.getPort());
+				BinaryMessageFormat.writeString(out, msg.getEntryPoint());
+				BinaryMessageFormat.writeString(out, msg.getExitPoint());
+				out.writeLong(msg.getTimeToCross());
+			}
+			public RequestReservationMsg decode(DataInput in) throws IOException {
+				return new RequestReservationMsg(BinaryMessageFormat.readAddress(in), in.readInt(),
+						BinaryMessageFormat.readString(in), BinaryMessageFormat.readString(in), in.readLong());
+			}
+		});
+		
+		registry.register(104, GrantAccessReservationMsg.class, new MessageCodec<GrantAccessReservationMsg>() {
+			public void encode(GrantAccessReservationMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeAddress(out, msg.getIP());
+				out.writeInt(msg.getPort());
+				out.writeLong(msg.getReservationTime());
+			}
+			public GrantAccessReservationMsg decode(DataInput in) throws IOException {
+				return new GrantAccessReservationMsg(BinaryMessageFormat.readAddress(in), in.readInt(), in.readLong());
+			}
+		});
+		
+		registry.register(105, LoadExpSettingsMsg.class, new MessageCodec<LoadExpSettingsMsg>() {
+			public void encode(LoadExpSettingsMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeString(out, msg.getEntryID());
+				BinaryMessageFormat.writeString(out, msg.getExitID());
+			}
+			public LoadExpSettingsMsg decode(DataInput in) throws IOException {
+				return new LoadExpSettingsMsg(BinaryMessageFormat.readString(in), BinaryMessageFormat.readString(in));
+			}
+		});
+		
+		registry.register(106, StartAdHocExpMsg.class, new MessageCodec<StartAdHocExpMsg>() {
+			public void encode(StartAdHocExpMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeString(out, msg.getExpName());
+				out.writeByte(msg.getExpType().ordinal());
+			}
+			public StartAdHocExpMsg decode(DataInput in) throws IOException {
+				return new StartAdHocExpMsg(BinaryMessageFormat.readString(in), ExpType.values()[in.readByte()]);
+			}
+		});
+		
+		registry.register(107, StartCentralizedExpMsg.class, new MessageCodec<StartCentralizedExpMsg>() {
+			public void encode(StartCentralizedExpMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeString(out, msg.getExpName());
+				out.writeByte(msg.getExpType().ordinal());
+				BinaryMessageFormat.writeAddress(out, msg.getServerIP());
+				out.writeInt(msg.getServerPort());
+			}
+			public StartCentralizedExpMsg decode(DataInput in) throws IOException {
+				return new StartCentralizedExpMsg(BinaryMessageFormat.readString(in), ExpType.values()[in.readByte()],
+						BinaryMessageFormat.readAddress(in), in.readInt());
+			}
+		});
+	}
+}
@@ -10,7 +10,7 @@ import pharoslabut.demo.autoIntersection.clientDaemons.V2I.RequestAccessMsg;
 import pharoslabut.demo.autoIntersection.intersectionSpecs.IntersectionSpecs;
 import pharoslabut.io.Message;
 import pharoslabut.io.MessageReceiver;
-import pharoslabut.io.TCPNetworkInterface;
+import pharoslabut.io.NetworkInterface;
 import pharoslabut.logger.Logger;
 
 /**
@@ -26,7 +26,7 @@ public class ParallelDaemon extends ServerDaemon implements MessageReceiver {
 	/**
 	 * The network interface.
 	 */
-	protected TCPNetworkInterface networkInterface;
+	protected NetworkInterface networkInterface;
 	
 	/**
 	 * Whether this daemon is running.
@@ -58,7 +58,7 @@ public class ParallelDaemon extends ServerDaemon implements MessageReceiver {
 			
 			// Create the network interface and register this object as a listener for
 			// incoming messages.
-			networkInterface = new TCPNetworkInterface(serverPort); //UDPNetworkInterface(serverPort);
+			networkInterface = createNetworkInterface();
 			networkInterface.registerMsgListener(this);
 			
 			running = true;
@@ -8,7 +8,7 @@ import pharoslabut.demo.autoIntersection.clientDaemons.V2I.RequestAccessMsg;
 import pharoslabut.demo.autoIntersection.intersectionSpecs.IntersectionSpecs;
 import pharoslabut.io.Message;
 import pharoslabut.io.MessageReceiver;
-import pharoslabut.io.TCPNetworkInterface;
+import pharoslabut.io.NetworkInterface;
 import pharoslabut.logger.Logger;
 
 /**
@@ -32,7 +32,7 @@ public class SequentialDaemon extends ServerDaemon implements MessageReceiver {
 	/**
 	 * The network interface.
 	 */
-	TCPNetworkInterface networkInterface;
+	NetworkInterface networkInterface;
 	
 	/**
 	 * Whether this daemon is running.
@@ -69,7 +69,7 @@ public class SequentialDaemon extends ServerDaemon implements MessageReceiver {
 			
 			// Create the network interface and register this object as a listener for
 			// incoming messages.
-			networkInterface = new TCPNetworkInterface(serverPort); //UDPNetworkInterface(serverPort);
+			networkInterface = createNetworkInterface();
 			networkInterface.registerMsgListener(this);
 			
 //			daemonThread = new Thread(this);
@@ -1,6 +1,8 @@
 package pharoslabut.demo.autoIntersection.server;
 
 import pharoslabut.demo.autoIntersection.intersectionSpecs.IntersectionSpecs;
+import pharoslabut.io.NetworkInterface;
+import pharoslabut.io.NioNetworkInterface;
 
 /**
  * The top-level class of all server daemons.
@@ -9,6 +11,13 @@ import pharoslabut.demo.autoIntersection.intersectionSpecs.IntersectionSpecs;
  */
 public abstract class ServerDaemon {
 
+	/**
+	 * The number of event loops that service the vehicles' connections.
+	 * It can be changed through the system property "PharosMiddleware.eventLoops".
+	 */
+	public static final int NUM_EVENT_LOOPS 
+		= Integer.getInteger("PharosMiddleware.eventLoops", NioNetworkInterface.DEFAULT_NUM_EVENT_LOOPS);
+
 	/**
 	 * The server's port.
 	 */
@@ -30,6 +39,18 @@ public abstract class ServerDaemon {
 		this.serverPort = serverPort;
 	}
 	
+	/**
+	 * Creates the network interface through which the daemon communicates with
+	 * the vehicles.  All daemons share the same non-blocking server core, which
+	 * services every vehicle using a fixed number of event loops.  The daemon's
+	 * message handlers run on the event loops and must not block.
+	 * 
+	 * @return The network interface, listening on the server's port.
+	 */
+	protected NetworkInterface createNetworkInterface() {
+		return new NioNetworkInterface(serverPort, NUM_EVENT_LOOPS);
+	}
+	
 	/**
 	 * Starts the daemon.
 	 */
@@ -13,7 +13,7 @@ import pharoslabut.demo.autoIntersection.intersectionSpecs.IntersectionSpecs;
 import pharoslabut.demo.autoIntersection.intersectionSpecs.Road;
 import pharoslabut.io.Message;
 import pharoslabut.io.MessageReceiver;
-import pharoslabut.io.TCPNetworkInterface;
+import pharoslabut.io.NetworkInterface;
 import pharoslabut.logger.Logger;
 
 /**
@@ -42,7 +42,7 @@ public class TrafficLightDaemon extends ServerDaemon implements MessageReceiver
 	/**
 	 * The network interface.
 	 */
-	private TCPNetworkInterface networkInterface;
+	private NetworkInterface networkInterface;
 	
 	/**
 	 * Whether this daemon is running.
@@ -89,7 +89,7 @@ public class TrafficLightDaemon extends ServerDaemon implements MessageReceiver
 			
 			// Create the network interface and register this object as a listener for
 			// incoming messages.
-			networkInterface = new TCPNetworkInterface(serverPort); //UDPNetworkInterface(serverPort);
+			networkInterface = createNetworkInterface();
 			networkInterface.registerMsgListener(this);
 			
 			// Randomly select which road to enable first
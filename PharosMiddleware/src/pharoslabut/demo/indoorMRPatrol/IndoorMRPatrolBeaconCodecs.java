@@ -0,0 +1,33 @@
+package pharoslabut.demo.indoorMRPatrol;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.InetAddress;
+
+import pharoslabut.beacon.WiFiBeaconCodec;
+import pharoslabut.beacon.WiFiBeaconCodecProvider;
+import pharoslabut.beacon.WiFiBeaconFormat;
+
+/**
+ * Registers the binary codec of the beacon broadcast during the indoor
+ * multi-robot patrol demo.  It uses type ids 300-399.
+ * 
+ * @see pharoslabut.beacon.WiFiBeaconFormat
+ */
+public class IndoorMRPatrolBeaconCodecs implements WiFiBeaconCodecProvider {
+
+	@Override
+	public void registerCodecs() {
+		WiFiBeaconFormat.register(300, IndoorMRPatrolBeacon.class, new WiFiBeaconCodec<IndoorMRPatrolBeacon>() {
+			public void encode(IndoorMRPatrolBeacon beacon, DataOutput out) throws IOException {
+				out.writeInt(beacon.getNumMarkersTraversed());
+			}
+			public IndoorMRPatrolBeacon decode(InetAddress address, int port, DataInput in) throws IOException {
+				IndoorMRPatrolBeacon beacon = new IndoorMRPatrolBeacon(address, port);
+				beacon.setNumMarkersTraversed(in.readInt());
+				return beacon;
+			}
+		});
+	}
+}
@@ -11,6 +11,7 @@ import pharoslabut.io.MessageReceiver;
 import pharoslabut.io.SetTimeMsg;
 import pharoslabut.io.TCPMessageReceiver;
 import pharoslabut.logger.FileLogger;
+import pharoslabut.logger.LatencyTracer;
 import pharoslabut.logger.Logger;
 import pharoslabut.navigate.MotionArbiter;
 
@@ -197,6 +198,7 @@ public class MRPatrol2Server implements MessageReceiver {
 		String fileName = expConfig.getExpName() + "-" + robotName + "-MRPatrol2_" + FileLogger.getUniqueNameExtension() + ".log"; 
 		FileLogger expFlogger = new FileLogger(fileName);
 		Logger.setFileLogger(expFlogger);
+		LatencyTracer.reset();
 		
 		Logger.log("Starting experiment at time " + System.currentTimeMillis() + "...");
         Logger.log("Patrol type: " + expConfig.getExpType());
@@ -258,6 +260,8 @@ public class MRPatrol2Server implements MessageReceiver {
 		if (patrolDaemon != null)
 			patrolDaemon.stop();
 		
+		LatencyTracer.dump();
+		
 		// Restore the debug file logger since the experiment has stopped.
 		Logger.logDbg("Stopping experiment log file.");
 		Logger.setFileLogger(debugFileLogger);
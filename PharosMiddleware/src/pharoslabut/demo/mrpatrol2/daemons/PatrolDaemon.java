@@ -5,6 +5,7 @@ import java.util.Vector;
 
 import pharoslabut.io.Message;
 import pharoslabut.io.MessageReceiver;
+import pharoslabut.logger.LatencyTracer;
 import pharoslabut.logger.Logger;
 import pharoslabut.navigate.MotionArbiter;
 import pharoslabut.sensors.Position2DBuffer;
@@ -12,6 +13,9 @@ import pharoslabut.sensors.Position2DListener;
 import pharoslabut.sensors.ProteusOpaqueData;
 import pharoslabut.sensors.ProteusOpaqueInterface;
 import pharoslabut.sensors.ProteusOpaqueListener;
+import pharoslabut.util.ControlLoop;
+import pharoslabut.util.ControlLoopScheduler;
+import pharoslabut.util.ScheduledControlLoop;
 import pharoslabut.demo.mrpatrol2.config.ExpConfig;
 import pharoslabut.demo.mrpatrol2.behaviors.Behavior;
 import playerclient3.PlayerClient;
@@ -27,6 +31,17 @@ import playerclient3.structures.position2d.PlayerPosition2dData;
  * @author Chien-Liang Fok
  */
 public abstract class PatrolDaemon implements ProteusOpaqueListener, Position2DListener, Runnable {
+	/**
+	 * The period in milliseconds at which the behaviors are checked and started.
+	 */
+	public static final int CYCLE_PERIOD = 100; // 10Hz
+	
+	/**
+	 * The offset of the behavior refresh cycles from the ControlLoopScheduler's grid in 
+	 * milliseconds.  This keeps them clear of the MotionArbiter and navigation cycles.
+	 */
+	public static final int CYCLE_PHASE = MotionArbiter.CYCLE_PHASE + MotionArbiter.CYCLE_TIME / 4;
+	
 	/**
 	 * The experiment configuration.
 	 */
@@ -45,7 +60,7 @@ public abstract class PatrolDaemon implements ProteusOpaqueListener, Position2DL
 	/**
 	 * Whether the patrol daemon's threads should continue to run.
 	 */
-	protected boolean done = false;
+	protected volatile boolean done = false;
 	
 	/**
 	 * The TCP port on which the local MRPatrol2Server is listening.
@@ -225,74 +240,94 @@ public abstract class PatrolDaemon implements ProteusOpaqueListener, Position2DL
 	/**
 	 * Stops the patrol daemon.
 	 */
-	public void stop() {
+	public synchronized void stop() {
 		done = true;
+		notifyAll();
 	}
 	
+	/**
+	 * Runs the behaviors by registering a control loop with the ControlLoopScheduler,
+	 * and blocks until this daemon is stopped.
+	 */
 	@Override
 	public void run() {
 		Logger.logDbg("Thread starting at time " + System.currentTimeMillis() + "...");
 		
-		while (!done) {
-			int numDone = 0;
-			
-			// Create a vector for holding behaviors that can start.
-			Vector<Behavior> startableBehaviors = new Vector<Behavior>();
-			
-			StringBuffer sb1 = new StringBuffer();
-			
-			// Go through each behavior find out which can start
-			Enumeration<Behavior> e = behaviors.elements();
-			while (e.hasMoreElements()) {
-				Behavior b = e.nextElement();
-				pharoslabut.demo.mrpatrol2.behaviors.Behavior.CanStart cs = b.canStart();
-				if (cs.getCanStart()) {
-					startableBehaviors.add(b);
-				} else {
-					sb1.append("\n\t" + b.getName() + " - " + cs.getReason());
-				}
-				
-				if (b.isDone())
-					numDone++;
+		ScheduledControlLoop refreshLoop = ControlLoopScheduler.getScheduler().schedule("PatrolDaemon", new ControlLoop() {
+			public void tick() {
+				if (!done)
+					refreshBehaviors();
 			}
-			
-			// Only print if at least one behavior can start.
-			if (startableBehaviors.size() > 0) {
-				StringBuffer sb2 = new StringBuffer("\nThe following " + startableBehaviors.size() + " behaviors can start:");
-				e = startableBehaviors.elements();
-				while (e.hasMoreElements()) {
-					sb2.append("\n\t" + e.nextElement().getName());
+		}, CYCLE_PERIOD, CYCLE_PHASE, Thread.NORM_PRIORITY);
+		
+		synchronized(this) {
+			while (!done) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
 				}
-				
-				Logger.logDbg("Refresh cycle results:" 
-						+ sb2.toString() 
-						+ "\nThe following " + (behaviors.size() - startableBehaviors.size()) 
-						+ " behaviors cannot start:" + sb1.toString() 
-						+ "\nDone: " + numDone + " of " + behaviors.size());
+			}
+		}
+		
+		refreshLoop.cancel();
+		Logger.logDbg("Thread terminating.");
+	}
+	
+	/**
+	 * Starts the behaviors that can start, and exits once all behaviors are done.
+	 * This is called every CYCLE_PERIOD milliseconds.
+	 */
+	private void refreshBehaviors() {
+		int numDone = 0;
+		
+		// Create a vector for holding behaviors that can start.
+		Vector<Behavior> startableBehaviors = new Vector<Behavior>();
+		
+		StringBuffer sb1 = new StringBuffer();
+		
+		// Go through each behavior find out which can start
+		Enumeration<Behavior> e = behaviors.elements();
+		while (e.hasMoreElements()) {
+			Behavior b = e.nextElement();
+			pharoslabut.demo.mrpatrol2.behaviors.Behavior.CanStart cs = b.canStart();
+			if (cs.getCanStart()) {
+				startableBehaviors.add(b);
+			} else {
+				sb1.append("\n\t" + b.getName() + " - " + cs.getReason());
 			}
 			
-			// Start the startable behaviors.
+			if (b.isDone())
+				numDone++;
+		}
+		
+		// Only print if at least one behavior can start.
+		if (startableBehaviors.size() > 0) {
+			StringBuffer sb2 = new StringBuffer("\nThe following " + startableBehaviors.size() + " behaviors can start:");
 			e = startableBehaviors.elements();
 			while (e.hasMoreElements()) {
-				e.nextElement().start();
+				sb2.append("\n\t" + e.nextElement().getName());
 			}
 			
-			if (numDone == behaviors.size()) {
-				Logger.log("All behaviors done!");
-				Logger.log("Experiment completed!");
-				Logger.log("Program exiting.");
-				System.exit(0);
-			}
-			
-			synchronized(this) {
-				try {
-					this.wait(100);  // daemon thread cycles at 10Hz
-				} catch (InterruptedException e1) {
-					e1.printStackTrace();
-				}
-			}
+			Logger.logDbg("Refresh cycle results:" 
+					+ sb2.toString() 
+					+ "\nThe following " + (behaviors.size() - startableBehaviors.size()) 
+					+ " behaviors cannot start:" + sb1.toString() 
+					+ "\nDone: " + numDone + " of " + behaviors.size());
 		}
 		
-		Logger.logDbg("Thread terminating.");
+		// Start the startable behaviors.
+		e = startableBehaviors.elements();
+		while (e.hasMoreElements()) {
+			e.nextElement().start();
+		}
+		
+		if (numDone == behaviors.size()) {
+			Logger.log("All behaviors done!");
+			Logger.log("Experiment completed!");
+			LatencyTracer.dump();
+			Logger.log("Program exiting.");
+			System.exit(0);
+		}
 	}
 }
\ No newline at end of file
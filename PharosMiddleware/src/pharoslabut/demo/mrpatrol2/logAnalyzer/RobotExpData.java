@@ -5,8 +5,10 @@ import java.util.*;
 
 import pharoslabut.beacon.WiFiBeacon;
 import pharoslabut.exceptions.PharosException;
+import pharoslabut.logger.EventLog;
 import pharoslabut.logger.FileLogger;
 import pharoslabut.logger.Logger;
+import pharoslabut.logger.analyzer.EventLogReader;
 import pharoslabut.logger.analyzer.GPSLocationState;
 import pharoslabut.logger.analyzer.HeadingState;
 import pharoslabut.logger.analyzer.Line;
@@ -226,6 +228,8 @@ public class RobotExpData {
 	
 	/**
 	 * Reads and organizes the data contained in the robot's experiment log file.
+	 * If the log file has an event log, the GPS, heading, motion command, and 
+	 * beacon events are read from the event log instead of the log file.
 	 * 
 	 * @throws NumberFormatException
 	 * @throws IOException
@@ -239,8 +243,20 @@ public class RobotExpData {
 		boolean expStartTimeSet = false;
 		boolean patrolStarted = false;
 		
+		EventLogReader events = pharoslabut.logger.analyzer.RobotExpData.USE_EVENT_LOG 
+			? EventLogReader.open(fileName) : null;
+		boolean hasEvent = events != null && events.next();
+		int lineNo = 0;
+		
 		while ((line = br.readLine()) != null) {
 			
+			// Add the events that were recorded before this line.
+			while (hasEvent && events.getLine() <= lineNo) {
+				currLoc = addEvent(events, currEdge, currLoc);
+				hasEvent = events.next();
+			}
+			lineNo++;
+			
 			// Save the experiment start time
 			if (line.contains("Starting experiment at time:")) {
 				String[] tokens = line.split("[: ]");
@@ -288,6 +304,9 @@ public class RobotExpData {
 			
 			// Extract the GPS location data.
 			else if (line.contains("New GPS Data:")) {
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				String keyStr = "New GPS Data:";
 				String gpsLine = line.substring(line.indexOf(keyStr) + keyStr.length());
 				
@@ -309,16 +328,7 @@ public class RobotExpData {
 				currLoc.setUtm_n(Double.valueOf(tokens[16]));
 				currLoc.setVdop(Integer.valueOf(tokens[24]));
 				
-				Location l = new Location(currLoc);
-				if (pharoslabut.sensors.GPSDataBuffer.isValid(l)) {  // Only add the GPSLocation if it is valid.
-					locations.add(new GPSLocationState(timeStamp, currLoc));
-					if (currEdge != null) {
-						if (!currEdge.hasStartLoc())
-							currEdge.setStartLoc(l);
-					}
-				} else {
-					Logger.log("Rejecting invalid location: " + currLoc);
-				}
+				addLocation(timeStamp, currLoc, currEdge);
 			}
 			
 			// Extract the heading measurements of the robot
@@ -332,19 +342,13 @@ public class RobotExpData {
 				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
 				double heading = Double.valueOf(tokens[1]);
 				
-				// Only add the heading measurement if it is valid.
-				if (pharoslabut.sensors.CompassDataBuffer.isValid(heading)) {
-					headings.add(new HeadingState(timeStamp, heading));
-					if (currEdge != null) {
-						if (!currEdge.hasStartHeading())
-							currEdge.setStartHeading(heading);
-					}
-				} else {
-					Logger.log("Rejecting invalid heading: " + heading);
-				}
+				addHeading(timeStamp, heading, currEdge);
 			}
 			// The following is printed by the CompassDataBuffer during Mission 25
 			else if (line.contains("New heading=")) {
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				String keyStr = "New heading=";
 				String headingLine = line.substring(line.indexOf(keyStr) + keyStr.length());
 				
@@ -353,22 +357,16 @@ public class RobotExpData {
 				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
 				double heading = Double.valueOf(tokens[0]);
 				
-				// Only add the heading measurement if it is valid.
-				if (pharoslabut.sensors.CompassDataBuffer.isValid(heading)) {
-					headings.add(new HeadingState(timeStamp, heading));
-					if (currEdge != null) {
-						if (!currEdge.hasStartHeading())
-							currEdge.setStartHeading(heading);
-					}
-				} else {
-					Logger.log("WARNING: Rejecting invalid heading: " + heading);
-				}
+				addHeading(timeStamp, heading, currEdge);
 			}
 			
 			// Extract when a WiFi beacon was broadcasted.
 			else if (line.contains("WiFiBeaconBroadcaster: Broadcasting Beacon:") // valid for log files up to and including Mission 26
 					|| (line.contains("pharoslabut.beacon.WiFiBeaconBroadcaster") && line.contains("Broadcasting Beacon:"))) // valid for missions 27 and above
 			{
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				String keyStr = "Broadcasting Beacon:";
 				String broadcastLine = line.substring(line.indexOf(keyStr) + keyStr.length());
 				
@@ -388,6 +386,9 @@ public class RobotExpData {
 			else if (line.contains("BeaconReciever: Received beacon:") // valid for log files up to and including Mission 26
 					|| (line.contains("pharoslabut.beacon.WiFiBeaconReceiver") && line.contains("Received beacon:"))) // valid for missions 27 and above
 			{
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				String keyStr = "Received beacon:";
 				String rcvLine = line.substring(line.indexOf(keyStr) + keyStr.length());
 				
@@ -438,6 +439,9 @@ public class RobotExpData {
 			
 			// Extract the motion commands being issued by the motion arbiter
 			else if (line.contains("MotionArbiter:") && line.contains("Sending motion command")) {
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				String keyStr = "Sending motion command";
 				String headingLine = line.substring(line.indexOf(keyStr) + keyStr.length());
 				
@@ -471,6 +475,13 @@ public class RobotExpData {
 					Logger.logDbg("WARNING: discarding pause time because currEdge not defined and there were not previous edges!");
 			}
 		} // end while...
+		br.close();
+		
+		// Add the events that were recorded after the last line.
+		while (hasEvent) {
+			currLoc = addEvent(events, currEdge, currLoc);
+			hasEvent = events.next();
+		}
 		
 		// Set the ideal start locations...
 		for (int i=0; i < pathEdges.size(); i++) {
@@ -503,6 +514,83 @@ public class RobotExpData {
 		}
 	}
 	
+	/**
+	 * Adds a GPS location if it is valid.
+	 * 
+	 * @param timeStamp The time at which the location was logged.
+	 * @param gpsData The location.
+	 * @param currEdge The current path edge, or null if there is none.
+	 */
+	private void addLocation(long timeStamp, PlayerGpsData gpsData, PathEdge currEdge) {
+		Location l = new Location(gpsData);
+		if (pharoslabut.sensors.GPSDataBuffer.isValid(l)) {  // Only add the GPSLocation if it is valid.
+			locations.add(new GPSLocationState(timeStamp, gpsData));
+			if (currEdge != null) {
+				if (!currEdge.hasStartLoc())
+					currEdge.setStartLoc(l);
+			}
+		} else {
+			Logger.log("Rejecting invalid location: " + gpsData);
+		}
+	}
+	
+	/**
+	 * Adds a heading measurement if it is valid.
+	 * 
+	 * @param timeStamp The time at which the heading was logged.
+	 * @param heading The heading.
+	 * @param currEdge The current path edge, or null if there is none.
+	 */
+	private void addHeading(long timeStamp, double heading, PathEdge currEdge) {
+		if (pharoslabut.sensors.CompassDataBuffer.isValid(heading)) {
+			headings.add(new HeadingState(timeStamp, heading));
+			if (currEdge != null) {
+				if (!currEdge.hasStartHeading())
+					currEdge.setStartHeading(heading);
+			}
+		} else {
+			Logger.log("Rejecting invalid heading: " + heading);
+		}
+	}
+	
+	/**
+	 * Adds the current record of an event log.  TelosB records are ignored
+	 * since this analyzer does not use them.
+	 * 
+	 * @param events The event log.
+	 * @param currEdge The current path edge, or null if there is none.
+	 * @param currLoc The most recent GPS data.
+	 * @return The most recent GPS data after adding the event.
+	 */
+	private PlayerGpsData addEvent(EventLogReader events, PathEdge currEdge, PlayerGpsData currLoc) {
+		long timeStamp = events.getTimestamp();
+		switch(events.getType()) {
+		case EventLog.GPS:
+			currLoc = pharoslabut.logger.analyzer.RobotExpData.readGPSEvent(events);
+			addLocation(timeStamp, currLoc, currEdge);
+			break;
+		case EventLog.HEADING:
+			addHeading(timeStamp, events.getDouble(EventLog.HEADING_HEADING), currEdge);
+			break;
+		case EventLog.MOTION_CMD:
+			motionCmds.add(new MotionCmd(timeStamp, events.getDouble(EventLog.MOTION_CMD_SPEED), 
+					events.getDouble(EventLog.MOTION_CMD_HEADING)));
+			break;
+		case EventLog.WIFI_BEACON_TX:
+			wifiBeaconTxs.add(new WiFiBeaconTx(readWiFiBeaconEvent(events), timeStamp));
+			break;
+		case EventLog.WIFI_BEACON_RX:
+			wifiBeaconRxs.add(new WiFiBeaconRx(readWiFiBeaconEvent(events), timeStamp));
+			break;
+		}
+		return currLoc;
+	}
+	
+	private static WiFiBeacon readWiFiBeaconEvent(EventLogReader events) {
+		return new WiFiBeacon(events.getAddress(EventLog.WIFI_BEACON_ADDRESS), 
+				events.getInt(EventLog.WIFI_BEACON_PORT), events.getLong(EventLog.WIFI_BEACON_SEQNO));
+	}
+	
 	/**
 	 * Compares the GPS timestamps with the log timestamps to determine the 
 	 * offset needed to calibrate the log timestamps to match the GPS timestamps.
@@ -0,0 +1,33 @@
+package pharoslabut.demo.mrpatrol2.msgs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.InetAddress;
+
+import pharoslabut.beacon.WiFiBeaconCodec;
+import pharoslabut.beacon.WiFiBeaconCodecProvider;
+import pharoslabut.beacon.WiFiBeaconFormat;
+
+/**
+ * Registers the binary codec of the beacon broadcast during the multi-robot
+ * patrol 2 demo.  It uses type ids 200-299.
+ * 
+ * @see pharoslabut.beacon.WiFiBeaconFormat
+ */
+public class MRPatrol2BeaconCodecs implements WiFiBeaconCodecProvider {
+
+	@Override
+	public void registerCodecs() {
+		WiFiBeaconFormat.register(200, BeaconMsg.class, new WiFiBeaconCodec<BeaconMsg>() {
+			public void encode(BeaconMsg beacon, DataOutput out) throws IOException {
+				out.writeInt(beacon.getNumWaypointsTraversed());
+			}
+			public BeaconMsg decode(InetAddress address, int port, DataInput in) throws IOException {
+				BeaconMsg beacon = new BeaconMsg(address, port);
+				beacon.setWaypointsTraversed(in.readInt());
+				return beacon;
+			}
+		});
+	}
+}
@@ -0,0 +1,42 @@
+package pharoslabut.demo.mrpatrol2.msgs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import pharoslabut.io.BinaryMessageFormat;
+import pharoslabut.io.MessageCodec;
+import pharoslabut.io.MessageCodecProvider;
+import pharoslabut.io.MessageCodecRegistry;
+
+/**
+ * Registers the binary codecs of the messages used in the multi-robot
+ * patrol 2 demo.  They use type ids 200-299.  The LoadExpSettingsMsg carries
+ * an entire ExpConfig and is sent once per experiment, so it is left to the
+ * serialization fallback.
+ * 
+ * @see pharoslabut.io.MessageCodecRegistry
+ */
+public class MRPatrol2MsgCodecs implements MessageCodecProvider {
+
+	@Override
+	public void registerCodecs(MessageCodecRegistry registry) {
+		registry.register(200, StartExpMsg.class, new MessageCodec<StartExpMsg>() {
+			public void encode(StartExpMsg msg, DataOutput out) {
+			}
+			public StartExpMsg decode(DataInput in) {
+				return new StartExpMsg();
+			}
+		});
+		
+		registry.register(201, TeammateStatusMsg.class, new MessageCodec<TeammateStatusMsg>() {
+			public void encode(TeammateStatusMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeString(out, msg.getName());
+				out.writeInt(msg.getNumWaypointsVisited());
+			}
+			public TeammateStatusMsg decode(DataInput in) throws IOException {
+				return new TeammateStatusMsg(BinaryMessageFormat.readString(in), in.readInt());
+			}
+		});
+	}
+}
@@ -6,6 +6,7 @@ import pharoslabut.RobotIPAssignments;
 import pharoslabut.beacon.*;
 import pharoslabut.exceptions.PharosException;
 import pharoslabut.logger.FileLogger;
+import pharoslabut.logger.LatencyTracer;
 import pharoslabut.logger.Logger;
 import pharoslabut.navigate.*;
 import pharoslabut.navigate.motionscript.MotionScript;
@@ -340,6 +341,7 @@ public class PharosExpServer implements MessageReceiver, WiFiBeaconListener, Pro
 		Logger.setFileLogger(expFlogger);
 		
 		Logger.log("Starting experiment at time " + System.currentTimeMillis() + "...");
+		LatencyTracer.reset();
 		
 		// Start the individual components
 		if (compassDataBuffer != null)			compassDataBuffer.start();
@@ -426,6 +428,8 @@ public class PharosExpServer implements MessageReceiver, WiFiBeaconListener, Pro
 		//flogger.log("PharosServer: Stopping the UDP tester.");
 		//udpTest.stop();
 		
+		LatencyTracer.dump();
+		
 		// Restore the debug file logger since the experiment has stopped.
 		Logger.logDbg("Stopping experiment log file.");
 		Logger.setFileLogger(debugFileLogger);
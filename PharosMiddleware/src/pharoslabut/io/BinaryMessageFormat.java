@@ -0,0 +1,288 @@
+package pharoslabut.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes messages as length-prefixed binary frames:
+ * 
+ * <pre>
+ * int   length   the number of bytes that follow
+ * short typeId   the type id assigned by the MessageCodecRegistry
+ * byte[]         the fields written by the message's codec
+ * </pre>
+ * 
+ * <p>A message without a registered codec is sent with type id 0 and its
+ * Java serialization as the payload, so every Message can be sent.</p>
+ * 
+ * @see MessageCodecRegistry
+ */
+public class BinaryMessageFormat extends MessageFormat {
+
+	/**
+	 * The largest frame that will be accepted.  Larger lengths indicate that
+	 * the peer is not speaking this format.
+	 */
+	public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+	
+	/**
+	 * A growable buffer whose contents can be accessed without copying.
+	 */
+	private static class FrameBuffer extends ByteArrayOutputStream {
+		final DataOutputStream dos = new DataOutputStream(this);
+		
+		FrameBuffer() {
+			super(256);
+		}
+		
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+	
+	/**
+	 * The frame buffer of each sending thread.  Frames are encoded into it so
+	 * their length is known before the frame is written.
+	 */
+	private static final ThreadLocal<FrameBuffer> frameBuffers = new ThreadLocal<FrameBuffer>() {
+		protected FrameBuffer initialValue() {
+			return new FrameBuffer();
+		}
+	};
+	
+	private MessageCodecRegistry registry;
+	
+	/**
+	 * A constructor that uses the default codec registry.
+	 */
+	public BinaryMessageFormat() {
+		this(MessageCodecRegistry.getRegistry());
+	}
+	
+	/**
+	 * A constructor that uses a specific codec registry.
+	 * 
+	 * @param registry The codec registry.
+	 */
+	public BinaryMessageFormat(MessageCodecRegistry registry) {
+		this.registry = registry;
+	}
+	
+	/**
+	 * Encodes a message into the calling thread's frame buffer.
+	 */
+	private FrameBuffer encode(Message msg) throws IOException {
+		FrameBuffer fb = frameBuffers.get();
+		fb.reset();
+		fb.dos.writeInt(0); // place holder for the length
+		
+		MessageCodecRegistry.Entry entry = registry.getEntry(msg.getClass());
+		if (entry != null) {
+			fb.dos.writeShort(entry.typeId);
+			entry.codec.encode(msg, fb.dos);
+		} else {
+			fb.dos.writeShort(MessageCodecRegistry.SERIALIZED_TYPE_ID);
+			ObjectOutputStream oos = new ObjectOutputStream(fb);
+			oos.writeObject(msg);
+			oos.flush();
+		}
+		fb.dos.flush();
+		
+		int length = fb.size() - 4;
+		byte[] buf = fb.getBuffer();
+		buf[0] = (byte)(length >>> 24);
+		buf[1] = (byte)(length >>> 16);
+		buf[2] = (byte)(length >>> 8);
+		buf[3] = (byte)length;
+		return fb;
+	}
+	
+	@Override
+	public void writeMessage(OutputStream out, Message msg) throws IOException {
+		FrameBuffer fb = encode(msg);
+		out.write(fb.getBuffer(), 0, fb.size());
+		out.flush();
+	}
+	
+	@Override
+	public byte[] toBytes(Message msg) throws IOException {
+		return encode(msg).toByteArray();
+	}
+	
+	@Override
+	public Message readMessage(InputStream in) throws IOException {
+		DataInputStream dis = (in instanceof DataInputStream) ? (DataInputStream)in : new DataInputStream(in);
+		int length = dis.readInt();
+		if (length < 2 || length > MAX_FRAME_SIZE)
+			throw new IOException("Invalid frame length " + length);
+		byte[] frame = new byte[length];
+		dis.readFully(frame);
+		return decode(frame, 0, length);
+	}
+	
+	@Override
+	public Message fromBytes(byte[] buf, int offset, int length) throws IOException {
+		if (length < 4)
+			throw new EOFException("Truncated frame");
+		int frameLength = ((buf[offset] & 0xff) << 24) | ((buf[offset + 1] & 0xff) << 16)
+			| ((buf[offset + 2] & 0xff) << 8) | (buf[offset + 3] & 0xff);
+		if (frameLength < 2 || frameLength > length - 4)
+			throw new IOException("Invalid frame length " + frameLength);
+		return decode(buf, offset + 4, frameLength);
+	}
+	
+	/**
+	 * Returns the size of the frame at the position of a buffer.
+	 * 
+	 * @param buf A buffer in read mode.
+	 * @return The size of the frame including its length prefix, or -1 if
+	 * the buffer does not yet hold the length prefix.
+	 * @throws IOException If the length prefix is invalid.
+	 */
+	public static int frameSize(ByteBuffer buf) throws IOException {
+		if (buf.remaining() < 4)
+			return -1;
+		int length = buf.getInt(buf.position());
+		if (length < 2 || length > MAX_FRAME_SIZE)
+			throw new IOException("Invalid frame length " + length);
+		return 4 + length;
+	}
+	
+	/**
+	 * Decodes the frame at the position of a buffer, which is how
+	 * non-blocking receivers read messages.
+	 * 
+	 * @param buf A heap buffer in read mode.  If a message is returned, the
+	 * position is advanced past its frame.  Otherwise it is unchanged.
+	 * @return The message, or null if the buffer does not hold a complete frame.
+	 * @throws IOException If the frame cannot be decoded.
+	 */
+	public Message readFrame(ByteBuffer buf) throws IOException {
+		int size = frameSize(buf);
+		if (size < 0 || buf.remaining() < size)
+			return null;
+		int pos = buf.position();
+		Message msg = decode(buf.array(), buf.arrayOffset() + pos + 4, size - 4);
+		buf.position(pos + size);
+		return msg;
+	}
+	
+	/**
+	 * Decodes the type id and payload of a frame.
+	 */
+	private Message decode(byte[] buf, int offset, int length) throws IOException {
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(buf, offset, length));
+		short typeId = dis.readShort();
+		if (typeId == MessageCodecRegistry.SERIALIZED_TYPE_ID) {
+			Object o = readSerialized(dis);
+			if (o instanceof Message)
+				return (Message)o;
+			throw new IOException("Received object is not a Message: " + o);
+		}
+		
+		MessageCodecRegistry.Entry entry = registry.getEntry(typeId);
+		if (entry == null)
+			throw new IOException("Unknown message type id " + typeId);
+		return entry.codec.decode(dis);
+	}
+	
+	private static Object readSerialized(InputStream in) throws IOException {
+		try {
+			return new ObjectInputStream(in).readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unknown message class: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Writes a string that may be null.
+	 * 
+	 * @param out The output to write to.
+	 * @param s The string.
+	 * @throws IOException If the string cannot be written.
+	 */
+	public static void writeString(DataOutput out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null)
+			out.writeUTF(s);
+	}
+	
+	/**
+	 * Reads a string written by writeString().
+	 * 
+	 * @param in The input to read from.
+	 * @return The string, which may be null.
+	 * @throws IOException If the string cannot be read.
+	 */
+	public static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+	
+	/**
+	 * Writes an IPv4 or IPv6 address as its raw bytes.
+	 * 
+	 * @param out The output to write to.
+	 * @param address The address.
+	 * @throws IOException If the address cannot be written.
+	 */
+	public static void writeAddress(DataOutput out, InetAddress address) throws IOException {
+		byte[] addr = address.getAddress();
+		out.writeByte(addr.length);
+		out.write(addr);
+	}
+	
+	/**
+	 * Reads an address written by writeAddress().  No name lookup is performed.
+	 * 
+	 * @param in The input to read from.
+	 * @return The address.
+	 * @throws IOException If the address cannot be read.
+	 */
+	public static InetAddress readAddress(DataInput in) throws IOException {
+		byte[] addr = new byte[in.readUnsignedByte()];
+		in.readFully(addr);
+		return InetAddress.getByAddress(addr);
+	}
+	
+	/**
+	 * Writes a nested object using Java serialization.  This is meant for
+	 * the rare, complex payloads that do not warrant a hand-written codec.
+	 * 
+	 * @param out The output to write to.
+	 * @param o The object, which must be Serializable.
+	 * @throws IOException If the object cannot be written.
+	 */
+	public static void writeObject(DataOutput out, Object o) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(o);
+		oos.close();
+		out.writeInt(bos.size());
+		out.write(bos.toByteArray());
+	}
+	
+	/**
+	 * Reads an object written by writeObject().
+	 * 
+	 * @param in The input to read from.
+	 * @return The object.
+	 * @throws IOException If the object cannot be read.
+	 */
+	public static Object readObject(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return readSerialized(new ByteArrayInputStream(bytes));
+	}
+}
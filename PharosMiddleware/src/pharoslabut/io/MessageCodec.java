@@ -0,0 +1,34 @@
+package pharoslabut.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes one type of message in the compact binary format used
+ * by the BinaryMessageFormat.  A codec only handles the message's fields; the
+ * type id and length prefix are written by the BinaryMessageFormat.
+ * 
+ * @param <M> The type of message handled by this codec.
+ * @see MessageCodecRegistry
+ */
+public interface MessageCodec<M extends Message> {
+
+	/**
+	 * Writes the fields of a message.
+	 * 
+	 * @param msg The message to encode.
+	 * @param out The output to write to.
+	 * @throws IOException If the message cannot be written.
+	 */
+	public void encode(M msg, DataOutput out) throws IOException;
+	
+	/**
+	 * Reads the fields written by encode() and reconstructs the message.
+	 * 
+	 * @param in The input to read from.
+	 * @return The decoded message.
+	 * @throws IOException If the message cannot be read.
+	 */
+	public M decode(DataInput in) throws IOException;
+}
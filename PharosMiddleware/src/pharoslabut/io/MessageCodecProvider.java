@@ -0,0 +1,20 @@
+package pharoslabut.io;
+
+/**
+ * Registers the message codecs of a package that defines its own messages.
+ * Providers are listed in META-INF/services/pharoslabut.io.MessageCodecProvider
+ * and are instantiated by a ServiceLoader when the registry is first used, so
+ * the codecs are present on both the sending and receiving side without any
+ * explicit set-up.  A provider must have a public no-argument constructor.
+ * 
+ * @see MessageCodecRegistry
+ */
+public interface MessageCodecProvider {
+
+	/**
+	 * Registers this provider's codecs.
+	 * 
+	 * @param registry The registry in which to register the codecs.
+	 */
+	public void registerCodecs(MessageCodecRegistry registry);
+}
@@ -0,0 +1,203 @@
+package pharoslabut.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import pharoslabut.experiment.ExpType;
+import pharoslabut.logger.Logger;
+import pharoslabut.navigate.RelativeMotionScript;
+import pharoslabut.navigate.motionscript.MotionScript;
+
+/**
+ * Maps message classes to the type ids and codecs used by the
+ * BinaryMessageFormat.  Both ends of a connection must agree on the
+ * type ids, so they are fixed rather than assigned at run time:
+ * 
+ * <ul>
+ * <li>0 is reserved for messages without a codec, which are sent using
+ * Java serialization inside a binary frame.</li>
+ * <li>1-99 are used by the messages in pharoslabut.io.</li>
+ * <li>100-199 are used by the autonomous intersection demo.</li>
+ * <li>200-299 are used by the multi-robot patrol 2 demo.</li>
+ * </ul>
+ * 
+ * <p>Packages outside of pharoslabut.io register their codecs through
+ * a MessageCodecProvider listed in the class path resource
+ * META-INF/services/pharoslabut.io.MessageCodecProvider.</p>
+ */
+public class MessageCodecRegistry {
+
+	/**
+	 * The type id of messages that are sent using Java serialization.
+	 */
+	public static final short SERIALIZED_TYPE_ID = 0;
+	
+	/**
+	 * The singleton instance of this class.
+	 */
+	private static MessageCodecRegistry registry = null;
+	
+	/**
+	 * A registered codec and its type id.
+	 */
+	static class Entry {
+		final short typeId;
+		final Class<? extends Message> msgClass;
+		final MessageCodec<Message> codec;
+		
+		@SuppressWarnings("unchecked")
+		Entry(short typeId, Class<? extends Message> msgClass, MessageCodec<? extends Message> codec) {
+			this.typeId = typeId;
+			this.msgClass = msgClass;
+			this.codec = (MessageCodec<Message>)codec;
+		}
+	}
+	
+	/**
+	 * The registered codecs indexed by message class.
+	 */
+	private HashMap<Class<? extends Message>, Entry> classMap = new HashMap<Class<? extends Message>, Entry>();
+	
+	/**
+	 * The registered codecs indexed by type id.
+	 */
+	private HashMap<Short, Entry> idMap = new HashMap<Short, Entry>();
+	
+	/**
+	 * @return The singleton instance of this class.
+	 */
+	public static synchronized MessageCodecRegistry getRegistry() {
+		if (registry == null) {
+			registry = new MessageCodecRegistry();
+			registry.loadProviders();
+		}
+		return registry;
+	}
+	
+	/**
+	 * The constructor.  Registers the codecs of the messages in pharoslabut.io.
+	 * It is private to enforce the singleton design pattern.
+	 */
+	private MessageCodecRegistry() {
+		register(1, StartExpMsg.class, new MessageCodec<StartExpMsg>() {
+			public void encode(StartExpMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeString(out, msg.getExpName());
+				out.writeByte(msg.getExpType() == null ? -1 : msg.getExpType().ordinal());
+				out.writeInt(msg.getDelay());
+			}
+			public StartExpMsg decode(DataInput in) throws IOException {
+				String expName = BinaryMessageFormat.readString(in);
+				byte expType = in.readByte();
+				return new StartExpMsg(expName, expType < 0 ? null : ExpType.values()[expType], in.readInt());
+			}
+		});
+		
+		register(2, StopExpMsg.class, new MessageCodec<StopExpMsg>() {
+			public void encode(StopExpMsg msg, DataOutput out) {
+			}
+			public StopExpMsg decode(DataInput in) {
+				return new StopExpMsg();
+			}
+		});
+		
+		register(3, SetTimeMsg.class, new MessageCodec<SetTimeMsg>() {
+			public void encode(SetTimeMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeString(out, msg.getTime());
+			}
+			public SetTimeMsg decode(DataInput in) throws IOException {
+				return new SetTimeMsg(BinaryMessageFormat.readString(in));
+			}
+		});
+		
+		register(4, PharosAckMsg.class, new MessageCodec<PharosAckMsg>() {
+			public void encode(PharosAckMsg msg, DataOutput out) {
+			}
+			public PharosAckMsg decode(DataInput in) {
+				return PharosAckMsg.getAckMsg();
+			}
+		});
+		
+		// Motion scripts are arbitrary graphs of Instruction objects that are
+		// sent once per experiment, so they are nested as serialized objects.
+		register(5, MotionScriptMsg.class, new MessageCodec<MotionScriptMsg>() {
+			public void encode(MotionScriptMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeObject(out, msg.getScript());
+			}
+			public MotionScriptMsg decode(DataInput in) throws IOException {
+				return new MotionScriptMsg((MotionScript)BinaryMessageFormat.readObject(in));
+			}
+		});
+		
+		register(6, RelativeMotionScriptMsg.class, new MessageCodec<RelativeMotionScriptMsg>() {
+			public void encode(RelativeMotionScriptMsg msg, DataOutput out) throws IOException {
+				BinaryMessageFormat.writeObject(out, msg.getScript());
+			}
+			public RelativeMotionScriptMsg decode(DataInput in) throws IOException {
+				return new RelativeMotionScriptMsg((RelativeMotionScript)BinaryMessageFormat.readObject(in));
+			}
+		});
+	}
+	
+	/**
+	 * Loads the codec providers listed in the META-INF/services/pharoslabut.io.MessageCodecProvider
+	 * resources on the class path, so pharoslabut.io does not depend on the demos.  Providers that
+	 * cannot be loaded are skipped.
+	 */
+	private void loadProviders() {
+		Iterator<MessageCodecProvider> providers 
+			= ServiceLoader.load(MessageCodecProvider.class, MessageCodecRegistry.class.getClassLoader()).iterator();
+		while (true) {
+			try {
+				if (!providers.hasNext())
+					break;
+				providers.next().registerCodecs(this);
+			} catch (ServiceConfigurationError e) {
+				Logger.logErr("Unable to load codec provider: " + e.getMessage());
+			} catch (RuntimeException e) {
+				Logger.logErr("Unable to register codecs: " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Registers a codec.
+	 * 
+	 * @param typeId The type id, which must be between 1 and Short.MAX_VALUE.
+	 * @param msgClass The class of message handled by the codec.  Subclasses
+	 * are not covered and must be registered separately.
+	 * @param codec The codec.
+	 */
+	public synchronized <M extends Message> void register(int typeId, Class<M> msgClass, MessageCodec<M> codec) {
+		if (typeId <= SERIALIZED_TYPE_ID || typeId > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid message type id " + typeId);
+		Entry existing = idMap.get((short)typeId);
+		if (existing != null && existing.msgClass != msgClass)
+			throw new IllegalArgumentException("Message type id " + typeId + " is already used by " 
+					+ existing.msgClass.getName());
+		
+		Entry entry = new Entry((short)typeId, msgClass, codec);
+		classMap.put(msgClass, entry);
+		idMap.put(entry.typeId, entry);
+	}
+	
+	/**
+	 * @param msgClass The class of a message.
+	 * @return The codec registered for the class, or null if there is none.
+	 */
+	synchronized Entry getEntry(Class<? extends Message> msgClass) {
+		return classMap.get(msgClass);
+	}
+	
+	/**
+	 * @param typeId A message type id.
+	 * @return The codec registered for the type id, or null if there is none.
+	 */
+	synchronized Entry getEntry(short typeId) {
+		return idMap.get(typeId);
+	}
+}
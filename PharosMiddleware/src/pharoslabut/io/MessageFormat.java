@@ -0,0 +1,77 @@
+package pharoslabut.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Defines how messages are written to and read from the network.
+ * The NetworkInterface, TCPMessageSender and TCPMessageReceiver
+ * delegate all message encoding to a MessageFormat.
+ * 
+ * <p>By default the BinaryMessageFormat is used.  Setting the system property
+ * "PharosMiddleware.serializedMessages" selects the SerializedMessageFormat,
+ * which is compatible with peers that predate the binary format.</p>
+ */
+public abstract class MessageFormat {
+	
+	/**
+	 * The format used when none is specified.
+	 */
+	private static MessageFormat defaultFormat = 
+		(System.getProperty("PharosMiddleware.serializedMessages") != null) 
+			? new SerializedMessageFormat() : new BinaryMessageFormat();
+	
+	/**
+	 * @return The format used when none is specified.
+	 */
+	public static MessageFormat getDefault() {
+		return defaultFormat;
+	}
+	
+	/**
+	 * Writes a message to a stream and flushes it.
+	 * 
+	 * @param out The stream to write to.
+	 * @param msg The message to write.
+	 * @throws IOException If the message cannot be written.
+	 */
+	public abstract void writeMessage(OutputStream out, Message msg) throws IOException;
+	
+	/**
+	 * Reads a message written by writeMessage().
+	 * 
+	 * @param in The stream to read from.
+	 * @return The message.
+	 * @throws IOException If the message cannot be read.
+	 */
+	public abstract Message readMessage(InputStream in) throws IOException;
+	
+	/**
+	 * Encodes a message into a byte array, e.g., for a datagram.
+	 * 
+	 * @param msg The message to encode.
+	 * @return The encoded message.
+	 * @throws IOException If the message cannot be encoded.
+	 */
+	public byte[] toBytes(Message msg) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		writeMessage(bos, msg);
+		return bos.toByteArray();
+	}
+	
+	/**
+	 * Decodes a message from a byte array, e.g., the payload of a datagram.
+	 * 
+	 * @param buf The buffer holding the message.
+	 * @param offset The offset of the message within the buffer.
+	 * @param length The length of the message.
+	 * @return The message.
+	 * @throws IOException If the message cannot be decoded.
+	 */
+	public Message fromBytes(byte[] buf, int offset, int length) throws IOException {
+		return readMessage(new ByteArrayInputStream(buf, offset, length));
+	}
+}
@@ -15,6 +15,11 @@ public abstract class NetworkInterface {
 	 */
 	private Vector<MessageReceiver> rcvrs = new Vector<MessageReceiver>();
 	
+	/**
+	 * The format in which messages are sent and received.
+	 */
+	protected MessageFormat format = MessageFormat.getDefault();
+	
 	/**
 	 * Returns the local port on which the network interface is listening for packets.
 	 * 
@@ -37,6 +42,23 @@ public abstract class NetworkInterface {
 	 */
 	public abstract void stop();
 	
+	/**
+	 * Sets the format in which messages are sent and received.  Both ends must
+	 * use the same format.
+	 * 
+	 * @param format The message format.
+	 */
+	public void setMessageFormat(MessageFormat format) {
+		this.format = format;
+	}
+	
+	/**
+	 * @return The format in which messages are sent and received.
+	 */
+	public MessageFormat getMessageFormat() {
+		return format;
+	}
+	
 //	/**
 //	 * Sets the file logger.
 //	 * 
@@ -0,0 +1,498 @@
+package pharoslabut.io;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pharoslabut.logger.Logger;
+
+/**
+ * A non-blocking TCP network interface for servers that talk to many peers.
+ * A small, fixed pool of event loops services every connection: each loop is a
+ * thread with its own Selector, and each connection, inbound or outbound,
+ * is assigned to one loop for its lifetime.  No thread is ever dedicated to a
+ * single peer, so the number of threads does not grow with the number of
+ * connected vehicles.
+ *
+ * <p>Messages are sent and received as frames of the BinaryMessageFormat and
+ * are interoperable with the TCPNetworkInterface, TCPMessageSender and
+ * TCPMessageReceiver.  Outbound messages are queued on a persistent
+ * connection per destination and written by the connection's event loop, so
+ * sendMessage() never blocks on the network.  Received messages are passed to
+ * the registered MessageReceivers on the event loop thread, which must not block.</p>
+ */
+public class NioNetworkInterface extends NetworkInterface {
+
+	/**
+	 * The default number of event loops.
+	 */
+	public static final int DEFAULT_NUM_EVENT_LOOPS = 2;
+
+	/**
+	 * The server socket channel.
+	 */
+	private ServerSocketChannel ss;
+
+	/**
+	 * The event loops.
+	 */
+	private EventLoop[] loops;
+
+	/**
+	 * Used to assign connections to event loops round robin.
+	 */
+	private AtomicInteger nextLoop = new AtomicInteger();
+
+	/**
+	 * The outbound connections indexed by destination.
+	 */
+	private ConcurrentHashMap<InetSocketAddress, Connection> outbound
+		= new ConcurrentHashMap<InetSocketAddress, Connection>();
+
+	/**
+	 * The number of open connections.
+	 */
+	private AtomicInteger numConnections = new AtomicInteger();
+
+	/**
+	 * Whether this network interface is running.
+	 */
+	private volatile boolean running = true;
+
+	/**
+	 * Creates a NioNetworkInterface with the default number of event loops.
+	 *
+	 * @param port The port on which to listen.  If -1, select a random port that is available.
+	 */
+	public NioNetworkInterface(int port) {
+		this(port, DEFAULT_NUM_EVENT_LOOPS);
+	}
+
+	/**
+	 * Creates a NioNetworkInterface.
+	 *
+	 * @param port The port on which to listen.  If -1, select a random port that is available.
+	 * @param numEventLoops The number of event loops.
+	 */
+	public NioNetworkInterface(int port, int numEventLoops) {
+		if (!(format instanceof BinaryMessageFormat))
+			format = new BinaryMessageFormat();
+
+		loops = new EventLoop[Math.max(1, numEventLoops)];
+		for (int i = 0; i < loops.length; i++)
+			loops[i] = new EventLoop(i);
+
+		while (ss == null) {
+			try {
+				ss = ServerSocketChannel.open();
+				ss.socket().setReuseAddress(true);
+				ss.socket().bind(new InetSocketAddress(port != -1 ? port : 0));
+				ss.configureBlocking(false);
+			} catch (IOException e) {
+				if (ss != null) {
+					try { ss.close(); } catch(IOException e2) {}
+					ss = null;
+				}
+				Logger.logErr("Unable to open server socket, waiting a couple seconds before trying again...");
+				try {
+					synchronized(this) { wait(1000*2); }
+				} catch (InterruptedException e1) {
+					e1.printStackTrace();
+				}
+			}
+		}
+		Logger.log("Server socket listening on port " + getLocalPort() + " with " + loops.length + " event loops");
+
+		for (int i = 0; i < loops.length; i++)
+			loops[i].start();
+
+		// The first event loop also accepts connections.
+		loops[0].execute(new Runnable() {
+			public void run() {
+				try {
+					ss.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+				} catch(IOException e) {
+					Logger.logErr("Unable to register the server socket: " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sets the message format.  Only the BinaryMessageFormat is supported
+	 * because messages are framed by their length.
+	 *
+	 * @param format The message format.
+	 */
+	@Override
+	public void setMessageFormat(MessageFormat format) {
+		if (!(format instanceof BinaryMessageFormat))
+			throw new IllegalArgumentException("NioNetworkInterface requires the BinaryMessageFormat");
+		super.setMessageFormat(format);
+	}
+
+	@Override
+	public int getLocalPort() {
+		return ss.socket().getLocalPort();
+	}
+
+	/**
+	 * @return The number of open inbound and outbound connections.
+	 */
+	public int getNumConnections() {
+		return numConnections.get();
+	}
+
+	/**
+	 * Queues a message for transmission.  The connection to the destination
+	 * is opened if necessary.  This method does not wait for the message to
+	 * be written.
+	 *
+	 * @return true if the message was queued.
+	 */
+	@Override
+	public boolean sendMessage(InetAddress address, int port, Message m) {
+		if (!running) {
+			Logger.logErr("Network interface stopped, unable to send " + m);
+			return false;
+		}
+
+		byte[] frame;
+		try {
+			frame = format.toBytes(m);
+		} catch(IOException e) {
+			Logger.logErr("Unable to encode " + m + ": " + e.getMessage());
+			return false;
+		}
+
+		InetSocketAddress dest = new InetSocketAddress(address, port);
+		Connection conn = outbound.get(dest);
+		if (conn == null || !conn.enqueue(frame)) {
+			try {
+				conn = connect(dest);
+			} catch(IOException e) {
+				Logger.logErr("Unable to connect to " + dest + ": " + e.getMessage());
+				return false;
+			}
+			return conn.enqueue(frame);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the outbound connection to a destination, opening it if necessary.
+	 */
+	private Connection connect(InetSocketAddress dest) throws IOException {
+		Connection conn;
+		boolean connected;
+		// Connecting is rare and does not block, so it is simply serialized.
+		synchronized(outbound) {
+			conn = outbound.get(dest);
+			if (conn != null && !conn.closed)
+				return conn;
+
+			SocketChannel sc = SocketChannel.open();
+			sc.configureBlocking(false);
+			sc.socket().setTcpNoDelay(true);
+			connected = sc.connect(dest);
+
+			conn = new Connection(sc, nextLoop(), dest);
+			outbound.put(dest, conn);
+		}
+		conn.register(connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT);
+		return conn;
+	}
+
+	private EventLoop nextLoop() {
+		return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		try {
+			ss.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		for (EventLoop loop : loops)
+			loop.selector.wakeup();
+	}
+
+	/**
+	 * A thread that services the connections assigned to it.
+	 */
+	private class EventLoop implements Runnable {
+		final Selector selector;
+		final Thread thread;
+
+		/**
+		 * Work submitted by other threads, e.g., registering a connection.
+		 */
+		final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+		EventLoop(int id) {
+			try {
+				selector = Selector.open();
+			} catch(IOException e) {
+				throw new RuntimeException("Unable to open selector: " + e.getMessage());
+			}
+			thread = new Thread(this, "NioNetworkInterface-loop-" + id);
+			thread.setDaemon(true);
+		}
+
+		void start() {
+			thread.start();
+		}
+
+		/**
+		 * Runs a task on this event loop.
+		 */
+		void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		public void run() {
+			while (running) {
+				try {
+					selector.select();
+				} catch(IOException e) {
+					Logger.logErr("IOException while selecting: " + e.getMessage());
+					continue;
+				}
+
+				Runnable task;
+				while ((task = tasks.poll()) != null)
+					task.run();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+
+					Connection conn = (Connection)key.attachment();
+					try {
+						if (key.isConnectable())
+							conn.finishConnect();
+						if (key.isValid() && key.isReadable())
+							conn.read();
+						if (key.isValid() && key.isWritable())
+							conn.flush();
+					} catch(IOException e) {
+						Logger.log("Closing connection to " + conn.remote + ": " + e.getMessage());
+						conn.close();
+					}
+				}
+			}
+
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Connection)
+					((Connection)key.attachment()).close();
+			}
+			try {
+				selector.close();
+			} catch(IOException e) {}
+		}
+
+		/**
+		 * Accepts the pending connections and assigns them to event loops.
+		 */
+		void accept() {
+			try {
+				SocketChannel sc;
+				while ((sc = ss.accept()) != null) {
+					sc.configureBlocking(false);
+					sc.socket().setTcpNoDelay(true);
+					new Connection(sc, nextLoop(), null).register(SelectionKey.OP_READ);
+				}
+			} catch(IOException e) {
+				if (running)
+					Logger.logErr("IOException while accepting client connections: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * A connection and its buffers.  Everything but enqueue() runs on the
+	 * connection's event loop.
+	 */
+	private class Connection {
+		final SocketChannel channel;
+		final EventLoop loop;
+
+		/**
+		 * The destination of an outbound connection, null if inbound.
+		 */
+		final InetSocketAddress dest;
+
+		final Object remote;
+		SelectionKey key;
+
+		/**
+		 * Received bytes that have not been decoded yet.  Kept in write mode.
+		 */
+		ByteBuffer in = ByteBuffer.allocate(8192);
+
+		/**
+		 * Frames that have not been written yet.  Guarded by this connection.
+		 */
+		final LinkedList<ByteBuffer> out = new LinkedList<ByteBuffer>();
+
+		/**
+		 * Whether a flush has been requested from the event loop.  Guarded by this connection.
+		 */
+		boolean flushScheduled = false;
+
+		volatile boolean closed = false;
+
+		final Runnable flushTask = new Runnable() {
+			public void run() {
+				try {
+					flush();
+				} catch(IOException e) {
+					Logger.log("Closing connection to " + remote + ": " + e.getMessage());
+					close();
+				}
+			}
+		};
+
+		Connection(SocketChannel channel, EventLoop loop, InetSocketAddress dest) {
+			this.channel = channel;
+			this.loop = loop;
+			this.dest = dest;
+			this.remote = (dest != null) ? dest : channel.socket().getRemoteSocketAddress();
+			numConnections.incrementAndGet();
+		}
+
+		void register(final int ops) {
+			loop.execute(new Runnable() {
+				public void run() {
+					try {
+						key = channel.register(loop.selector, ops, Connection.this);
+						flush();
+					} catch(IOException e) {
+						Logger.logErr("Unable to register connection to " + remote + ": " + e.getMessage());
+						close();
+					}
+				}
+			});
+		}
+
+		/**
+		 * Queues a frame for transmission.  Called by any thread.
+		 *
+		 * @return false if the connection is closed.
+		 */
+		boolean enqueue(byte[] frame) {
+			synchronized(this) {
+				if (closed)
+					return false;
+				out.add(ByteBuffer.wrap(frame));
+				if (flushScheduled)
+					return true;
+				flushScheduled = true;
+			}
+			loop.execute(flushTask);
+			return true;
+		}
+
+		void finishConnect() throws IOException {
+			channel.finishConnect();
+			flush();
+		}
+
+		/**
+		 * Writes as many queued frames as the socket accepts.
+		 */
+		void flush() throws IOException {
+			if (key == null || !key.isValid() || !channel.isConnected())
+				return;
+			synchronized(this) {
+				flushScheduled = false;
+				while (!out.isEmpty()) {
+					ByteBuffer frame = out.getFirst();
+					channel.write(frame);
+					if (frame.hasRemaining())
+						break;
+					out.removeFirst();
+				}
+				key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+
+		/**
+		 * Reads what is available and delivers every complete frame.
+		 */
+		void read() throws IOException {
+			if (channel.read(in) < 0) {
+				close();
+				return;
+			}
+
+			BinaryMessageFormat bmf = (BinaryMessageFormat)format;
+			boolean ackQueued = false;
+			in.flip();
+			Message msg;
+			while ((msg = bmf.readFrame(in)) != null) {
+				if (msg instanceof PharosAckMsg)
+					continue; // acks of the AckedMsgs sent over an outbound connection
+				if (msg instanceof AckedMsg) {
+					synchronized(this) {
+						out.add(ByteBuffer.wrap(bmf.toBytes(PharosAckMsg.getAckMsg())));
+					}
+					ackQueued = true;
+				}
+				newMessage(msg);
+			}
+
+			// Make room for a frame that is larger than the buffer.
+			int size = BinaryMessageFormat.frameSize(in);
+			if (size > in.capacity()) {
+				ByteBuffer bigger = ByteBuffer.allocate(size);
+				bigger.put(in);
+				in = bigger;
+			} else
+				in.compact();
+
+			if (ackQueued)
+				flush();
+		}
+
+		void close() {
+			synchronized(this) {
+				if (closed)
+					return;
+				closed = true;
+				if (!out.isEmpty())
+					Logger.logErr("Dropping " + out.size() + " unsent messages to " + remote);
+				out.clear();
+			}
+			numConnections.decrementAndGet();
+			if (key != null)
+				key.cancel();
+			try {
+				channel.close();
+			} catch(IOException e) {}
+			if (dest != null)
+				outbound.remove(dest, this);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package pharoslabut.io;
+
+/**
+ * The acknowledgment of an AckedMsg that was sent over a pooled connection.
+ * Acks are pipelined: the connection can carry further messages while the
+ * sender waits for this one.
+ * 
+ * @see TCPConnectionPool
+ */
+public class PendingAck {
+	
+	private boolean done = false;
+	private boolean acked = false;
+	
+	/**
+	 * Called when the ack arrives or the connection fails.
+	 * 
+	 * @param acked Whether the ack arrived.
+	 */
+	synchronized void complete(boolean acked) {
+		if (!done) {
+			this.done = true;
+			this.acked = acked;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * @return Whether the ack has arrived or the connection has failed.
+	 */
+	public synchronized boolean isDone() {
+		return done;
+	}
+	
+	/**
+	 * Waits for the ack.  If the waiting thread is interrupted, this returns
+	 * early with the thread's interrupt status set.
+	 * 
+	 * @param timeout The maximum time to wait in milliseconds.
+	 * @return true if the ack arrived within the timeout.
+	 */
+	public synchronized boolean await(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		long remaining = timeout;
+		while (!done && remaining > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return acked;
+	}
+}
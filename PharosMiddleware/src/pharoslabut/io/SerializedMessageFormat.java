@@ -0,0 +1,36 @@
+package pharoslabut.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes messages using Java serialization.  This is the format the Pharos
+ * Middleware originally used.  It puts class descriptors on the wire and
+ * is only needed to talk to peers that do not support the BinaryMessageFormat.
+ */
+public class SerializedMessageFormat extends MessageFormat {
+
+	@Override
+	public void writeMessage(OutputStream out, Message msg) throws IOException {
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(msg);
+		oos.flush();
+		out.flush();
+	}
+
+	@Override
+	public Message readMessage(InputStream in) throws IOException {
+		ObjectInputStream ois = new ObjectInputStream(in);
+		try {
+			Object o = ois.readObject();
+			if (o instanceof Message)
+				return (Message)o;
+			throw new IOException("Received object is not a Message: " + o);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unknown message class: " + e.getMessage());
+		}
+	}
+}
@@ -52,6 +52,15 @@ public class SetTimeMsg implements Message {
 		timeString = monthStr + dayStr + hourStr + minStr + yearStr + "." + secStr;
 	}
 	
+	/**
+	 * A constructor for a message containing a specific time.
+	 *
+	 * @param timeString The time in the format MMDDhhmmYYYY.ss.
+	 */
+	public SetTimeMsg(String timeString) {
+		this.timeString = timeString;
+	}
+
 	/**
 	 * @return  the time that the robot should set its local time to.
 	 */
@@ -0,0 +1,246 @@
+package pharoslabut.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import pharoslabut.logger.Logger;
+
+/**
+ * Maintains one persistent TCP connection per destination.  Messages are
+ * written as binary frames, so any number of them can share a connection.
+ * A daemon thread per connection reads the acks sent by the receiver, which
+ * arrive in the order the AckedMsgs were sent.  This lets senders pipeline
+ * messages instead of paying for a connection setup and an ack round trip
+ * per message.
+ * 
+ * <p>A connection is closed and removed from the pool when a read or write
+ * on it fails.  The next message to that destination opens a new one.</p>
+ * 
+ * @see TCPMessageReceiver
+ */
+public class TCPConnectionPool {
+
+	/**
+	 * The maximum time in milliseconds to wait for a connection to be established.
+	 */
+	public static final int CONNECT_TIMEOUT = 5000;
+	
+	/**
+	 * The pool shared by the TCPMessageSender and the TCPNetworkInterfaces.
+	 */
+	private static TCPConnectionPool pool = new TCPConnectionPool();
+	
+	/**
+	 * The open connections indexed by destination.
+	 */
+	private HashMap<InetSocketAddress, PooledConnection> connections 
+		= new HashMap<InetSocketAddress, PooledConnection>();
+	
+	/**
+	 * @return The shared connection pool.
+	 */
+	public static TCPConnectionPool getPool() {
+		return pool;
+	}
+	
+	/**
+	 * Sends a message to a destination, opening a connection if necessary.
+	 * If the message is an AckedMsg, the returned PendingAck is completed
+	 * when the receiver acknowledges it.
+	 * 
+	 * @param address The destination address.
+	 * @param port The destination port.
+	 * @param msg The message to send.
+	 * @param format The format of the message, which must be a BinaryMessageFormat.
+	 * @return The pending ack if the message is an AckedMsg, null otherwise.
+	 * @throws IOException If the message could not be written.
+	 */
+	public PendingAck send(InetAddress address, int port, Message msg, BinaryMessageFormat format) throws IOException {
+		InetSocketAddress dest = new InetSocketAddress(address, port);
+		PooledConnection conn = getConnection(dest, format);
+		try {
+			return conn.send(msg);
+		} catch(IOException e) {
+			if (!conn.isReused())
+				throw e;
+			
+			// The peer may have closed an idle connection; retry once on a fresh one.
+			Logger.log("Pooled connection to " + dest + " failed (" + e.getMessage() + "), reconnecting.");
+			return getConnection(dest, format).send(msg);
+		}
+	}
+	
+	private PooledConnection getConnection(InetSocketAddress dest, BinaryMessageFormat format) throws IOException {
+		PooledConnection conn;
+		synchronized(connections) {
+			conn = connections.get(dest);
+			if (conn != null && !conn.isClosed()) {
+				conn.reused = true;
+				return conn;
+			}
+			connections.remove(dest);
+		}
+		
+		// Connect outside of the lock so a slow destination does not block the others.
+		Logger.log("Opening connection to " + dest);
+		Socket socket = new Socket();
+		socket.connect(dest, CONNECT_TIMEOUT);
+		socket.setTcpNoDelay(true);
+		socket.setKeepAlive(true);
+		PooledConnection newConn = new PooledConnection(dest, socket, format);
+		
+		synchronized(connections) {
+			conn = connections.get(dest);
+			if (conn != null && !conn.isClosed()) {
+				// Another thread connected first.
+				newConn.close();
+				return conn;
+			}
+			connections.put(dest, newConn);
+		}
+		newConn.start();
+		return newConn;
+	}
+	
+	/**
+	 * Closes a connection and removes it from the pool.
+	 */
+	private void remove(PooledConnection conn) {
+		synchronized(connections) {
+			if (connections.get(conn.dest) == conn)
+				connections.remove(conn.dest);
+		}
+		conn.close();
+	}
+	
+	/**
+	 * @return The number of open connections.
+	 */
+	public int size() {
+		synchronized(connections) {
+			return connections.size();
+		}
+	}
+	
+	/**
+	 * Closes all connections.  Pending acks are failed.
+	 */
+	public void closeAll() {
+		PooledConnection[] conns;
+		synchronized(connections) {
+			conns = connections.values().toArray(new PooledConnection[0]);
+			connections.clear();
+		}
+		for (PooledConnection conn : conns)
+			conn.close();
+	}
+	
+	/**
+	 * A persistent connection to one destination.
+	 */
+	private class PooledConnection implements Runnable {
+		final InetSocketAddress dest;
+		final Socket socket;
+		final BinaryMessageFormat format;
+		final OutputStream os;
+		final InputStream is;
+		
+		/**
+		 * The acks that have not yet arrived, in the order their messages were sent.
+		 */
+		final LinkedList<PendingAck> pendingAcks = new LinkedList<PendingAck>();
+		
+		volatile boolean closed = false;
+		volatile boolean reused = false;
+		
+		PooledConnection(InetSocketAddress dest, Socket socket, BinaryMessageFormat format) throws IOException {
+			this.dest = dest;
+			this.socket = socket;
+			this.format = format;
+			this.os = new BufferedOutputStream(socket.getOutputStream());
+			this.is = new BufferedInputStream(socket.getInputStream());
+		}
+		
+		void start() {
+			Thread t = new Thread(this, "TCPConnectionPool-" + dest);
+			t.setDaemon(true);
+			t.start();
+		}
+		
+		boolean isClosed() {
+			return closed;
+		}
+		
+		boolean isReused() {
+			return reused;
+		}
+		
+		PendingAck send(Message msg) throws IOException {
+			PendingAck ack = null;
+			synchronized(os) {
+				if (closed)
+					throw new IOException("Connection to " + dest + " is closed");
+				if (msg instanceof AckedMsg) {
+					ack = new PendingAck();
+					synchronized(pendingAcks) {
+						pendingAcks.add(ack);
+					}
+				}
+				try {
+					format.writeMessage(os, msg);
+				} catch(IOException e) {
+					remove(this);
+					throw e;
+				}
+			}
+			return ack;
+		}
+		
+		/**
+		 * Reads acks until the connection is closed.
+		 */
+		public void run() {
+			try {
+				while (!closed) {
+					Message msg = format.readMessage(is);
+					if (msg instanceof PharosAckMsg) {
+						PendingAck ack;
+						synchronized(pendingAcks) {
+							ack = pendingAcks.poll();
+						}
+						if (ack != null)
+							ack.complete(true);
+						else
+							Logger.logErr("Received an unexpected ack from " + dest);
+					} else
+						Logger.logErr("Received unexpected message from " + dest + ": " + msg);
+				}
+			} catch(IOException e) {
+				if (!closed)
+					Logger.log("Connection to " + dest + " closed: " + e.getMessage());
+			} finally {
+				remove(this);
+			}
+		}
+		
+		void close() {
+			closed = true;
+			try {
+				socket.close();
+			} catch(IOException e) {}
+			synchronized(pendingAcks) {
+				for (PendingAck ack : pendingAcks)
+					ack.complete(false);
+				pendingAcks.clear();
+			}
+		}
+	}
+}
@@ -2,12 +2,26 @@ package pharoslabut.io;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import pharoslabut.logger.Logger;
 
 /**
  * Accepts client connections over a TCP socket and listens for messages 
  * from these clients.
+ * 
+ * <p>When the BinaryMessageFormat is used, a single thread multiplexes all
+ * client connections using a Selector.  Each connection may carry any number
+ * of messages; AckedMsgs are acknowledged in order on the same connection as
+ * soon as they are decoded.  Messages are passed to the MessageReceiver, in the
+ * order they arrive, by a separate delivery thread so a slow receiver never
+ * stalls the network.  With any other format, each connection carries one
+ * message and is handled by its own thread, as before.</p>
  *
  * @author Chien-Liang Fok
  * @version 08/01/2011
@@ -19,9 +33,24 @@ public class TCPMessageReceiver implements Runnable {
     private MessageReceiver receiver;
     
     /**
-	 * The server socket.
+	 * The server socket channel.
 	 */
-    private ServerSocket ss;
+    private ServerSocketChannel ss;
+    
+    /**
+     * Multiplexes the server socket and the client connections.
+     */
+    private Selector selector;
+    
+    /**
+     * Delivers received messages to the receiver.
+     */
+    private ExecutorService delivery;
+    
+    /**
+     * The encoded ack that is sent in response to an AckedMsg.
+     */
+    private byte[] ackBytes;
     
     /**
 	 * The thread that accepts client connections.
@@ -32,6 +61,11 @@ public class TCPMessageReceiver implements Runnable {
 	 * The TCP port to use.
 	 */
 	private int port;
+	
+	/**
+	 * The format in which messages are received.
+	 */
+	private MessageFormat format = MessageFormat.getDefault();
     
 	/**
 	 * A constructor for creating a TCPMessageReceiver on any free TCP port.
@@ -41,7 +75,7 @@ public class TCPMessageReceiver implements Runnable {
 	 */
     public TCPMessageReceiver(MessageReceiver receiver){
     	this(receiver, 0);
-    	port = ss.getLocalPort();
+    	port = getPort();
     }
     
     /**
@@ -57,12 +91,17 @@ public class TCPMessageReceiver implements Runnable {
 		// create the server socket
 		while (ss == null) {
 			try {
-				if (port != -1)
-					ss = new ServerSocket(port);
-				else {
-					ss = new ServerSocket(0);
-				}
+				selector = Selector.open();
+				ss = ServerSocketChannel.open();
+				ss.socket().setReuseAddress(true);
+				ss.socket().bind(new InetSocketAddress(port != -1 ? port : 0));
+				ss.configureBlocking(false);
+				ss.register(selector, SelectionKey.OP_ACCEPT);
 			} catch (IOException e) {
+				if (ss != null) {
+					try { ss.close(); } catch(IOException e2) {}
+					ss = null;
+				}
 				Logger.logErr("Unable to open server socket, waiting a couple seconds before trying again...");
 				try {
 					synchronized(this) { wait(1000*2); }
@@ -72,6 +111,14 @@ public class TCPMessageReceiver implements Runnable {
 			}
 		}
 		
+		delivery = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "TCPMessageReceiver-delivery-" + getPort());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
 		Logger.log("Starting the thread that accepts connections...");
 		acceptThread = new Thread(this);
 		acceptThread.start();
@@ -84,11 +131,21 @@ public class TCPMessageReceiver implements Runnable {
 //    	this.flogger = flogger;
 //    }
     
+    /**
+     * Sets the format in which messages are received.  It must match the
+     * format used by the senders.
+     * 
+     * @param format The message format.
+     */
+    public void setMessageFormat(MessageFormat format) {
+    	this.format = format;
+    }
+    
     /**
      * @return The port on which this receiver is listening.
      */
     public int getPort() {
-    	return ss.getLocalPort();
+    	return ss.socket().getLocalPort();
     }
     
     /**
@@ -99,35 +156,187 @@ public class TCPMessageReceiver implements Runnable {
     public void kill() {
 		try {
 			ss.close();
+			selector.wakeup();
 			acceptThread.join();
+			delivery.shutdown();
 		} catch(Exception e){
 			e.printStackTrace();
 		};
     }
     
     /**
-	 * Sits in a loop waiting for clients to connect.  When a client connects,
-	 * it creates a ClientHandler for it.
+	 * Sits in a loop waiting for clients to connect and for messages to arrive.
 	 */
     public void run() {
 		
-    	while(!ss.isClosed()) {
-    		Logger.log("Waiting for a connection on port " + port);
-			
+    	while(ss.isOpen()) {
     		try {
-    			Socket s = ss.accept();
-				if (s != null) {
-					Logger.log("Connection accepted, passing to client handler.");
-					s.setTcpNoDelay(true);
-					new ClientHandler(s);
-				} else {
-					Logger.logErr("got a null socket connection.");
-				}
+    			selector.select();
     		} catch(IOException e) {
     			e.printStackTrace();
-    			Logger.logErr("IOException while accepting client connections. ServerSocket.isClosed = " + ss.isClosed());
+    			Logger.logErr("IOException while selecting. ServerSocket.isOpen = " + ss.isOpen());
+    			continue;
+    		}
+    		
+    		Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+    		while (keys.hasNext()) {
+    			SelectionKey key = keys.next();
+    			keys.remove();
+    			
+    			if (!key.isValid())
+    				continue;
+    			if (key.isAcceptable())
+    				accept();
+    			else {
+    				Connection conn = (Connection)key.attachment();
+    				try {
+    					if (key.isReadable())
+    						conn.read();
+    					if (key.isValid() && key.isWritable())
+    						conn.flush();
+    				} catch(IOException e) {
+    					Logger.log("Closing connection from " + conn.remote + ": " + e.getMessage());
+    					conn.close();
+    				}
+    			}
     		}
     	}
+    	
+    	try {
+    		for (SelectionKey key : selector.keys())
+    			key.channel().close();
+    		selector.close();
+    	} catch(IOException e) {
+    		e.printStackTrace();
+    	}
+    }
+    
+    /**
+     * Accepts a pending client connection.
+     */
+    private void accept() {
+    	try {
+    		SocketChannel sc = ss.accept();
+    		if (sc == null)
+    			return;
+    		Logger.log("Connection accepted from " + sc.socket().getRemoteSocketAddress());
+    		sc.socket().setTcpNoDelay(true);
+    		
+    		MessageFormat currFormat = format;
+    		if (currFormat instanceof BinaryMessageFormat) {
+    			sc.configureBlocking(false);
+    			Connection conn = new Connection(sc, (BinaryMessageFormat)currFormat);
+    			conn.key = sc.register(selector, SelectionKey.OP_READ, conn);
+    		} else {
+    			Logger.log("Passing connection to client handler.");
+    			new ClientHandler(sc.socket());
+    		}
+    	} catch(IOException e) {
+    		e.printStackTrace();
+    		Logger.logErr("IOException while accepting client connections. ServerSocket.isOpen = " + ss.isOpen());
+    	}
+    }
+    
+    /**
+     * Passes a message to the receiver on the delivery thread.
+     */
+    private void deliver(final Message msg) {
+    	delivery.execute(new Runnable() {
+    		public void run() {
+    			Logger.log("Received message: " + msg);
+    			receiver.newMessage(msg);
+    		}
+    	});
+    }
+    
+    /**
+     * A client connection carrying binary frames.  It is only accessed by the
+     * selector thread.
+     */
+    private class Connection {
+    	final SocketChannel channel;
+    	final BinaryMessageFormat format;
+    	final SocketAddress remote;
+    	SelectionKey key;
+    	
+    	/**
+    	 * Received bytes that have not been decoded yet.  Kept in write mode.
+    	 */
+    	ByteBuffer in = ByteBuffer.allocate(8192);
+    	
+    	/**
+    	 * Acks that have not been written yet.  Kept in write mode.
+    	 */
+    	ByteBuffer out = ByteBuffer.allocate(256);
+    	
+    	Connection(SocketChannel channel, BinaryMessageFormat format) {
+    		this.channel = channel;
+    		this.format = format;
+    		this.remote = channel.socket().getRemoteSocketAddress();
+    	}
+    	
+    	/**
+    	 * Reads what is available and decodes every complete frame.
+    	 */
+    	void read() throws IOException {
+    		if (channel.read(in) < 0) {
+    			Logger.log("Connection from " + remote + " closed by peer.");
+    			close();
+    			return;
+    		}
+    		
+    		in.flip();
+    		Message msg;
+    		while ((msg = format.readFrame(in)) != null) {
+    			if (msg instanceof AckedMsg)
+    				queueAck();
+    			deliver(msg);
+    		}
+    		
+    		// Make room for a frame that is larger than the buffer.
+    		int size = BinaryMessageFormat.frameSize(in);
+    		if (size > in.capacity()) {
+    			ByteBuffer bigger = ByteBuffer.allocate(size);
+    			bigger.put(in);
+    			in = bigger;
+    		} else
+    			in.compact();
+    		
+    		if (out.position() > 0)
+    			flush();
+    	}
+    	
+    	void queueAck() throws IOException {
+    		if (ackBytes == null)
+    			ackBytes = format.toBytes(PharosAckMsg.getAckMsg());
+    		if (out.remaining() < ackBytes.length) {
+    			ByteBuffer bigger = ByteBuffer.allocate(out.capacity() * 2 + ackBytes.length);
+    			out.flip();
+    			bigger.put(out);
+    			out = bigger;
+    		}
+    		out.put(ackBytes);
+    	}
+    	
+    	/**
+    	 * Writes as many queued acks as the socket accepts.
+    	 */
+    	void flush() throws IOException {
+    		out.flip();
+    		channel.write(out);
+    		out.compact();
+    		if (out.position() > 0)
+    			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    		else
+    			key.interestOps(SelectionKey.OP_READ);
+    	}
+    	
+    	void close() {
+    		key.cancel();
+    		try {
+    			channel.close();
+    		} catch(IOException e) {}
+    	}
     }
     
 //    private void pause(long interval) {
@@ -170,14 +379,9 @@ public class TCPMessageReceiver implements Runnable {
 		private OutputStream os;
 		
 		/**
-		 * The object output stream.
-		 */
-		private ObjectOutputStream oos;
-
-		/**
-		 * The object input stream.
+		 * The input stream.
 		 */
-		private ObjectInputStream in;
+		private InputStream in;
 
 		/**
 		 * Creates a ClientHandler.
@@ -192,11 +396,9 @@ public class TCPMessageReceiver implements Runnable {
 		 */
 		public void run() {
 			// Extract the input and output streams.
-			// Be sure to create the output stream before the input stream.
 			try {
 				os = socket.getOutputStream();
-				oos = new ObjectOutputStream(os);
-				in = new ObjectInputStream(socket.getInputStream());
+				in = new BufferedInputStream(socket.getInputStream());
 			} catch(IOException e) {
 				Logger.logErr("IOException while extracing output and input streams.");
 				e.printStackTrace();
@@ -207,18 +409,9 @@ public class TCPMessageReceiver implements Runnable {
 			
 			try {
 				Logger.log("Awaiting message...");
-				Object o = in.readObject();
-				
-				if (o != null) {
-					if (o instanceof Message)
-						msg = (Message)o;
-					else
-						Logger.logErr("Received message was not a message!");
-				} else
+				msg = format.readMessage(in);
+				if (msg == null)
 					Logger.logErr("Received message was null!");		
-			} catch(ClassNotFoundException e) {
-				Logger.logErr("ClassNotFoundException while receiving.");
-				e.printStackTrace();
 			} catch(IOException e) {
 				Logger.logErr("IOException while receiving.");
 				e.printStackTrace();
@@ -230,9 +423,7 @@ public class TCPMessageReceiver implements Runnable {
 					if (msg instanceof AckedMsg) {
 						Logger.log("Message was an AckedMsg, sending ack.");
 						PharosAckMsg ackMsg = PharosAckMsg.getAckMsg();
-						oos.writeObject(ackMsg);
-						oos.flush();
-						os.flush();
+						format.writeMessage(os, ackMsg);
 						Logger.log("Ack sent!");
 					}
 				} catch(IOException e) {
@@ -6,7 +6,9 @@ import pharoslabut.logger.Logger;
 import pharoslabut.exceptions.*;
 
 /**
- * Sends messages to using TCP.
+ * Sends messages to using TCP.  When the BinaryMessageFormat is used, messages
+ * share persistent connections from the TCPConnectionPool and acks are
+ * pipelined.  Otherwise each message is sent over its own connection.
  *
  * @author Chien-Liang Fok
  * @version 08/01/2011
@@ -23,6 +25,11 @@ public class TCPMessageSender implements MessageSender {
      * The amount of time to wait before retransmitting a message.
      */
     public static final long RETRY_DELAY_MS = 1000;
+    
+    /**
+     * The maximum time to wait for the ack of an AckedMsg.
+     */
+    public static final long ACK_TIMEOUT_MS = 10000;
 	
 	/**
 	 * This is a singleton class and this is the reference to the single instance
@@ -30,6 +37,11 @@ public class TCPMessageSender implements MessageSender {
 	 */
 	private static TCPMessageSender tcpMsgSndr = new TCPMessageSender();
 	
+	/**
+	 * The format in which messages are sent.
+	 */
+	private MessageFormat format = MessageFormat.getDefault();
+	
     /**
      * Creates a TCPMessageSender.
      */
@@ -44,11 +56,29 @@ public class TCPMessageSender implements MessageSender {
     	return tcpMsgSndr;
     }
     
+    /**
+     * Sets the format in which messages are sent.  It must match the format
+     * used by the receivers.
+     * 
+     * @param format The message format.
+     */
+    public void setMessageFormat(MessageFormat format) {
+    	this.format = format;
+    }
+    
+    /**
+     * @return The format in which messages are sent.
+     */
+    public MessageFormat getMessageFormat() {
+    	return format;
+    }
+    
     /**
      * Forces the TCPMessageSender to close all sockets and stop
      * functioning.
      */
     public void kill() {
+    	TCPConnectionPool.getPool().closeAll();
     }
 
     @Override
@@ -66,8 +96,60 @@ public class TCPMessageSender implements MessageSender {
 	 * @throws PharosException Whenever a problem occurs during message transmission.
      */
     public boolean sendMessage(InetAddress address, int port, Message msg) throws PharosException {
-    	MsgSender sender = new MsgSender(address, port, msg);
-    	return sender.doSend();
+    	if (!(format instanceof BinaryMessageFormat)) {
+    		MsgSender sender = new MsgSender(address, port, msg);
+    		return sender.doSend();
+    	}
+    	
+    	int numTries = 0;
+    	while (numTries++ <= MAX_RETRIES) {
+    		try {
+    			PendingAck ack = sendMessageAsync(address, port, msg);
+    			if (ack == null || ack.await(ACK_TIMEOUT_MS))
+    				return true;
+    			if (Thread.currentThread().isInterrupted()) {
+    				Logger.logErr("Interrupted while waiting for an ack from " + address + ":" + port + " for " + msg);
+    				return false;
+    			}
+    			Logger.logErr("No ack received from " + address + ":" + port + " for " + msg);
+    		} catch(PharosException e) {
+    			Logger.logErr(e.getMessage());
+    		}
+    		
+    		if (numTries <= MAX_RETRIES) {
+    			Logger.log("Transmission unsuccessful, pausing for " + RETRY_DELAY_MS + " then retrying.");
+    			synchronized(this) {
+    				try {
+    					this.wait(RETRY_DELAY_MS);
+    				} catch (InterruptedException e) {
+    					e.printStackTrace();
+    				}
+    			}
+    		}
+    	}
+    	Logger.logErr("Send Failed!");
+    	return false;
+    }
+    
+    /**
+     * Sends a message over a pooled connection without waiting for its ack.
+     * The caller may send further messages before the ack arrives.
+     * 
+	 * @param address The destination address.
+	 * @param port The destination port.
+	 * @param msg The message to be sent.
+	 * @return The pending ack if the message is an AckedMsg, null otherwise.
+	 * @throws PharosException If the message could not be sent, or the message
+	 * format does not support persistent connections.
+     */
+    public PendingAck sendMessageAsync(InetAddress address, int port, Message msg) throws PharosException {
+    	if (!(format instanceof BinaryMessageFormat))
+    		throw new PharosException("Pipelined sends require the BinaryMessageFormat");
+    	try {
+    		return TCPConnectionPool.getPool().send(address, port, msg, (BinaryMessageFormat)format);
+    	} catch(IOException e) {
+    		throw new PharosException("Unable to send " + msg + " to " + address + ":" + port + ": " + e.getMessage());
+    	}
     }
 	
 	private class MsgSender {
@@ -108,12 +190,9 @@ public class TCPMessageSender implements MessageSender {
 	    		if (socket != null) {
 	    			try {
 	    				OutputStream os = socket.getOutputStream();
-	    				ObjectOutputStream oos = new ObjectOutputStream(os);
 	    				
 	    				Logger.log("Sending " + msg + "...");
-	    				oos.writeObject(msg);
-	    				oos.flush();
-	    				os.flush();
+	    				format.writeMessage(os, msg);
 	    				Logger.log("Message was sent.");
 	    			} catch(IOException ioe) {
 	    				ioe.printStackTrace();
@@ -132,9 +211,8 @@ public class TCPMessageSender implements MessageSender {
 	    				InputStream is;
 						try {
 							is = socket.getInputStream();
-							ObjectInputStream ois = new ObjectInputStream(is);
 							Logger.log("Waiting for ack...");
-		    				Object ack = ois.readObject();
+		    				Message ack = format.readMessage(is);
 		    				if (ack instanceof PharosAckMsg) {
 		    					Logger.log("ack received!");
 		    					success = true;
@@ -144,10 +222,6 @@ public class TCPMessageSender implements MessageSender {
 							errMsg = e.getMessage();
 							Logger.logErr("Got IOException while waiting for ack.");
 							e.printStackTrace();
-						} catch (ClassNotFoundException e) {
-							errMsg = e.getMessage();
-							Logger.logErr("Got ClassNotFoundException while waiting for ack.");
-							e.printStackTrace();
 						}
 	    			} else {
 	    				Logger.log("Message was not an AckedMsg, assuming transmission was successful.");
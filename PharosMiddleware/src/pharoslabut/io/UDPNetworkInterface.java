@@ -12,6 +12,11 @@ import pharoslabut.logger.Logger;
  */
 public class UDPNetworkInterface extends NetworkInterface {
 
+	/**
+	 * The largest possible UDP payload.
+	 */
+	public static final int MAX_DATAGRAM_SIZE = 65507;
+	
 	private DatagramSocket socket;
     private UDPReceiver rcvr;
     
@@ -63,17 +68,8 @@ public class UDPNetworkInterface extends NetworkInterface {
         	return false;
         }
 
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        
         try {
-        	ObjectOutputStream oos = new ObjectOutputStream(bos);
-        	oos.writeObject(m);
-        	oos.flush();
-        	bos.flush();
-        	oos.close();
-        	bos.close();
-        	
-        	byte[] sendByte = bos.toByteArray();
+        	byte[] sendByte = format.toBytes(m);
         	
         	Logger.log("packet size= " + sendByte.length);
         	
@@ -124,6 +120,12 @@ public class UDPNetworkInterface extends NetworkInterface {
 	private class UDPReceiver implements Runnable {
 		boolean running = true;
 		
+		/**
+		 * The receive buffer.  It is large enough to hold any datagram and is
+		 * reused since each message is decoded before the next is received.
+		 */
+		byte[] receiveByte = new byte[MAX_DATAGRAM_SIZE];
+		
 		public UDPReceiver() {
 			new Thread(this).start();
 		}
@@ -142,19 +144,18 @@ public class UDPNetworkInterface extends NetworkInterface {
 					openSocket();
 				if (socket != null) {
 					try {
-						byte[] receiveByte = new byte[256];
 						DatagramPacket rpkt = new DatagramPacket(receiveByte, receiveByte.length);
 						socket.receive(rpkt);
 						
-						//extract data from received packet and print it
-						ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(rpkt.getData()));
+						//extract the message from the received packet
+						Message m;
 			            try {
-							Message m = (Message)ois.readObject();
-							newMessage(m); // notify all listeners of message
-						} catch (ClassNotFoundException e) {
-							Logger.logErr("Problem while extracting object from datagram packet: " + e.getMessage());
-							e.printStackTrace();
+							m = format.fromBytes(rpkt.getData(), rpkt.getOffset(), rpkt.getLength());
+						} catch (IOException e) {
+							Logger.logErr("Problem while extracting message from datagram packet: " + e.getMessage());
+							continue;
 						}
+						newMessage(m); // notify all listeners of message
 			            
 					} catch(IOException ioe) {
 						Logger.logErr("Problem while receiving packet: " + ioe.getMessage());
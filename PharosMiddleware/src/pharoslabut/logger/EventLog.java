@@ -0,0 +1,378 @@
+package pharoslabut.logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import playerclient3.structures.gps.PlayerGpsData;
+
+/**
+ * Records the events that the log analyzers extract from the experiment log,
+ * e.g., GPS fixes, compass headings, and beacons, in a binary event log that
+ * is written alongside the text log.  Each event is a fixed-width record whose
+ * fields are described by a schema at the beginning of the file, so the
+ * analyzers can read the events directly instead of parsing the text lines.
+ *
+ * <p>The event log is only written if the system property
+ * "PharosMiddleware.eventLog" is defined.  Events are saved in the event log of
+ * the FileLogger used by the Logger, in the hidden file returned by
+ * getEventLogFile().  They are written by the LogWriter in the same order as
+ * the text log's lines, and each record contains the number of text lines that
+ * precede it, so an analyzer can merge the two files exactly.</p>
+ *
+ * <p>The file format is, with all values big-endian:</p>
+ * <pre>
+ *   int magic, short version, byte numTypes
+ *   for each record type: byte type, UTF name, byte numFields,
+ *     and for each field: UTF name, byte kind ('I' = int, 'J' = long, 'D' = double)
+ *   records: byte type, long timestamp, int line, followed by the fields
+ * </pre>
+ *
+ * @see pharoslabut.logger.analyzer.EventLogReader
+ */
+public class EventLog {
+
+	/**
+	 * Whether events are recorded.
+	 */
+	public static final boolean ENABLED = System.getProperty("PharosMiddleware.eventLog") != null;
+
+	public static final int MAGIC = 0x50584556;
+	public static final int VERSION = 1;
+
+	/**
+	 * The name of the event log is the name of the text log plus this suffix.
+	 */
+	public static final String FILE_SUFFIX = ".evt";
+
+	/**
+	 * The size of the type, timestamp, and line number at the start of each record.
+	 */
+	public static final int RECORD_HEADER_SIZE = 1 + 8 + 4;
+
+	/**
+	 * The record types.
+	 */
+	public static final int GPS = 1, HEADING = 2, MOTION_CMD = 3, WIFI_BEACON_TX = 4,
+		WIFI_BEACON_RX = 5, TELOSB_TX = 6, TELOSB_RX = 7;
+
+	/**
+	 * The fields of a GPS record.
+	 */
+	public static final int GPS_TIME_SEC = 0, GPS_TIME_USEC = 1, GPS_LATITUDE = 2, GPS_LONGITUDE = 3,
+		GPS_ALTITUDE = 4, GPS_UTM_E = 5, GPS_UTM_N = 6, GPS_QUALITY = 7, GPS_NUM_SATS = 8, GPS_HDOP = 9,
+		GPS_VDOP = 10, GPS_ERR_HORZ = 11, GPS_ERR_VERT = 12;
+
+	/**
+	 * The field of a heading record.
+	 */
+	public static final int HEADING_HEADING = 0;
+
+	/**
+	 * The fields of a motion command record.
+	 */
+	public static final int MOTION_CMD_SPEED = 0, MOTION_CMD_HEADING = 1;
+
+	/**
+	 * The fields of a WiFi beacon record.  The address is an IPv4 address.
+	 */
+	public static final int WIFI_BEACON_ADDRESS = 0, WIFI_BEACON_PORT = 1, WIFI_BEACON_SEQNO = 2;
+
+	/**
+	 * The fields of a TelosB transmission record.
+	 */
+	public static final int TELOSB_TX_SENDER = 0, TELOSB_TX_SEQNO = 1, TELOSB_TX_POWER = 2;
+
+	/**
+	 * The fields of a TelosB reception record.  The RSSI is the raw value reported by the radio.
+	 */
+	public static final int TELOSB_RX_RECEIVER = 0, TELOSB_RX_SENDER = 1, TELOSB_RX_SEQNO = 2,
+		TELOSB_RX_RSSI = 3, TELOSB_RX_LQI = 4, TELOSB_RX_MOTE_TIMESTAMP = 5;
+
+	/**
+	 * The schema of each record type, indexed by type.  Each field is its kind followed by its name.
+	 */
+	private static final String[][] SCHEMA = new String[8][];
+	private static final String[] TYPE_NAMES = new String[8];
+	static {
+		defineType(GPS, "GPS", "Itime_sec", "Itime_usec", "Ilatitude", "Ilongitude", "Ialtitude",
+				"Dutm_e", "Dutm_n", "Iquality", "Inum_sats", "Ihdop", "Ivdop", "Derr_horz", "Derr_vert");
+		defineType(HEADING, "Heading", "Dheading");
+		defineType(MOTION_CMD, "MotionCmd", "Dspeed", "Dheading");
+		defineType(WIFI_BEACON_TX, "WiFiBeaconTx", "Iaddress", "Iport", "Jseqno");
+		defineType(WIFI_BEACON_RX, "WiFiBeaconRx", "Iaddress", "Iport", "Jseqno");
+		defineType(TELOSB_TX, "TelosBTx", "Isender", "Iseqno", "ItxPower");
+		defineType(TELOSB_RX, "TelosBRx", "Ireceiver", "Isender", "Iseqno", "Irssi", "Ilqi", "ImoteTimestamp");
+	}
+
+	private static void defineType(int type, String name, String... fields) {
+		TYPE_NAMES[type] = name;
+		SCHEMA[type] = fields;
+	}
+
+	/**
+	 * @param type A record type.
+	 * @return The name of the record type, or null if the type is unknown.
+	 */
+	public static String getTypeName(int type) {
+		return type >= 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : null;
+	}
+
+	/**
+	 * @param type A record type.
+	 * @return The names of the record type's fields, in the order of the field constants,
+	 * or null if the type is unknown.
+	 */
+	public static String[] getFieldNames(int type) {
+		if (getTypeName(type) == null)
+			return null;
+		String[] result = new String[SCHEMA[type].length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = SCHEMA[type][i].substring(1);
+		return result;
+	}
+
+	/**
+	 * @param kind The kind of a field.
+	 * @return The number of bytes the field occupies.
+	 */
+	public static int getFieldSize(char kind) {
+		switch(kind) {
+		case 'I': return 4;
+		case 'J':
+		case 'D': return 8;
+		default: throw new IllegalArgumentException("Unknown field kind: " + kind);
+		}
+	}
+
+	/**
+	 * Returns the event log of a text log file.  Like the analyzers' cache files,
+	 * the event log is a hidden file in the same directory so it is not mistaken
+	 * for a log file.
+	 *
+	 * @param logFileName The name of the text log file.
+	 * @return The event log file.
+	 */
+	public static File getEventLogFile(String logFileName) {
+		File file = new File(logFileName);
+		return new File(file.getParentFile(), "." + file.getName() + FILE_SUFFIX);
+	}
+
+	private final DataOutputStream out;
+
+	/**
+	 * Creates an event log and writes its schema.  This is called by the LogWriter.
+	 *
+	 * @param file The event log file.
+	 * @throws IOException If the file could not be created.
+	 */
+	EventLog(File file) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+
+		int numTypes = 0;
+		for (int type = 0; type < SCHEMA.length; type++) {
+			if (SCHEMA[type] != null)
+				numTypes++;
+		}
+		out.writeByte(numTypes);
+		for (int type = 0; type < SCHEMA.length; type++) {
+			if (SCHEMA[type] != null) {
+				out.writeByte(type);
+				out.writeUTF(TYPE_NAMES[type]);
+				out.writeByte(SCHEMA[type].length);
+				for (int i = 0; i < SCHEMA[type].length; i++) {
+					out.writeUTF(SCHEMA[type][i].substring(1));
+					out.writeByte(SCHEMA[type][i].charAt(0));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a record.  This is called by the LogWriter.
+	 *
+	 * @param timestamp The time at which the event occurred.
+	 * @param line The number of lines in the text log that precede the event.
+	 * @param record The type of the record followed by its fields.
+	 * @throws IOException If the record could not be written.
+	 */
+	void write(long timestamp, long line, byte[] record) throws IOException {
+		out.writeByte(record[0]);
+		out.writeLong(timestamp);
+		out.writeInt((int)line);
+		out.write(record, 1, record.length - 1);
+	}
+
+	/**
+	 * Flushes the records written to the file.  This is called by the LogWriter.
+	 *
+	 * @throws IOException If the records could not be written.
+	 */
+	void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Allocates the buffer into which an event's fields are saved.
+	 *
+	 * @param type The type of the record.
+	 * @return The buffer, with the type already saved.
+	 */
+	private static ByteBuffer newRecord(int type) {
+		int size = 1;
+		for (int i = 0; i < SCHEMA[type].length; i++)
+			size += getFieldSize(SCHEMA[type][i].charAt(0));
+		return ByteBuffer.allocate(size).put((byte)type);
+	}
+
+	private static void submit(ByteBuffer record) {
+		submit(Logger.getFileLogger(), record);
+	}
+
+	private static void submit(FileLogger flogger, ByteBuffer record) {
+		if (flogger != null)
+			LogWriter.submit(new LogWriter.LogEntry(flogger, record.array()));
+	}
+
+	/**
+	 * @return Whether events are currently being recorded.
+	 */
+	private static boolean isRecording() {
+		return ENABLED && Logger.getFileLogger() != null;
+	}
+
+	/**
+	 * Records a GPS fix.
+	 *
+	 * @param gpsData The GPS data.
+	 */
+	public static void logGPS(PlayerGpsData gpsData) {
+		if (!isRecording())
+			return;
+		ByteBuffer record = newRecord(GPS);
+		record.putInt(gpsData.getTime_sec()).putInt(gpsData.getTime_usec())
+			.putInt(gpsData.getLatitude()).putInt(gpsData.getLongitude()).putInt(gpsData.getAltitude())
+			.putDouble(gpsData.getUtm_e()).putDouble(gpsData.getUtm_n())
+			.putInt(gpsData.getQuality()).putInt(gpsData.getNum_sats())
+			.putInt(gpsData.getHdop()).putInt(gpsData.getVdop())
+			.putDouble(gpsData.getErr_horz()).putDouble(gpsData.getErr_vert());
+		submit(record);
+	}
+
+	/**
+	 * Records a compass heading.
+	 *
+	 * @param heading The heading in radians.
+	 */
+	public static void logHeading(double heading) {
+		if (!isRecording())
+			return;
+		submit(newRecord(HEADING).putDouble(heading));
+	}
+
+	/**
+	 * Records a motion command sent to the robot.
+	 *
+	 * @param speed The speed.
+	 * @param heading The heading.
+	 */
+	public static void logMotionCmd(double speed, double heading) {
+		if (!isRecording())
+			return;
+		submit(newRecord(MOTION_CMD).putDouble(speed).putDouble(heading));
+	}
+
+	/**
+	 * Records the transmission of a WiFi beacon.
+	 *
+	 * @param address The address in the beacon.
+	 * @param port The port in the beacon.
+	 * @param seqno The beacon's sequence number.
+	 */
+	public static void logWiFiBeaconTx(InetAddress address, int port, long seqno) {
+		if (!isRecording())
+			return;
+		submit(newRecord(WIFI_BEACON_TX).putInt(toInt(address)).putInt(port).putLong(seqno));
+	}
+
+	/**
+	 * Records the reception of a WiFi beacon.
+	 *
+	 * @param address The address in the beacon.
+	 * @param port The port in the beacon.
+	 * @param seqno The beacon's sequence number.
+	 */
+	public static void logWiFiBeaconRx(InetAddress address, int port, long seqno) {
+		if (!isRecording())
+			return;
+		submit(newRecord(WIFI_BEACON_RX).putInt(toInt(address)).putInt(port).putLong(seqno));
+	}
+
+	/**
+	 * Records the transmission of a TelosB beacon.
+	 *
+	 * @param sender The ID of the sending mote.
+	 * @param seqno The beacon's sequence number.
+	 * @param txPower The transmission power.
+	 */
+	public static void logTelosBTx(int sender, int seqno, int txPower) {
+		if (!isRecording())
+			return;
+		submit(newRecord(TELOSB_TX).putInt(sender).putInt(seqno).putInt(txPower));
+	}
+
+	/**
+	 * Records the reception of a TelosB beacon.
+	 *
+	 * @param receiver The ID of the receiving mote.
+	 * @param sender The ID of the sending mote.
+	 * @param seqno The beacon's sequence number.
+	 * @param rssi The raw RSSI reported by the radio.
+	 * @param lqi The link quality indicator.
+	 * @param moteTimestamp The timestamp recorded by the receiving mote.
+	 */
+	public static void logTelosBRx(int receiver, int sender, int seqno, int rssi, int lqi, int moteTimestamp) {
+		logTelosBRx(Logger.getFileLogger(), receiver, sender, seqno, rssi, lqi, moteTimestamp);
+	}
+
+	/**
+	 * Records the reception of a TelosB beacon in the event log of a FileLogger
+	 * other than the Logger's.  The text line describing the reception must be
+	 * written to the same FileLogger so their line numbers match.
+	 *
+	 * @param flogger The FileLogger, or null to not record the event.
+	 * @param receiver The ID of the receiving mote.
+	 * @param sender The ID of the sending mote.
+	 * @param seqno The beacon's sequence number.
+	 * @param rssi The raw RSSI reported by the radio.
+	 * @param lqi The link quality indicator.
+	 * @param moteTimestamp The timestamp recorded by the receiving mote.
+	 */
+	public static void logTelosBRx(FileLogger flogger, int receiver, int sender, int seqno, int rssi, int lqi,
+			int moteTimestamp)
+	{
+		if (!ENABLED || flogger == null)
+			return;
+		submit(flogger, newRecord(TELOSB_RX).putInt(receiver).putInt(sender).putInt(seqno)
+				.putInt(rssi).putInt(lqi).putInt(moteTimestamp));
+	}
+
+	/**
+	 * Converts an IPv4 address into an int.  Other addresses are recorded as 0.
+	 *
+	 * @param address The address.
+	 * @return The address as an int.
+	 */
+	private static int toInt(InetAddress address) {
+		byte[] bytes = address == null ? null : address.getAddress();
+		if (bytes == null || bytes.length != 4)
+			return 0;
+		return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+	}
+}
@@ -16,6 +16,23 @@ public class FileLogger {
 	private PrintWriter pw = null;
 	private boolean printTimeStamp = true;
 	
+	/**
+	 * The name of the file, or null if it could not be created.
+	 */
+	private String fileName = null;
+	
+	/**
+	 * The number of lines written to the file.  This is only accessed by the LogWriter.
+	 */
+	private long numLines = 0;
+	
+	/**
+	 * The event log that is written alongside this file.  It is created when the
+	 * first event is recorded.  This is only accessed by the LogWriter.
+	 */
+	private EventLog eventLog = null;
+	private boolean eventLogFailed = false;
+	
 	/**
 	 * A constructor.
 	 * 
@@ -57,6 +74,7 @@ public class FileLogger {
 		try {
 			FileWriter fw = new FileWriter(actualFileName, false /* overwrite */);
 			pw = new PrintWriter(fw);
+			this.fileName = actualFileName;
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -93,17 +111,86 @@ public class FileLogger {
 	}
 	
 	/**
-	 * Saves a String to a file.
+	 * Saves a String to a file.  The string is written by a background thread,
+	 * but the time stamp is the time at which this method is called.
 	 * 
 	 * @param msg The string to log.
+	 * @see LogWriter
 	 */
 	public void log(String msg) {
+		if (pw != null)
+			LogWriter.submit(new LogWriter.LogEntry(LogWriter.NO_CONSOLE, this, null, null, msg));
+	}
+	
+	/**
+	 * Writes a line to the file without flushing it.  This is only called by the LogWriter.
+	 * 
+	 * @param timestamp The time at which the line was logged.
+	 * @param msg The line.
+	 */
+	void write(long timestamp, String msg) {
 		if (pw != null) {
-			if (printTimeStamp)
-				pw.println("[" + System.currentTimeMillis() + "] " + msg);
-			else
-				pw.println(msg);
+			if (printTimeStamp) {
+				pw.print('[');
+				pw.print(timestamp);
+				pw.print("] ");
+			}
+			pw.println(msg);
+			numLines += countLines(msg);
+		}
+	}
+	
+	/**
+	 * Counts the number of lines a message occupies in the file, as they
+	 * would be read by BufferedReader.readLine().
+	 * 
+	 * @param msg The message.
+	 * @return The number of lines.
+	 */
+	private static int countLines(String msg) {
+		int result = 1;
+		for (int i=0; i < msg.length(); i++) {
+			char c = msg.charAt(i);
+			if (c == '\n' || (c == '\r' && i + 1 < msg.length() && msg.charAt(i + 1) != '\n'))
+				result++;
+		}
+		return result;
+	}
+	
+	/**
+	 * Writes a record to this file's event log, creating the event log if necessary.
+	 * This is only called by the LogWriter.
+	 * 
+	 * @param timestamp The time at which the event occurred.
+	 * @param record The type of the record followed by its fields.
+	 * @see EventLog
+	 */
+	void writeEvent(long timestamp, byte[] record) {
+		if (fileName == null || eventLogFailed)
+			return;
+		try {
+			if (eventLog == null)
+				eventLog = new EventLog(EventLog.getEventLogFile(fileName));
+			eventLog.write(timestamp, numLines, record);
+		} catch(IOException e) {
+			e.printStackTrace();
+			eventLogFailed = true;
+		}
+	}
+	
+	/**
+	 * Flushes the lines written to the file.  This is only called by the LogWriter.
+	 */
+	void flush() {
+		if (pw != null)
 			pw.flush();
+		if (eventLog != null) {
+			try {
+				eventLog.flush();
+			} catch(IOException e) {
+				e.printStackTrace();
+				eventLogFailed = true;
+			}
 		}
 	}
 }
@@ -0,0 +1,169 @@
+package pharoslabut.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies that can be updated concurrently without locking.
+ * The latencies are counted in buckets whose widths grow exponentially: every
+ * power of two microseconds is divided into four buckets, so a percentile is
+ * reported to within 25% of its true value while a few hundred counters cover
+ * latencies from microseconds to days.
+ *
+ * @see LatencyTracer
+ */
+public class LatencyHistogram {
+
+	/**
+	 * The number of buckets per power of two is 2^SUB_BUCKET_BITS.
+	 */
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Enough buckets for 2^40 microseconds, which is about 12 days.
+	 */
+	private static final int NUM_BUCKETS = SUB_BUCKETS + (40 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNs = new AtomicLong();
+	private final AtomicLong maxNs = new AtomicLong();
+
+	/**
+	 * The constructor.
+	 *
+	 * @param name The name of the histogram.
+	 */
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return The name of the histogram.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records the time elapsed since a sample arrived.
+	 *
+	 * @param arrivalTime The value of System.nanoTime() when the sample arrived, or 0
+	 * if it is unknown, in which case nothing is recorded.
+	 */
+	public void recordSince(long arrivalTime) {
+		if (arrivalTime != 0)
+			record(System.nanoTime() - arrivalTime);
+	}
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param latencyNs The latency in nanoseconds.
+	 */
+	public void record(long latencyNs) {
+		if (latencyNs < 0)
+			latencyNs = 0;
+		buckets.incrementAndGet(getBucket(latencyNs / 1000));
+		count.incrementAndGet();
+		totalNs.addAndGet(latencyNs);
+
+		long currMax;
+		while (latencyNs > (currMax = maxNs.get()) && !maxNs.compareAndSet(currMax, latencyNs));
+	}
+
+	/**
+	 * @param latencyUs A latency in microseconds.
+	 * @return The index of the bucket that counts the latency.
+	 */
+	private static int getBucket(long latencyUs) {
+		if (latencyUs < SUB_BUCKETS)
+			return (int)latencyUs;
+		int exp = 63 - Long.numberOfLeadingZeros(latencyUs);
+		int shift = exp - SUB_BUCKET_BITS;
+		int indx = SUB_BUCKETS + shift * SUB_BUCKETS + (int)((latencyUs >> shift) & (SUB_BUCKETS - 1));
+		return Math.min(indx, NUM_BUCKETS - 1);
+	}
+
+	/**
+	 * @param indx The index of a bucket.
+	 * @return The largest latency in microseconds that is counted in the bucket.
+	 */
+	private static long getBucketLimit(int indx) {
+		if (indx < SUB_BUCKETS)
+			return indx;
+		int shift = (indx - SUB_BUCKETS) / SUB_BUCKETS;
+		int sub = (indx - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((long)(SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * @return The number of latencies recorded.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return The average latency in milliseconds.
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : totalNs.get() / 1e6 / n;
+	}
+
+	/**
+	 * @return The largest latency in milliseconds.
+	 */
+	public double getMax() {
+		return maxNs.get() / 1e6;
+	}
+
+	/**
+	 * Returns the latency below which a fraction of the latencies fall.  It is the
+	 * upper limit of the bucket that contains the percentile, and is never more
+	 * than the largest latency.
+	 *
+	 * @param fraction The fraction, between 0 and 1, e.g., 0.99 for the 99th percentile.
+	 * @return The percentile in milliseconds.
+	 */
+	public double getPercentile(double fraction) {
+		long n = count.get();
+		if (n == 0)
+			return 0;
+		long rank = Math.max(1, (long)Math.ceil(fraction * n));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return Math.min(getBucketLimit(i) / 1e3, getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Discards the latencies recorded so far.
+	 */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			buckets.set(i, 0);
+		count.set(0);
+		totalNs.set(0);
+		maxNs.set(0);
+	}
+
+	/**
+	 * @return A String representation of this class.
+	 */
+	public String toString() {
+		return name + ": n=" + getCount() + ", mean=" + format(getMean()) + "ms, p50=" + format(getPercentile(0.5))
+			+ "ms, p90=" + format(getPercentile(0.9)) + "ms, p99=" + format(getPercentile(0.99))
+			+ "ms, max=" + format(getMax()) + "ms";
+	}
+
+	private static String format(double ms) {
+		return String.valueOf(Math.round(ms * 1000) / 1000.0);
+	}
+}
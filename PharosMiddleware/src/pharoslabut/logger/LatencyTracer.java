@@ -0,0 +1,102 @@
+package pharoslabut.logger;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Traces how old the compass and GPS readings are as they travel from the
+ * Player server to the robot's motors.  When a reading's message header is
+ * read from the Player server, PlayerClient records its arrival time, which
+ * stays with the reading as it passes through the SensorEventBus, the
+ * CompassDataBuffer or GPSDataBuffer, and NavigateCompassGPS, and into the
+ * MotionTask that the MotionArbiter sends to the robot.  Each of these stages
+ * records the reading's age in a LatencyHistogram, so the difference between
+ * consecutive stages is the latency that the stage adds.
+ *
+ * <p>The histograms are written to the log by dump(), which is called when an
+ * experiment stops.  If the system property "PharosMiddleware.latencyDumpPeriod"
+ * is defined, they are also dumped every that many milliseconds while running.</p>
+ *
+ * @see LatencyHistogram
+ */
+public class LatencyTracer {
+
+	/**
+	 * The age of a compass reading when it is delivered to the CompassDataBuffer.
+	 */
+	public static final LatencyHistogram COMPASS_BUFFER = new LatencyHistogram("compass->buffer");
+
+	/**
+	 * The age of a compass reading when NavigateCompassGPS uses it to calculate a motion task.
+	 */
+	public static final LatencyHistogram COMPASS_NAVIGATE = new LatencyHistogram("compass->navigate");
+
+	/**
+	 * The age of a compass reading when a motion command based on it is sent to the robot.
+	 */
+	public static final LatencyHistogram COMPASS_MOTION_CMD = new LatencyHistogram("compass->motionCmd");
+
+	/**
+	 * The age of a GPS reading when it is delivered to the GPSDataBuffer.
+	 */
+	public static final LatencyHistogram GPS_BUFFER = new LatencyHistogram("gps->buffer");
+
+	/**
+	 * The age of a GPS reading when NavigateCompassGPS uses it to calculate a motion task.
+	 */
+	public static final LatencyHistogram GPS_NAVIGATE = new LatencyHistogram("gps->navigate");
+
+	/**
+	 * The age of a GPS reading when a motion command based on it is sent to the robot.
+	 */
+	public static final LatencyHistogram GPS_MOTION_CMD = new LatencyHistogram("gps->motionCmd");
+
+	/**
+	 * All of the histograms, in the order in which they are dumped.
+	 */
+	private static final LatencyHistogram[] HISTOGRAMS = {COMPASS_BUFFER, COMPASS_NAVIGATE, COMPASS_MOTION_CMD,
+		GPS_BUFFER, GPS_NAVIGATE, GPS_MOTION_CMD};
+
+	static {
+		String period = System.getProperty("PharosMiddleware.latencyDumpPeriod");
+		if (period != null) {
+			try {
+				long periodMs = Long.parseLong(period);
+				new Timer("LatencyTracer", true).schedule(new TimerTask() {
+					public void run() {
+						dump();
+					}
+				}, periodMs, periodMs);
+			} catch(NumberFormatException e) {
+				Logger.logErr("Invalid PharosMiddleware.latencyDumpPeriod " + period);
+			}
+		}
+	}
+
+	/**
+	 * @return All of the histograms.
+	 */
+	public static LatencyHistogram[] getHistograms() {
+		return HISTOGRAMS.clone();
+	}
+
+	/**
+	 * Writes the histograms that contain latencies to the log.
+	 */
+	public static void dump() {
+		StringBuffer sb = new StringBuffer("Sensor latencies:");
+		for (int i = 0; i < HISTOGRAMS.length; i++) {
+			if (HISTOGRAMS[i].getCount() > 0)
+				sb.append("\n\t" + HISTOGRAMS[i]);
+		}
+		Logger.log(sb.toString());
+	}
+
+	/**
+	 * Discards the latencies recorded so far, e.g., at the start of an experiment.
+	 */
+	public static void reset() {
+		for (int i = 0; i < HISTOGRAMS.length; i++)
+			HISTOGRAMS[i].reset();
+	}
+}
@@ -0,0 +1,275 @@
+package pharoslabut.logger;
+
+import java.lang.StackWalker.StackFrame;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The asynchronous backend of Logger and FileLogger.  Logging threads only
+ * record the message, the time, and the calling stack frame in a LogEntry and
+ * append it to a lock-free queue.  A background thread formats the entries,
+ * including resolving the caller's class and method names, writes them to
+ * standard out, standard error, and the log files, and flushes once per batch.
+ * Records destined for a log file's EventLog are written the same way.
+ * This keeps the cost of logging off of the threads that control the robot.
+ *
+ * <p>Entries are written in the order they were logged.  Pending entries are
+ * written when the JVM shuts down, including via System.exit().  Define the
+ * system property "PharosMiddleware.syncLogging" to write each entry before
+ * the logging call returns, which is useful when debugging a crash.</p>
+ *
+ * @see Logger
+ * @see FileLogger
+ */
+class LogWriter {
+
+	/**
+	 * Whether entries are written by the calling thread.
+	 */
+	static final boolean SYNC = System.getProperty("PharosMiddleware.syncLogging") != null;
+
+	/**
+	 * The maximum time in milliseconds between batches.
+	 */
+	private static final long BATCH_INTERVAL = 10;
+
+	/**
+	 * The maximum number of pending entries.  Logging threads wait for the writer
+	 * when there are more than this so a burst of logging cannot exhaust the heap.
+	 */
+	private static final int MAX_PENDING = 1 << 16;
+
+	/**
+	 * The destination of an entry on the console.
+	 */
+	static final int NO_CONSOLE = 0, STD_OUT = 1, STD_ERR = 2;
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	/**
+	 * A message waiting to be written.  It is also a node in the queue.
+	 */
+	static final class LogEntry {
+		final long timestamp;
+		final int console;
+		final FileLogger file;
+		final String msg;
+
+		/**
+		 * The caller's stack frame, or null if the message is not prefixed
+		 * with the caller's class and method names.
+		 */
+		final StackFrame caller;
+
+		/**
+		 * Added between the caller prefix and the message, e.g., "ERROR: ".
+		 */
+		final String tag;
+
+		/**
+		 * A record for the file's event log, or null if this entry is a message.
+		 */
+		final byte[] event;
+
+		volatile LogEntry next;
+
+		LogEntry(int console, FileLogger file, StackFrame caller, String tag, String msg) {
+			this.timestamp = System.currentTimeMillis();
+			this.console = console;
+			this.file = file;
+			this.caller = caller;
+			this.tag = tag;
+			this.msg = msg;
+			this.event = null;
+		}
+
+		LogEntry(FileLogger file, byte[] event) {
+			this.timestamp = System.currentTimeMillis();
+			this.console = NO_CONSOLE;
+			this.file = file;
+			this.caller = null;
+			this.tag = null;
+			this.msg = null;
+			this.event = event;
+		}
+	}
+
+	private static final LogWriter writer = new LogWriter();
+
+	/**
+	 * The queue is a linked list of entries.  Logging threads atomically swap
+	 * themselves in as the tail, so adding an entry never blocks.  Only the writer
+	 * thread removes entries.  The head is a consumed entry that acts as a stub.
+	 */
+	private final AtomicReference<LogEntry> tail;
+	private LogEntry head;
+
+	private final AtomicInteger numPending = new AtomicInteger();
+
+	/**
+	 * The number of entries submitted and written.  Used by flush().
+	 */
+	private final AtomicLong numSubmitted = new AtomicLong();
+	private volatile long numWritten = 0;
+
+	private final Thread thread;
+
+	/**
+	 * The log files written to in the current batch.  They are flushed at the end of the batch.
+	 */
+	private final Vector<FileLogger> dirtyFiles = new Vector<FileLogger>();
+
+	private final StringBuilder outBuf = new StringBuilder();
+	private final StringBuilder errBuf = new StringBuilder();
+
+	private LogWriter() {
+		head = new LogEntry(NO_CONSOLE, null, null, null, null);
+		tail = new AtomicReference<LogEntry>(head);
+
+		thread = new Thread("LogWriter") {
+			public void run() {
+				writeLoop();
+			}
+		};
+		thread.setDaemon(true);
+		if (!SYNC)
+			thread.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread("LogWriter shutdown") {
+			public void run() {
+				flush();
+			}
+		});
+	}
+
+	/**
+	 * Queues an entry to be written.
+	 *
+	 * @param entry The entry.
+	 */
+	static void submit(LogEntry entry) {
+		writer.add(entry);
+	}
+
+	/**
+	 * Waits until all of the entries submitted so far are written.
+	 */
+	static void flush() {
+		writer.waitForWriter();
+	}
+
+	private void add(LogEntry entry) {
+		if (SYNC) {
+			synchronized (this) {
+				write(entry);
+				endBatch();
+			}
+			return;
+		}
+
+		numSubmitted.incrementAndGet();
+		LogEntry prev = tail.getAndSet(entry);
+		prev.next = entry;
+
+		if (numPending.incrementAndGet() > MAX_PENDING)
+			waitForWriter();
+	}
+
+	private void waitForWriter() {
+		if (SYNC || Thread.currentThread() == thread)
+			return;
+		long target = numSubmitted.get();
+		while (numWritten < target && thread.isAlive()) {
+			LockSupport.unpark(thread);
+			LockSupport.parkNanos(100000);
+		}
+	}
+
+	private void writeLoop() {
+		while (true) {
+			LogEntry entry;
+			int count = 0;
+			while ((entry = head.next) != null) {
+				head = entry;
+				try {
+					write(entry);
+				} catch(Throwable t) {
+					t.printStackTrace();
+				}
+				count++;
+
+				// Write large backlogs in bounded batches.
+				if (count == 1024) {
+					endBatch(count);
+					count = 0;
+				}
+			}
+			endBatch(count);
+			Logger.updateDebugMode();
+			LockSupport.parkNanos(BATCH_INTERVAL * 1000000);
+		}
+	}
+
+	private void endBatch(int count) {
+		endBatch();
+		numPending.addAndGet(-count);
+		numWritten += count;
+	}
+
+	/**
+	 * Writes the console output buffered during the batch and flushes the log files.
+	 */
+	private void endBatch() {
+		if (outBuf.length() > 0) {
+			System.out.print(outBuf);
+			System.out.flush();
+			outBuf.setLength(0);
+		}
+		if (errBuf.length() > 0) {
+			System.err.print(errBuf);
+			System.err.flush();
+			errBuf.setLength(0);
+		}
+		for (int i=0; i < dirtyFiles.size(); i++)
+			dirtyFiles.get(i).flush();
+		dirtyFiles.clear();
+	}
+
+	private void write(LogEntry entry) {
+		if (entry.event != null) {
+			entry.file.writeEvent(entry.timestamp, entry.event);
+			if (!dirtyFiles.contains(entry.file))
+				dirtyFiles.add(entry.file);
+			return;
+		}
+
+		String line = entry.msg;
+		if (entry.caller != null)
+			line = getPrefix(entry.caller) + entry.tag + entry.msg;
+
+		if (entry.console == STD_OUT)
+			outBuf.append(line).append(LINE_SEPARATOR);
+		else if (entry.console == STD_ERR)
+			errBuf.append(line).append(LINE_SEPARATOR);
+
+		if (entry.file != null) {
+			entry.file.write(entry.timestamp, line);
+			if (!dirtyFiles.contains(entry.file))
+				dirtyFiles.add(entry.file);
+		}
+	}
+
+	/**
+	 * Generates the prefix that is added to the beginning of a log statement.
+	 * The prefix is the name of the calling class and method.
+	 *
+	 * @param caller The stack frame of the code that called the Logger.
+	 * @return The prefix.
+	 */
+	private static String getPrefix(StackFrame caller) {
+		return caller.getClassName() + ": " + caller.getMethodName() + ": ";
+	}
+}
@@ -1,31 +1,44 @@
 package pharoslabut.logger;
 
+import java.lang.StackWalker.StackFrame;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
 /**
- * Logs messages generated by the Pharos Middleware.
+ * Logs messages generated by the Pharos Middleware.  The messages are
+ * written asynchronously by the LogWriter so logging does not delay the
+ * calling thread.
  * 
  * @author Chien-Liang Fok
  */
 public class Logger {
 
-	private static FileLogger flogger = null;
+	private static volatile FileLogger flogger = null;
 	
 	/**
-	 * Generates a prefix that should be added to the 
-	 * beginning of a log statement.  The prefix is the 
-	 * name of the calling class and method.
-	 * 
-	 * @return the log prefix.
+	 * Whether the system property "PharosMiddleware.debug" is defined.  Reading the
+	 * property on every call is too slow for the hot paths, so it is cached and
+	 * refreshed by the LogWriter once per batch, i.e., within about 10ms of the
+	 * property changing.
 	 */
-	private static String getPrefix() {
-		// Add the name of the calling method to the beginning of the message.
-		StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
-		StackTraceElement caller = stackTraceElements[3];
-		String callingClassName = caller.getClassName();
-		String callingMethodName = caller.getMethodName();
-		
-		String result = callingClassName + ": " + callingMethodName + ": ";
-		return result;
-	}
+	private static volatile boolean debug = System.getProperty ("PharosMiddleware.debug") != null;
+	
+	/**
+	 * Walks only as far as the frame of the code that called the Logger.
+	 */
+	private static final StackWalker walker = StackWalker.getInstance(Collections.<StackWalker.Option>emptySet(), 3);
+	
+	/**
+	 * Skips getCaller() and the Logger method, returning the frame of the code that called the Logger.
+	 */
+	private static final Function<Stream<StackFrame>, Optional<StackFrame>> findCaller 
+		= new Function<Stream<StackFrame>, Optional<StackFrame>>() {
+			public Optional<StackFrame> apply(Stream<StackFrame> frames) {
+				return frames.skip(2).findFirst();
+			}
+		};
 	
 	/**
 	 * Sets the file logger that this logger uses.  
@@ -36,6 +49,52 @@ public class Logger {
 		Logger.flogger = flogger;
 	}
 	
+	/**
+	 * @return The file logger that this logger uses, or null if there is none.
+	 */
+	public static FileLogger getFileLogger() {
+		return Logger.flogger;
+	}
+	
+	/**
+	 * Determines whether logDbg() records anything.  This can be checked before 
+	 * building an expensive debug message.
+	 * 
+	 * @return true if debug mode is enabled or a file logger is set.
+	 */
+	public static boolean isDebugEnabled() {
+		return Logger.flogger != null || isDebugMode();
+	}
+	
+	private static boolean isDebugMode() {
+		// Without the LogWriter thread nothing refreshes the cached value
+		if (LogWriter.SYNC)
+			updateDebugMode();
+		return debug;
+	}
+	
+	/**
+	 * Re-reads the system property "PharosMiddleware.debug".  This is called by the LogWriter.
+	 */
+	static void updateDebugMode() {
+		debug = System.getProperty ("PharosMiddleware.debug") != null;
+	}
+	
+	/**
+	 * @return The stack frame of the code that called the Logger method that called this.
+	 */
+	private static StackFrame getCaller() {
+		return walker.walk(findCaller).orElse(null);
+	}
+	
+	/**
+	 * Waits until all of the messages logged so far are written.  This is 
+	 * automatically done when the JVM exits.
+	 */
+	public static void flush() {
+		LogWriter.flush();
+	}
+	
 	/**
 	 * Logs a message to StdErr.
 	 * The caller's class and method name is added to the front of the message.
@@ -43,10 +102,8 @@ public class Logger {
 	 * @param msg The message to log.
 	 */
 	public static void logErr(String msg) {
-		String result = getPrefix() + "ERROR: " + msg;
-		System.err.println(result);
-		if (Logger.flogger != null)
-			Logger.flogger.log(result);
+		// The caller's name is resolved by the LogWriter.
+		LogWriter.submit(new LogWriter.LogEntry(LogWriter.STD_ERR, Logger.flogger, getCaller(), "ERROR: ", msg));
 	}
 	
 	/**
@@ -56,10 +113,7 @@ public class Logger {
 	 * @param msg The message to log.
 	 */
 	public static void logWarn(String msg) {
-		String result = getPrefix() + "WARNING: " + msg;
-		System.err.println(result);
-		if (Logger.flogger != null)
-			Logger.flogger.log(result);
+		LogWriter.submit(new LogWriter.LogEntry(LogWriter.STD_ERR, Logger.flogger, getCaller(), "WARNING: ", msg));
 	}
 	
 	/**
@@ -69,25 +123,23 @@ public class Logger {
 	 * @param msg The message to log.
 	 */
 	public static void log(String msg) {
-		String result = getPrefix() + msg;
-		System.out.println(result);
-		if (Logger.flogger != null)
-			Logger.flogger.log(result);
+		LogWriter.submit(new LogWriter.LogEntry(LogWriter.STD_OUT, Logger.flogger, getCaller(), "", msg));
 	}
 	
 	/**
 	 * Logs a message to StdOut if debug mode is enabled.
 	 * Debug mode is enabled by the system property "PharosMiddleware.debug" being set
-	 * to a value that is not null.
+	 * to a value that is not null.  The message is also saved by the file logger, if any.
 	 * The caller's class and method name is added to the front of the message.
 	 * 
 	 * @param msg The message to log.
 	 */
 	public static void logDbg(String msg) {
-		String result = getPrefix() + msg;
-		if (System.getProperty ("PharosMiddleware.debug") != null)
-			System.out.println(result);
-		if (Logger.flogger != null)
-			Logger.flogger.log(result);
+		FileLogger flogger = Logger.flogger;
+		boolean debug = isDebugMode();
+		if (debug || flogger != null) {
+			LogWriter.submit(new LogWriter.LogEntry(debug ? LogWriter.STD_OUT : LogWriter.NO_CONSOLE, 
+					flogger, getCaller(), "", msg));
+		}
 	}
 }
@@ -0,0 +1,254 @@
+package pharoslabut.logger.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import pharoslabut.logger.EventLog;
+
+/**
+ * Reads the records in an event log through a memory-mapped buffer.  The
+ * reader is positioned on one record at a time, whose fields are read
+ * directly from the buffer without creating any objects.
+ *
+ * <p>Fields are located using the schema at the beginning of the file, so
+ * record types that the reader does not know about are skipped and fields
+ * that are added to a record type in the future are ignored.  A partial
+ * record at the end of the file, which occurs if the robot crashed while
+ * the event log was being written, is also ignored.</p>
+ *
+ * <p>Typical usage is:</p>
+ * <pre>
+ *   EventLogReader events = new EventLogReader(file);
+ *   while (events.next()) {
+ *       if (events.getType() == EventLog.HEADING)
+ *           ... events.getDouble(EventLog.HEADING_HEADING) ...
+ *   }
+ * </pre>
+ *
+ * @see pharoslabut.logger.EventLog
+ */
+public class EventLogReader {
+
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * The size in bytes of each type of record, or 0 if the type is not in the schema.
+	 */
+	private final int[] recordSizes = new int[256];
+
+	/**
+	 * The offset of each field within a record, indexed by type and then by the
+	 * field constants defined by EventLog.  An offset is -1 if the file does not
+	 * contain the field.
+	 */
+	private final int[][] fieldOffsets = new int[256][];
+
+	/**
+	 * The position of the current record, and of the next record.
+	 */
+	private int currPos = -1;
+	private int nextPos;
+
+	/**
+	 * The line number of the last complete record, or -1 if there is none.
+	 */
+	private int lastLine = -1;
+
+	/**
+	 * Opens an event log.
+	 *
+	 * @param file The event log.
+	 * @throws IOException If the file could not be read or is not an event log.
+	 */
+	public EventLogReader(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Event log " + file + " is too large");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+
+		try {
+			readSchema();
+		} catch(BufferUnderflowException e) {
+			throw new IOException("Event log " + file + " has an incomplete schema");
+		} catch(IllegalArgumentException e) {
+			throw new IOException("Event log " + file + " has an invalid schema: " + e.getMessage());
+		}
+		nextPos = buffer.position();
+
+		// Find the last complete record so covers() can tell whether the file was truncated
+		int start = nextPos;
+		while (next())
+			lastLine = getLine();
+		currPos = -1;
+		nextPos = start;
+	}
+
+	private void readSchema() throws IOException {
+		if (buffer.getInt() != EventLog.MAGIC)
+			throw new IOException("Not an event log");
+		int version = buffer.getShort();
+		if (version != EventLog.VERSION)
+			throw new IOException("Unsupported event log version: " + version);
+
+		int numTypes = buffer.get() & 0xff;
+		for (int i = 0; i < numTypes; i++) {
+			int type = buffer.get() & 0xff;
+			String typeName = readUTF();
+
+			int numFields = buffer.get() & 0xff;
+			String[] names = new String[numFields];
+			int[] offsets = new int[numFields];
+			int offset = EventLog.RECORD_HEADER_SIZE;
+			for (int j = 0; j < numFields; j++) {
+				names[j] = readUTF();
+				offsets[j] = offset;
+				offset += EventLog.getFieldSize((char)buffer.get());
+			}
+			recordSizes[type] = offset;
+
+			// Match the fields in the file with the fields this reader expects.
+			String[] expected = EventLog.getFieldNames(type);
+			if (expected != null && EventLog.getTypeName(type).equals(typeName)) {
+				fieldOffsets[type] = new int[expected.length];
+				for (int k = 0; k < expected.length; k++) {
+					fieldOffsets[type][k] = -1;
+					for (int j = 0; j < numFields; j++) {
+						if (names[j].equals(expected[k]))
+							fieldOffsets[type][k] = offsets[j];
+					}
+				}
+			}
+		}
+	}
+
+	private String readUTF() {
+		int length = buffer.getShort() & 0xffff;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		try {
+			return new String(bytes, "UTF-8");
+		} catch(java.io.UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Advances to the next record of a known type.
+	 *
+	 * @return true if there is a next record, false if the end of the file was reached.
+	 */
+	public boolean next() {
+		int limit = buffer.limit();
+		while (nextPos < limit) {
+			int type = buffer.get(nextPos) & 0xff;
+			int size = recordSizes[type];
+			if (size == 0 || nextPos + size > limit)
+				break;  // corrupt or partially written record
+			currPos = nextPos;
+			nextPos += size;
+			if (fieldOffsets[type] != null)
+				return true;
+		}
+		currPos = -1;
+		nextPos = limit;
+		return false;
+	}
+
+	/**
+	 * @return The type of the current record, e.g., EventLog.GPS.
+	 */
+	public int getType() {
+		return buffer.get(currPos) & 0xff;
+	}
+
+	/**
+	 * @return The time at which the current event occurred.
+	 */
+	public long getTimestamp() {
+		return buffer.getLong(currPos + 1);
+	}
+
+	/**
+	 * @return The number of lines in the text log that precede the current event.
+	 */
+	public int getLine() {
+		return buffer.getInt(currPos + 9);
+	}
+
+	/**
+	 * Determines whether the event log contains the event described by a line of
+	 * the text log.  An event is recorded right after its text line, so the event
+	 * log covers every line up to the line number of its last record.  Lines after
+	 * that, e.g., because the robot crashed before the event log was flushed, must
+	 * be parsed from the text log.
+	 *
+	 * @param lineNo The number of the text line, counting from 1.
+	 * @return Whether the event log covers the line.
+	 */
+	public boolean covers(int lineNo) {
+		return lineNo <= lastLine;
+	}
+
+	/**
+	 * @param field The field, e.g., EventLog.GPS_HDOP.
+	 * @return The field's value, or 0 if the file does not contain the field.
+	 */
+	public int getInt(int field) {
+		int offset = fieldOffsets[getType()][field];
+		return offset == -1 ? 0 : buffer.getInt(currPos + offset);
+	}
+
+	/**
+	 * @param field The field, e.g., EventLog.WIFI_BEACON_SEQNO.
+	 * @return The field's value, or 0 if the file does not contain the field.
+	 */
+	public long getLong(int field) {
+		int offset = fieldOffsets[getType()][field];
+		return offset == -1 ? 0 : buffer.getLong(currPos + offset);
+	}
+
+	/**
+	 * @param field The field, e.g., EventLog.HEADING_HEADING.
+	 * @return The field's value, or 0 if the file does not contain the field.
+	 */
+	public double getDouble(int field) {
+		int offset = fieldOffsets[getType()][field];
+		return offset == -1 ? 0 : buffer.getDouble(currPos + offset);
+	}
+
+	/**
+	 * @param field A field containing an IPv4 address, e.g., EventLog.WIFI_BEACON_ADDRESS.
+	 * @return The address in dotted decimal notation.
+	 */
+	public String getAddress(int field) {
+		int address = getInt(field);
+		return (address >>> 24) + "." + ((address >> 16) & 0xff) + "." + ((address >> 8) & 0xff) + "." + (address & 0xff);
+	}
+
+	/**
+	 * Returns the event log of a text log file if it exists and can be read.
+	 *
+	 * @param logFileName The name of the text log file.
+	 * @return The event log, or null if there is none.
+	 */
+	public static EventLogReader open(String logFileName) {
+		File file = EventLog.getEventLogFile(logFileName);
+		if (!file.exists())
+			return null;
+		try {
+			return new EventLogReader(file);
+		} catch(IOException e) {
+			pharoslabut.logger.Logger.logWarn("Unable to read event log " + file + ", parsing the text log instead: " + e);
+			return null;
+		}
+	}
+}
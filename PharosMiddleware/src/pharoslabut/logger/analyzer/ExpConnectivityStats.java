@@ -7,8 +7,16 @@ package pharoslabut.logger.analyzer;
 //import java.util.Enumeration;
 import java.awt.Color;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
@@ -26,6 +34,7 @@ import org.jfree.ui.ApplicationFrame;
 import org.jfree.ui.RectangleEdge;
 import org.jfree.ui.RefineryUtilities;
 
+import pharoslabut.RobotIPAssignments;
 import pharoslabut.logger.FileLogger;
 import pharoslabut.logger.Logger;
 import pharoslabut.navigate.Location;
@@ -79,36 +88,55 @@ public class ExpConnectivityStats {
 	 * @param saveToFile whether to save the error calculations to a file.
 	 */
 	public ExpConnectivityStats(String expDirName, long samplingInterval, long disconnectionInterval, boolean saveToFile) {
+		this(new ExpData(expDirName), samplingInterval, disconnectionInterval);
 		this.expDirName = expDirName;
+		
+		printResults(saveToFile);
+		showChart();
+	}
+	
+	/**
+	 * Computes the connectivity statistics of experiment data that was already read.  This
+	 * neither prints nor plots the results.  Use it to evaluate several sampling and
+	 * disconnection intervals without reading the experiment log files again.
+	 * 
+	 * @param expData The experiment data.
+	 * @param samplingInterval  The interval at which to calculate the size of the neighbor list in milliseconds.
+	 * @param disconnectionInterval The number of milliseconds that a node can remain within the neighbor list
+	 * without receiving a beacon.
+	 */
+	public ExpConnectivityStats(ExpData expData, long samplingInterval, long disconnectionInterval) {
+		this.expData = expData;
 		this.samplingInterval = samplingInterval;
 		this.disconnectionInterval = disconnectionInterval;
 		
-		// Read in the experiment log files
-		expData = new ExpData(expDirName);
-//		File expDir = new File(expDirName);
-//		FilenameFilter filter = new FilenameFilter() {
-//		    public boolean accept(File dir, String name) {
-//		        return !name.startsWith(".") && name.endsWith(".log");
-//		    }
-//		};
-//		
-//		String[] logFileNames = expDir.list(filter);
-//		
-//		for (int i=0; i < logFileNames.length; i++) {
-//			String logFileName = logFileNames[i];
-//			Logger.logDbg("Reading node log file " + logFileName);
-//			robotDatas.add(new RobotExpData(logFileName));
-//		}
-		
 		calcStats();
-		printResults(saveToFile);
-		showChart();
 	}
 	
 	/**
 	 * Calculates the experiment statistics.
+	 * 
+	 * <p>The beacons received by each node are swept once in time order.  Each node's
+	 * neighbor table is advanced to the next sampling time, rather than rebuilt from
+	 * the start of the experiment at every sample.  The partitions are the connected
+	 * components of the bi-directional links at that time, which are found with a
+	 * union-find.</p>
 	 */
 	private void calcStats() {
+		Vector<RobotExpData> robots = new Vector<RobotExpData>();
+		Enumeration<RobotExpData> e = expData.getRobotEnum();
+		while (e.hasMoreElements())
+			robots.add(e.nextElement());
+		
+		int numNodes = robots.size();
+		NbrTable[] nbrTables = new NbrTable[numNodes];
+		HashMap<Integer, Integer> nodeIndices = new HashMap<Integer, Integer>();
+		for (int i=0; i < numNodes; i++) {
+			nbrTables[i] = new NbrTable(robots.get(i));
+			nodeIndices.put(robots.get(i).getRobotID(), i);
+		}
+		
+		UnionFind partitions = new UnionFind(numNodes);
 		
 		// For each time interval.
 		for (long currTime = expData.getExpStartTime(); currTime < expData.getExpStopTime(); 
@@ -117,34 +145,37 @@ public class ExpConnectivityStats {
 			Logger.logDbg("Computing stats for time " + currTime);
 			
 			// Get the node state for each node at currTime
-			Vector<NodeState> nodeStates = new Vector<NodeState>();
-			
-			Enumeration<RobotExpData> e = expData.getRobotEnum();
-			while (e.hasMoreElements()) {
-				RobotExpData robotData = e.nextElement();
-				NbrList nbrList = NbrList.getNbrList(robotData, currTime, disconnectionInterval);
-				NodeState currNodeState = new NodeState(robotData.getRobotID(), nbrList, 
-						robotData.getSpeed(currTime), robotData.getHeading(currTime), robotData.getLocation(currTime));
-				nodeStates.add(currNodeState);
+			NodeState[] nodeStates = new NodeState[numNodes];
+			for (int i=0; i < numNodes; i++) {
+				RobotExpData robotData = robots.get(i);
+				nbrTables[i].advanceTo(currTime);
+				nodeStates[i] = new NodeState(robotData.getRobotID(), robotData.getSpeed(currTime), 
+						robotData.getHeading(currTime), robotData.getLocation(currTime));
 			}
 			
-			// This holds the results for this timestamp.
-			ExpConnStat expConnStat = new ExpConnStat(currTime); 
+			// Join every pair of nodes that have a bi-directional link
+			partitions.reset();
+			for (int i=0; i < numNodes; i++) {
+				int nodeID = nodeStates[i].getID();
+				for (int nbrID : nbrTables[i].getNbrIDs(currTime)) {
+					Integer j = nodeIndices.get(nbrID);
+					if (j != null && nbrID != nodeID && nbrTables[j].isConnectedTo(nodeID, currTime))
+						partitions.union(i, j);
+				}
+			}
 			
-			// Compute the partitions by going through each node state and
-			// grabbing the maximum closure of connected nodes (this requires a 
-			// recursive function).  For each node, if it is already part of an 
-			// existing partition, ignore it.  Otherwise, create a new partition
-			// containing the node and its maximum closeure of connected nodes.
-			for (int i=0; i < nodeStates.size(); i++) {
-				NodeState currNode = nodeStates.get(i);
-				if (!expConnStat.containsNode(currNode)) {
-					
-					// Get the transitive closure of connected nodes.
-					// This forms a partition that will be added to the ExpConnStat.
-					Partition p = getTransitiveConnectionClosure(currNode, nodeStates);
+			// This holds the results for this timestamp.  The partitions are ordered by their first node.
+			ExpConnStat expConnStat = new ExpConnStat(currTime, nodeStates);
+			HashMap<Integer, Partition> partitionOfRoot = new HashMap<Integer, Partition>();
+			for (int i=0; i < numNodes; i++) {
+				int root = partitions.find(i);
+				Partition p = partitionOfRoot.get(root);
+				if (p == null) {
+					p = new Partition();
+					partitionOfRoot.put(root, p);
 					expConnStat.addPartition(p);
 				}
+				p.addNode(nodeStates[i]);
 			}
 			
 			expConnStats.add(expConnStat);
@@ -156,48 +187,11 @@ public class ExpConnectivityStats {
 	}
 	
 	/**
-	 * Searches for all nodes that are connected to the current node.
+	 * Prints the statistics of each sample and of the whole experiment.
 	 * 
-	 * @param currNode The current node.
-	 * @param nodeStates The nodes that are transitively connected to it.
-	 * @return The collection of nodes that are connected to the currNode.
+	 * @param saveToFile whether to also save them to a file.
 	 */
-	private Partition getTransitiveConnectionClosure(NodeState currNode, Vector<NodeState> nodeStates) {
-		Partition p = new Partition();
-		p.addNode(currNode);
-		getTransitiveConnectionClosureHelper(currNode, nodeStates, p);
-		return p;
-	}
-	
-	/**
-	 * Recursively searches for all nodes that are connected to the current node.
-	 * The termination condition is when all connected neighbors are already in the partition.
-	 * 
-	 * @param baseNode The base node that serves as a reference point.
-	 * @param nodeStates The node states.
-	 * @param partition The partition for holding the nodes connected to the curr node.
-	 */
-	private void getTransitiveConnectionClosureHelper(NodeState baseNode, Vector<NodeState> nodeStates,
-			Partition partition)
-	{
-		// For each node in the experiment
-		for (int i=0; i < nodeStates.size(); i++) {
-			NodeState potentialNbr = nodeStates.get(i);
-			
-			// If a bi-directional link exists between the base node and the other node
-			if (baseNode.getID() != potentialNbr.getID() && 
-					baseNode.isConnectedTo(potentialNbr.getID()) && potentialNbr.isConnectedTo(baseNode.getID())) 
-			{
-				// If the other node is not in the partition, add it, then recurse.
-				if (!partition.containsNode(potentialNbr)) {
-					partition.addNode(potentialNbr);
-					getTransitiveConnectionClosureHelper(potentialNbr, nodeStates, partition);  // Here is the recursive call
-				}
-			}
-		}
-	}
-	
-	private void printResults(boolean saveToFile) {
+	public void printResults(boolean saveToFile) {
 		FileLogger flogger = null;
 		if (saveToFile) {
 			String fileName = expData.getMissionName() + "-" + expData.getExpName() + "-ConnStats.txt";
@@ -235,7 +229,7 @@ public class ExpConnectivityStats {
 	/**
 	 * Plots the experiment connectivity statistics on charts for easy visualization.
 	 */
-	private void showChart() {
+	public void showChart() {
 		// Create the various data series...
 		XYSeries numPartitionSeries = new XYSeries("Number of partitions");
 		XYIntervalSeries avgPartitionSizeSeries = new XYIntervalSeries("Average partition size");
@@ -496,13 +490,23 @@ public class ExpConnectivityStats {
 	 */
 	private class ExpConnStat {
 		private long timestamp;
+		private NodeState[] nodeStates;
 		private Vector<Partition> partitions = new Vector<Partition>();
 		
+		/**
+		 * The statistics over all pairs of nodes, which are computed when first needed.
+		 */
+		private AverageStatistic relativeMobility, separationDistance;
+		
 		/**
 		 * The constructor.
+		 * 
+		 * @param timestamp The time of the sample.
+		 * @param nodeStates The state of every node at the time of the sample.
 		 */
-		public ExpConnStat(long timestamp) {
+		public ExpConnStat(long timestamp, NodeState[] nodeStates) {
 			this.timestamp = timestamp;
+			this.nodeStates = nodeStates;
 		}
 		
 		/**
@@ -522,22 +526,6 @@ public class ExpConnectivityStats {
 			partitions.add(p);
 		}
 		
-		/**
-		 * Checks whether the node is already part of an existing partition.
-		 * 
-		 * @param node The node to check
-		 * @return true if the node is part of an existing partition.
-		 */
-		public boolean containsNode(NodeState node) {
-			for (int i=0; i < partitions.size(); i++) {
-				Partition currPart = partitions.get(i);
-				if (currPart.containsNode(node)) {
-					return true;
-				}
-			}
-			return false;
-		}
-		
 		/**
 		 * @return The number of partitions.
 		 */
@@ -579,20 +567,22 @@ public class ExpConnectivityStats {
 		 * @return The average relative velocities between every pair of nodes.
 		 */
 		public AverageStatistic getRelativeMobility() {
-			Vector<Double> relativeMobilities = new Vector<Double>();
-			
-			Vector<NodeState> allNodes = getAllNodes();
-			for (int i=0; i < allNodes.size() - 1; i++) {
-				NodeState referenceNode = allNodes.get(i);
+			if (relativeMobility == null) {
+				Vector<Double> relativeMobilities = new Vector<Double>();
 				
-				for (int j=i+1; j < allNodes.size(); j++) {
-					NodeState otherNode = allNodes.get(j);
-					double relativeSpeed = referenceNode.getRelativeSpeed(otherNode);
-					relativeMobilities.add(relativeSpeed);
+				for (int i=0; i < nodeStates.length - 1; i++) {
+					NodeState referenceNode = nodeStates[i];
+					
+					for (int j=i+1; j < nodeStates.length; j++) {
+						NodeState otherNode = nodeStates[j];
+						double relativeSpeed = referenceNode.getRelativeSpeed(otherNode);
+						relativeMobilities.add(relativeSpeed);
+					}
 				}
+				
+				relativeMobility = new AverageStatistic(relativeMobilities);
 			}
-			
-			return new AverageStatistic(relativeMobilities);
+			return relativeMobility;
 		}
 		
 		/**
@@ -600,31 +590,22 @@ public class ExpConnectivityStats {
 		 * @return The average distances between every pair of nodes.
 		 */
 		public AverageStatistic getSeparationDistance() {
-			Vector<Double> relativeDistances = new Vector<Double>();
-			
-			Vector<NodeState> allNodes = getAllNodes();
-			for (int i=0; i < allNodes.size() - 1; i++) {
-				NodeState referenceNode = allNodes.get(i);
+			if (separationDistance == null) {
+				Vector<Double> relativeDistances = new Vector<Double>();
 				
-				for (int j=i+1; j < allNodes.size(); j++) {
-					NodeState otherNode = allNodes.get(j);
-					double relativeDist = referenceNode.getRelativeDistance(otherNode);
-					relativeDistances.add(relativeDist);
+				for (int i=0; i < nodeStates.length - 1; i++) {
+					NodeState referenceNode = nodeStates[i];
+					
+					for (int j=i+1; j < nodeStates.length; j++) {
+						NodeState otherNode = nodeStates[j];
+						double relativeDist = referenceNode.getRelativeDistance(otherNode);
+						relativeDistances.add(relativeDist);
+					}
 				}
+				
+				separationDistance = new AverageStatistic(relativeDistances);
 			}
-			
-			return new AverageStatistic(relativeDistances);
-		}
-		
-		/**
-		 * @return  all nodes in the experiment
-		 */
-		private Vector<NodeState> getAllNodes() {
-			Vector<NodeState> result = new Vector<NodeState>();
-			for (int i=0; i < partitions.size(); i++) {
-				result.addAll(partitions.get(i).getNodes());
-			}
-			return result;
+			return separationDistance;
 		}
 	}
 	
@@ -696,7 +677,6 @@ public class ExpConnectivityStats {
 	 */
 	private class NodeState {
 		private int nodeID;
-		private NbrList nbrList;
 		private double speed, heading;
 		private Location location;
 		
@@ -708,9 +688,8 @@ public class ExpConnectivityStats {
 		 * @param heading The heading of the node in radians (-PI to PI with 0 degrees due north and -PI/2 due East)
 		 * @param location The location of the robot.
 		 */
-		public NodeState(int nodeID, NbrList nbrList, double speed, double heading, Location location) {
+		public NodeState(int nodeID, double speed, double heading, Location location) {
 			this.nodeID = nodeID;
-			this.nbrList = nbrList;
 			this.speed = speed;
 			this.heading = heading;
 			this.location = location;
@@ -720,16 +699,6 @@ public class ExpConnectivityStats {
 //			return nbrList;
 //		}
 		
-		/**
-		 * Checks whether this node is connected to the specified node.
-		 * 
-		 * @param nodeID The ID of the node to check.
-		 * @return true if a node with the specified ID is in this node's neighbor list.
-		 */
-		public boolean isConnectedTo(int nodeID) {
-			return nbrList.contains(nodeID);
-		}
-		
 		/**
 		 * 
 		 * @return The ID of the node.
@@ -790,6 +759,134 @@ public class ExpConnectivityStats {
 		}
 	}
 	
+	/**
+	 * The neighbors of one node, which are updated as the node's received beacons are
+	 * swept in time order.  It produces the same neighbor list as NbrList.getNbrList()
+	 * for a non-decreasing sequence of times.
+	 */
+	private class NbrTable {
+		/**
+		 * The received beacons sorted by time.
+		 */
+		private WiFiBeaconRx[] rxEvents;
+		
+		/**
+		 * The index of the next beacon that has not been applied.
+		 */
+		private int nextRxEvent = 0;
+		
+		/**
+		 * The time the last beacon from each neighbor was received, by neighbor ID.
+		 */
+		private HashMap<Integer, Long> lastRxTimes = new HashMap<Integer, Long>();
+		
+		/**
+		 * The constructor.
+		 * 
+		 * @param robotData The node's experiment data.
+		 */
+		public NbrTable(RobotExpData robotData) {
+			Vector<WiFiBeaconRx> rxs = robotData.getWiFiBeaconRxs();
+			rxEvents = rxs.toArray(new WiFiBeaconRx[rxs.size()]);
+			Arrays.sort(rxEvents, new Comparator<WiFiBeaconRx>() {
+				public int compare(WiFiBeaconRx rx1, WiFiBeaconRx rx2) {
+					return rx1.getTimestamp() < rx2.getTimestamp() ? -1 
+							: (rx1.getTimestamp() == rx2.getTimestamp() ? 0 : 1);
+				}
+			});
+		}
+		
+		/**
+		 * Applies the beacons received before the specified time.
+		 * 
+		 * @param time The time, which must not be earlier than in the previous call.
+		 */
+		public void advanceTo(long time) {
+			while (nextRxEvent < rxEvents.length && rxEvents[nextRxEvent].getTimestamp() < time) {
+				WiFiBeaconRx rx = rxEvents[nextRxEvent++];
+				lastRxTimes.put(RobotIPAssignments.getID(rx.getBeacon().getAddress()), rx.getTimestamp());
+			}
+		}
+		
+		/**
+		 * Checks whether a node is in the neighbor list.
+		 * 
+		 * @param nodeID The ID of the node to check.
+		 * @param time The current time.
+		 * @return true if a beacon from the node was received within the disconnection interval.
+		 */
+		public boolean isConnectedTo(int nodeID, long time) {
+			Long lastRxTime = lastRxTimes.get(nodeID);
+			return lastRxTime != null && time - lastRxTime <= disconnectionInterval;
+		}
+		
+		/**
+		 * @param time The current time.
+		 * @return The IDs of the nodes in the neighbor list.
+		 */
+		public ArrayList<Integer> getNbrIDs(long time) {
+			ArrayList<Integer> result = new ArrayList<Integer>(lastRxTimes.size());
+			for (Integer nodeID : lastRxTimes.keySet()) {
+				if (isConnectedTo(nodeID, time))
+					result.add(nodeID);
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Tracks which nodes are in the same partition.  Nodes are identified by
+	 * their index.
+	 */
+	private static class UnionFind {
+		private int[] parent;
+		private int[] size;
+		
+		public UnionFind(int numNodes) {
+			parent = new int[numNodes];
+			size = new int[numNodes];
+			reset();
+		}
+		
+		/**
+		 * Places every node in a partition of its own.
+		 */
+		public void reset() {
+			for (int i=0; i < parent.length; i++) {
+				parent[i] = i;
+				size[i] = 1;
+			}
+		}
+		
+		/**
+		 * @return The representative node of the partition containing the node.
+		 */
+		public int find(int node) {
+			while (parent[node] != node) {
+				parent[node] = parent[parent[node]]; // path halving
+				node = parent[node];
+			}
+			return node;
+		}
+		
+		/**
+		 * Merges the partitions containing two nodes.
+		 */
+		public void union(int node1, int node2) {
+			int root1 = find(node1);
+			int root2 = find(node2);
+			if (root1 == root2)
+				return;
+			if (size[root1] < size[root2]) {
+				int tmp = root1;
+				root1 = root2;
+				root2 = tmp;
+			}
+			parent[root2] = root1;
+			size[root1] += size[root2];
+		}
+	}
+	
 	/**
 	 * This is used internally to print text to the screen and to a file.
 	 * 
@@ -813,7 +910,7 @@ public class ExpConnectivityStats {
 	private static void usage() {
 		print("Usage: " + ExpConnectivityStats.class.getName()  + " <options>\n");
 		print("Where <options> include:");
-		print("\t-expDir <log file name>: The log file generated during the experiment. (required)");
+		print("\t-expDir <log file name>: The log file generated during the experiment.  Repeat to analyze several experiments in parallel. (required)");
 		print("\t-save: Save the experiment connectivity stats to a text file.  The name will be \"[exp name]-ConnStats.txt\" (optional)");
 		print("\t-samplingInterval <sampling interval>: The interval in milliseconds at which to calculate the statistics. (optional, default 5000)");
 		print("\t-disconnectionInterval <timeout interval>: The interval in milliseconds that a node may remain in a neighbor list without a beacon being received (optional, default 6000)");
@@ -821,7 +918,7 @@ public class ExpConnectivityStats {
 	}
 	
 	public static void main(String[] args) {
-		String expDirName = null;
+		final Vector<String> expDirNames = new Vector<String>();
 		long samplingInterval = 10000;
 		long disconnectionInterval = 6000;
 		boolean saveToFile = false;
@@ -842,7 +939,7 @@ public class ExpConnectivityStats {
 					disconnectionInterval = Long.valueOf(args[++i]);
 				}
 				else if (args[i].equals("-expDir")) {
-					expDirName = args[++i];
+					expDirNames.add(args[++i]);
 				}
 				else if (args[i].equals("-debug") || args[i].equals("-d")) {
 					System.setProperty ("PharosMiddleware.debug", "true");
@@ -859,19 +956,52 @@ public class ExpConnectivityStats {
 			System.exit(1);
 		}
 		
-		if (expDirName == null) {
+		if (expDirNames.size() == 0) {
 			printErr("Must specify experiment directory.");
 			usage();
 			System.exit(1);
 		}
 		
-		print("Experiment directory: " + expDirName);
+		print("Experiment directories: " + expDirNames);
 		print("Debug: " + (System.getProperty ("PharosMiddleware.debug") != null));
 		
-		try {
-			new ExpConnectivityStats(expDirName, samplingInterval, disconnectionInterval, saveToFile);
-		} catch(Exception e) {
-			e.printStackTrace();
+		if (expDirNames.size() == 1) {
+			try {
+				new ExpConnectivityStats(expDirNames.get(0), samplingInterval, disconnectionInterval, saveToFile);
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		
+		// Read and analyze the experiments in parallel, then report them in the order they were specified
+		int numThreads = Math.min(expDirNames.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		Vector<Future<ExpConnectivityStats>> results = new Vector<Future<ExpConnectivityStats>>();
+		for (int i=0; i < expDirNames.size(); i++) {
+			final String expDirName = expDirNames.get(i);
+			final long finalSamplingInterval = samplingInterval;
+			final long finalDisconnectionInterval = disconnectionInterval;
+			results.add(executor.submit(new Callable<ExpConnectivityStats>() {
+				public ExpConnectivityStats call() {
+					ExpConnectivityStats stats = new ExpConnectivityStats(new ExpData(expDirName), 
+							finalSamplingInterval, finalDisconnectionInterval);
+					stats.expDirName = expDirName;
+					return stats;
+				}
+			}));
+		}
+		executor.shutdown();
+		
+		for (int i=0; i < results.size(); i++) {
+			print("Experiment directory: " + expDirNames.get(i));
+			try {
+				ExpConnectivityStats stats = results.get(i).get();
+				stats.printResults(saveToFile);
+				stats.showChart();
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
 		}
 	}
 }
@@ -1,6 +1,10 @@
 package pharoslabut.logger.analyzer;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.io.*;
 
 import pharoslabut.logger.Logger;
@@ -13,6 +17,14 @@ import pharoslabut.logger.Logger;
  */
 public class ExpData {
 	
+	/**
+	 * The maximum number of robot log files that are read at the same time.  This
+	 * defaults to the number of processors and can be changed using the system property
+	 * "PharosMiddleware.logReaderThreads".
+	 */
+	public static final int NUM_READER_THREADS = Integer.getInteger("PharosMiddleware.logReaderThreads", 
+			Runtime.getRuntime().availableProcessors());
+	
 	private String expName = null;
 	private Vector<RobotExpData> robots = new Vector<RobotExpData>();
 	
@@ -54,11 +66,44 @@ public class ExpData {
 		    System.err.println("No files found.");
 		    System.exit(1);
 		} else {
-		    for (int i=0; i<logFiles.length; i++) {
-		    	String robotFileName = expDir + "/" + logFiles[i];
-		    	Logger.logDbg("Reading robot log " + robotFileName);
-		        robots.add(new RobotExpData(robotFileName));
-		    }
+		    readRobotLogs(expDir, logFiles);
+		}
+	}
+	
+	/**
+	 * Reads the robot log files concurrently.  Each log file is independent so they
+	 * are parsed by the tasks of a fork-join pool.  The robots are added in the 
+	 * same order as the log files regardless of which finishes first.
+	 * 
+	 * @param expDir The directory containing the experiment log files.
+	 * @param logFiles The names of the robot log files.
+	 */
+	private void readRobotLogs(String expDir, String[] logFiles) {
+		Vector<Callable<RobotExpData>> tasks = new Vector<Callable<RobotExpData>>();
+		for (int i=0; i<logFiles.length; i++) {
+			final String robotFileName = expDir + "/" + logFiles[i];
+			tasks.add(new Callable<RobotExpData>() {
+				public RobotExpData call() {
+					Logger.logDbg("Reading robot log " + robotFileName);
+					return new RobotExpData(robotFileName);
+				}
+			});
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(NUM_READER_THREADS, logFiles.length)));
+		try {
+			List<Future<RobotExpData>> results = pool.invokeAll(tasks);
+			for (int i=0; i < results.size(); i++)
+				robots.add(results.get(i).get());
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} catch (ExecutionException e) {
+			Logger.logErr("Unable to read robot log: " + e.getCause());
+			e.getCause().printStackTrace();
+			System.exit(1);
+		} finally {
+			pool.shutdown();
 		}
 	}
 	
@@ -0,0 +1,245 @@
+package pharoslabut.logger.analyzer;
+
+/**
+ * Splits lines of an experiment log file into tokens without using regular
+ * expressions.  The tokens are recorded as offsets into the line, and numeric
+ * tokens are parsed directly from the line, so tokenizing a line does not
+ * allocate any objects.  A single instance can be reused for every line
+ * in a log file, but it is not thread safe.
+ *
+ * <p>tokenize(line, offset, delimiters, collapse) produces the same tokens as
+ * line.substring(offset).split(regex) where regex is "[delimiters]" if collapse
+ * is false, or "[delimiters]+" if collapse is true.  This includes the leading
+ * empty token when the line starts with a delimiter and the removal of trailing
+ * empty tokens.</p>
+ */
+public class LogLineTokenizer {
+
+	/**
+	 * The characters matched by \s in a regular expression.
+	 */
+	public static final String WHITESPACE = " \t\n\u000B\f\r";
+
+	/**
+	 * Powers of ten that are exactly representable as doubles.
+	 */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private String line;
+	private int[] starts = new int[32];
+	private int[] ends = new int[32];
+	private int numTokens;
+
+	/**
+	 * Tokenizes part of a line.
+	 *
+	 * @param line The line.
+	 * @param offset The index of the first character to tokenize.
+	 * @param delimiters The characters that separate tokens.
+	 * @param collapse Whether consecutive delimiters are treated as a single delimiter.
+	 * @return This tokenizer.
+	 */
+	public LogLineTokenizer tokenize(String line, int offset, String delimiters, boolean collapse) {
+		this.line = line;
+		numTokens = 0;
+
+		int length = line.length();
+		if (offset == length) {
+			// Splitting an empty string results in a single empty token.
+			addToken(offset, offset);
+			return this;
+		}
+
+		int tokenStart = offset;
+		int i = offset;
+		while (i < length) {
+			if (delimiters.indexOf(line.charAt(i)) != -1) {
+				addToken(tokenStart, i);
+				i++;
+				if (collapse) {
+					while (i < length && delimiters.indexOf(line.charAt(i)) != -1)
+						i++;
+				}
+				tokenStart = i;
+			} else
+				i++;
+		}
+		addToken(tokenStart, length);
+
+		// Remove trailing empty tokens.
+		while (numTokens > 0 && starts[numTokens - 1] == ends[numTokens - 1])
+			numTokens--;
+		return this;
+	}
+
+	private void addToken(int start, int end) {
+		if (numTokens == starts.length) {
+			starts = java.util.Arrays.copyOf(starts, numTokens * 2);
+			ends = java.util.Arrays.copyOf(ends, numTokens * 2);
+		}
+		starts[numTokens] = start;
+		ends[numTokens] = end;
+		numTokens++;
+	}
+
+	/**
+	 * @return The number of tokens in the most recently tokenized line.
+	 */
+	public int numTokens() {
+		return numTokens;
+	}
+
+	/**
+	 * @param indx The index of the token.
+	 * @return The token as a string.
+	 */
+	public String getToken(int indx) {
+		checkIndex(indx);
+		return line.substring(starts[indx], ends[indx]);
+	}
+
+	/**
+	 * @param indx The index of the token.
+	 * @return The token's value as a long.
+	 * @throws NumberFormatException If the token is not a long.
+	 */
+	public long getLong(int indx) {
+		checkIndex(indx);
+		return parseLong(line, starts[indx], ends[indx]);
+	}
+
+	/**
+	 * @param indx The index of the token.
+	 * @return The token's value as an int.
+	 * @throws NumberFormatException If the token is not an int.
+	 */
+	public int getInt(int indx) {
+		checkIndex(indx);
+		long result = parseLong(line, starts[indx], ends[indx]);
+		if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE)
+			throw numberFormatException(line, starts[indx], ends[indx]);
+		return (int)result;
+	}
+
+	/**
+	 * @param indx The index of the token.
+	 * @return The token's value as a double.
+	 * @throws NumberFormatException If the token is not a double.
+	 */
+	public double getDouble(int indx) {
+		checkIndex(indx);
+		return parseDouble(line, starts[indx], ends[indx]);
+	}
+
+	private void checkIndex(int indx) {
+		if (indx < 0 || indx >= numTokens)
+			throw new ArrayIndexOutOfBoundsException(indx);
+	}
+
+	/**
+	 * Parses the timestamp at the beginning of a log line, which has the format
+	 * "[timestamp] ...".
+	 *
+	 * @param line The line.
+	 * @return The timestamp.
+	 * @throws NumberFormatException If the line does not begin with a timestamp.
+	 */
+	public static long parseTimestamp(String line) {
+		int end = line.indexOf(']');
+		if (end < 1)
+			throw new NumberFormatException("No timestamp in line: " + line);
+		return parseLong(line, 1, end);
+	}
+
+	/**
+	 * Parses a decimal long from part of a string.  Like Long.parseLong(), an
+	 * optional leading sign is accepted.
+	 *
+	 * @param s The string.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @return The value.
+	 * @throws NumberFormatException If the characters are not a long.
+	 */
+	public static long parseLong(String s, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+		if (i == end)
+			throw numberFormatException(s, start, end);
+
+		// Accumulate as a negative number so Long.MIN_VALUE can be parsed.
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = s.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || result < limit / 10)
+				throw numberFormatException(s, start, end);
+			result *= 10;
+			if (result < limit + digit)
+				throw numberFormatException(s, start, end);
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Parses a double from part of a string.  Plain decimals with at most 15
+	 * significant digits, which covers the values in the log files, are converted
+	 * exactly without creating a string.  Anything else is passed to
+	 * Double.parseDouble().
+	 *
+	 * @param s The string.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @return The value.
+	 * @throws NumberFormatException If the characters are not a double.
+	 */
+	public static double parseDouble(String s, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int numDigits = 0;
+		int fractionDigits = 0;
+		boolean seenDigit = false;
+		boolean seenPoint = false;
+		boolean fastPath = true;
+		for (; i < end && fastPath; i++) {
+			char c = s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				seenDigit = true;
+				if (mantissa != 0 || c != '0')
+					numDigits++;
+				mantissa = mantissa * 10 + (c - '0');
+				if (seenPoint)
+					fractionDigits++;
+				fastPath = numDigits <= 15 && fractionDigits < POWERS_OF_TEN.length;
+			} else if (c == '.' && !seenPoint)
+				seenPoint = true;
+			else
+				fastPath = false;
+		}
+
+		if (fastPath && seenDigit) {
+			// Both the mantissa and power of ten are exact so the division is correctly rounded.
+			double result = mantissa / POWERS_OF_TEN[fractionDigits];
+			return negative ? -result : result;
+		}
+		return Double.parseDouble(s.substring(start, end));
+	}
+
+	private static NumberFormatException numberFormatException(String s, int start, int end) {
+		return new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
+	}
+}
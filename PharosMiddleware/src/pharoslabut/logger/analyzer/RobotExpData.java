@@ -5,6 +5,7 @@ import java.util.*;
 
 import pharoslabut.beacon.WiFiBeacon;
 import pharoslabut.exceptions.PharosException;
+import pharoslabut.logger.EventLog;
 import pharoslabut.logger.FileLogger;
 import pharoslabut.logger.Logger;
 import pharoslabut.RobotIPAssignments;
@@ -18,6 +19,34 @@ import playerclient3.structures.gps.PlayerGpsData;
  */
 public class RobotExpData {
 	public static final boolean ENABLE_DEBUG_STATEMENTS = true;
+	
+	/**
+	 * Whether the data parsed from a log file is cached in a binary file so later
+	 * analyses do not need to parse the log file again.  Define the system property
+	 * "PharosMiddleware.noLogCache" to always parse the log files.
+	 */
+	public static final boolean USE_CACHE = System.getProperty("PharosMiddleware.noLogCache") == null;
+	
+	/**
+	 * The suffix of the cache files.
+	 */
+	public static final String CACHE_FILE_SUFFIX = ".bin";
+	
+	/**
+	 * Identifies a cache file.  The version must be incremented whenever the 
+	 * format of the cache file or the way the log files are parsed changes.
+	 */
+	private static final int CACHE_MAGIC = 0x50584431, CACHE_VERSION = 2;
+	
+	/**
+	 * Whether the events recorded in a log file's event log, if any, are read
+	 * instead of parsing the corresponding lines of the log file.  Define the
+	 * system property "PharosMiddleware.noEventLog" to always parse the log files.
+	 * 
+	 * @see pharoslabut.logger.EventLog
+	 */
+	public static final boolean USE_EVENT_LOG = System.getProperty("PharosMiddleware.noEventLog") == null;
+	
 	/**
 	 * The name of the robot's experiment log file.
 	 */
@@ -84,7 +113,39 @@ public class RobotExpData {
 	 * Holds the times when a WiFi beacon was received.
 	 */
 	private Vector<WiFiBeaconRx> wifiBeaconRxs = new Vector<WiFiBeaconRx>();
-	
+
+	/**
+	 * Time-sorted columnar copies of the histories above.  These are built
+	 * lazily by the timestamp queries and discarded whenever the timestamps
+	 * are calibrated.  A series is also rebuilt if the size of the vector it
+	 * was built from changes.
+	 */
+	private TimeSeries locationSeries, headingSeries, motionCmdSeries, pathEdgeSeries, telosBRxSeries;
+
+	/**
+	 * The columns within locationSeries.
+	 */
+	private static final int LAT = 0, LON = 1;
+
+	/**
+	 * The columns within motionCmdSeries.
+	 */
+	private static final int SPEED_CMD = 0, HEADING_CMD = 1;
+
+	/**
+	 * Maps a TelosB transmission's (sender ID, sequence number) to the record of
+	 * receiving it.  The first telosBRxIndexSize records in telosBRxHist are indexed.
+	 */
+	private HashMap<Long, TelosBRxRecord> telosBRxIndex;
+	private int telosBRxIndexSize;
+
+	/**
+	 * Maps a sequence number to the record of this robot transmitting it.
+	 * The first telosBTxIndexSize records in telosBTxHist are indexed.
+	 */
+	private HashMap<Integer, TelosBTxRecord> telosBTxIndex;
+	private int telosBTxIndexSize;
+
 	/**
 	 * This is a protected constructor that does not take any parameters. It is used
 	 * by subclasses.
@@ -148,19 +209,16 @@ public class RobotExpData {
 		if (stopTime > getStopTime())
 			stopTime = getStopTime();
 		
-		Enumeration<TelosBRxRecord> e = telosBRxHist.elements();
-		while (e.hasMoreElements()) {
-			TelosBRxRecord currRecord = e.nextElement();
+		// The series is sorted by time so the beacons are already in the order they were received.
+		TimeSeries series = getTelosBRxSeries();
+		int lastIndx = series.floorIndex(stopTime);
+		for (int i = series.ceilIndex(startTime); i <= lastIndx; i++) {
+			TelosBRxRecord currRecord = telosBRxHist.get(series.getSource(i));
 			
-			// Only add the RSSI to the vector if the beacon was sent over
-			// the relevant time windows and it was sent from the specified robot
-			if (currRecord.getTimeStamp() >= startTime && currRecord.getTimeStamp() <= stopTime 
-					&& currRecord.getSenderID() == robotID) 
-			{
+			// Only add the RSSI to the vector if it was sent from the specified robot
+			if (currRecord.getSenderID() == robotID)
 				result.add(currRecord);
-			}
 		}
-		Collections.sort(result);
 		return result;
 	}
 	/**
@@ -314,12 +372,29 @@ public class RobotExpData {
 	 * @return The reception record, or null if the robot did not receive the transmission.
 	 */
 	public TelosBRxRecord getTelosBRx(int robotID, int seqno) {
-		for (int i=0; i < telosBRxHist.size(); i++) {
-			TelosBRxRecord currRxRec = telosBRxHist.get(i);
-			if (currRxRec.getSenderID() == robotID && currRxRec.getSeqNo() == seqno)
-				return currRxRec;
+		if (telosBRxIndex == null || telosBRxIndexSize > telosBRxHist.size()) {
+			telosBRxIndex = new HashMap<Long, TelosBRxRecord>();
+			telosBRxIndexSize = 0;
 		}
-		return null;
+		
+		// Index any records added since the index was last updated.  Only the first
+		// reception of a transmission is indexed.
+		for (; telosBRxIndexSize < telosBRxHist.size(); telosBRxIndexSize++) {
+			TelosBRxRecord currRxRec = telosBRxHist.get(telosBRxIndexSize);
+			Long key = getTelosBRxKey(currRxRec.getSenderID(), currRxRec.getSeqNo());
+			if (!telosBRxIndex.containsKey(key))
+				telosBRxIndex.put(key, currRxRec);
+		}
+		return telosBRxIndex.get(getTelosBRxKey(robotID, seqno));
+	}
+	
+	/**
+	 * @param robotID The transmitter's ID.
+	 * @param seqno The sequence number.
+	 * @return The key of the transmission within telosBRxIndex.
+	 */
+	private static Long getTelosBRxKey(int robotID, int seqno) {
+		return ((long)robotID << 32) | (seqno & 0xffffffffL);
 	}
 	
 	/**
@@ -330,12 +405,19 @@ public class RobotExpData {
 	 * @return The TelosB transmission record, or null if none found.
 	 */
 	public TelosBTxRecord getTelosBTx(int seqno) {
-		for (int i=0; i < telosBTxHist.size(); i++) {
-			TelosBTxRecord txRec = telosBTxHist.get(i);
-			if (txRec.getSeqNo() == seqno)
-				return txRec;
+		if (telosBTxIndex == null || telosBTxIndexSize > telosBTxHist.size()) {
+			telosBTxIndex = new HashMap<Integer, TelosBTxRecord>();
+			telosBTxIndexSize = 0;
 		}
-		return null;
+		
+		// Index any records added since the index was last updated.  Only the first
+		// transmission with a given sequence number is indexed.
+		for (; telosBTxIndexSize < telosBTxHist.size(); telosBTxIndexSize++) {
+			TelosBTxRecord txRec = telosBTxHist.get(telosBTxIndexSize);
+			if (!telosBTxIndex.containsKey(txRec.getSeqNo()))
+				telosBTxIndex.put(txRec.getSeqNo(), txRec);
+		}
+		return telosBTxIndex.get(seqno);
 	}
 	
 	/**
@@ -436,33 +518,67 @@ public class RobotExpData {
 	
 	/**
 	 * Reads and organizes the data contained in the robot's experiment log file.
+	 * If the log file was previously parsed, the data is loaded from its cache file
+	 * instead.  Otherwise the log file is parsed and the cache file is created.
 	 * 
 	 * @throws NumberFormatException
 	 * @throws IOException
+	 * @see #getCacheFile(String)
 	 */
 	protected void readFile() throws NumberFormatException, IOException {
 		File file = new File(fileName);
-		BufferedReader br = new BufferedReader(new FileReader(file));
+		File cacheFile = getCacheFile(fileName);
+		
+		if (USE_CACHE && readCache(file, cacheFile))
+			return;
+		
+		parseFile(file);
+		
+		if (USE_CACHE)
+			writeCache(file, cacheFile);
+	}
+	
+	/**
+	 * Parses the robot's experiment log file.  If the log file has an event log,
+	 * the GPS, heading, motion command, and beacon events are read from the event
+	 * log instead of being parsed from the log file.
+	 * 
+	 * @param file The log file.
+	 * @throws NumberFormatException
+	 * @throws IOException
+	 */
+	private void parseFile(File file) throws NumberFormatException, IOException {
+		BufferedReader br = new BufferedReader(new FileReader(file), 1 << 16);
+		LogLineTokenizer tokenizer = new LogLineTokenizer();
 		String line = null;
 		PathEdge currEdge = null;
 		PlayerGpsData currLoc = null;
 		boolean expStartTimeSet = false;
 		
+		EventLogReader events = USE_EVENT_LOG ? EventLogReader.open(fileName) : null;
+		boolean hasEvent = events != null && events.next();
+		int lineNo = 0;
+		
 		while ((line = br.readLine()) != null){
 			
+			// Add the events that were recorded before this line.
+			while (hasEvent && events.getLine() <= lineNo) {
+				currLoc = addEvent(events, currEdge, currLoc);
+				hasEvent = events.next();
+			}
+			lineNo++;
+			
 			// Extract the experiment start times.
 			if (line.contains("Starting experiment at time:")) {
-				String[] tokens = line.split("[: ]");
-				expStartTime = Long.valueOf(tokens[8]);
+				expStartTime = tokenizer.tokenize(line, 0, ": ", false).getLong(8);
 				Logger.logDbg("expStartTime = " + expStartTime);
 				expStartTimeSet = true;
 			}
 			else if (line.contains("Starting experiment at time ")) {
 				String keyStr = "Starting experiment at time ";
-				String startingLine = line.substring(line.indexOf(keyStr) + keyStr.length());
-				
-				String[] tokens = startingLine.split("[.\\s]");
-				expStartTime = Long.valueOf(tokens[0]);
+				LogLineTokenizer tokens = tokenizer.tokenize(line, line.indexOf(keyStr) + keyStr.length(), 
+						"." + LogLineTokenizer.WHITESPACE, false);
+				expStartTime = tokens.getLong(0);
 				Logger.logDbg("expStartTime = " + expStartTime);
 				expStartTimeSet = true;
 			} 
@@ -472,13 +588,13 @@ public class RobotExpData {
 					|| (line.contains("MotionScriptFollower:") && line.contains("Going to "))) 
 			{
 				String keyStr = "Going to ";
-				String goingToLine = line.substring(line.indexOf(keyStr) + keyStr.length());
-				String[] tokens = goingToLine.split("[\\(\\),\\s,m]+");
+				LogLineTokenizer tokens = tokenizer.tokenize(line, line.indexOf(keyStr) + keyStr.length(), 
+						"()," + LogLineTokenizer.WHITESPACE + "m", true);
 				
-				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
-				double lat = Double.valueOf(tokens[1]);
-				double lon = Double.valueOf(tokens[2]);
-				double speed = Double.valueOf(tokens[5]); 
+				long timeStamp = LogLineTokenizer.parseTimestamp(line);
+				double lat = tokens.getDouble(1);
+				double lon = tokens.getDouble(2);
+				double speed = tokens.getDouble(5); 
 				
 				currEdge = new PathEdge(new Location(lat, lon), timeStamp, speed);
 				
@@ -487,14 +603,11 @@ public class RobotExpData {
 					currEdge.setStartLoc(new Location(currLoc));
 			}
 			else if (line.contains("TestNavigateCompassGPS: Going to")) {
-				String[] tokens = line.split("[\\[\\]:=(), ]");
-//				for (int i=0; i < tokens.length; i++) {
-//					System.out.println(i + ": " + tokens[i]);
-//				}
-				long timeStamp = Long.valueOf(tokens[1]);
-				double lat = Double.valueOf(tokens[9]);
-				double lon = Double.valueOf(tokens[11]);
-				double speed = Double.valueOf(tokens[16]);
+				LogLineTokenizer tokens = tokenizer.tokenize(line, 0, "[]:=(), ", false);
+				long timeStamp = tokens.getLong(1);
+				double lat = tokens.getDouble(9);
+				double lon = tokens.getDouble(11);
+				double speed = tokens.getDouble(16);
 				
 				currEdge = new PathEdge(new Location(lat, lon), timeStamp, speed);
 				
@@ -505,71 +618,54 @@ public class RobotExpData {
 			
 			// Extract the GPS location data.
 			else if (line.contains("New GPS Data:")) {
-				String keyStr = "New GPS Data:";
-				String gpsLine = line.substring(line.indexOf(keyStr) + keyStr.length());
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
 				
-				String[] tokens = gpsLine.split("[:=(), ]");
+				String keyStr = "New GPS Data:";
+				LogLineTokenizer tokens = tokenizer.tokenize(line, line.indexOf(keyStr) + keyStr.length(), 
+						":=(), ", false);
 				
-				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
+				long timeStamp = LogLineTokenizer.parseTimestamp(line);
 				currLoc = new PlayerGpsData();
-				currLoc.setAltitude(Integer.valueOf(tokens[12]));
-				currLoc.setErr_horz(Double.valueOf(tokens[26]));
-				currLoc.setErr_vert(Double.valueOf(tokens[28]));
-				currLoc.setHdop(Integer.valueOf(tokens[22]));
-				currLoc.setLatitude(Integer.valueOf(tokens[8]));
-				currLoc.setLongitude(Integer.valueOf(tokens[10]));
-				currLoc.setNum_sats(Integer.valueOf(tokens[20]));
-				currLoc.setQuality(Integer.valueOf(tokens[18]));
-				currLoc.setTime_sec(Integer.valueOf(tokens[4]));
-				currLoc.setTime_usec(Integer.valueOf(tokens[6]));
-				currLoc.setUtm_e(Double.valueOf(tokens[14]));
-				currLoc.setUtm_n(Double.valueOf(tokens[16]));
-				currLoc.setVdop(Integer.valueOf(tokens[24]));
+				currLoc.setAltitude(tokens.getInt(12));
+				currLoc.setErr_horz(tokens.getDouble(26));
+				currLoc.setErr_vert(tokens.getDouble(28));
+				currLoc.setHdop(tokens.getInt(22));
+				currLoc.setLatitude(tokens.getInt(8));
+				currLoc.setLongitude(tokens.getInt(10));
+				currLoc.setNum_sats(tokens.getInt(20));
+				currLoc.setQuality(tokens.getInt(18));
+				currLoc.setTime_sec(tokens.getInt(4));
+				currLoc.setTime_usec(tokens.getInt(6));
+				currLoc.setUtm_e(tokens.getDouble(14));
+				currLoc.setUtm_n(tokens.getDouble(16));
+				currLoc.setVdop(tokens.getInt(24));
 				
-				Location l = new Location(currLoc);
-				if (pharoslabut.sensors.GPSDataBuffer.isValid(l)) {  // Only add the GPSLocation if it is valid.
-					locations.add(new GPSLocationState(timeStamp, currLoc));
-					if (currEdge != null) {
-						if (!currEdge.hasStartLoc())
-							currEdge.setStartLoc(l);
-					}
-				} else {
-					Logger.log("Rejecting invalid location: " + currLoc);
-				}
+				addLocation(timeStamp, currLoc, currEdge);
 			}
 			// This is for Proteus III log files.
 			else if (line.contains("Received GPS message:")) {
 				String keyStr = "Received GPS message:";
-				String gpsLine = line.substring(line.indexOf(keyStr) + keyStr.length());
-				
-				String[] tokens = gpsLine.split("[,\\s)]");
+				LogLineTokenizer tokens = tokenizer.tokenize(line, line.indexOf(keyStr) + keyStr.length(), 
+						"," + LogLineTokenizer.WHITESPACE + ")", false);
 				
-				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
+				long timeStamp = LogLineTokenizer.parseTimestamp(line);
 				currLoc = new PlayerGpsData();
-				currLoc.setAltitude((int)(Double.valueOf(tokens[20]) * 1000));  // convert from meters to mm
-				//currLoc.setErr_horz(Double.valueOf(tokens[26]));
-				//currLoc.setErr_vert(Double.valueOf(tokens[28]));
-				currLoc.setHdop((int)(Double.valueOf(tokens[40]) * 10));
-				currLoc.setLatitude((int)(Double.valueOf(tokens[12]) * 1e7));
-				currLoc.setLongitude((int)(Double.valueOf(tokens[16]) * 1e7));
-				currLoc.setNum_sats(Integer.valueOf(tokens[36]));
-				currLoc.setQuality(Integer.valueOf(tokens[32]));
-				currLoc.setTime_sec(Integer.valueOf(tokens[4]));
-				currLoc.setTime_usec(Integer.valueOf(tokens[8]));
-				currLoc.setUtm_e(Double.valueOf(tokens[24]));
-				currLoc.setUtm_n(Double.valueOf(tokens[28]));
-				currLoc.setVdop((int)(Double.valueOf(tokens[44]) * 10));
+				currLoc.setAltitude((int)(tokens.getDouble(20) * 1000));  // convert from meters to mm
+				//currLoc.setErr_horz(tokens.getDouble(26));
+				//currLoc.setErr_vert(tokens.getDouble(28));
+				currLoc.setHdop((int)(tokens.getDouble(40) * 10));
+				currLoc.setLatitude((int)(tokens.getDouble(12) * 1e7));
+				currLoc.setLongitude((int)(tokens.getDouble(16) * 1e7));
+				currLoc.setNum_sats(tokens.getInt(36));
+				currLoc.setQuality(tokens.getInt(32));
+				currLoc.setTime_sec(tokens.getInt(4));
+				currLoc.setTime_usec(tokens.getInt(8));
+				currLoc.setUtm_e(tokens.getDouble(24));
+				currLoc.setUtm_n(tokens.getDouble(28));
+				currLoc.setVdop((int)(tokens.getDouble(44) * 10));
 				
-				Location l = new Location(currLoc);
-				if (pharoslabut.sensors.GPSDataBuffer.isValid(l)) {  // Only add the GPSLocation if it is valid.
-					locations.add(new GPSLocationState(timeStamp, currLoc));
-					if (currEdge != null) {
-						if (!currEdge.hasStartLoc())
-							currEdge.setStartLoc(l);
-					}
-				} else {
-					Logger.log("Rejecting invalid location: " + currLoc);
-				}
+				addLocation(timeStamp, currLoc, currEdge);
 			}
 			
 			
@@ -577,56 +673,40 @@ public class RobotExpData {
 			// The following is printed by the CompassDataBuffer during Mission 15
 			else if (line.contains("New heading:")) {
 				String keyStr = "New heading:";
-				String headingLine = line.substring(line.indexOf(keyStr) + keyStr.length());
-				
-				String[] tokens = headingLine.split("[, ]");
+				LogLineTokenizer tokens = tokenizer.tokenize(line, line.indexOf(keyStr) + keyStr.length(), ", ", false);
 				
-				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
-				double heading = Double.valueOf(tokens[1]);
+				long timeStamp = LogLineTokenizer.parseTimestamp(line);
+				double heading = tokens.getDouble(1);
 				
-				// Only add the heading measurement if it is valid.
-				if (pharoslabut.sensors.CompassDataBuffer.isValid(heading)) {
-					headings.add(new HeadingState(timeStamp, heading));
-					if (currEdge != null) {
-						if (!currEdge.hasStartHeading())
-							currEdge.setStartHeading(heading);
-					}
-				} else {
-					Logger.log("Rejecting invalid heading: " + heading);
-				}
+				addHeading(timeStamp, heading, currEdge);
 			}
 			// The following is printed by the CompassDataBuffer during Mission 25
 			else if (line.contains("New heading=")) {
-				String keyStr = "New heading=";
-				String headingLine = line.substring(line.indexOf(keyStr) + keyStr.length());
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
 				
-				String[] tokens = headingLine.split("[, ]");
+				String keyStr = "New heading=";
+				LogLineTokenizer tokens = tokenizer.tokenize(line, line.indexOf(keyStr) + keyStr.length(), ", ", false);
 				
-				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
-				double heading = Double.valueOf(tokens[0]);
+				long timeStamp = LogLineTokenizer.parseTimestamp(line);
+				double heading = tokens.getDouble(0);
 				
-				// Only add the heading measurement if it is valid.
-				if (pharoslabut.sensors.CompassDataBuffer.isValid(heading)) {
-					headings.add(new HeadingState(timeStamp, heading));
-					if (currEdge != null) {
-						if (!currEdge.hasStartHeading())
-							currEdge.setStartHeading(heading);
-					}
-				} else {
-					Logger.log("WARNING: Rejecting invalid heading: " + heading);
-				}
+				addHeading(timeStamp, heading, currEdge);
 			}
 			
 			// Extract when the TelosB transmitted a beacon.
 			else if (line.contains("RadioSignalMeter: SEND_BCAST") 
 					|| line.contains("TelosBeaconBroadcaster: SEND_TELSOB_BCAST")) {
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				// The format of this line is:
 				// [local time stamp] RadioSignalMeter: SEND_BCAST [node id] [seqno]
-				String[] tokens = line.split("(\\s|\\[|\\])");
+				LogLineTokenizer tokens = tokenizer.tokenize(line, 0, LogLineTokenizer.WHITESPACE + "[]", false);
 				TelosBTxRecord txRec = new TelosBTxRecord(
-						Long.valueOf(tokens[1]), // timestamp
-						Integer.valueOf(tokens[5]), // sender ID
-						Integer.valueOf(tokens[6])); // seqno
+						tokens.getLong(1), // timestamp
+						tokens.getInt(5), // sender ID
+						tokens.getInt(6)); // seqno
 				telosBTxHist.add(txRec);
 				
 			}
@@ -634,20 +714,20 @@ public class RobotExpData {
 			// Extract when a TelosB beacon was received.
 			else if (line.contains("RadioSignalMeter: RADIO_CC2420_RECEIVE")
 					|| line.contains("TelosBeaconReceiver: RADIO_CC2420_RECEIVE")) {
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				// The format of this line is:
 				// [local time stamp] RadioSignalMeter: RADIO_CC2420_RECEIVE [receiver id] [sender id] [seqno] [RSSI] [LQI] [mote timestamp]
-				String[] tokens = line.split("(\\s|\\[|\\])");
-//				for (int i=0; i < tokens.length; i++) {
-//					System.out.println(i + ": " + tokens[i]);
-//				}
+				LogLineTokenizer tokens = tokenizer.tokenize(line, 0, LogLineTokenizer.WHITESPACE + "[]", false);
 				TelosBRxRecord rxRec = new TelosBRxRecord(
-						Long.valueOf(tokens[1]), // timestamp
-						Integer.valueOf(tokens[5]), // rcvrID
-						Integer.valueOf(tokens[6]), // sndrID
-						Integer.valueOf(tokens[7]), // seqno
-						Integer.valueOf(tokens[8]), // rssi
-						Integer.valueOf(tokens[9]), // lqi
-						Integer.valueOf(tokens[10])); // moteTimestamp
+						tokens.getLong(1), // timestamp
+						tokens.getInt(5), // rcvrID
+						tokens.getInt(6), // sndrID
+						tokens.getInt(7), // seqno
+						tokens.getInt(8), // rssi
+						tokens.getInt(9), // lqi
+						tokens.getInt(10)); // moteTimestamp
 				telosBRxHist.add(rxRec);
 			}
 			
@@ -655,15 +735,17 @@ public class RobotExpData {
 			else if (line.contains("WiFiBeaconBroadcaster: Broadcasting Beacon:") // valid for log files up to and including Mission 26
 					|| (line.contains("pharoslabut.beacon.WiFiBeaconBroadcaster") && line.contains("Broadcasting Beacon:"))) // valid for missions 27 and above
 			{
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				String keyStr = "Broadcasting Beacon:";
-				String broadcastLine = line.substring(line.indexOf(keyStr) + keyStr.length());
+				LogLineTokenizer tokens = tokenizer.tokenize(line, line.indexOf(keyStr) + keyStr.length(), "():, ", false);
 				
-				long timestamp = Long.valueOf(line.substring(1,line.indexOf(']')));
+				long timestamp = LogLineTokenizer.parseTimestamp(line);
 				
-				String[] tokens = broadcastLine.split("[\\(\\):, ]");
-				String ipAddress = tokens[2];
-				int port = Integer.valueOf(tokens[3]);
-				long seqno = Long.valueOf(tokens[4]);
+				String ipAddress = tokens.getToken(2);
+				int port = tokens.getInt(3);
+				long seqno = tokens.getLong(4);
 				
 				WiFiBeaconTx beaconTx = new WiFiBeaconTx(new WiFiBeacon(ipAddress, port, seqno), timestamp);
 				wifiBeaconTxs.add(beaconTx);
@@ -674,15 +756,17 @@ public class RobotExpData {
 			else if (line.contains("BeaconReciever: Received beacon:") // valid for log files up to and including Mission 26
 					|| (line.contains("pharoslabut.beacon.WiFiBeaconReceiver") && line.contains("Received beacon:"))) // valid for missions 27 and above
 			{
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				String keyStr = "Received beacon:";
-				String rcvLine = line.substring(line.indexOf(keyStr) + keyStr.length());
+				LogLineTokenizer tokens = tokenizer.tokenize(line, line.indexOf(keyStr) + keyStr.length(), "():, ", false);
 				
-				long timestamp = Long.valueOf(line.substring(1,line.indexOf(']')));
+				long timestamp = LogLineTokenizer.parseTimestamp(line);
 				
-				String[] tokens = rcvLine.split("[\\(\\):, ]");
-				String ipAddress = tokens[2];
-				int port = Integer.valueOf(tokens[3]);
-				long seqno = Long.valueOf(tokens[4]);
+				String ipAddress = tokens.getToken(2);
+				int port = tokens.getInt(3);
+				long seqno = tokens.getLong(4);
 				
 				WiFiBeaconRx beaconRx = new WiFiBeaconRx(new WiFiBeacon(ipAddress, port, seqno), timestamp);
 				wifiBeaconRxs.add(beaconRx);
@@ -691,7 +775,7 @@ public class RobotExpData {
 			// Extract when the current waypoint was reached.
 			else if (line.contains("NavigateCompassGPS:") && line.contains("Arrived at destination")) {
 				// Save the end time of the experiment
-				long timestamp = Long.valueOf(line.substring(1,line.indexOf(']')));
+				long timestamp = LogLineTokenizer.parseTimestamp(line);
 				
 				if (currEdge == null) {
 					Logger.logWarn("Arrived at destination but currEdge is null!");
@@ -709,7 +793,7 @@ public class RobotExpData {
 					|| line.contains("ERROR: Failed to get current location")) 
 			{
 				
-				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
+				long timeStamp = LogLineTokenizer.parseTimestamp(line);
 //				Logger.log("Found a GPS sensor fault at time " + timeStamp);
 				gpsErrors.add(timeStamp);
 			}
@@ -718,21 +802,23 @@ public class RobotExpData {
 			else if (line.contains("go: ERROR: Unable to get the current heading")
 					|| line.contains("ERROR: Unable to get compass heading")) 
 			{
-				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
+				long timeStamp = LogLineTokenizer.parseTimestamp(line);
 				headingErrors.add(timeStamp);
 			}
 			
 			// Extract the motion commands being issued by the motion arbiter
 			else if (line.contains("MotionArbiter:") && line.contains("Sending motion command")) {
-				String keyStr = "Sending motion command";
-				String headingLine = line.substring(line.indexOf(keyStr) + keyStr.length());
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
 				
-				String[] tokens = headingLine.split("[=,\\s ]+");
+				String keyStr = "Sending motion command";
+				LogLineTokenizer tokens = tokenizer.tokenize(line, line.indexOf(keyStr) + keyStr.length(), 
+						"=," + LogLineTokenizer.WHITESPACE, true);
 				
-				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
+				long timeStamp = LogLineTokenizer.parseTimestamp(line);
 				
-				double speed  = Double.valueOf(tokens[2]);
-				double heading = Double.valueOf(tokens[4]);
+				double speed  = tokens.getDouble(2);
+				double heading = tokens.getDouble(4);
 				
 				
 				motionCmds.add(new MotionCmd(timeStamp, speed, heading));
@@ -741,13 +827,12 @@ public class RobotExpData {
 			// Extract the pause durations
 			else if (line.contains("MotionScriptFollower:") && line.contains("Pausing for")) {
 				String keyStr = "Pausing for";
-				String pausingLine = line.substring(line.indexOf(keyStr) + keyStr.length());
+				LogLineTokenizer tokens = tokenizer.tokenize(line, line.indexOf(keyStr) + keyStr.length(), 
+						"=," + LogLineTokenizer.WHITESPACE + "m", true);
 				
-				String[] tokens = pausingLine.split("[=,\\s m]+");
+				//long timeStamp = LogLineTokenizer.parseTimestamp(line);
 				
-				//long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
-				
-				long pauseTime  = Long.valueOf(tokens[1]);
+				long pauseTime  = tokens.getLong(1);
 				
 				if (currEdge != null)
 					currEdge.addPauseTime(pauseTime);
@@ -757,6 +842,13 @@ public class RobotExpData {
 					Logger.logWarn("Discarding pause time because currEdge not defined and there were not previous edges!");
 			}
 		} // end while...
+		br.close();
+		
+		// Add the events that were recorded after the last line.
+		while (hasEvent) {
+			currLoc = addEvent(events, currEdge, currLoc);
+			hasEvent = events.next();
+		}
 		
 		// Set the ideal start locations...
 		for (int i=0; i < pathEdges.size(); i++) {
@@ -777,8 +869,9 @@ public class RobotExpData {
 			Logger.logWarn("Experiment start time not set!  Using timestamp of first line in the log file.");
 			br = new BufferedReader(new FileReader(file));
 			line = br.readLine();
+			br.close();
 			
-			expStartTime = Long.valueOf(line.substring(1,line.indexOf(']')));
+			expStartTime = LogLineTokenizer.parseTimestamp(line);
 			expStartTimeSet = true;
 			Logger.logDbg("expStartTime = " + expStartTime);
 		}
@@ -793,6 +886,414 @@ public class RobotExpData {
 			pathEdges.get(i).setSeqNo(i);
 		}
 	}
+
+	/**
+	 * Adds a GPS location if it is valid.
+	 * 
+	 * @param timeStamp The time at which the location was logged.
+	 * @param gpsData The location.
+	 * @param currEdge The current path edge, or null if there is none.
+	 */
+	private void addLocation(long timeStamp, PlayerGpsData gpsData, PathEdge currEdge) {
+		Location l = new Location(gpsData);
+		if (pharoslabut.sensors.GPSDataBuffer.isValid(l)) {  // Only add the GPSLocation if it is valid.
+			locations.add(new GPSLocationState(timeStamp, gpsData));
+			if (currEdge != null) {
+				if (!currEdge.hasStartLoc())
+					currEdge.setStartLoc(l);
+			}
+		} else {
+			Logger.log("Rejecting invalid location: " + gpsData);
+		}
+	}
+	
+	/**
+	 * Adds a heading measurement if it is valid.
+	 * 
+	 * @param timeStamp The time at which the heading was logged.
+	 * @param heading The heading.
+	 * @param currEdge The current path edge, or null if there is none.
+	 */
+	private void addHeading(long timeStamp, double heading, PathEdge currEdge) {
+		if (pharoslabut.sensors.CompassDataBuffer.isValid(heading)) {
+			headings.add(new HeadingState(timeStamp, heading));
+			if (currEdge != null) {
+				if (!currEdge.hasStartHeading())
+					currEdge.setStartHeading(heading);
+			}
+		} else {
+			Logger.log("Rejecting invalid heading: " + heading);
+		}
+	}
+	
+	/**
+	 * Adds the current record of an event log.
+	 * 
+	 * @param events The event log.
+	 * @param currEdge The current path edge, or null if there is none.
+	 * @param currLoc The most recent GPS data.
+	 * @return The most recent GPS data after adding the event.
+	 */
+	private PlayerGpsData addEvent(EventLogReader events, PathEdge currEdge, PlayerGpsData currLoc) {
+		long timeStamp = events.getTimestamp();
+		switch(events.getType()) {
+		case EventLog.GPS:
+			currLoc = readGPSEvent(events);
+			addLocation(timeStamp, currLoc, currEdge);
+			break;
+		case EventLog.HEADING:
+			addHeading(timeStamp, events.getDouble(EventLog.HEADING_HEADING), currEdge);
+			break;
+		case EventLog.MOTION_CMD:
+			motionCmds.add(new MotionCmd(timeStamp, events.getDouble(EventLog.MOTION_CMD_SPEED), 
+					events.getDouble(EventLog.MOTION_CMD_HEADING)));
+			break;
+		case EventLog.WIFI_BEACON_TX:
+			wifiBeaconTxs.add(new WiFiBeaconTx(readWiFiBeaconEvent(events), timeStamp));
+			break;
+		case EventLog.WIFI_BEACON_RX:
+			wifiBeaconRxs.add(new WiFiBeaconRx(readWiFiBeaconEvent(events), timeStamp));
+			break;
+		case EventLog.TELOSB_TX:
+			telosBTxHist.add(new TelosBTxRecord(timeStamp, events.getInt(EventLog.TELOSB_TX_SENDER), 
+					events.getInt(EventLog.TELOSB_TX_SEQNO)));
+			break;
+		case EventLog.TELOSB_RX:
+			telosBRxHist.add(new TelosBRxRecord(timeStamp, 
+					events.getInt(EventLog.TELOSB_RX_RECEIVER), 
+					events.getInt(EventLog.TELOSB_RX_SENDER), 
+					events.getInt(EventLog.TELOSB_RX_SEQNO), 
+					events.getInt(EventLog.TELOSB_RX_RSSI), 
+					events.getInt(EventLog.TELOSB_RX_LQI), 
+					events.getInt(EventLog.TELOSB_RX_MOTE_TIMESTAMP)));
+			break;
+		}
+		return currLoc;
+	}
+	
+	/**
+	 * Creates the GPS data in the current record of an event log.
+	 * 
+	 * @param events The event log, whose current record is a GPS record.
+	 * @return The GPS data.
+	 */
+	public static PlayerGpsData readGPSEvent(EventLogReader events) {
+		PlayerGpsData gpsData = new PlayerGpsData();
+		gpsData.setTime_sec(events.getInt(EventLog.GPS_TIME_SEC));
+		gpsData.setTime_usec(events.getInt(EventLog.GPS_TIME_USEC));
+		gpsData.setLatitude(events.getInt(EventLog.GPS_LATITUDE));
+		gpsData.setLongitude(events.getInt(EventLog.GPS_LONGITUDE));
+		gpsData.setAltitude(events.getInt(EventLog.GPS_ALTITUDE));
+		gpsData.setUtm_e(events.getDouble(EventLog.GPS_UTM_E));
+		gpsData.setUtm_n(events.getDouble(EventLog.GPS_UTM_N));
+		gpsData.setQuality(events.getInt(EventLog.GPS_QUALITY));
+		gpsData.setNum_sats(events.getInt(EventLog.GPS_NUM_SATS));
+		gpsData.setHdop(events.getInt(EventLog.GPS_HDOP));
+		gpsData.setVdop(events.getInt(EventLog.GPS_VDOP));
+		gpsData.setErr_horz(events.getDouble(EventLog.GPS_ERR_HORZ));
+		gpsData.setErr_vert(events.getDouble(EventLog.GPS_ERR_VERT));
+		return gpsData;
+	}
+	
+	private static WiFiBeacon readWiFiBeaconEvent(EventLogReader events) {
+		return new WiFiBeacon(events.getAddress(EventLog.WIFI_BEACON_ADDRESS), 
+				events.getInt(EventLog.WIFI_BEACON_PORT), events.getLong(EventLog.WIFI_BEACON_SEQNO));
+	}
+	
+	/**
+	 * Returns the cache file of a log file.  The cache file is a hidden file in the
+	 * same directory as the log file so the programs that search for log files
+	 * do not mistake it for a log file.
+	 * 
+	 * @param fileName The name of the log file.
+	 * @return The cache file.
+	 */
+	public static File getCacheFile(String fileName) {
+		File file = new File(fileName);
+		return new File(file.getParentFile(), "." + file.getName() + CACHE_FILE_SUFFIX);
+	}
+	
+	/**
+	 * Loads the data that was previously parsed from the log file.
+	 * 
+	 * @param file The log file.
+	 * @param cacheFile The cache file.
+	 * @return true if the data was loaded, false if the cache file does not exist,
+	 * is out of date, or could not be read.
+	 */
+	private boolean readCache(File file, File cacheFile) {
+		if (!cacheFile.exists())
+			return false;
+		
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile), 1 << 16));
+			
+			if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION
+					|| in.readLong() != file.length() || in.readLong() != file.lastModified())
+			{
+				Logger.logDbg("Cache file " + cacheFile + " is out of date.");
+				return false;
+			}
+			
+			expStartTime = in.readLong();
+			
+			int numEdges = in.readInt();
+			for (int i=0; i < numEdges; i++) {
+				PathEdge edge = new PathEdge(readLocation(in), in.readLong(), in.readDouble());
+				edge.setEndTime(in.readLong());
+				edge.setStartHeading(in.readDouble());
+				edge.addPauseTime(in.readLong());
+				edge.setSeqNo(in.readInt());
+				if (in.readBoolean())
+					edge.setStartLoc(readLocation(in));
+				if (in.readBoolean())
+					edge.setIdealStartLoc(readLocation(in));
+				pathEdges.add(edge);
+			}
+			
+			int numLocations = in.readInt();
+			for (int i=0; i < numLocations; i++) {
+				long timestamp = in.readLong();
+				PlayerGpsData gpsData = new PlayerGpsData();
+				gpsData.setTime_sec(in.readInt());
+				gpsData.setTime_usec(in.readInt());
+				gpsData.setLatitude(in.readInt());
+				gpsData.setLongitude(in.readInt());
+				gpsData.setAltitude(in.readInt());
+				gpsData.setUtm_e(in.readDouble());
+				gpsData.setUtm_n(in.readDouble());
+				gpsData.setQuality(in.readInt());
+				gpsData.setNum_sats(in.readInt());
+				gpsData.setHdop(in.readInt());
+				gpsData.setVdop(in.readInt());
+				gpsData.setErr_horz(in.readDouble());
+				gpsData.setErr_vert(in.readDouble());
+				locations.add(new GPSLocationState(timestamp, gpsData));
+			}
+			
+			int numHeadings = in.readInt();
+			for (int i=0; i < numHeadings; i++)
+				headings.add(new HeadingState(in.readLong(), in.readDouble()));
+			
+			int numTelosBTx = in.readInt();
+			for (int i=0; i < numTelosBTx; i++)
+				telosBTxHist.add(new TelosBTxRecord(in.readLong(), in.readInt(), in.readInt()));
+			
+			int numTelosBRx = in.readInt();
+			for (int i=0; i < numTelosBRx; i++) {
+				// The RSSI was already converted into dBm when the log file was parsed.
+				TelosBRxRecord rxRec = new TelosBRxRecord(in.readLong(), in.readInt(), in.readInt(), 
+						in.readInt(), in.readInt(), in.readInt());
+				rxRec.moteTimestamp = in.readInt();
+				telosBRxHist.add(rxRec);
+			}
+			
+			int numGPSErrors = in.readInt();
+			for (int i=0; i < numGPSErrors; i++)
+				gpsErrors.add(in.readLong());
+			
+			int numHeadingErrors = in.readInt();
+			for (int i=0; i < numHeadingErrors; i++)
+				headingErrors.add(in.readLong());
+			
+			int numMotionCmds = in.readInt();
+			for (int i=0; i < numMotionCmds; i++)
+				motionCmds.add(new MotionCmd(in.readLong(), in.readDouble(), in.readDouble()));
+			
+			int numWiFiBeaconTxs = in.readInt();
+			for (int i=0; i < numWiFiBeaconTxs; i++) {
+				WiFiBeacon beacon = new WiFiBeacon(in.readUTF(), in.readInt(), in.readLong());
+				wifiBeaconTxs.add(new WiFiBeaconTx(beacon, in.readLong()));
+			}
+			
+			int numWiFiBeaconRxs = in.readInt();
+			for (int i=0; i < numWiFiBeaconRxs; i++) {
+				WiFiBeacon beacon = new WiFiBeacon(in.readUTF(), in.readInt(), in.readLong());
+				wifiBeaconRxs.add(new WiFiBeaconRx(beacon, in.readLong()));
+			}
+			
+			if (in.readInt() != CACHE_MAGIC)
+				throw new IOException("Missing end of cache marker");
+			
+			Logger.logDbg("Loaded " + fileName + " from cache file " + cacheFile);
+			return true;
+		} catch (IOException e) {
+			Logger.logWarn("Unable to read cache file " + cacheFile + ", parsing the log file instead: " + e);
+			
+			// Discard whatever was loaded from the cache file.
+			expStartTime = 0;
+			pathEdges.clear();
+			locations.clear();
+			headings.clear();
+			telosBTxHist.clear();
+			telosBRxHist.clear();
+			gpsErrors.clear();
+			headingErrors.clear();
+			motionCmds.clear();
+			wifiBeaconTxs.clear();
+			wifiBeaconRxs.clear();
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Saves the data parsed from the log file into a cache file.  The cache file
+	 * records the length and modification time of the log file so it is not used
+	 * if the log file changes.  The data is saved before the timestamps are calibrated.
+	 * 
+	 * @param file The log file.
+	 * @param cacheFile The cache file.
+	 */
+	private void writeCache(File file, File cacheFile) {
+		File tmpFile = new File(cacheFile.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+			out.writeInt(CACHE_MAGIC);
+			out.writeInt(CACHE_VERSION);
+			out.writeLong(file.length());
+			out.writeLong(file.lastModified());
+			
+			out.writeLong(expStartTime);
+			
+			out.writeInt(pathEdges.size());
+			for (int i=0; i < pathEdges.size(); i++) {
+				PathEdge edge = pathEdges.get(i);
+				writeLocation(out, edge.getEndLocation());
+				out.writeLong(edge.getStartTime());
+				out.writeDouble(edge.getIdealSpeed());
+				out.writeLong(edge.getEndTime());
+				out.writeDouble(edge.getStartHeading());
+				out.writeLong(edge.getPauseTime());
+				out.writeInt(edge.getSeqNo());
+				out.writeBoolean(edge.hasStartLoc());
+				if (edge.hasStartLoc())
+					writeLocation(out, edge.getStartLoc());
+				out.writeBoolean(edge.getIdealStartLoc() != null);
+				if (edge.getIdealStartLoc() != null)
+					writeLocation(out, edge.getIdealStartLoc());
+			}
+			
+			out.writeInt(locations.size());
+			for (int i=0; i < locations.size(); i++) {
+				GPSLocationState currLoc = locations.get(i);
+				PlayerGpsData gpsData = currLoc.getLoc();
+				out.writeLong(currLoc.getTimestamp());
+				out.writeInt(gpsData.getTime_sec());
+				out.writeInt(gpsData.getTime_usec());
+				out.writeInt(gpsData.getLatitude());
+				out.writeInt(gpsData.getLongitude());
+				out.writeInt(gpsData.getAltitude());
+				out.writeDouble(gpsData.getUtm_e());
+				out.writeDouble(gpsData.getUtm_n());
+				out.writeInt(gpsData.getQuality());
+				out.writeInt(gpsData.getNum_sats());
+				out.writeInt(gpsData.getHdop());
+				out.writeInt(gpsData.getVdop());
+				out.writeDouble(gpsData.getErr_horz());
+				out.writeDouble(gpsData.getErr_vert());
+			}
+			
+			out.writeInt(headings.size());
+			for (int i=0; i < headings.size(); i++) {
+				out.writeLong(headings.get(i).getTimestamp());
+				out.writeDouble(headings.get(i).getHeading());
+			}
+			
+			out.writeInt(telosBTxHist.size());
+			for (int i=0; i < telosBTxHist.size(); i++) {
+				TelosBTxRecord txRec = telosBTxHist.get(i);
+				out.writeLong(txRec.getTimeStamp());
+				out.writeInt(txRec.getSenderID());
+				out.writeInt(txRec.getSeqNo());
+			}
+			
+			out.writeInt(telosBRxHist.size());
+			for (int i=0; i < telosBRxHist.size(); i++) {
+				TelosBRxRecord rxRec = telosBRxHist.get(i);
+				out.writeLong(rxRec.getTimeStamp());
+				out.writeInt(rxRec.getReceiverID());
+				out.writeInt(rxRec.getSenderID());
+				out.writeInt(rxRec.getSeqNo());
+				out.writeInt(rxRec.getRSSI());
+				out.writeInt(rxRec.getLQI());
+				out.writeInt(rxRec.getMoteTimestamp());
+			}
+			
+			out.writeInt(gpsErrors.size());
+			for (int i=0; i < gpsErrors.size(); i++)
+				out.writeLong(gpsErrors.get(i));
+			
+			out.writeInt(headingErrors.size());
+			for (int i=0; i < headingErrors.size(); i++)
+				out.writeLong(headingErrors.get(i));
+			
+			out.writeInt(motionCmds.size());
+			for (int i=0; i < motionCmds.size(); i++) {
+				MotionCmd currCmd = motionCmds.get(i);
+				out.writeLong(currCmd.time);
+				out.writeDouble(currCmd.speedCmd);
+				out.writeDouble(currCmd.headingCmd);
+			}
+			
+			writeWiFiBeacons(out, wifiBeaconTxs);
+			writeWiFiBeacons(out, wifiBeaconRxs);
+			
+			out.writeInt(CACHE_MAGIC);
+			out.close();
+			out = null;
+			
+			// Replace the old cache file, if any, with the new one.
+			if (!tmpFile.renameTo(cacheFile)) {
+				cacheFile.delete();
+				if (!tmpFile.renameTo(cacheFile))
+					throw new IOException("Unable to rename " + tmpFile + " to " + cacheFile);
+			}
+		} catch (IOException e) {
+			Logger.logWarn("Unable to write cache file " + cacheFile + ": " + e);
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e2) {
+					e2.printStackTrace();
+				}
+			}
+			tmpFile.delete();
+		}
+	}
+	
+	private static void writeWiFiBeacons(DataOutputStream out, Vector<? extends WiFiBeaconTx> beaconEvents) 
+		throws IOException 
+	{
+		out.writeInt(beaconEvents.size());
+		for (int i=0; i < beaconEvents.size(); i++) {
+			WiFiBeaconTx beaconEvent = beaconEvents.get(i);
+			WiFiBeacon beacon = beaconEvent.getBeacon();
+			out.writeUTF(beacon.getAddress().getHostAddress());
+			out.writeInt(beacon.getPort());
+			out.writeLong(beacon.getSeqNum());
+			out.writeLong(beaconEvent.getTimestamp());
+		}
+	}
+	
+	private static void writeLocation(DataOutputStream out, Location loc) throws IOException {
+		out.writeDouble(loc.latitude());
+		out.writeDouble(loc.longitude());
+		out.writeDouble(loc.elevation());
+	}
+	
+	private static Location readLocation(DataInputStream in) throws IOException {
+		return new Location(in.readDouble(), in.readDouble(), in.readDouble());
+	}
 	
 	/**
 	 * Compares the GPS timestamps with the log timestamps to determine the 
@@ -880,9 +1381,89 @@ public class RobotExpData {
 		for (int i=0; i < wifiBeaconTxs.size(); i++) {
 			wifiBeaconTxs.get(i).calibrateTime(calibrator);
 		}
-		
+
+		// The timestamps changed so the time series must be rebuilt.
+		locationSeries = headingSeries = motionCmdSeries = pathEdgeSeries = telosBRxSeries = null;
+
 		return calibrator;
 	}
+
+	/**
+	 * @return The locations as a time series with columns LAT and LON.
+	 */
+	private TimeSeries getLocationSeries() {
+		if (locationSeries == null || locationSeries.size() != locations.size()) {
+			TimeSeries series = new TimeSeries(2, locations.size());
+			for (int i=0; i < locations.size(); i++) {
+				GPSLocationState currLoc = locations.get(i);
+				PlayerGpsData gpsData = currLoc.getLoc();
+				series.add(currLoc.getTimestamp(), i, gpsData.getLatitude() / 1e7, gpsData.getLongitude() / 1e7);
+			}
+			series.sort();
+			locationSeries = series;
+		}
+		return locationSeries;
+	}
+
+	/**
+	 * @return The headings as a time series with a single column.
+	 */
+	private TimeSeries getHeadingSeries() {
+		if (headingSeries == null || headingSeries.size() != headings.size()) {
+			TimeSeries series = new TimeSeries(1, headings.size());
+			for (int i=0; i < headings.size(); i++) {
+				HeadingState currHeading = headings.get(i);
+				series.add(currHeading.getTimestamp(), i, currHeading.getHeading());
+			}
+			series.sort();
+			headingSeries = series;
+		}
+		return headingSeries;
+	}
+
+	/**
+	 * @return The motion commands as a time series with columns SPEED_CMD and HEADING_CMD.
+	 */
+	private TimeSeries getMotionCmdSeries() {
+		if (motionCmdSeries == null || motionCmdSeries.size() != motionCmds.size()) {
+			TimeSeries series = new TimeSeries(2, motionCmds.size());
+			for (int i=0; i < motionCmds.size(); i++) {
+				MotionCmd currCmd = motionCmds.get(i);
+				series.add(currCmd.time, i, currCmd.speedCmd, currCmd.headingCmd);
+			}
+			series.sort();
+			motionCmdSeries = series;
+		}
+		return motionCmdSeries;
+	}
+
+	/**
+	 * @return The start times of the path edges as a time series without any columns.
+	 */
+	private TimeSeries getPathEdgeSeries() {
+		if (pathEdgeSeries == null || pathEdgeSeries.size() != pathEdges.size()) {
+			TimeSeries series = new TimeSeries(0, pathEdges.size());
+			for (int i=0; i < pathEdges.size(); i++)
+				series.add(pathEdges.get(i).getStartTime(), i);
+			series.sort();
+			pathEdgeSeries = series;
+		}
+		return pathEdgeSeries;
+	}
+
+	/**
+	 * @return The reception times of TelosB beacons as a time series without any columns.
+	 */
+	private TimeSeries getTelosBRxSeries() {
+		if (telosBRxSeries == null || telosBRxSeries.size() != telosBRxHist.size()) {
+			TimeSeries series = new TimeSeries(0, telosBRxHist.size());
+			for (int i=0; i < telosBRxHist.size(); i++)
+				series.add(telosBRxHist.get(i).getTimeStamp(), i);
+			series.sort();
+			telosBRxSeries = series;
+		}
+		return telosBRxSeries;
+	}
 	
 	/**
 	 * 
@@ -1001,21 +1582,17 @@ public class RobotExpData {
 			return null;
 		}
 		
-		int edgeIndx = -1;
-		for (int i=0; i < pathEdges.size(); i++) {
-			if (timestamp >= pathEdges.get(i).getStartTime())
-				edgeIndx = i;
-		}
+		// Find the last edge that started at or before the desired time.
+		TimeSeries series = getPathEdgeSeries();
+		int indx = series.floorIndex(timestamp);
 		
 		// If no edge was found, abort.
-		if (edgeIndx == -1) {
+		if (indx == -1) {
 			Logger.logErr("Unable to find edge containing timestamp " + timestamp);
 			System.exit(1);
 		}
 		
-		Logger.log("getPathEdge: indx = " + edgeIndx);
-		
-		return pathEdges.get(edgeIndx);
+		return pathEdges.get(series.getSource(indx));
 	}
 	
 	/**
@@ -1117,7 +1694,7 @@ public class RobotExpData {
 	 */
 	public double getSpeedCmd(long time) {
 		int indx = getRelevantMotionCmdIndx(time);
-		return motionCmds.get(indx).speedCmd;
+		return getMotionCmdSeries().get(SPEED_CMD, indx);
 	}
 	
 	/**
@@ -1138,57 +1715,33 @@ public class RobotExpData {
 		}
 		
 		// Find the index of the GPS measurements immediately before or after the desired time
-		int beforeIndx = 0; 
-		int afterIndx = 0;
-		
-		boolean afterIndxFound = false;
-		
-		for (int i=0; i < locations.size(); i++) {
-			GPSLocationState currLocation = locations.get(i);
-			if (currLocation.getTimestamp() <= time)
-				beforeIndx = i;
-			if (!afterIndxFound && currLocation.getTimestamp() >= time) {
-				afterIndxFound = true;
-				afterIndx = i;
-			}
-		}
-		
-		Logger.logDbg("timestamp = " + time + ", beforeIndx = " + beforeIndx + ", afterIndx = " + afterIndx);
-		
-		GPSLocationState preLoc, postLoc;
+		TimeSeries series = getLocationSeries();
+		int beforeIndx = Math.max(series.floorIndex(time), 0);
+		int afterIndx = Math.min(series.ceilIndex(time), series.size() - 1);
 		
 		if (beforeIndx == afterIndx) {
-			// A GPS measurement arrived at precise time we want to estimate the robot's speed.
-			// Use this GPS measurement and the one just before it if it exists.  Otherwise,
-			// use the one just after it if it exists.
+			// A GPS measurement arrived at precise time we want to estimate the robot's speed,
+			// or the time is outside of the GPS history.  Use this GPS measurement and the one 
+			// just before it if it exists.  Otherwise, use the one just after it if it exists.
 			if (beforeIndx > 0) {
-				preLoc = locations.get(beforeIndx - 1);
-				postLoc = locations.get(beforeIndx);	
-			} else if (beforeIndx + 1 < locations.size()){
-				preLoc = locations.get(beforeIndx);
-				postLoc = locations.get(beforeIndx + 1);
+				beforeIndx--;
+			} else if (afterIndx + 1 < series.size()){
+				afterIndx++;
 			} else {
 				Logger.logErr("Unable to get two GPS measurements to estimate speed.");
 				System.exit(1);
-				preLoc = postLoc = null; // dummy code to prevent compiler from complaining 
 			}
-		} else {
-			preLoc = locations.get(beforeIndx);
-			postLoc = locations.get(afterIndx);
 		}
 		
 		// Calculate the difference in time
-		double deltaTime = (postLoc.getTimestamp() - preLoc.getTimestamp()) / 1000.0;
+		double deltaTime = (series.getTime(afterIndx) - series.getTime(beforeIndx)) / 1000.0;
 		
 		// Calculate the distance between the two GPS measurements
-		double dist = preLoc.getLocation().distanceTo(postLoc.getLocation());
+		Location preLoc = new Location(series.get(LAT, beforeIndx), series.get(LON, beforeIndx));
+		Location postLoc = new Location(series.get(LAT, afterIndx), series.get(LON, afterIndx));
+		double dist = preLoc.distanceTo(postLoc);
 		
-		double speed = dist / deltaTime;
-		
-		Logger.logDbg("preLoc=" + preLoc + ", postLoc=" + postLoc + ", dist=" + dist 
-				+ ", deltaTime=" + deltaTime + ", speed=" + speed);
-		
-		return speed;
+		return dist / deltaTime;
 	}
 	
 	/**
@@ -1211,15 +1764,14 @@ public class RobotExpData {
 		if (stopTime > getStopTime())
 			stopTime = getStopTime();
 		
-		Enumeration<TelosBRxRecord> e = telosBRxHist.elements();
-		while (e.hasMoreElements()) {
-			TelosBRxRecord currRecord = e.nextElement();
-			if (currRecord.getTimeStamp() >= startTime && currRecord.getTimeStamp() <= stopTime) {
-				
-				// only add it to the vector if it does not already contain the value.
-				if (!result.contains(currRecord.getSenderID()))
-					result.add(currRecord.getSenderID());
-			}
+		TimeSeries series = getTelosBRxSeries();
+		int lastIndx = series.floorIndex(stopTime);
+		for (int i = series.ceilIndex(startTime); i <= lastIndx; i++) {
+			TelosBRxRecord currRecord = telosBRxHist.get(series.getSource(i));
+			
+			// only add it to the vector if it does not already contain the value.
+			if (!result.contains(currRecord.getSenderID()))
+				result.add(currRecord.getSenderID());
 		}
 		return result;
 	}
@@ -1315,23 +1867,29 @@ public class RobotExpData {
 	 * @return The edge that robot is on at the specified time.
 	 */
 	public PathEdge getRelevantPathEdge(long timestamp) {
-		//log("getRelevantPathEdge: timestamp = " + timestamp);
-		//printPathEdges(false);
+		TimeSeries series = getPathEdgeSeries();
 		
-		for (int i = 0;  i < pathEdges.size(); i++) {
-			
-			PathEdge currEdge = pathEdges.get(i);
+		if (series.size() > 0) {
+			int indx = series.floorIndex(timestamp);
 			
 			// Check whether the requested time is prior to start of the first edge.
-			if (currEdge.getStartTime() > timestamp)
-				return currEdge;
+			if (indx == -1)
+				return pathEdges.get(series.getSource(0));
 			
-			if (currEdge.getStartTime() <= timestamp && currEdge.getEndTime() >= timestamp)
+			PathEdge currEdge = pathEdges.get(series.getSource(indx));
+			if (currEdge.getEndTime() >= timestamp) {
+				// Edges that share a boundary both contain the time, use the earlier one.
+				while (indx > 0 && pathEdges.get(series.getSource(indx - 1)).getEndTime() >= timestamp)
+					currEdge = pathEdges.get(series.getSource(--indx));
 				return currEdge;
+			}
 			
 			// Check whether requested time is after end of the last edge.
-			if (i == pathEdges.size() - 1 && currEdge.getEndTime() < timestamp)
+			if (indx == series.size() - 1)
 				return currEdge;
+			
+			// The requested time is between two edges, use the next one.
+			return pathEdges.get(series.getSource(indx + 1));
 		}
 		
 		Logger.logErr("Could not find relevant path edge at time " + timestamp
@@ -1401,55 +1959,17 @@ public class RobotExpData {
 	 * @return The index within motionCmds that contains the relevant motion command.
 	 */
 	private int getRelevantMotionCmdIndx(long timestamp) {
+		TimeSeries series = getMotionCmdSeries();
 		
-		for (int indx = 0; indx < motionCmds.size() - 1; indx++) {
-			
-			MotionCmd currCmd = motionCmds.get(indx);
-			MotionCmd nxtCmd = motionCmds.get(indx+1);
-			
-			// Check if the relevant time is prior to the first motion command.
-			if (indx == 0 && timestamp <  currCmd.time) {
-				Logger.log("WARNING: timestamp before that of first motion command (" 
-						+ timestamp + " < " + currCmd.time + "), assuming first command is relevant...");
-				return 0;
-			}
-			
-			// Check if the timestamp falls between the current and next motion commands
-			else if (currCmd.time <= timestamp && timestamp < nxtCmd.time) {
-				Logger.log("Found relevant motion command at index " + indx);
-				return indx;
-			}
-			
-			// Check if timestamp falls after the last command.
-			else if (indx + 1 == motionCmds.size() - 1 && nxtCmd.time <= timestamp) {
-				return indx+1;
-			}
-			
-		}
-		
-		if (motionCmds.size() == 0) {
+		if (series.size() == 0) {
 			Logger.logErr("No motion commands!");
 			System.exit(1);
 		}
 		
-		// The following is debugging code...
-		String firstCmdTime;
-		String lastCmdTime;
-		if (motionCmds.size() > 0) {
-			firstCmdTime = "Timestamp of first motion command: " + motionCmds.get(0).time;
-			lastCmdTime = "Timestamp of last motion command: " + motionCmds.get(motionCmds.size()-1).time;
-		} else {
-			firstCmdTime = "No first motion command!";
-			lastCmdTime = "No last motion command!";
-		}
-		
-		Logger.logErr("Failed to find relevant motion task, timestamp = " + timestamp
-				+ "\n\t" + firstCmdTime
-				+ "\n\t" + lastCmdTime);
-		
-		new Exception().printStackTrace();
-		System.exit(1); // fatal error
-		return -1; // should never get here
+		// The relevant command is the last one issued at or before the timestamp.
+		// If the timestamp is prior to the first motion command, assume the first 
+		// command is relevant.
+		return Math.max(series.floorIndex(timestamp), 0);
 	}
 	/**
 	 * Returns the heading command issued by the MotionArbiter to the robot.
@@ -1460,7 +1980,7 @@ public class RobotExpData {
 	 */
 	public double getHeadingCmd(long timestamp) {
 		int indx = getRelevantMotionCmdIndx(timestamp);
-		return motionCmds.get(indx).headingCmd;
+		return getMotionCmdSeries().get(HEADING_CMD, indx);
 	}
 	
 	/**
@@ -1481,33 +2001,8 @@ public class RobotExpData {
 			return getEndHeading();
 		}
 		
-		// Find the index of the headings immediately before or after the
-		// desired time
-		int beforeIndx = 0; 
-		int afterIndx = 0;
-		
-		boolean afterIndxFound = false;
-		
-		for (int i=0; i < headings.size(); i++) {
-			HeadingState currHeading = headings.get(i);
-			if (currHeading.getTimestamp() <= timestamp)
-				beforeIndx = i;
-			if (!afterIndxFound && currHeading.getTimestamp() >= timestamp) {
-				afterIndxFound = true;
-				afterIndx = i;
-			}
-		}
-		
-		Logger.logDbg("timestamp = " + timestamp + ", beforeIndx = " + beforeIndx + ", afterIndx = " + afterIndx);
-		
-		if (beforeIndx == afterIndx)
-			return headings.get(beforeIndx).getHeading();
-		else {
-			HeadingState bHeading = headings.get(beforeIndx);
-			HeadingState aHeading = headings.get(afterIndx);
-			
-			return getInterpolatedHeading(bHeading, aHeading, timestamp);
-		}
+		// Interpolate between the headings immediately before and after the desired time.
+		return getHeadingSeries().interpolate(0, timestamp);
 	}
 	
 	/**
@@ -1549,35 +2044,16 @@ public class RobotExpData {
 		
 		// Find the index of the locations immediately before or after the
 		// desired time
-		int beforeIndx = 0; 
-		int afterIndx = 0;
+		TimeSeries series = getLocationSeries();
+		int beforeIndx = Math.max(series.floorIndex(timestamp), 0);
+		int afterIndx = Math.min(series.ceilIndex(timestamp), series.size() - 1);
 		
-		boolean afterIndxFound = false;
-		
-		for (int i=0; i < locations.size(); i++) {
-			GPSLocationState currLocation = locations.get(i);
-			if (currLocation.getTimestamp() <= timestamp)
-				beforeIndx = i;
-			if (!afterIndxFound && currLocation.getTimestamp() >= timestamp) {
-				afterIndxFound = true;
-				afterIndx = i;
-			}
-		}
-		
-		Logger.logDbg("timestamp = " + timestamp + ", beforeIndx = " + beforeIndx + ", afterIndx = " + afterIndx);
-		
-		if (beforeIndx == afterIndx)
-			return new Location(locations.get(beforeIndx).getLoc());
+		if (beforeIndx == afterIndx || series.getTime(beforeIndx) == series.getTime(afterIndx))
+			return locations.get(series.getSource(beforeIndx)).getLocation();
 		else {
-			GPSLocationState bLoc = locations.get(beforeIndx);
-			GPSLocationState aLoc = locations.get(afterIndx);
-			
-			return getInterpolatedLoc(
-					bLoc.getLocation().latitude(), bLoc.getLocation().longitude(), bLoc.getTimestamp(),
-					aLoc.getLocation().latitude(), aLoc.getLocation().longitude(), aLoc.getTimestamp(),
-					timestamp);
+			return new Location(series.interpolate(LAT, beforeIndx, afterIndx, timestamp),
+					series.interpolate(LON, beforeIndx, afterIndx, timestamp));
 		}
-	
 	}
 	
 	/**
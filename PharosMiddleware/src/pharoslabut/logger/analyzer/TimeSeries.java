@@ -0,0 +1,192 @@
+package pharoslabut.logger.analyzer;
+
+import java.util.Arrays;
+
+/**
+ * A time-indexed series of samples stored in primitive columns.  Each sample
+ * has a timestamp, one value per column, and the index of the object it was
+ * created from (e.g., its position in RobotExpData's location history), so the
+ * original object can still be retrieved.
+ *
+ * <p>Once sort() is called, the samples are ordered by time and lookups are
+ * binary searches.  This replaces the linear scans that RobotExpData used to
+ * perform for every timestamp query.</p>
+ */
+public class TimeSeries {
+
+	private long[] times;
+	private double[][] columns;
+	private int[] sources;
+	private int size = 0;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param numColumns The number of values per sample.
+	 * @param capacity The initial capacity.
+	 */
+	public TimeSeries(int numColumns, int capacity) {
+		capacity = Math.max(capacity, 4);
+		times = new long[capacity];
+		sources = new int[capacity];
+		columns = new double[numColumns][capacity];
+	}
+
+	/**
+	 * Appends a sample.  Call sort() after adding samples out of order.
+	 *
+	 * @param time The sample's timestamp.
+	 * @param source The index of the object from which the sample was created.
+	 * @param values The sample's values, one per column.
+	 */
+	public void add(long time, int source, double... values) {
+		if (size == times.length) {
+			int capacity = size * 2;
+			times = Arrays.copyOf(times, capacity);
+			sources = Arrays.copyOf(sources, capacity);
+			for (int c = 0; c < columns.length; c++)
+				columns[c] = Arrays.copyOf(columns[c], capacity);
+		}
+		times[size] = time;
+		sources[size] = source;
+		for (int c = 0; c < columns.length; c++)
+			columns[c][size] = values[c];
+		size++;
+	}
+
+	/**
+	 * Orders the samples by time.  Samples with equal timestamps keep their
+	 * relative order.  Does nothing if the samples are already ordered, which
+	 * is the common case since logs are written in time order.
+	 */
+	public void sort() {
+		boolean sorted = true;
+		for (int i = 1; i < size && sorted; i++)
+			sorted = times[i - 1] <= times[i];
+		if (sorted)
+			return;
+
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++)
+			order[i] = i;
+		Arrays.sort(order, new java.util.Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				long ta = times[a], tb = times[b];
+				return ta < tb ? -1 : (ta == tb ? 0 : 1);
+			}
+		});
+
+		long[] newTimes = new long[times.length];
+		int[] newSources = new int[sources.length];
+		double[][] newColumns = new double[columns.length][times.length];
+		for (int i = 0; i < size; i++) {
+			int j = order[i];
+			newTimes[i] = times[j];
+			newSources[i] = sources[j];
+			for (int c = 0; c < columns.length; c++)
+				newColumns[c][i] = columns[c][j];
+		}
+		times = newTimes;
+		sources = newSources;
+		columns = newColumns;
+	}
+
+	/**
+	 * @return The number of samples.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i The index of a sample.
+	 * @return The sample's timestamp.
+	 */
+	public long getTime(int i) {
+		return times[i];
+	}
+
+	/**
+	 * @param column The column.
+	 * @param i The index of a sample.
+	 * @return The sample's value in the column.
+	 */
+	public double get(int column, int i) {
+		return columns[column][i];
+	}
+
+	/**
+	 * @param i The index of a sample.
+	 * @return The index of the object from which the sample was created.
+	 */
+	public int getSource(int i) {
+		return sources[i];
+	}
+
+	/**
+	 * @param time The time of interest.
+	 * @return The index of the last sample at or before the time, or -1 if
+	 * all samples are after it.
+	 */
+	public int floorIndex(long time) {
+		int lo = 0, hi = size - 1, result = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (times[mid] <= time) {
+				result = mid;
+				lo = mid + 1;
+			} else
+				hi = mid - 1;
+		}
+		return result;
+	}
+
+	/**
+	 * @param time The time of interest.
+	 * @return The index of the first sample at or after the time, or size() if
+	 * all samples are before it.
+	 */
+	public int ceilIndex(long time) {
+		int lo = 0, hi = size - 1, result = size;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (times[mid] >= time) {
+				result = mid;
+				hi = mid - 1;
+			} else
+				lo = mid + 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Linearly interpolates a column at a specific time.  Times before the
+	 * first sample or after the last sample take the value of that sample.
+	 *
+	 * @param column The column.
+	 * @param time The time of interest.
+	 * @return The interpolated value.
+	 */
+	public double interpolate(int column, long time) {
+		int before = Math.max(floorIndex(time), 0);
+		int after = Math.min(ceilIndex(time), size - 1);
+		return interpolate(column, before, after, time);
+	}
+
+	/**
+	 * Linearly interpolates a column between two samples.
+	 *
+	 * @param column The column.
+	 * @param before The index of the sample at or before the time.
+	 * @param after The index of the sample at or after the time.
+	 * @param time The time of interest.
+	 * @return The interpolated value.
+	 */
+	public double interpolate(int column, int before, int after, long time) {
+		double[] values = columns[column];
+		long t1 = times[before], t2 = times[after];
+		if (before == after || t1 == t2)
+			return values[before];
+		return values[before] + (values[after] - values[before]) * (time - t1) / (double)(t2 - t1);
+	}
+}
@@ -2,7 +2,9 @@ package pharoslabut.logger.analyzer.pingTest;
 import java.io.*;
 import java.util.*;
 
+import pharoslabut.logger.EventLog;
 import pharoslabut.logger.Logger;
+import pharoslabut.logger.analyzer.EventLogReader;
 import pharoslabut.logger.analyzer.GPSLocationState;
 import pharoslabut.logger.analyzer.HeadingState;
 import pharoslabut.logger.analyzer.Line;
@@ -79,6 +81,8 @@ public class RobotExpData {
 	
 	/**
 	 * Reads and organizes the data contained in the robot's experiment log file.
+	 * If the log file has an event log, the GPS, heading, and motion command
+	 * events are read from the event log instead of the log file.
 	 * 
 	 * @throws NumberFormatException
 	 * @throws IOException
@@ -90,8 +94,20 @@ public class RobotExpData {
 		PlayerGpsData currLoc = null;
 		boolean expStartTimeSet = false;
 		
+		EventLogReader events = pharoslabut.logger.analyzer.RobotExpData.USE_EVENT_LOG 
+			? EventLogReader.open(fileName) : null;
+		boolean hasEvent = events != null && events.next();
+		int lineNo = 0;
+		
 		while ((line = br.readLine()) != null) {
 			
+			// Add the events that were recorded before this line.
+			while (hasEvent && events.getLine() <= lineNo) {
+				addEvent(events);
+				hasEvent = events.next();
+			}
+			lineNo++;
+			
 			// Save the experiment start time
 			if (line.contains("Starting experiment at time ")) {
 				String keyStr = "Starting experiment at time ";
@@ -105,6 +121,9 @@ public class RobotExpData {
 			
 			// Extract the GPS location data.
 			else if (line.contains("New GPS Data:")) {
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				String keyStr = "New GPS Data:";
 				String gpsLine = line.substring(line.indexOf(keyStr) + keyStr.length());
 				
@@ -126,15 +145,14 @@ public class RobotExpData {
 				currLoc.setUtm_n(Double.valueOf(tokens[16]));
 				currLoc.setVdop(Integer.valueOf(tokens[24]));
 				
-				Location l = new Location(currLoc);
-				if (pharoslabut.sensors.GPSDataBuffer.isValid(l)) {  // Only add the GPSLocation if it is valid.
-					locations.add(new GPSLocationState(timeStamp, currLoc));
-				} else
-					Logger.log("Rejecting invalid location: " + currLoc);
+				addLocation(timeStamp, currLoc);
 			}
 			
 			// Extract the heading measurements of the robot
 			else if (line.contains("New heading=")) {
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				String keyStr = "New heading=";
 				String headingLine = line.substring(line.indexOf(keyStr) + keyStr.length());
 				
@@ -143,11 +161,7 @@ public class RobotExpData {
 				long timeStamp = Long.valueOf(line.substring(1,line.indexOf(']')));
 				double heading = Double.valueOf(tokens[0]);
 				
-				// Only add the heading measurement if it is valid.
-				if (pharoslabut.sensors.CompassDataBuffer.isValid(heading)) {
-					headings.add(new HeadingState(timeStamp, heading));
-				} else
-					Logger.log("WARNING: Rejecting invalid heading: " + heading);
+				addHeading(timeStamp, heading);
 			}
 			
 //			// Extract when the current waypoint was reached.
@@ -186,6 +200,9 @@ public class RobotExpData {
 			
 			// Extract the motion commands being issued by the motion arbiter
 			else if (line.contains("MotionArbiter:") && line.contains("Sending motion command")) {
+				if (events != null && events.covers(lineNo))
+					continue;  // read from the event log
+				
 				String keyStr = "Sending motion command";
 				String headingLine = line.substring(line.indexOf(keyStr) + keyStr.length());
 				
@@ -201,6 +218,13 @@ public class RobotExpData {
 			}
 			
 		} // end while...
+		br.close();
+		
+		// Add the events that were recorded after the last line.
+		while (hasEvent) {
+			addEvent(events);
+			hasEvent = events.next();
+		}
 		
 		// Do some sanity checks...
 		if (!expStartTimeSet) {
@@ -214,6 +238,54 @@ public class RobotExpData {
 		}
 	}
 	
+	/**
+	 * Adds a GPS location if it is valid.
+	 * 
+	 * @param timeStamp The time at which the location was logged.
+	 * @param gpsData The location.
+	 */
+	private void addLocation(long timeStamp, PlayerGpsData gpsData) {
+		if (pharoslabut.sensors.GPSDataBuffer.isValid(new Location(gpsData))) {  // Only add the GPSLocation if it is valid.
+			locations.add(new GPSLocationState(timeStamp, gpsData));
+		} else
+			Logger.log("Rejecting invalid location: " + gpsData);
+	}
+	
+	/**
+	 * Adds a heading measurement if it is valid.
+	 * 
+	 * @param timeStamp The time at which the heading was logged.
+	 * @param heading The heading.
+	 */
+	private void addHeading(long timeStamp, double heading) {
+		if (pharoslabut.sensors.CompassDataBuffer.isValid(heading)) {
+			headings.add(new HeadingState(timeStamp, heading));
+		} else
+			Logger.log("WARNING: Rejecting invalid heading: " + heading);
+	}
+	
+	/**
+	 * Adds the current record of an event log.  Only the record types used by 
+	 * this analyzer are added.
+	 * 
+	 * @param events The event log.
+	 */
+	private void addEvent(EventLogReader events) {
+		long timeStamp = events.getTimestamp();
+		switch(events.getType()) {
+		case EventLog.GPS:
+			addLocation(timeStamp, pharoslabut.logger.analyzer.RobotExpData.readGPSEvent(events));
+			break;
+		case EventLog.HEADING:
+			addHeading(timeStamp, events.getDouble(EventLog.HEADING_HEADING));
+			break;
+		case EventLog.MOTION_CMD:
+			motionCmds.add(new MotionCmd(timeStamp, events.getDouble(EventLog.MOTION_CMD_SPEED), 
+					events.getDouble(EventLog.MOTION_CMD_HEADING)));
+			break;
+		}
+	}
+	
 	/**
 	 * Compares the GPS timestamps with the log timestamps to determine the 
 	 * offset needed to calibrate the log timestamps to match the GPS timestamps.
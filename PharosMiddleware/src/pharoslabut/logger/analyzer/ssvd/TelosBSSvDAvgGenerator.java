@@ -62,6 +62,7 @@ public class TelosBSSvDAvgGenerator {
 		Vector<TelosBSignalStrengthResult> data = new Vector<TelosBSignalStrengthResult>();
 		
 		try {
+			LogLineTokenizer tokenizer = new LogLineTokenizer();
 			String line = null;
 			int lineno = 1;
 			while (( line = input.readLine()) != null) {
@@ -72,14 +73,14 @@ public class TelosBSSvDAvgGenerator {
 //						log("Adding comment: " + line);
 					}
 					else if (!line.contains("Timestamp")) { // ignore the header
-						String[] elem = line.split("[\\s]+");
-						long timestamp = Long.valueOf(elem[0]);
-						int sndrID = Integer.valueOf(elem[1]);
-						int rcvrID = Integer.valueOf(elem[2]);
-						int seqno = Integer.valueOf(elem[3]);
-						double dist = Double.valueOf(elem[4]);
-						int lqi = Integer.valueOf(elem[5]);
-						int rssi = Integer.valueOf(elem[6]);
+						LogLineTokenizer elem = tokenizer.tokenize(line, 0, LogLineTokenizer.WHITESPACE, true);
+						long timestamp = elem.getLong(0);
+						int sndrID = elem.getInt(1);
+						int rcvrID = elem.getInt(2);
+						int seqno = elem.getInt(3);
+						double dist = elem.getDouble(4);
+						int lqi = elem.getInt(5);
+						int rssi = elem.getInt(6);
 						
 						TelosBRxRecord rxRecord = new TelosBRxRecord(timestamp, rcvrID, sndrID, seqno, rssi, lqi) ;
 						TelosBSignalStrengthResult result = new TelosBSignalStrengthResult(rxRecord, dist);
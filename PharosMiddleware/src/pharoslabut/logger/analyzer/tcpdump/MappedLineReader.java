@@ -0,0 +1,164 @@
+package pharoslabut.logger.analyzer.tcpdump;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the lines within a region of a file through a memory-mapped window.
+ * Only one window of at most WINDOW_SIZE bytes is mapped at a time, so files
+ * of any size can be read with a bounded amount of memory.  Lines are decoded
+ * using the platform's default character set, like a FileReader.
+ *
+ * @see TCPDumpReader
+ */
+class MappedLineReader {
+
+	/**
+	 * The maximum number of bytes mapped at a time.
+	 */
+	static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private final FileChannel channel;
+
+	/**
+	 * The position of the next line within the file.
+	 */
+	private long pos;
+
+	/**
+	 * The end of the region being read.
+	 */
+	private final long end;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+
+	/**
+	 * Holds the bytes of a line that spans two windows.
+	 */
+	private byte[] lineBuf = new byte[512];
+
+	/**
+	 * The constructor.
+	 *
+	 * @param channel The file.
+	 * @param start The position of the first line to read.  This must be the start of a line.
+	 * @param end The position after the last byte to read.  This must be the end of a line
+	 * or the end of the file.
+	 */
+	MappedLineReader(FileChannel channel, long start, long end) {
+		this.channel = channel;
+		this.pos = start;
+		this.end = end;
+	}
+
+	/**
+	 * @return The position of the next line within the file.
+	 */
+	long getPosition() {
+		return pos;
+	}
+
+	/**
+	 * Reads the next line.  Like BufferedReader.readLine(), the line terminator
+	 * ("\n" or "\r\n") is not included.
+	 *
+	 * @return The next line, or null if there are no more lines.
+	 * @throws IOException If the file could not be mapped.
+	 */
+	String readLine() throws IOException {
+		if (pos >= end)
+			return null;
+
+		int len = 0;
+		boolean spansWindows = false;
+		while (true) {
+			if (window == null || pos >= windowStart + window.limit()) {
+				windowStart = pos;
+				window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(end - pos, WINDOW_SIZE));
+			}
+
+			// Search the window for the end of the line.
+			int lineStart = (int)(pos - windowStart);
+			int limit = window.limit();
+			int i = lineStart;
+			while (i < limit && window.get(i) != '\n')
+				i++;
+
+			boolean foundEnd = i < limit || windowStart + limit >= end;
+			if (foundEnd && !spansWindows) {
+				// The common case: the entire line is in the window.
+				pos = windowStart + Math.min(i + 1, limit);
+				return decode(lineStart, i);
+			}
+
+			// Copy this part of the line so the next window can be mapped.
+			int partLen = i - lineStart;
+			if (len + partLen > lineBuf.length)
+				lineBuf = java.util.Arrays.copyOf(lineBuf, Math.max(lineBuf.length * 2, len + partLen));
+			for (int j = lineStart; j < i; j++)
+				lineBuf[len++] = window.get(j);
+			pos = windowStart + Math.min(i + 1, limit);
+			spansWindows = true;
+
+			if (foundEnd) {
+				if (len > 0 && lineBuf[len - 1] == '\r')
+					len--;
+				return new String(lineBuf, 0, len, CHARSET);
+			}
+		}
+	}
+
+	/**
+	 * Decodes a line within the current window.
+	 *
+	 * @param start The start of the line within the window.
+	 * @param end The end of the line within the window, excluding the '\n'.
+	 * @return The line.
+	 */
+	private String decode(int start, int end) {
+		if (end > start && window.get(end - 1) == '\r')
+			end--;
+		int len = end - start;
+		if (len > lineBuf.length)
+			lineBuf = new byte[Math.max(lineBuf.length * 2, len)];
+		window.position(start);
+		window.get(lineBuf, 0, len);
+		return new String(lineBuf, 0, len, CHARSET);
+	}
+
+	/**
+	 * Finds the start of the first line at or after a position in a file.
+	 *
+	 * @param channel The file.
+	 * @param pos The position.
+	 * @return The start of the first line that begins at or after pos, or
+	 * the size of the file if there is no such line.
+	 * @throws IOException If the file could not be read.
+	 */
+	static long nextLineStart(FileChannel channel, long pos) throws IOException {
+		long size = channel.size();
+		if (pos <= 0)
+			return 0;
+
+		// The position is the start of a line if the byte before it ends a line.
+		java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(8192);
+		long curr = pos - 1;
+		while (curr < size) {
+			buf.clear();
+			int numRead = channel.read(buf, curr);
+			if (numRead <= 0)
+				break;
+			for (int i = 0; i < numRead; i++) {
+				if (buf.get(i) == '\n')
+					return curr + i + 1;
+			}
+			curr += numRead;
+		}
+		return size;
+	}
+}
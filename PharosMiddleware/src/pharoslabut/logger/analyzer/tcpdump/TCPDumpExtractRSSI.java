@@ -1,6 +1,8 @@
 package pharoslabut.logger.analyzer.tcpdump;
 
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Vector;
 
 import pharoslabut.logger.FileLogger;
 
@@ -76,25 +78,32 @@ public class TCPDumpExtractRSSI {
 		}
 		FileLogger flogger = new FileLogger(outFileName, false);
 		
-		// Determine the number of relevant beacons in the log file...
+		// Determine the number of relevant beacons in the log file.  The chunks of the log file
+		// are counted in parallel, each producing {number of beacons, timestamp of first beacon}.
+		final Long senderAddr = sa;
+		Vector<long[]> chunkResults = reader.processChunks(Runtime.getRuntime().availableProcessors(), 
+			new TCPDumpReader.ChunkProcessor<long[]>() {
+				public long[] process(Iterator<TCPDumpRecord> records) {
+					long[] result = {0, -1};
+					while (records.hasNext()) {
+						TCPDumpRecord currRec = records.next();
+						
+						// If we are only interested in beacons sent by a specific robot...
+						if (senderAddr == null || currRec.getSourceAddr() == senderAddr) {
+							result[0]++;
+							if (result[1] == -1) result[1] = currRec.getTimeStamp();
+						}
+					}
+					return result;
+				}
+			});
+		
 		int sampleSize = 0;
 		long startTime = -1;
-		
-		Enumeration<TCPDumpRecord> e = reader.elements();
-		while (e.hasMoreElements()) {
-			TCPDumpRecord currRec = e.nextElement();
-			
-			// If we are only interested in beacons sent by a specific robot...
-			if (sa != null) {
-				// If the beacon was sent by said robot...
-				if (currRec.getSourceAddr() == sa) {
-					sampleSize++;
-					if (startTime == -1) startTime = currRec.getTimeStamp();
-				}
-			} else {
-				sampleSize++;
-				if (startTime == -1) startTime = currRec.getTimeStamp();
-			}
+		for (int i=0; i < chunkResults.size(); i++) {
+			long[] chunkResult = chunkResults.get(i);
+			sampleSize += chunkResult[0];
+			if (startTime == -1) startTime = chunkResult[1];
 		}
 		
 		System.out.println("Saving results to: " + outFileName + ", sample size = " + sampleSize);
@@ -103,7 +112,7 @@ public class TCPDumpExtractRSSI {
 		flogger.log("Sample Size: " + sampleSize);
 		flogger.log("Timestamp (us)\tDelta Time (s)\tSource MAC Address\tNetwork Name\tRSSI (dBm)");
 		
-		e = reader.elements();
+		Enumeration<TCPDumpRecord> e = reader.elements();
 		while (e.hasMoreElements()) {
 			TCPDumpRecord currRec = e.nextElement();
 			
@@ -1,23 +1,55 @@
 package pharoslabut.logger.analyzer.tcpdump;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 import pharoslabut.logger.*;
 
 /**
- * Reads in a log file generated by TCPDump and organizes it into TCPDumpRecord objects.
+ * Reads a log file generated by TCPDump and organizes it into TCPDumpRecord objects.
  * Note that the log must have been converted to plain text format.
  * 
+ * <p>The records are not held in memory.  They are parsed lazily from a memory-mapped
+ * view of the log file each time the log file is iterated over, so captures of any
+ * size can be analyzed.  Large captures can also be processed in parallel by
+ * splitting them into chunks along line boundaries; see processChunks().</p>
+ * 
  * @author Chien-Liang Fok
  */
-public class TCPDumpReader {
+public class TCPDumpReader implements Iterable<TCPDumpRecord> {
+	
+	/**
+	 * Chunks are at least this large so small log files are not split
+	 * into more chunks than they are worth.
+	 */
+	private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+	
+	/**
+	 * Processes the records within one chunk of a tcpdump log file.
+	 * 
+	 * @param <R> The type of the result produced for each chunk.
+	 * @see TCPDumpReader#processChunks(int, ChunkProcessor)
+	 */
+	public interface ChunkProcessor<R> {
+		/**
+		 * Processes the records of a chunk.  This is called concurrently for different chunks.
+		 * 
+		 * @param records The records in the chunk, in the order they appear in the log file.
+		 * @return The result for the chunk.
+		 */
+		public R process(Iterator<TCPDumpRecord> records);
+	}
+	
 	/**
 	 * The name of the TCPDump log file.
 	 */
 	private String fileName;
 	
-	private Vector<TCPDumpRecord> tcpDumpData = new Vector<TCPDumpRecord>();
-	
 	private FileLogger flogger;
 	
 	/**
@@ -27,20 +59,134 @@ public class TCPDumpReader {
 	 */
 	public TCPDumpReader(String fileName) {
 		this.fileName = fileName;
-		try {
-			readFile();
-		} catch(IOException ioe) {
-			ioe.printStackTrace();
+		if (!new File(fileName).canRead()) {
+			new FileNotFoundException(fileName).printStackTrace();
 			System.exit(1);
 		}
 	}
 	
+	/**
+	 * Counts the records in the log file.  This reads the entire log file.
+	 * 
+	 * @return The number of records.
+	 */
 	public int numRecords() {
-		return tcpDumpData.size();
+		Vector<Integer> counts = processChunks(Runtime.getRuntime().availableProcessors(), 
+			new ChunkProcessor<Integer>() {
+				public Integer process(Iterator<TCPDumpRecord> records) {
+					int count = 0;
+					for (; records.hasNext(); records.next())
+						count++;
+					return count;
+				}
+			});
+		
+		int result = 0;
+		for (int i=0; i < counts.size(); i++)
+			result += counts.get(i);
+		return result;
 	}
 	
+	/**
+	 * Returns an enumeration of the records in the log file.  The records are read 
+	 * from the log file as the enumeration advances.
+	 * 
+	 * @return An enumeration of the records in the log file.
+	 */
 	public Enumeration<TCPDumpRecord> elements() {
-		return tcpDumpData.elements();
+		final Iterator<TCPDumpRecord> iterator = iterator();
+		return new Enumeration<TCPDumpRecord>() {
+			public boolean hasMoreElements() {
+				return iterator.hasNext();
+			}
+			
+			public TCPDumpRecord nextElement() {
+				return iterator.next();
+			}
+		};
+	}
+	
+	/**
+	 * Returns an iterator over the records in the log file.  The records are read 
+	 * from the log file as the iterator advances, and the log file is closed once 
+	 * the last record is reached.
+	 * 
+	 * @return An iterator over the records in the log file.
+	 */
+	public Iterator<TCPDumpRecord> iterator() {
+		try {
+			RandomAccessFile file = new RandomAccessFile(fileName, "r");
+			FileChannel channel = file.getChannel();
+			return new RecordIterator(file, new MappedLineReader(channel, 0, channel.size()), true);
+		} catch(IOException ioe) {
+			ioe.printStackTrace();
+			System.exit(1);
+			return null;
+		}
+	}
+	
+	/**
+	 * Splits the log file into chunks along line boundaries and processes the chunks
+	 * concurrently.  Each chunk is processed by a task of a fork-join pool.
+	 * 
+	 * @param numChunks The number of chunks to split the log file into.
+	 * @param processor Processes the records in each chunk.  This must be thread safe.
+	 * @return The results of processing each chunk, in the order the chunks appear
+	 * in the log file.
+	 */
+	public <R> Vector<R> processChunks(int numChunks, final ChunkProcessor<R> processor) {
+		Vector<R> result = new Vector<R>();
+		RandomAccessFile file = null;
+		ForkJoinPool pool = null;
+		try {
+			file = new RandomAccessFile(fileName, "r");
+			final FileChannel channel = file.getChannel();
+			long size = channel.size();
+			numChunks = (int)Math.max(1, Math.min(numChunks, size / MIN_CHUNK_SIZE));
+			
+			// Find the chunk boundaries.  Each boundary is the start of a line.
+			long[] bounds = new long[numChunks + 1];
+			for (int i=1; i < numChunks; i++)
+				bounds[i] = MappedLineReader.nextLineStart(channel, size * i / numChunks);
+			bounds[numChunks] = size;
+			
+			Vector<Callable<R>> tasks = new Vector<Callable<R>>();
+			for (int i=0; i < numChunks; i++) {
+				final long start = bounds[i];
+				final long end = Math.max(start, bounds[i+1]);
+				tasks.add(new Callable<R>() {
+					public R call() {
+						return processor.process(new RecordIterator(null, 
+								new MappedLineReader(channel, start, end), start == 0));
+					}
+				});
+			}
+			
+			pool = new ForkJoinPool(numChunks);
+			List<Future<R>> results = pool.invokeAll(tasks);
+			for (int i=0; i < results.size(); i++)
+				result.add(results.get(i).get());
+		} catch(IOException ioe) {
+			ioe.printStackTrace();
+			System.exit(1);
+		} catch(InterruptedException ie) {
+			ie.printStackTrace();
+			System.exit(1);
+		} catch(ExecutionException ee) {
+			ee.getCause().printStackTrace();
+			System.exit(1);
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+			if (file != null) {
+				try {
+					file.close();
+				} catch(IOException ioe) {
+					ioe.printStackTrace();
+				}
+			}
+		}
+		return result;
 	}
 	
 	/**
@@ -51,37 +197,87 @@ public class TCPDumpReader {
 	public void setFileLogger(FileLogger flogger) {
 		this.flogger = flogger;
 	}
-
+	
 	/**
-	 * Reads in and organizes the data in the tcpdump log file.
-	 * 
-	 * @throws NumberFormatException
-	 * @throws IOException
+	 * Parses the records within a region of the log file as they are requested.
+	 * Lines that are not valid records are skipped.
 	 */
-	private void readFile() throws IOException {
-		File file = new File(fileName);
-		BufferedReader br = new BufferedReader(new FileReader(file));
-		String line = null;
+	private class RecordIterator implements Iterator<TCPDumpRecord> {
+		/**
+		 * The file to close after the last record, or null if the caller closes it.
+		 */
+		private RandomAccessFile file;
+		private MappedLineReader reader;
+		
+		/**
+		 * The line number of the next line, which is only known when the region 
+		 * begins at the start of the file.
+		 */
+		private int lineno = 0;
+		private boolean knowLineno;
 		
-		int lineno = 0;
-		while (( line = br.readLine()) != null){
+		private TCPDumpRecord next;
+		
+		public RecordIterator(RandomAccessFile file, MappedLineReader reader, boolean knowLineno) {
+			this.file = file;
+			this.reader = reader;
+			this.knowLineno = knowLineno;
+			advance();
+		}
+		
+		/**
+		 * Parses lines until a valid record is found or the end of the region is reached.
+		 */
+		private void advance() {
+			next = null;
 			try {
-				TCPDumpRecord record = new TCPDumpRecord(line);
-				tcpDumpData.add(record);
-			} catch(InvalidFormatException ife) {
-				log("WARNING: Ignoring line " + lineno + " due to invalid format.", flogger);
-				ife.printStackTrace();
+				String line;
+				while (next == null && (line = reader.readLine()) != null) {
+					try {
+						next = new TCPDumpRecord(line);
+					} catch(InvalidFormatException ife) {
+						log("WARNING: Ignoring line " + (knowLineno ? Integer.toString(lineno) 
+								: "ending at byte " + reader.getPosition()) + " due to invalid format: " 
+								+ ife.getMessage(), flogger);
+					}
+					lineno++;
+				}
+			} catch(IOException ioe) {
+				ioe.printStackTrace();
+				System.exit(1);
+			}
+			
+			if (next == null && file != null) {
+				try {
+					file.close();
+				} catch(IOException ioe) {
+					ioe.printStackTrace();
+				}
+				file = null;
 			}
-			lineno++;
+		}
+		
+		public boolean hasNext() {
+			return next != null;
+		}
+		
+		public TCPDumpRecord next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			TCPDumpRecord result = next;
+			advance();
+			return result;
+		}
+		
+		public void remove() {
+			throw new UnsupportedOperationException();
 		}
 	}
 	
 	public String toString() {
 		StringBuffer result = new StringBuffer();
-		for (int i=0; i < tcpDumpData.size(); i++) {
-			TCPDumpRecord rec = tcpDumpData.get(i);
+		for (TCPDumpRecord rec : this)
 			result.append(rec.toString() + "\n");
-		}
 		return result.toString();
 	}
 	
@@ -135,10 +331,15 @@ public class TCPDumpReader {
 		}
 		
 		TCPDumpReader reader = new TCPDumpReader(fileName);
-		if (outFile != null) {
-			FileLogger flogger = new FileLogger(outFile);
-			flogger.log(reader.toString());
+		FileLogger flogger = null;
+		if (outFile != null)
+			flogger = new FileLogger(outFile, false);
+		
+		// Print the records as they are read so the entire log file is never in memory.
+		for (TCPDumpRecord rec : reader) {
+			if (flogger != null)
+				flogger.log(rec.toString());
+			System.out.println(rec.toString());
 		}
-		System.out.println(reader.toString());
 	}
 }
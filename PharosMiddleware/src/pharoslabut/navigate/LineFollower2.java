@@ -6,6 +6,9 @@ import java.util.Vector;
 import pharoslabut.logger.Logger;
 import pharoslabut.sensors.BlobDataConsumer;
 import pharoslabut.sensors.BlobDataProvider;
+import pharoslabut.util.ControlLoop;
+import pharoslabut.util.ControlLoopScheduler;
+import pharoslabut.util.ScheduledControlLoop;
 import playerclient3.Position2DInterface;
 import playerclient3.PtzInterface;
 import playerclient3.structures.blobfinder.PlayerBlobfinderBlob;
@@ -20,9 +23,9 @@ import playerclient3.structures.ptz.PlayerPtzCmd;
  * @author Chien-Liang Fok
  *
  */
-public class LineFollower2 implements Runnable, BlobDataConsumer {
+public class LineFollower2 implements ControlLoop, BlobDataConsumer {
 	/**
-	 * This is the cycle period of the LineFollower thread.
+	 * This is the cycle period of the LineFollower control loop.
 	 * It is in milliseconds.
 	 */
 	//public static int CYCLE_PERIOD = 100; // 10Hz
@@ -62,7 +65,7 @@ public class LineFollower2 implements Runnable, BlobDataConsumer {
 	
 //	public int turnSign;
 	
-	private boolean done = false;
+	private volatile boolean done = false;
 	
 	/**
 	 * The object that moves the robot.
@@ -75,10 +78,20 @@ public class LineFollower2 implements Runnable, BlobDataConsumer {
 	private boolean paused = false;
 	
 	/**
-	 * A reference to the thread performing the line following task.  It is null initially, but
+	 * A reference to the control loop performing the line following task.  It is null initially, but
 	 * is assigned a value when start() is called.
 	 */
-	private Thread lineFollowerThread = null;
+	private ScheduledControlLoop lineFollowerLoop = null;
+	
+	/**
+	 * The time stamp of the latest blob data that contained the line.
+	 */
+	private long blobDataTimeStamp = 0;
+	
+	/**
+	 * The speed and steering angle calculated from the latest blob data.
+	 */
+	private double speed = 0, steeringAngle = 0;
 	
 	/**
 	 * The listeners for line follower events.
@@ -166,45 +179,50 @@ public class LineFollower2 implements Runnable, BlobDataConsumer {
 	 * Starts the line following process.
 	 */
 	public synchronized void start() {
-		if (lineFollowerThread == null) {
+		if (lineFollowerLoop == null) {
 			done = false;
-			lineFollowerThread = new Thread(this);
-			lineFollowerThread.start();
-			Logger.logDbg("Thread started");
+			blobDataTimeStamp = 0;
+			speed = steeringAngle = 0;
+			lineFollowerLoop = ControlLoopScheduler.getScheduler().schedule("LineFollower2", this, 
+					CYCLE_PERIOD, 0, Thread.MAX_PRIORITY);
+			Logger.logDbg("Control loop started");
 		} else
-			Logger.log("WARNING: Thread already started.");
+			Logger.log("WARNING: Control loop already started.");
 	}
 	
 	/**
 	 * Stops the line following process.
 	 */
-	public synchronized void stop() {
-		if (lineFollowerThread != null) {
-			Logger.logDbg("Pausing the line follower to allow robot to stop.");
-			pause();
-			
-			synchronized(this) {
-				try {
-					wait(3000);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+	public void stop() {
+		ScheduledControlLoop loop;
+		synchronized(this) {
+			if (lineFollowerLoop == null) {
+				Logger.log("WARNING: already stopped.");
+				return;
 			}
 			
-			Logger.logDbg("Setting done = true");
-			done = true;
+			Logger.logDbg("Pausing the line follower to allow robot to stop.");
+			pause();
 			
-			Logger.logDbg("Joining thread...");
 			try {
-				lineFollowerThread.join(2000); // wait at most 2 seconds for thread to terminate
+				wait(3000);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
-			Logger.logDbg("Thread joined...");
-			lineFollowerThread = null; // was causing RemoteIntersectionManager to crash 
-			Logger.logDbg("Thread stopped.");
-		} else
-			Logger.log("WARNING: already stopped.");
+			
+			Logger.logDbg("Setting done = true");
+			done = true;
+			loop = lineFollowerLoop;
+			lineFollowerLoop = null; // was causing RemoteIntersectionManager to crash 
+		}
+		
+		// Cancel the control loop outside of the lock since its current cycle may need it
+		Logger.logDbg("Cancelling control loop...");
+		loop.cancel();
+		
+		Logger.log("Control loop stopped, ensuring robot is stopped...");
+		motors.setSpeed(0, dtor(0));
+		cameraPanController.shutdown();
 	}
 	
 	/**
@@ -323,7 +341,7 @@ public class LineFollower2 implements Runnable, BlobDataConsumer {
 						// the camera's pan angle
 						robotController.adjustSteeringAndSpeed(cameraPanController.getPanAngle());
 						return true;
-					} else {
+					} else if (Logger.isDebugEnabled()) {
 						Logger.logDbg("Blob area is " + blob.getArea() 
 								+ ", max threshold is " + BLOB_AREA_MAX_THRESHOLD 
 								+ " pixels, ignoring blob.");
@@ -360,68 +378,59 @@ public class LineFollower2 implements Runnable, BlobDataConsumer {
 	}
 	
 	/**
-	 * This contains the main loop of the LineFollower thread.
+	 * This contains one cycle of the LineFollower control loop.  It is called every
+	 * CYCLE_PERIOD milliseconds, and immediately after new blob data arrives.
 	 */
-	public void run() {
-		long blobDataTimeStamp = 0; // The age of the latest valid timestamp.
-		
-		double speed = 0, steeringAngle = 0;
+	public void tick() {
+		if (done)
+			return; // stop() is cancelling the control loop
 		
-		while(!done) {
-			
-			if (!override) {
-				// If new blob data is available, get and process it.
-				synchronized(this) {
-					if (newBlobData) {
-						newBlobData = false;
-						if (processBlobs(blobData)) {
-							blobDataTimeStamp = System.currentTimeMillis(); // only update timestamp if the blob contained line data.
-							speed = robotController.getSpeed();
-							steeringAngle = robotController.getSteeringAngle();
-						} else
-							speed = steeringAngle = 0;
-					}
-				}
-				
-				// If no blob data is received within a threshold time window, stop the robot.
-				if (speed != 0 && steeringAngle != 0 && System.currentTimeMillis() - blobDataTimeStamp > BLOB_MAX_VALID_AGE) {
-					Logger.logErr("No valid blob data in past " + BLOB_MAX_VALID_AGE + "ms, stopping robot.");
-					notifyListenersError(LineFollowerError.NO_BLOB);
-					speed = steeringAngle = 0;
+		if (!override) {
+			// If new blob data is available, get and process it.
+			synchronized(this) {
+				if (newBlobData) {
+					newBlobData = false;
+					if (processBlobs(blobData)) {
+						blobDataTimeStamp = System.currentTimeMillis(); // only update timestamp if the blob contained line data.
+						speed = robotController.getSpeed();
+						steeringAngle = robotController.getSteeringAngle();
+					} else
+						speed = steeringAngle = 0;
 				}
-			} else {
-				speed = overrideSpeed;
-				steeringAngle = overrideSteeringAngle;
 			}
 			
-			if (paused) {
-				Logger.log("LineFollower is paused, setting speed to zero but leaving the steering angle alone.");
-				speed = 0;
+			// If no blob data is received within a threshold time window, stop the robot.
+			if (speed != 0 && steeringAngle != 0 && System.currentTimeMillis() - blobDataTimeStamp > BLOB_MAX_VALID_AGE) {
+				Logger.logErr("No valid blob data in past " + BLOB_MAX_VALID_AGE + "ms, stopping robot.");
+				notifyListenersError(LineFollowerError.NO_BLOB);
+				speed = steeringAngle = 0;
 			}
-			
-			// Only print the status if something changed or a minimum interval of time has passed.
-			if (prevSpeedCmd != speed || prevAngleCmd != steeringAngle
-					|| System.currentTimeMillis() - prevPrintTime > MIN_MSG_PRINT_DURATION) 
-			{
-				Logger.log("Sending Command, speed=" + speed + ", steering angle=" + steeringAngle);
-				prevSpeedCmd = speed;
-				prevAngleCmd = steeringAngle;
-				prevPrintTime = System.currentTimeMillis();
-			}
-
-			motors.setSpeed(speed, dtor(steeringAngle));
-			
-			// Update the listeners.  errorState will be set to false prior to notifying the
-			// listeners that the line follower is working.
-			if (errorState && speed > 0)
-				notifyListenersNoError();
-			
-			pharoslabut.util.ThreadControl.pause(this, CYCLE_PERIOD);
+		} else {
+			speed = overrideSpeed;
+			steeringAngle = overrideSteeringAngle;
 		}
 		
-		Logger.log("Thread exiting, ensuring robot is stopped...");
-		motors.setSpeed(0, dtor(0));
-		cameraPanController.shutdown();
+		if (paused) {
+			Logger.log("LineFollower is paused, setting speed to zero but leaving the steering angle alone.");
+			speed = 0;
+		}
+		
+		// Only print the status if something changed or a minimum interval of time has passed.
+		if (prevSpeedCmd != speed || prevAngleCmd != steeringAngle
+				|| System.currentTimeMillis() - prevPrintTime > MIN_MSG_PRINT_DURATION) 
+		{
+			Logger.log("Sending Command, speed=" + speed + ", steering angle=" + steeringAngle);
+			prevSpeedCmd = speed;
+			prevAngleCmd = steeringAngle;
+			prevPrintTime = System.currentTimeMillis();
+		}
+
+		motors.setSpeed(speed, dtor(steeringAngle));
+		
+		// Update the listeners.  errorState will be set to false prior to notifying the
+		// listeners that the line follower is working.
+		if (errorState && speed > 0)
+			notifyListenersNoError();
 	}
 	
 	/**
@@ -442,6 +451,8 @@ public class LineFollower2 implements Runnable, BlobDataConsumer {
 			this.blobData = blobData;
 			this.newBlobData = true;
 			this.notifyAll();
+			if (lineFollowerLoop != null)
+				lineFollowerLoop.trigger();
 		}
 	}
 	
@@ -2,7 +2,12 @@ package pharoslabut.navigate;
 
 import pharoslabut.tasks.MotionTask;
 //import pharoslabut.logger.FileLogger;
+import pharoslabut.logger.EventLog;
+import pharoslabut.logger.LatencyTracer;
 import pharoslabut.logger.Logger;
+import pharoslabut.util.ControlLoop;
+import pharoslabut.util.ControlLoopScheduler;
+import pharoslabut.util.ScheduledControlLoop;
 import playerclient3.Position2DInterface;
 
 /**
@@ -18,7 +23,7 @@ import playerclient3.Position2DInterface;
  * 
  * @author Chien-Liang Fok
  */
-public class MotionArbiter implements Runnable {
+public class MotionArbiter implements ControlLoop {
 	
 	/**
 	 * Defines the type of motion to use.  This depends on the type
@@ -38,6 +43,12 @@ public class MotionArbiter implements Runnable {
 	 */
 	public static final int CYCLE_TIME = 100; //250;
 	
+	/**
+	 * The offset of this arbiter's cycles from the ControlLoopScheduler's grid in milliseconds.
+	 * Navigation loops are offset from this so they do not compete with it for the CPU.
+	 */
+	public static final int CYCLE_PHASE = 0;
+	
 	/**
 	 * Whether the robot moves in a car-like fashion or a ball-like fashion.
 	 */
@@ -65,6 +76,11 @@ public class MotionArbiter implements Runnable {
 	 */
 	private boolean isStopped = false;
 	
+	/**
+	 * The control loop that periodically sends motion commands to the robot.
+	 */
+	private final ScheduledControlLoop controlLoop;
+	
 	//private AccelerationControl accelControl = new AccelerationControl();
 	
 	/**
@@ -90,7 +106,10 @@ public class MotionArbiter implements Runnable {
 //		this.flogger = flogger;
 		
 		motors.setMotorPower(1); // Turn the motors on.  This is needed by the Segway RMP 50s
-		new Thread(this).start(); // The MotionArbiter has its own thread that processes MotionTasks
+		
+		// The MotionArbiter runs at the highest priority since the robot stops if it is late
+		controlLoop = ControlLoopScheduler.getScheduler().schedule("MotionArbiter", this, CYCLE_TIME, 
+				CYCLE_PHASE, Thread.MAX_PRIORITY);
 	}
 	
 //	/**
@@ -119,7 +138,7 @@ public class MotionArbiter implements Runnable {
 			if (currTask.isEqualPriorityTo(mt) || mt.isHigherPriorityThan(currTask)) {
 				currTask = mt;
 				Logger.logDbg("Accepting task " + currTask);
-				notifyAll();
+				controlLoop.trigger();
 				result = true;
 			} else {
 				Logger.logDbg("Discarding task (" + mt + ") since higher priority task (" + currTask + ") is running.");
@@ -129,7 +148,7 @@ public class MotionArbiter implements Runnable {
 			// Always accept the task if there is no current task.
 			currTask = mt;
 			Logger.logDbg("Accepting task " + currTask);
-			notifyAll();
+			controlLoop.trigger();
 			result = true;
 		}
 		return result;
@@ -143,7 +162,7 @@ public class MotionArbiter implements Runnable {
 	public synchronized void revokeTask(MotionTask mt) {
 		if (currTask != null && currTask.equals(mt)) {
 			currTask = null;
-			notifyAll();
+			controlLoop.trigger();
 		} // else the task was never accepted, ignore the revocation request
 	}
 	
@@ -174,6 +193,20 @@ public class MotionArbiter implements Runnable {
 //		return currTask;
 //	}
 	
+	/**
+	 * Sends the motion command of a task to the robot, and records the age of the
+	 * sensor readings the task was calculated from.
+	 * 
+	 * @param motionTask The task.
+	 */
+	private void sendMotionCmd(MotionTask motionTask) {
+		sendMotionCmd(motionTask.getSpeed(), motionTask.getSteeringAngle());
+		
+		// Record how old the sensor readings behind this command are
+		LatencyTracer.COMPASS_MOTION_CMD.recordSince(motionTask.getHeadingArrivalTime());
+		LatencyTracer.GPS_MOTION_CMD.recordSince(motionTask.getLocationArrivalTime());
+	}
+	
 	/**
 	 * Sends a motion command to the robot.
 	 * 
@@ -182,6 +215,7 @@ public class MotionArbiter implements Runnable {
 	 */
 	private void sendMotionCmd(double speed, double heading) {
 		Logger.logDbg("Sending motion command velocity=" + speed + ", heading=" + heading);
+		EventLog.logMotionCmd(speed, heading);
 		
 		if (motionType == MotionType.MOTION_TRAXXAS) {
 			motors.setCarCMD(speed, heading);
@@ -206,75 +240,57 @@ public class MotionArbiter implements Runnable {
 	long pendingStopTimestamp = 0;
 	
 	/**
-	 * Sits in a loop periodically sending movement commands to the robot.
+	 * @return The control loop that periodically sends motion commands to the robot, 
+	 * which records how well it keeps to CYCLE_TIME.
+	 */
+	public ScheduledControlLoop getControlLoop() {
+		return controlLoop;
+	}
+	
+	/**
+	 * Called by the ControlLoopScheduler every CYCLE_TIME milliseconds, and immediately
+	 * after a task is submitted or revoked, to send a movement command to the robot.
 	 * It is necessary to continuously send movement commands because otherwise
 	 * the robot will stop moving.
 	 */
-	public void run() {
+	public void tick() {
 		MotionTask motionTask = null;
 		
-		while(true) {
-			
-			// Grab a reference to the current motion task in a manner that is synchronized with
-			// the setting of the current motion task.
-			synchronized(this) {
-				motionTask = currTask;
-			}
+		// Grab a reference to the current motion task in a manner that is synchronized with
+		// the setting of the current motion task.
+		synchronized(this) {
+			motionTask = currTask;
+		}
+		
+		// Only stop the robot if I receive a stop command and no other commands within one second.
+		if (motionTask != null) {
 			
-			// Only stop the robot if I receive a stop command and no other commands within one second.
-			if (motionTask != null) {
-				
-				if (motionTask.isStop()) {
-					if (!pendingStop) {
-						pendingStop = true;
-						pendingStopTimestamp = System.currentTimeMillis();
-					} else {
-						if (System.currentTimeMillis() - pendingStopTimestamp > 1500) {
-							sendMotionCmd(motionTask.getSpeed(), motionTask.getSteeringAngle());
-							
-							// No point in repeatedly sending a stop motion command
-							// (The robot will by default stop when no command is received)
-							if (motionTask.isStop()) {
-								Logger.logDbg("MotionTask is stop, resorting to initial state");
+			if (motionTask.isStop()) {
+				if (!pendingStop) {
+					pendingStop = true;
+					pendingStopTimestamp = System.currentTimeMillis();
+				} else {
+					if (System.currentTimeMillis() - pendingStopTimestamp > 1500) {
+						sendMotionCmd(motionTask);
+						
+						// No point in repeatedly sending a stop motion command
+						// (The robot will by default stop when no command is received)
+						Logger.logDbg("MotionTask is stop, resorting to initial state");
+						synchronized(this) {
+							// Do not discard a task that was submitted while the stop command was sent
+							if (currTask == motionTask)
 								currTask = null;
-							} 
 						}
 					}
-				} else {
-					pendingStop = false;
-					sendMotionCmd(motionTask.getSpeed(), motionTask.getSteeringAngle());
 				}
-				
 			} else {
-				// There is no motion task to execute...
-
-				if (!isStopped) {
-					// The robot is not stopped...stop the robot.
-					sendMotionCmd(MotionTask.STOP_SPEED, MotionTask.STOP_STEERING_ANGLE);
-				}
-
-				// Task queue is empty and there is no task to run, wait for a motion task to 
-				// be inserted into the taskQueue.
-				try {
-					synchronized(this) {
-						// Only pause if the currTask is null.  Note that this is
-						// executed within a synchronized block to prevent race
-						// conditions with the submitTask(...) and revokeTask(...) methods.
-						if (currTask == null)
-							wait();
-					} 
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-
-			try {
-				synchronized(this) {
-					wait(CYCLE_TIME);
-				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+				pendingStop = false;
+				sendMotionCmd(motionTask);
 			}
+			
+		} else if (!isStopped) {
+			// There is no motion task to execute and the robot is not stopped...stop the robot.
+			sendMotionCmd(MotionTask.STOP_SPEED, MotionTask.STOP_STEERING_ANGLE);
 		}
 	}
 }
@@ -5,8 +5,12 @@ import pharoslabut.sensors.GPSDataBuffer;
 import pharoslabut.sensors.Position2DListener;
 import pharoslabut.tasks.MotionTask;
 import pharoslabut.tasks.Priority;
+import pharoslabut.util.ControlLoop;
+import pharoslabut.util.ControlLoopScheduler;
+import pharoslabut.util.ScheduledControlLoop;
 import pharoslabut.util.ThreadControl;
 //import pharoslabut.logger.FileLogger;
+import pharoslabut.logger.LatencyTracer;
 import pharoslabut.logger.Logger;
 import pharoslabut.logger.analyzer.Line;
 import pharoslabut.logger.analyzer.motion.SpatialDivergence;
@@ -32,6 +36,14 @@ public class NavigateCompassGPS extends Navigate implements Position2DListener {
 	 */
 	public static final int NAV_CYCLE_PERIOD = 200;
 	
+	/**
+	 * The offset of the navigation cycles from the ControlLoopScheduler's grid in milliseconds.
+	 * This places each navigation cycle midway between two MotionArbiter cycles, so the
+	 * motion task it submits is sent to the robot by the next MotionArbiter cycle rather
+	 * than competing with it.
+	 */
+	public static final int NAV_CYCLE_PHASE = MotionArbiter.CYCLE_PHASE + MotionArbiter.CYCLE_TIME / 2;
+	
 	/**
 	 * The maximum age of a valid heading measurement in milliseconds.
 	 */
@@ -105,7 +117,18 @@ public class NavigateCompassGPS extends Navigate implements Position2DListener {
 	/**
 	 * Whether we are done navigating to a particular location.
 	 */
-	private boolean done;
+	private volatile boolean done;
+	
+	/**
+	 * Whether we successfully navigated to the current destination.
+	 */
+	private boolean success;
+	
+	/**
+	 * The control loop that is navigating to the current destination, or null if
+	 * the robot is not navigating.
+	 */
+	private ScheduledControlLoop navLoop = null;
 	
 	private double distanceToDestination;
 	
@@ -121,6 +144,20 @@ public class NavigateCompassGPS extends Navigate implements Position2DListener {
 	 */
 	private long currHeadingTimestamp;
 	
+	/**
+	 * The arrival time of the current heading measurement from the Player server.
+	 * 
+	 * @see LatencyTracer
+	 */
+	private long currHeadingArrivalTime;
+	
+	/**
+	 * The arrival time of the current location measurement from the Player server.
+	 * 
+	 * @see LatencyTracer
+	 */
+	private long currLocArrivalTime;
+	
 	/**
 	 * Maintain a local MotionTask object that is continuously updated to 
 	 * limit the number of MotionTask objects created within this object.
@@ -377,7 +414,8 @@ public class NavigateCompassGPS extends Navigate implements Position2DListener {
 				 */
 				if (headingError < 0)
 					steeringAngle *= -1;
-				motionTask.update(Priority.SECOND, headingCorrectionSpeed, steeringAngle);
+				motionTask.update(Priority.SECOND, headingCorrectionSpeed, steeringAngle, 
+						currHeadingArrivalTime, currLocArrivalTime);
 				motionArbiter.submitTask(motionTask);
 				
 				Logger.log("Performing major correction:" +
@@ -429,7 +467,7 @@ public class NavigateCompassGPS extends Navigate implements Position2DListener {
 
 				instantaneousSpeed = speed;
 
-				motionTask.update(Priority.SECOND, speed, steeringAngle);
+				motionTask.update(Priority.SECOND, speed, steeringAngle, currHeadingArrivalTime, currLocArrivalTime);
 				motionArbiter.submitTask(motionTask);
 			}
 		}
@@ -449,9 +487,9 @@ public class NavigateCompassGPS extends Navigate implements Position2DListener {
 	 * @param speed The speed in meters per second at which the robot should travel.
 	 * @return true if the robot successfully reached the destination
 	 */
-	public synchronized boolean go(Location startLoc, Location endLoc, double speed) {
+	public synchronized boolean go(Location startLoc, Location endLoc, final double speed) {
 		done = false;
-		boolean success = false;
+		success = false;
 		
 		while (startLoc == null) {
 			Logger.logDbg("Starting location not specified, obtaining and using current location as start position.");
@@ -464,14 +502,47 @@ public class NavigateCompassGPS extends Navigate implements Position2DListener {
 			}
 		}
 		
-		Line idealRoute = new Line(startLoc, endLoc);
+		final Line idealRoute = new Line(startLoc, endLoc);
+		
+		// Navigation runs at a higher priority than other threads, but below the MotionArbiter
+		navLoop = ControlLoopScheduler.getScheduler().schedule("NavigateCompassGPS", new ControlLoop() {
+			public void tick() {
+				navigate(idealRoute, speed);
+			}
+		}, NAV_CYCLE_PERIOD, NAV_CYCLE_PHASE, Thread.NORM_PRIORITY + 2);
 		
-		while (!done) {
+		// Wait for the control loop to finish.  This releases the lock that the loop 
+		// acquires while navigating.
+		while (navLoop != null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		stopRobot();
+		Logger.log("Done going to " + endLoc + ", success=" + success);
+		return success;
+	}
+	
+	/**
+	 * Performs one navigation cycle.  This is called by the control loop started
+	 * by go(...) every NAV_CYCLE_PERIOD milliseconds.  Once navigation is done, 
+	 * it cancels the control loop and wakes up go(...).
+	 * 
+	 * @param idealRoute The line from the starting location to the destination.
+	 * @param speed The speed in meters per second at which the robot should travel.
+	 */
+	private synchronized void navigate(Line idealRoute, double speed) {
+		if (!done) {
 			Location currLoc = null;
 			
 			// Get the current location...
 			try {
-				currLoc = new Location(gpsDataBuffer.getCurrLoc());
+				PlayerGpsData gpsData = gpsDataBuffer.getCurrLoc();
+				currLoc = new Location(gpsData);
+				currLocArrivalTime = gpsData.getArrivalTime();
 			} catch(NoNewDataException nnde) {
 				Logger.logErr("Unable to get the current location, halting robot...");	
 				stopRobot();
@@ -483,6 +554,8 @@ public class NavigateCompassGPS extends Navigate implements Position2DListener {
 				long headingAge = System.currentTimeMillis() - currHeadingTimestamp;
 				if (headingAge < MAX_HEADING_LATENCY) {
 					if (GPSDataBuffer.isValid(currLoc)) {
+						LatencyTracer.COMPASS_NAVIGATE.recordSince(currHeadingArrivalTime);
+						LatencyTracer.GPS_NAVIGATE.recordSince(currLocArrivalTime);
 						done = doNextMotionTask(currLoc, currHeading, idealRoute, speed);
 						if (done) success = true;
 					} else {
@@ -494,20 +567,14 @@ public class NavigateCompassGPS extends Navigate implements Position2DListener {
 					stopRobot();
 				}
 			}
-			
-			if (!done) {
-				try {
-					synchronized(this) {
-						wait(NAV_CYCLE_PERIOD); // pause for a moment before repeating
-					}
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
 		}
-		stopRobot();
-		Logger.log("Done going to " + endLoc + ", success=" + success);
-		return success;
+		
+		// This also handles stop() being called between cycles
+		if (done && navLoop != null) {
+			navLoop.cancel();
+			navLoop = null;
+			notifyAll();
+		}
 	}
 	
 	/**
@@ -525,6 +592,7 @@ public class NavigateCompassGPS extends Navigate implements Position2DListener {
 	public synchronized  void newPlayerPosition2dData(PlayerPosition2dData data) {
 		currHeading = data.getPos().getPa();
 		currHeadingTimestamp = System.currentTimeMillis();
+		currHeadingArrivalTime = data.getArrivalTime();
 		Logger.log("Updating heading, currHeading = " + currHeading + ", timestamp = " + currHeadingTimestamp);
 	}
 }
@@ -11,6 +11,7 @@ import pharoslabut.RobotIPAssignments;
 import pharoslabut.beacon.*;
 import pharoslabut.exceptions.*;
 //import pharoslabut.logger.FileLogger;
+import pharoslabut.logger.EventLog;
 import pharoslabut.logger.Logger;
 
 /**
@@ -201,6 +202,7 @@ public class TelosBeaconBroadcaster extends BeaconBroadcaster {
 	protected void sendBeacon() {
 		SendBeaconMsg sbm = new SendBeaconMsg();
 		Logger.log("SEND_TELSOB_BCAST\t" + moteID + "\t" + seqno + "\t" + (short)txPower);
+		EventLog.logTelosBTx(moteID, seqno, txPower);
 		
 		try {
 			sbm.set_sndrID(moteID);
@@ -1,7 +1,9 @@
 package pharoslabut.radioMeter.cc2420;
 
 import pharoslabut.RobotIPAssignments;
+import pharoslabut.logger.EventLog;
 import pharoslabut.logger.FileLogger;
+import pharoslabut.logger.Logger;
 import pharoslabut.exceptions.*;
 import net.tinyos.message.*;
 
@@ -63,6 +65,8 @@ public class TelosBeaconReceiver implements MessageListener{
 				+ "\t" + resultMsg.get_rssi()
 				+ "\t" + resultMsg.get_lqi()
 				+ "\t" + resultMsg.get_timestamp());
+			EventLog.logTelosBRx(getFileLogger(), moteID, resultMsg.get_idSender(), (int)resultMsg.get_seqno(), 
+					resultMsg.get_rssi(), resultMsg.get_lqi(), (int)resultMsg.get_timestamp());
 			
 			// Update the number of beacons received.
 			currCount++;
@@ -81,8 +85,18 @@ public class TelosBeaconReceiver implements MessageListener{
 		
 	}
 	
+	/**
+	 * @return The FileLogger to which the receptions are logged, which is the Logger's
+	 * unless setFileLogger() was called.  The text lines and the event log records
+	 * must go to the same FileLogger so the analyzers can merge them.
+	 */
+	private FileLogger getFileLogger() {
+		return flogger != null ? flogger : Logger.getFileLogger();
+	}
+	
 	private void log(String msg) {
 		String result = "TelosBeaconReceiver: " + msg;
+		FileLogger flogger = getFileLogger();
 		if (flogger != null) 
 			flogger.log(result);
 		
@@ -5,22 +5,19 @@ import java.util.Enumeration;
 import java.util.Vector;
 
 import pharoslabut.exceptions.NoNewDataException;
+import pharoslabut.logger.EventLog;
+import pharoslabut.logger.LatencyTracer;
 import pharoslabut.logger.Logger;
 import playerclient3.*;
 import playerclient3.structures.position2d.PlayerPosition2dData;
 
 /**
- * Continuously checks for new compass data and stores it
+ * Receives new compass data from the SensorEventBus and stores it
  * in a buffer.  Provides access to the current compass reading.
  * 
  * @author Chien-Liang Fok
  */
-public class CompassDataBuffer implements Runnable {
-	
-	/**
-	 * The period in milliseconds at which to check for expired compass data.
-	 */
-	public static final int COMPASS_BUFFER_REFRESH_PERIOD = 5;
+public class CompassDataBuffer implements SensorEventListener<PlayerPosition2dData> {
 	
 	/**
 	 * The size of the compass buffer.
@@ -63,9 +60,9 @@ public class CompassDataBuffer implements Runnable {
 	private Vector<Position2DListener> pos2dListeners = new Vector<Position2DListener>();
 	
 	/**
-	 * Whether the thread that reads compass data is running.
+	 * The subscription to the compass data, or null if stopped.
 	 */
-	private boolean running = false;
+	private SensorEventBus.Subscription<PlayerPosition2dData> subscription = null;
 	
 	/**
 	 * The file logger for saving debug data.
@@ -79,25 +76,27 @@ public class CompassDataBuffer implements Runnable {
 	 */
 	public CompassDataBuffer(Position2DInterface compass) {
 		this.compass = compass;
+		start();
 	}
 	
 	/**
-	 * Starts the CompassDataBuffer.  Creates a thread for reading compass data.
+	 * Starts the CompassDataBuffer.  Subscribes to the compass data on the SensorEventBus.
+	 * The buffer is started by the constructor, so this is only needed after stop().
 	 */
 	public synchronized void start() {
-		if (!running) {
-			running = true;
-			new Thread(this).start();
+		if (subscription == null) {
+			subscription = SensorEventBus.getDefault().subscribe(compass, PlayerPosition2dData.class, this);
 		}
 	}
 	
 	/**
-	 * Stops the CompassDataBuffer.  Allows the thread that reads compass data to terminate.
+	 * Stops the CompassDataBuffer.  Unsubscribes from the compass data and clears the buffer.
 	 */
 	public synchronized void stop() {
-		if (running) {
+		if (subscription != null) {
+			SensorEventBus.getDefault().unsubscribe(subscription);
+			subscription = null;
 			clearHeadingBuffer();
-			running = false;
 		}
 	}
 	
@@ -172,9 +171,6 @@ public class CompassDataBuffer implements Runnable {
 	 */
 	public synchronized double getMedian(int filterLength) throws NoNewDataException {
 		
-		// Just in case there's new data...
-		getNewData();
-		
 		if (headingBufferSize == 0)
 			throw new NoNewDataException();
 		
@@ -208,62 +204,40 @@ public class CompassDataBuffer implements Runnable {
 	}
 	
 	/**
-	 * Checks whether the compass proxy object has new compass data and grabs the data if it does.
+	 * Stores new compass data.  Called by the SensorEventBus.
 	 */
-	private synchronized void getNewData() {
-		// If new compass data is available, get it!
-		if (compass.isDataReady()) {
-			PlayerPosition2dData newData = compass.getData();
-			try {
-				double newHeading = newData.getPos().getPa();
+	@Override
+	public synchronized void newSensorData(PlayerPosition2dData newData) {
+		LatencyTracer.COMPASS_BUFFER.recordSince(newData.getArrivalTime());
+		try {
+			double newHeading = newData.getPos().getPa();
 
-				headingBuffer[headingBufferIndx] = newHeading;
+			// Discard the headings from before an outage so they are not mixed with the new ones
+			long now = System.currentTimeMillis();
+			if (headingBufferSize > 0 && now - lastTimeStamp > COMPASS_MAX_AGE)
+				clearHeadingBuffer();
 
-				// Update the headingBufferIndx
-				headingBufferIndx++;
-				headingBufferIndx %= COMPASS_BUFFER_SIZE;
+			headingBuffer[headingBufferIndx] = newHeading;
 
-				// Update the number of elements in the compass buffer
-				headingBufferSize++;
-				if (headingBufferSize > COMPASS_BUFFER_SIZE) 
-					headingBufferSize = COMPASS_BUFFER_SIZE;
+			// Update the headingBufferIndx
+			headingBufferIndx++;
+			headingBufferIndx %= COMPASS_BUFFER_SIZE;
 
-				// Update the last time stamp and add a log statement
-				lastTimeStamp = System.currentTimeMillis();
-				Logger.log("New heading=" + newHeading + ", buffer size=" + headingBufferSize + ", headingBufferIndx=" + headingBufferIndx);
+			// Update the number of elements in the compass buffer
+			headingBufferSize++;
+			if (headingBufferSize > COMPASS_BUFFER_SIZE) 
+				headingBufferSize = COMPASS_BUFFER_SIZE;
 
-				// Notify the listeners
-				notifyP2DListeners(newData);
-			} catch(Exception e) {
-				e.printStackTrace();
-			}
-		}
-	}
-	
-	/**
-	 * Removes expired compass readings.
-	 */
-	public void run() {
-		while(running) {
-			
-			// Proactively grab new compass data before 
-			// cleaning up the old data.
-			getNewData();
-			
-			// Check if we've exceeded the max age
-			long age = System.currentTimeMillis() - lastTimeStamp;
-			if (headingBufferSize > 0 && age > COMPASS_MAX_AGE) {
-				Logger.logErr("Max sensor age reached, flushing buffer!");
-				clearHeadingBuffer();
-			}
-			
-			try {
-				synchronized(this) {
-					wait(COMPASS_BUFFER_REFRESH_PERIOD);
-				}
-			} catch(InterruptedException e) {
-				e.printStackTrace();
-			}
+			// Update the last time stamp and add a log statement
+			lastTimeStamp = now;
+			if (Logger.isDebugEnabled())
+				Logger.logDbg("New heading=" + newHeading + ", buffer size=" + headingBufferSize + ", headingBufferIndx=" + headingBufferIndx);
+			EventLog.logHeading(newHeading);
+
+			// Notify the listeners
+			notifyP2DListeners(newData);
+		} catch(Exception e) {
+			e.printStackTrace();
 		}
 	}
 	
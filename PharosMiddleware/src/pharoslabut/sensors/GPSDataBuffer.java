@@ -3,6 +3,8 @@ package pharoslabut.sensors;
 import java.util.*;
 
 import pharoslabut.exceptions.NoNewDataException;
+import pharoslabut.logger.EventLog;
+import pharoslabut.logger.LatencyTracer;
 import pharoslabut.logger.Logger;
 import pharoslabut.navigate.Location;
 
@@ -11,13 +13,13 @@ import playerclient3.structures.gps.PlayerGpsData;
 
 /**
  * Buffers incoming GPS data.  Implements a Pharos-specific buffer for GPS data.
- * Provides method getCurrLoc() that queries the GPS device for the most recent
- * GPS measurements.  If such a measurement is not available, it returns the
- * previous measurement so long as its age is not over GPS_MAX_AGE milliseconds.
+ * The GPS measurements are pushed to this buffer by the SensorEventBus.
+ * Provides method getCurrLoc() that returns the most recent GPS measurement
+ * so long as its age is not over GPS_MAX_AGE milliseconds.
  * 
  * @author Chien-Liang Fok
  */
-public class GPSDataBuffer {
+public class GPSDataBuffer implements SensorEventListener<PlayerGpsData> {
 	
 	/**
 	 * The period in milliseconds at which to check for expired compass data.
@@ -55,6 +57,7 @@ public class GPSDataBuffer {
 	 */
 	public GPSDataBuffer(GPSInterface gps) {
 		this.gps = gps;
+		SensorEventBus.getDefault().subscribe(gps, PlayerGpsData.class, this);
 	}
 	
 //	/**
@@ -160,30 +163,36 @@ public class GPSDataBuffer {
 //	}
 	
 	/**
-	 * Returns the current location.  It first checks whether new GPS data
-	 * is available.  If it is, it returns the new GPS data.  Otherwise, it returns
-	 * the previous GPS data that has not expired.
+	 * Saves new GPS data.  Called by the SensorEventBus.
 	 * 
-	 * @throws NoNewDataException If no GPS data exists.
+	 * @param newData The new GPS data.
 	 */
-	public synchronized PlayerGpsData getCurrLoc() throws NoNewDataException {
-		// Grab any new GPS data...
-		if (gps.isDataReady()) {
-			PlayerGpsData newData = gps.getData();
-			buff.add(0, new GPSDataWrapper(newData)); // add new data to the front of the buffer
-			Logger.log("New GPS Data: " + newData + ", buffer size=" + buff.size());
+	@Override
+	public synchronized void newSensorData(PlayerGpsData newData) {
+		LatencyTracer.GPS_BUFFER.recordSince(newData.getArrivalTime());
+		buff.add(0, new GPSDataWrapper(newData)); // add new data to the front of the buffer
+		Logger.log("New GPS Data: " + newData + ", buffer size=" + buff.size());
+		EventLog.logGPS(newData);
+		
+		// Estimate the robot's speed
+		if (buff.size() > 1) {
+			Location currLoc = new Location(buff.get(0).getGpsData());
+			Location prevLoc = new Location(buff.get(1).getGpsData());
 			
-			// Estimate the robot's speed
-			if (buff.size() > 1) {
-				Location currLoc = new Location(buff.get(0).getGpsData());
-				Location prevLoc = new Location(buff.get(1).getGpsData());
-				
-				Double dist = currLoc.distanceTo(prevLoc);
-				double time = (buff.get(0).getTimeStamp() - buff.get(1).getTimeStamp()) / 1000.0;
-				Logger.log("Estimated Speed: " + dist/time + " m/s");
-			}
+			Double dist = currLoc.distanceTo(prevLoc);
+			double time = (buff.get(0).getTimeStamp() - buff.get(1).getTimeStamp()) / 1000.0;
+			Logger.log("Estimated Speed: " + dist/time + " m/s");
 		}
 		
+		removeExpiredElements();
+	}
+	
+	/**
+	 * Returns the current location, i.e., the most recent GPS data that has not expired.
+	 * 
+	 * @throws NoNewDataException If no GPS data exists.
+	 */
+	public synchronized PlayerGpsData getCurrLoc() throws NoNewDataException {
 		// Remove any expired GPS location measurements...
 		removeExpiredElements();
 		//Logger.log("buffer size after clearing expired elements: " + buff.size());
@@ -185,7 +185,8 @@ public class PathLocalizerOverheadMarkers implements RangerListener, Position2DL
 		long currTime = System.currentTimeMillis();
 		long deltaTime = currTime - lastMarkerTimestamp;
 		
-		Logger.log("current range measurement: " + range + " dist = " + distSinceMarker + " delta time = " + deltaTime);
+		if (Logger.isDebugEnabled())
+			Logger.logDbg("current range measurement: " + range + " dist = " + distSinceMarker + " delta time = " + deltaTime);
 		
 		if (range > THRESHOLD_NONEXIST_MARKER) {
 			// We may no longer be under the overhead marker.
@@ -275,7 +276,8 @@ public class PathLocalizerOverheadMarkers implements RangerListener, Position2DL
 				double[] data = rangeData.getRanges();
 				double range = calibrateShortRangeIR(data[5]);
 
-				Logger.log("Raw ADC = " + data[5] + ", Calibrated Dist = " + range + " mm");
+				if (Logger.isDebugEnabled())
+					Logger.logDbg("Raw ADC = " + data[5] + ", Calibrated Dist = " + range + " mm");
 				processRangeData(range);
 
 			} else {
@@ -288,7 +290,8 @@ public class PathLocalizerOverheadMarkers implements RangerListener, Position2DL
 	
 	@Override
 	public void newPlayerPosition2dData(PlayerPosition2dData data) {
-		Logger.log("New Odometry data: " + data.getPos().getPx());
+		if (Logger.isDebugEnabled())
+			Logger.logDbg("New Odometry data: " + data.getPos().getPx());
 		distSinceMarker += data.getPos().getPx() / 1000.0;  // Store distance in meters. 
 	}
 }
@@ -12,17 +12,12 @@ import playerclient3.Position2DInterface;
 import playerclient3.structures.position2d.PlayerPosition2dData;
 
 /**
- * Polls for new Position2D data and generates an event whenever new data arrives.
+ * Receives new Position2D data from the SensorEventBus and generates an event whenever new data arrives.
  * 
  * @author Chien-Liang Fok
  * @author Kevin Boos
  */
-public class Position2DBuffer implements Runnable {
-	
-	/**
-	 * The period in milliseconds at which to check for expired compass data.
-	 */
-	public static final int POSITION2D_BUFFER_REFRESH_PERIOD = 100;
+public class Position2DBuffer implements SensorEventListener<PlayerPosition2dData> {
 	
 	/**
 	 * A proxy to the Position2D device.
@@ -45,9 +40,9 @@ public class Position2DBuffer implements Runnable {
 	private PlayerPosition2dData recentPosition2dReading = null;
 	
 	/**
-	 * Whether the thread that reads Position2D data is running.
+	 * The subscription to the Position2D data, or null if stopped.
 	 */
-	private boolean running = false;
+	private SensorEventBus.Subscription<PlayerPosition2dData> subscription = null;
 	
 //	/**
 //	 * The file logger for saving debug data.
@@ -64,24 +59,25 @@ public class Position2DBuffer implements Runnable {
 	}
 	
 	/**
-	 * Starts the Position2DBuffer.  Creates a thread for reading compass data.
+	 * Starts the Position2DBuffer.  Subscribes to the Position2D data on the SensorEventBus.
 	 */
 	public synchronized void start() {
-		if (!running) {
+		if (subscription == null) {
 			Logger.log("starting...");
-			running = true;
-			new Thread(this).start();
+			subscription = SensorEventBus.getDefault().subscribe(pos2di, PlayerPosition2dData.class, this,
+					SensorEventBus.Backpressure.DROP_OLDEST, SensorEventBus.DEFAULT_QUEUE_CAPACITY);
 		} else
 			Logger.log("already started...");
 	}
 	
 	/**
-	 * Stops the Position2DBuffer.  Allows the thread that reads Position2D data to terminate.
+	 * Stops the Position2DBuffer.  Unsubscribes from the Position2D data.
 	 */
 	public synchronized void stop() {
-		if (running) {
+		if (subscription != null) {
 			Logger.log("stopping...");
-			running = false;
+			SensorEventBus.getDefault().unsubscribe(subscription);
+			subscription = null;
 		} else
 			Logger.log("already stopped...");
 	}
@@ -150,32 +146,17 @@ public class Position2DBuffer implements Runnable {
     
     
 	/**
-	 * Removes expired Position2D readings.
+	 * Saves the new Position2D data and notifies the listeners.  Called by the SensorEventBus.
 	 */
-	public void run() {
-		Logger.log("thread starting...");
-		while(running) {
-			
-			// If new Position2D data is available, get it!
-			if (pos2di.isDataReady()) {
-				PlayerPosition2dData newData = pos2di.getData();
-				
-				recentPosition2dReading = newData;
-				lastTimeStamp = System.currentTimeMillis();
-				
-				// Notify the listeners
-				notifyP2DListeners(newData);
-			}
-			
-			try {
-				synchronized(this) {
-					wait(POSITION2D_BUFFER_REFRESH_PERIOD);
-				}
-			} catch(InterruptedException e) {
-				e.printStackTrace();
-			}
+	@Override
+	public void newSensorData(PlayerPosition2dData newData) {
+		synchronized(this) {
+			recentPosition2dReading = newData;
+			lastTimeStamp = System.currentTimeMillis();
 		}
-		Logger.log("thread terminating...");
+		
+		// Notify the listeners
+		notifyP2DListeners(newData);
 	}
 	
 //	private void log(String msg) {
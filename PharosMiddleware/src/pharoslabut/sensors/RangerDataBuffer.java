@@ -11,18 +11,11 @@ import playerclient3.structures.position2d.PlayerPosition2dData;
 import playerclient3.structures.ranger.PlayerRangerData;
 
 /**
- * Polls for IR data and generates events whenever IR data is received.
+ * Receives IR data from the SensorEventBus and generates events whenever IR data is received.
  * 
  * @author Chien-Liang Fok
  */
-public class RangerDataBuffer implements Runnable {
-	
-	/**
-	 * Defines this buffer's cycle time in milliseconds.
-	 */
-	//public static final long RANGER_BUFFER_REFRESH_PERIOD = 100; // 10Hz
-	//public static final long RANGER_BUFFER_REFRESH_PERIOD = 10; // 100Hz
-	public static final long RANGER_BUFFER_REFRESH_PERIOD = 5; // 200Hz
+public class RangerDataBuffer implements SensorEventListener<PlayerRangerData> {
 	
 	private RangerInterface ranger;
 	
@@ -37,9 +30,11 @@ public class RangerDataBuffer implements Runnable {
 	private PlayerRangerData recentRangerReading = null;
 	
 	/**
-	 * Whether the thread that reads compass data is running.
+	 * The subscription to the ranger data, or null if stopped.  Every reading is
+	 * queued since listeners like PathLocalizerOverheadMarkers look for short 
+	 * transitions in the range data.
 	 */
-	private boolean running = false;
+	private SensorEventBus.Subscription<PlayerRangerData> subscription = null;
 	
 	/**
 	 * Listeners for range events.
@@ -81,33 +76,31 @@ public class RangerDataBuffer implements Runnable {
      */
     private void notifyRangerListeners(final PlayerRangerData prdata) {
     	if (listeners.size() > 0) {
-    		new Thread(new Runnable() {
-    			public void run() {
-    				Enumeration<RangerListener> e = listeners.elements();
-    	    		while (e.hasMoreElements()) {
-    	    			e.nextElement().newRangerData(prdata);
-    	    		}
-    			}
-    		}).start();
+    		Enumeration<RangerListener> e = listeners.elements();
+    		while (e.hasMoreElements()) {
+    			e.nextElement().newRangerData(prdata);
+    		}
     	}
     }
     
 	/**
-	 * Starts the RangerDataBuffer.  Creates a thread for reading ranger data.
+	 * Starts the RangerDataBuffer.  Subscribes to the ranger data on the SensorEventBus.
 	 */
 	public synchronized void start() {
-		if (!running) {
-			running = true;
-			new Thread(this).start();
+		if (subscription == null) {
+			subscription = SensorEventBus.getDefault().subscribe(ranger, PlayerRangerData.class, this,
+					SensorEventBus.Backpressure.DROP_OLDEST, SensorEventBus.DEFAULT_QUEUE_CAPACITY);
 		}
 	}
 	
 	/**
-	 * Stops the RangerDataBuffer.  Allows the thread that reads ranger data to terminate.
+	 * Stops the RangerDataBuffer.  Unsubscribes from the ranger data.
 	 */
 	public synchronized void stop() {
-		if (running)
-			running = false;
+		if (subscription != null) {
+			SensorEventBus.getDefault().unsubscribe(subscription);
+			subscription = null;
+		}
 	}
 	
 	
@@ -126,32 +119,15 @@ public class RangerDataBuffer implements Runnable {
 	
 	
 	/**
-	 * Removes expired ranger readings.
+	 * Saves the new ranger data and notifies the listeners.  Called by the SensorEventBus.
 	 */
-	public void run() {
-		Logger.log("thread starting...");
-		
-		while(running) {
-			
-			// If new compass data is available, get it and notify the listeners.
-			if (ranger.isDataReady()) {
-				PlayerRangerData newData = ranger.getData();
-				
-				recentRangerReading = newData;
-				lastTimeStamp = System.currentTimeMillis();
-				
-				notifyRangerListeners(newData);
-			}
-			
-			try {
-				synchronized(this) {
-					wait(RANGER_BUFFER_REFRESH_PERIOD);
-				}
-			} catch(InterruptedException e) {
-				e.printStackTrace();
-			}
+	@Override
+	public void newSensorData(PlayerRangerData newData) {
+		synchronized(this) {
+			recentRangerReading = newData;
+			lastTimeStamp = System.currentTimeMillis();
 		}
 		
-		Logger.log("thread terminating...");
+		notifyRangerListeners(newData);
 	}
 }
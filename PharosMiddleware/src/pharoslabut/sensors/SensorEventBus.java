@@ -0,0 +1,305 @@
+package pharoslabut.sensors;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pharoslabut.logger.Logger;
+import playerclient3.PlayerDataListener;
+import playerclient3.PlayerDevice;
+import playerclient3.structures.laser.PlayerLaserScan;
+
+/**
+ * Delivers sensor data from the Player devices to the components that use it.
+ * The devices publish each reading to the bus from within PlayerDevice.readData(),
+ * so nothing has to poll isDataReady().  The listeners are invoked on a small,
+ * fixed pool of delivery threads so a slow listener never blocks the thread
+ * reading from the Player server.
+ * 
+ * <p>Each subscription has its own bounded queue and a backpressure policy that
+ * decides what happens when its listener falls behind:</p>
+ * <ul>
+ *   <li>DROP_OLDEST: queue up to the subscription's capacity, discarding the
+ *   oldest reading when the queue is full.</li>
+ *   <li>COALESCE_LATEST: keep only the most recent undelivered reading.</li>
+ *   <li>SYNCHRONOUS: invoke the listener on the thread reading from the Player
+ *   server before the device continues.  Nothing is queued or dropped, but a slow
+ *   listener delays every device.</li>
+ * </ul>
+ * 
+ * <p>Pooled readings, i.e., the PlayerLaserScans of a LaserInterface with pooled
+ * decoding enabled, are reused by the device once they have been published, so they
+ * are always delivered synchronously regardless of the subscription's policy.  A
+ * listener must copy what it needs from such a reading before it returns.</p>
+ * 
+ * <p>Readings for one subscription are always delivered in order, one at a time.</p>
+ */
+public class SensorEventBus implements PlayerDataListener {
+	
+	/**
+	 * What to do when a listener falls behind.
+	 */
+	public static enum Backpressure {DROP_OLDEST, COALESCE_LATEST, SYNCHRONOUS};
+	
+	/**
+	 * The default number of delivery threads.
+	 */
+	public static final int DEFAULT_NUM_THREADS = 2;
+	
+	/**
+	 * The default capacity of a DROP_OLDEST subscription's queue.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+	
+	/**
+	 * The bus shared by the whole process.
+	 */
+	private static SensorEventBus defaultBus = null;
+	
+	/**
+	 * The threads that invoke the listeners.
+	 */
+	private ExecutorService executor;
+	
+	/**
+	 * The subscriptions of each device.
+	 */
+	private Map<PlayerDevice, CopyOnWriteArrayList<Subscription<?>>> subscriptions 
+		= new ConcurrentHashMap<PlayerDevice, CopyOnWriteArrayList<Subscription<?>>>();
+	
+	/**
+	 * The constructor.
+	 * 
+	 * @param numThreads The number of delivery threads.
+	 */
+	public SensorEventBus(int numThreads) {
+		executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			private int cnt = 0;
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SensorEventBus-" + (cnt++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * @return The bus shared by the whole process.
+	 */
+	public static synchronized SensorEventBus getDefault() {
+		if (defaultBus == null)
+			defaultBus = new SensorEventBus(DEFAULT_NUM_THREADS);
+		return defaultBus;
+	}
+	
+	/**
+	 * Subscribes to the data of a Player device.
+	 * 
+	 * @param device The device whose data to receive.
+	 * @param type The type of data to receive.  Data of other types published by the 
+	 * device are ignored.
+	 * @param listener The listener to invoke.
+	 * @param policy What to do when the listener falls behind.
+	 * @param capacity The maximum number of queued readings, used by DROP_OLDEST.
+	 * @return The subscription.
+	 */
+	public <T> Subscription<T> subscribe(PlayerDevice device, Class<T> type, 
+			SensorEventListener<T> listener, Backpressure policy, int capacity) 
+	{
+		Subscription<T> sub = new Subscription<T>(device, type, listener, policy, capacity);
+		synchronized(subscriptions) {
+			CopyOnWriteArrayList<Subscription<?>> subs = subscriptions.get(device);
+			if (subs == null) {
+				subs = new CopyOnWriteArrayList<Subscription<?>>();
+				subscriptions.put(device, subs);
+				device.setDataListener(this);
+			}
+			subs.add(sub);
+		}
+		return sub;
+	}
+	
+	/**
+	 * Subscribes to the data of a Player device using COALESCE_LATEST.
+	 * 
+	 * @param device The device whose data to receive.
+	 * @param type The type of data to receive.
+	 * @param listener The listener to invoke.
+	 * @return The subscription.
+	 */
+	public <T> Subscription<T> subscribe(PlayerDevice device, Class<T> type, 
+			SensorEventListener<T> listener) 
+	{
+		return subscribe(device, type, listener, Backpressure.COALESCE_LATEST, 1);
+	}
+	
+	/**
+	 * Cancels a subscription.  Readings already queued for it are discarded.
+	 * 
+	 * @param sub The subscription to cancel.
+	 */
+	public void unsubscribe(Subscription<?> sub) {
+		synchronized(subscriptions) {
+			CopyOnWriteArrayList<Subscription<?>> subs = subscriptions.get(sub.device);
+			if (subs != null) {
+				subs.remove(sub);
+				if (subs.isEmpty()) {
+					subscriptions.remove(sub.device);
+					sub.device.setDataListener(null);
+				}
+			}
+		}
+		sub.cancel();
+	}
+	
+	/**
+	 * Called by the Player devices on the thread reading from the Player server.
+	 */
+	@Override
+	public void newPlayerData(PlayerDevice device, Object data) {
+		CopyOnWriteArrayList<Subscription<?>> subs = subscriptions.get(device);
+		if (subs != null) {
+			for (Subscription<?> sub : subs)
+				sub.offer(data);
+		}
+	}
+	
+	/**
+	 * A listener's subscription to a device.  It queues the readings for the listener
+	 * and keeps counters that show whether the listener is keeping up.
+	 */
+	public class Subscription<T> implements Runnable {
+		private PlayerDevice device;
+		private Class<T> type;
+		private SensorEventListener<T> listener;
+		private Backpressure policy;
+		
+		/**
+		 * A circular buffer of undelivered readings.
+		 */
+		private Object[] queue;
+		private int head = 0;
+		private int size = 0;
+		
+		/**
+		 * Whether a delivery task is scheduled or running.
+		 */
+		private boolean scheduled = false;
+		
+		private boolean cancelled = false;
+		
+		private AtomicLong numDelivered = new AtomicLong();
+		private AtomicLong numDropped = new AtomicLong();
+		
+		private Subscription(PlayerDevice device, Class<T> type, SensorEventListener<T> listener, 
+				Backpressure policy, int capacity) 
+		{
+			this.device = device;
+			this.type = type;
+			this.listener = listener;
+			this.policy = policy;
+			this.queue = new Object[policy == Backpressure.COALESCE_LATEST ? 1 : Math.max(1, capacity)];
+		}
+		
+		/**
+		 * Queues a reading and schedules its delivery.
+		 */
+		private void offer(Object data) {
+			if (!type.isInstance(data))
+				return;
+			
+			// A pooled reading would be overwritten by a later decode while still queued
+			if (policy == Backpressure.SYNCHRONOUS || data instanceof PlayerLaserScan) {
+				synchronized(this) {
+					if (cancelled)
+						return;
+				}
+				deliver(type.cast(data));
+				return;
+			}
+			
+			synchronized(this) {
+				if (cancelled)
+					return;
+				
+				if (size == queue.length) {
+					// Drop the oldest reading.  For COALESCE_LATEST the queue holds
+					// a single element, so this replaces the pending reading.
+					head = (head + 1) % queue.length;
+					size--;
+					numDropped.incrementAndGet();
+				}
+				queue[(head + size) % queue.length] = data;
+				size++;
+				
+				if (scheduled)
+					return;
+				scheduled = true;
+			}
+			executor.execute(this);
+		}
+		
+		private synchronized T poll() {
+			if (size == 0 || cancelled) {
+				scheduled = false;
+				return null;
+			}
+			T result = type.cast(queue[head]);
+			queue[head] = null;
+			head = (head + 1) % queue.length;
+			size--;
+			return result;
+		}
+		
+		private synchronized void cancel() {
+			cancelled = true;
+			for (int i = 0; i < queue.length; i++)
+				queue[i] = null;
+			size = 0;
+		}
+		
+		/**
+		 * Delivers the queued readings.
+		 */
+		public void run() {
+			T data;
+			while ((data = poll()) != null)
+				deliver(data);
+		}
+		
+		private void deliver(T data) {
+			try {
+				listener.newSensorData(data);
+			} catch(Exception e) {
+				Logger.logErr("Listener " + listener + " threw " + e);
+				e.printStackTrace();
+			}
+			numDelivered.incrementAndGet();
+		}
+		
+		/**
+		 * @return The number of readings delivered to the listener.
+		 */
+		public long getNumDelivered() {
+			return numDelivered.get();
+		}
+		
+		/**
+		 * @return The number of readings discarded because the listener fell behind.
+		 */
+		public long getNumDropped() {
+			return numDropped.get();
+		}
+		
+		/**
+		 * @return The number of readings waiting to be delivered.
+		 */
+		public synchronized int getQueueDepth() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package pharoslabut.sensors;
+
+/**
+ * Receives sensor data delivered by the SensorEventBus.
+ * 
+ * @param <T> The type of sensor data, e.g., PlayerPosition2dData.
+ * @see SensorEventBus
+ */
+public interface SensorEventListener<T> {
+
+	/**
+	 * Called on one of the SensorEventBus' delivery threads whenever new
+	 * sensor data is available.
+	 * 
+	 * @param data The new sensor data.
+	 */
+	public void newSensorData(T data);
+}
@@ -0,0 +1,234 @@
+package pharoslabut.sensors.replay;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import playerclient3.structures.PlayerMsgHdr;
+
+/**
+ * A Player message, e.g., one that a Player server sent to a client and that
+ * was stored in a capture file.  It consists of the time at which the message
+ * arrived and the message's raw bytes, i.e., its XDR-encoded header followed by
+ * its payload.  The fields of the header that are needed to replay the message
+ * are decoded from the raw bytes when they are accessed.
+ *
+ * @see PlayerCaptureReader
+ * @see PlayerCaptureWriter
+ */
+public class PlayerCaptureMessage {
+
+	/**
+	 * The offsets of the fields within an XDR-encoded message header.
+	 */
+	public static final int INTERF_OFFSET = 8;
+	public static final int INDEX_OFFSET = 12;
+	public static final int TYPE_OFFSET = 16;
+	public static final int SUBTYPE_OFFSET = 20;
+	public static final int TIMESTAMP_OFFSET = 24;
+	public static final int SIZE_OFFSET = 36;
+
+	/**
+	 * The largest payload that is accepted, which guards against reading a
+	 * corrupt capture file or stream into memory.
+	 */
+	public static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+
+	private final long time;
+	private final byte[] bytes;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param time The time at which the message arrived, in nanoseconds since
+	 * the client connected to the Player server.
+	 * @param bytes The message's header followed by its payload.
+	 */
+	public PlayerCaptureMessage(long time, byte[] bytes) {
+		this.time = time;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Receives a message from a Player server or client.
+	 *
+	 * @param in The stream from the Player server or client.
+	 * @param epoch The value of System.nanoTime() when the client connected.  The
+	 * message's time is when its header was received, relative to this.
+	 * @return The message.
+	 * @throws IOException If the stream ends before the whole message has been received.
+	 */
+	public static PlayerCaptureMessage receive(DataInputStream in, long epoch) throws IOException {
+		byte[] header = new byte[PlayerMsgHdr.PLAYERXDR_MSGHDR_SIZE];
+		in.readFully(header);
+		return new PlayerCaptureMessage(System.nanoTime() - epoch, readPayload(in, header));
+	}
+
+	/**
+	 * Reads a message that was written by write(...).
+	 *
+	 * @param in The stream containing the capture.
+	 * @return The message, or null if the end of the capture was reached.
+	 * @throws IOException If the capture is truncated in the middle of a message.
+	 */
+	static PlayerCaptureMessage read(DataInputStream in) throws IOException {
+		long time;
+		try {
+			time = in.readLong();
+		} catch(EOFException e) {
+			return null;
+		}
+		byte[] header = new byte[PlayerMsgHdr.PLAYERXDR_MSGHDR_SIZE];
+		in.readFully(header);
+		return new PlayerCaptureMessage(time, readPayload(in, header));
+	}
+
+	/**
+	 * Reads the payload that follows a message header.
+	 *
+	 * @param in The stream.
+	 * @param header The message header.
+	 * @return The header followed by the payload.
+	 */
+	private static byte[] readPayload(DataInputStream in, byte[] header) throws IOException {
+		int size = getInt(header, SIZE_OFFSET);
+		if (size < 0 || size > MAX_PAYLOAD_SIZE)
+			throw new IOException("Invalid Player message payload size " + size);
+
+		byte[] bytes = new byte[header.length + size];
+		System.arraycopy(header, 0, bytes, 0, header.length);
+		in.readFully(bytes, header.length, size);
+		return bytes;
+	}
+
+	/**
+	 * Writes this message to a capture.
+	 *
+	 * @param out The stream containing the capture.
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeLong(time);
+		out.write(bytes);
+	}
+
+	/**
+	 * Sends this message to a Player client with a new timestamp in its header.
+	 * The message's own bytes are not modified.
+	 *
+	 * @param out The stream to the client.
+	 * @param timestamp The timestamp in seconds since the epoch.
+	 */
+	public void sendTo(OutputStream out, double timestamp) throws IOException {
+		byte[] header = new byte[PlayerMsgHdr.PLAYERXDR_MSGHDR_SIZE];
+		System.arraycopy(bytes, 0, header, 0, header.length);
+		long bits = Double.doubleToLongBits(timestamp);
+		putInt(header, TIMESTAMP_OFFSET, (int)(bits >>> 32));
+		putInt(header, TIMESTAMP_OFFSET + 4, (int)bits);
+		out.write(header);
+		out.write(bytes, header.length, bytes.length - header.length);
+	}
+
+	/**
+	 * @return The time at which the message arrived, in nanoseconds since the
+	 * client connected to the Player server.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return The message's header followed by its payload.  This must not be modified.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return The interface of the device that sent the message.
+	 */
+	public int getInterf() {
+		return getInt(bytes, INTERF_OFFSET);
+	}
+
+	/**
+	 * @return The index of the device that sent the message.
+	 */
+	public int getIndex() {
+		return getInt(bytes, INDEX_OFFSET);
+	}
+
+	/**
+	 * @return A key that identifies the device that sent the message.
+	 */
+	public int getDeviceKey() {
+		return getDeviceKey(getInterf(), getIndex());
+	}
+
+	/**
+	 * @param interf The interface of a device.
+	 * @param index The index of the device.
+	 * @return A key that identifies the device.
+	 */
+	public static int getDeviceKey(int interf, int index) {
+		return (interf << 16) | (index & 0xffff);
+	}
+
+	/**
+	 * @return The type of the message, one of PLAYER_MSGTYPE_*.
+	 */
+	public int getType() {
+		return getInt(bytes, TYPE_OFFSET);
+	}
+
+	/**
+	 * @return The subtype of the message.
+	 */
+	public int getSubtype() {
+		return getInt(bytes, SUBTYPE_OFFSET);
+	}
+
+	/**
+	 * @return The timestamp in the message's header, in seconds since the epoch.
+	 */
+	public double getTimestamp() {
+		long bits = ((long)getInt(bytes, TIMESTAMP_OFFSET) << 32)
+			| (getInt(bytes, TIMESTAMP_OFFSET + 4) & 0xffffffffL);
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * @return The size of the payload in bytes.
+	 */
+	public int getPayloadSize() {
+		return bytes.length - PlayerMsgHdr.PLAYERXDR_MSGHDR_SIZE;
+	}
+
+	/**
+	 * Decodes a big-endian (XDR) int.
+	 */
+	static int getInt(byte[] b, int offset) {
+		return (b[offset] << 24) | ((b[offset + 1] & 0xff) << 16)
+			| ((b[offset + 2] & 0xff) << 8) | (b[offset + 3] & 0xff);
+	}
+
+	/**
+	 * Encodes a big-endian (XDR) int.
+	 */
+	static void putInt(byte[] b, int offset, int value) {
+		b[offset] = (byte)(value >>> 24);
+		b[offset + 1] = (byte)(value >>> 16);
+		b[offset + 2] = (byte)(value >>> 8);
+		b[offset + 3] = (byte)value;
+	}
+
+	/**
+	 * @return A String representation of this class.
+	 */
+	public String toString() {
+		return "PlayerCaptureMessage: time = " + time / 1000000 + "ms, interf = " + getInterf()
+			+ ", index = " + getIndex() + ", type = " + getType() + ", subtype = " + getSubtype()
+			+ ", size = " + getPayloadSize();
+	}
+}
@@ -0,0 +1,105 @@
+package pharoslabut.sensors.replay;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import playerclient3.structures.PlayerConstants;
+
+/**
+ * Reads the messages in a capture file written by a PlayerCaptureWriter.
+ *
+ * @see PlayerCaptureWriter
+ * @see PlayerReplayServer
+ */
+public class PlayerCaptureReader {
+
+	private DataInputStream in;
+	private byte[] ident;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param fileName The name of the capture file.
+	 * @throws IOException If the file cannot be read or is not a capture file.
+	 */
+	public PlayerCaptureReader(String fileName) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 64 * 1024));
+		try {
+			if (in.readInt() != PlayerCaptureWriter.MAGIC)
+				throw new IOException(fileName + " is not a Player capture file");
+			int version = in.readInt();
+			if (version != PlayerCaptureWriter.VERSION)
+				throw new IOException("Unsupported version " + version + " of Player capture file " + fileName);
+			ident = new byte[PlayerConstants.PLAYER_IDENT_STRLEN];
+			in.readFully(ident);
+		} catch(IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The bytes that identify the Player server that was recorded.
+	 */
+	public byte[] getIdent() {
+		return ident;
+	}
+
+	/**
+	 * Reads the next message.
+	 *
+	 * @return The message, or null if the end of the capture was reached.
+	 * @throws IOException If the capture file cannot be read or is truncated.
+	 */
+	public PlayerCaptureMessage read() throws IOException {
+		return PlayerCaptureMessage.read(in);
+	}
+
+	/**
+	 * Closes the capture file.
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * @param fileName The name of a file.
+	 * @return Whether the file is a capture file.
+	 */
+	public static boolean isCaptureFile(String fileName) {
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(fileName));
+			try {
+				return in.readInt() == PlayerCaptureWriter.MAGIC;
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reads a capture file into the byte stream that the Player server sent,
+	 * i.e., the ident followed by the messages, without their times.
+	 *
+	 * @param fileName The name of the capture file.
+	 * @return The byte stream.
+	 */
+	public static byte[] readStream(String fileName) throws IOException {
+		PlayerCaptureReader reader = new PlayerCaptureReader(fileName);
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			bos.write(reader.getIdent());
+			PlayerCaptureMessage msg;
+			while ((msg = reader.read()) != null)
+				bos.write(msg.getBytes());
+			return bos.toByteArray();
+		} finally {
+			reader.close();
+		}
+	}
+}
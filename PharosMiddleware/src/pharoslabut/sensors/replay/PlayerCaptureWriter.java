@@ -0,0 +1,93 @@
+package pharoslabut.sensors.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the messages that a Player server sends to a client to a capture
+ * file.  The file begins with MAGIC, VERSION, and the PLAYER_IDENT_STRLEN
+ * bytes that identify the Player server, which the server sends when a client
+ * connects.  Each message follows as the time in nanoseconds since the client
+ * connected when the message's header arrived, the XDR-encoded header, and the
+ * payload.  Everything is big-endian.
+ *
+ * @see PlayerCaptureReader
+ * @see PlayerStreamRecorder
+ */
+public class PlayerCaptureWriter {
+
+	/**
+	 * The first four bytes of a capture file, "PLYR".
+	 */
+	public static final int MAGIC = 0x504c5952;
+
+	/**
+	 * The version of the capture file format.
+	 */
+	public static final int VERSION = 1;
+
+	private DataOutputStream out;
+	private long numMessages = 0;
+	private long numBytes = 0;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param fileName The name of the capture file, which is overwritten if it exists.
+	 * @param ident The bytes that identify the Player server.
+	 */
+	public PlayerCaptureWriter(String fileName, byte[] ident) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 64 * 1024));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.write(ident);
+	}
+
+	/**
+	 * Appends a message to the capture.
+	 *
+	 * @param msg The message.
+	 */
+	public synchronized void write(PlayerCaptureMessage msg) throws IOException {
+		if (out == null)
+			throw new IOException("Capture file is closed");
+		msg.write(out);
+		numMessages++;
+		numBytes += msg.getBytes().length;
+	}
+
+	/**
+	 * Writes the buffered messages to the file.
+	 */
+	public synchronized void flush() throws IOException {
+		if (out != null)
+			out.flush();
+	}
+
+	/**
+	 * Writes the buffered messages to the file and closes it.  This may be
+	 * called more than once.
+	 */
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * @return The number of messages written.
+	 */
+	public synchronized long getNumMessages() {
+		return numMessages;
+	}
+
+	/**
+	 * @return The number of bytes of Player messages written, excluding timestamps.
+	 */
+	public synchronized long getNumBytes() {
+		return numBytes;
+	}
+}
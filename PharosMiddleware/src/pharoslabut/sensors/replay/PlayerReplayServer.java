@@ -0,0 +1,695 @@
+package pharoslabut.sensors.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.locks.LockSupport;
+
+import playerclient3.structures.PlayerConstants;
+import playerclient3.structures.PlayerDevAddr;
+
+import pharoslabut.logger.LatencyHistogram;
+import pharoslabut.logger.Logger;
+
+/**
+ * A stand-in for a Player server that replays a capture file recorded by the
+ * PlayerStreamRecorder.  It lets PlayerClient, the DataBuffers and the
+ * navigation code run on a workstation, without a robot, on the same sensor
+ * data every time, so their throughput and latency can be compared before and
+ * after a change.
+ *
+ * <p>The server performs the Player handshake well enough for an unmodified
+ * PlayerClient to connect: it sends the recorded ident, answers device list,
+ * driver info and device access requests with the devices in the capture, and
+ * acknowledges data mode changes.  Requests to a device are answered with the
+ * response recorded for the same device and subtype, or a negative
+ * acknowledgment if there is none.  Commands are read and discarded.</p>
+ *
+ * <p>Once a client subscribes to its first device, the recorded data messages
+ * of the devices it subscribed to are sent with the same spacing as when they
+ * were recorded, divided by the speed-up factor.  A speed-up of 0 sends them as
+ * fast as the client reads them.  In PLAYER_DATAMODE_PULL, each
+ * PLAYER_PLAYER_REQ_DATA request is answered with the latest message of each
+ * device that is due, followed by a PLAYER_MSGTYPE_SYNCH.  Like Player's
+ * default replace rule, older messages of the same device are dropped.  At a
+ * speed-up of 0, each round has at most one message per device.  The timestamps in the
+ * headers are replaced by the time at which the messages are sent.</p>
+ *
+ * <p>Each client is served independently from the start of the capture.  When
+ * the end is reached, the throughput and the lag between when each message was
+ * due and when it was sent are logged.  A growing lag means the client cannot
+ * keep up.</p>
+ *
+ * @see PlayerStreamRecorder
+ * @see PlayerCaptureReader
+ */
+public class PlayerReplayServer implements PlayerConstants {
+
+	private String fileName;
+	private double speed;
+	private boolean loop;
+	private ServerSocket serverSocket;
+
+	/**
+	 * The ident of the recorded Player server.
+	 */
+	private byte[] ident;
+
+	/**
+	 * The keys of the devices in the capture, in the order they are listed.
+	 */
+	private Vector<Integer> devices = new Vector<Integer>();
+
+	/**
+	 * The addresses of the devices in the capture, XDR-encoded, indexed by key.
+	 */
+	private Hashtable<Integer, byte[]> deviceAddrs = new Hashtable<Integer, byte[]>();
+
+	/**
+	 * The names of the drivers of the devices in the capture, indexed by key.
+	 */
+	private Hashtable<Integer, String> driverNames = new Hashtable<Integer, String>();
+
+	/**
+	 * The recorded responses to requests to devices, indexed by getRequestKey(...).
+	 */
+	private Hashtable<Long, PlayerCaptureMessage> deviceResponses = new Hashtable<Long, PlayerCaptureMessage>();
+
+	/**
+	 * The number of data messages in the capture, and the time spanned by them in nanoseconds.
+	 */
+	private long numDataMsgs = 0;
+	private long dataDuration = 0;
+
+	/**
+	 * The constructor.  It reads the devices and responses from the capture.
+	 *
+	 * @param fileName The capture file.
+	 * @param port The port on which to accept clients.
+	 * @param speed The speed-up factor, or 0 to replay as fast as possible.
+	 * @param loop Whether to start again from the beginning when the end of the capture is reached.
+	 */
+	public PlayerReplayServer(String fileName, int port, double speed, boolean loop) throws IOException {
+		this.fileName = fileName;
+		this.speed = speed;
+		this.loop = loop;
+		scanCapture();
+		serverSocket = new ServerSocket(port);
+	}
+
+	/**
+	 * Reads the devices and the responses to requests from the capture.
+	 */
+	private void scanCapture() throws IOException {
+		PlayerCaptureReader reader = new PlayerCaptureReader(fileName);
+		long firstDataTime = -1;
+		try {
+			ident = reader.getIdent();
+			PlayerCaptureMessage msg;
+			while ((msg = reader.read()) != null) {
+				byte[] bytes = msg.getBytes();
+				int payload = bytes.length - msg.getPayloadSize();
+				if (msg.getType() == PLAYER_MSGTYPE_DATA) {
+					addDevice(bytes, 0);
+					numDataMsgs++;
+					if (firstDataTime == -1)
+						firstDataTime = msg.getTime();
+					dataDuration = msg.getTime() - firstDataTime;
+				}
+				else if (msg.getType() == PLAYER_MSGTYPE_RESP_ACK && msg.getInterf() == PLAYER_PLAYER_CODE) {
+					switch (msg.getSubtype()) {
+					case PLAYER_PLAYER_REQ_DEVLIST:
+						// devices_count, array count, devices
+						int count = PlayerCaptureMessage.getInt(bytes, payload);
+						for (int i = 0; i < count
+								&& payload + 8 + (i + 1) * PlayerDevAddr.PLAYERXDR_DEVADDR_SIZE <= bytes.length; i++)
+							addDevice(bytes, payload + 8 + i * PlayerDevAddr.PLAYERXDR_DEVADDR_SIZE);
+						break;
+					case PLAYER_PLAYER_REQ_DRIVERINFO:
+						// device, driver_name_count, array count, driver_name
+						addDriverName(bytes, payload, payload + PlayerDevAddr.PLAYERXDR_DEVADDR_SIZE);
+						break;
+					case PLAYER_PLAYER_REQ_DEV:
+						// device, access, driver_name_count, array count, driver_name
+						addDriverName(bytes, payload, payload + PlayerDevAddr.PLAYERXDR_DEVADDR_SIZE + 4);
+						break;
+					}
+				}
+				else if (msg.getType() == PLAYER_MSGTYPE_RESP_ACK)
+					deviceResponses.put(getRequestKey(msg.getDeviceKey(), msg.getSubtype()), msg);
+			}
+		} finally {
+			reader.close();
+		}
+		Logger.log("Capture " + fileName + " contains " + numDataMsgs + " data messages from "
+				+ devices.size() + " devices over " + dataDuration / 1000000 + "ms");
+	}
+
+	/**
+	 * Adds a device to the device list if it is not already in it.
+	 *
+	 * @param bytes The bytes containing the device's address.
+	 * @param offset The offset of the address.
+	 */
+	private void addDevice(byte[] bytes, int offset) {
+		int interf = PlayerCaptureMessage.getInt(bytes, offset + 8);
+		int index = PlayerCaptureMessage.getInt(bytes, offset + 12);
+		Integer key = PlayerCaptureMessage.getDeviceKey(interf, index);
+		if (interf != PLAYER_PLAYER_CODE && !deviceAddrs.containsKey(key)) {
+			byte[] addr = new byte[PlayerDevAddr.PLAYERXDR_DEVADDR_SIZE];
+			System.arraycopy(bytes, offset, addr, 0, addr.length);
+			devices.add(key);
+			deviceAddrs.put(key, addr);
+		}
+	}
+
+	/**
+	 * Records the name of a device's driver.
+	 *
+	 * @param bytes The bytes containing the device's address and the name.
+	 * @param addrOffset The offset of the address.
+	 * @param nameOffset The offset of the name's length, which the name follows.
+	 */
+	private void addDriverName(byte[] bytes, int addrOffset, int nameOffset) {
+		addDevice(bytes, addrOffset);
+		int interf = PlayerCaptureMessage.getInt(bytes, addrOffset + 8);
+		int index = PlayerCaptureMessage.getInt(bytes, addrOffset + 12);
+		int length = PlayerCaptureMessage.getInt(bytes, nameOffset);
+		if (length > 0 && nameOffset + 8 + length <= bytes.length)
+			driverNames.put(PlayerCaptureMessage.getDeviceKey(interf, index),
+					new String(bytes, nameOffset + 8, length));
+	}
+
+	/**
+	 * @return The key of a request to a device.
+	 */
+	private static Long getRequestKey(int deviceKey, int subtype) {
+		return Long.valueOf(((long)deviceKey << 32) | (subtype & 0xffffffffL));
+	}
+
+	/**
+	 * Accepts clients until the JVM exits.  Each client is served by its own threads.
+	 */
+	public void run() {
+		Logger.log("Replaying " + fileName + " on port " + serverSocket.getLocalPort() + " at "
+				+ (speed > 0 ? speed + "x speed" : "full speed") + (loop ? ", looping" : ""));
+		int clientNum = 0;
+		while (true) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				clientNum++;
+				new Thread(new Session(socket), "PlayerReplayServer-" + clientNum).start();
+			} catch(IOException e) {
+				Logger.logErr("Failed to accept client: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Serves one client.  The thread that runs the session handles the client's
+	 * requests, and a second thread replays the data once the client subscribes
+	 * to a device.
+	 */
+	private class Session implements Runnable {
+		private Socket socket;
+		private DataInputStream in;
+		private DataOutputStream out;
+		private long epoch = System.nanoTime();
+
+		/**
+		 * The keys of the devices to which the client is subscribed.
+		 */
+		private Vector<Integer> subscribed = new Vector<Integer>();
+
+		private volatile boolean running = true;
+		private volatile int datamode = PLAYER_DATAMODE_PUSH;
+
+		/**
+		 * Whether the data is being replayed, and the number of PLAYER_PLAYER_REQ_DATA
+		 * requests that the replay has not yet answered.
+		 */
+		private boolean replaying = false;
+		private int pendingRounds = 0;
+
+		private Thread replayThread = null;
+
+		/**
+		 * The delay between when each message was due and when it was sent.
+		 */
+		private LatencyHistogram lag = new LatencyHistogram("lag");
+		private long replayStart;
+		private long numSent = 0;
+		private long numReplaced = 0;
+		private long numBytesSent = 0;
+		private long numCommands = 0;
+
+		Session(Socket socket) throws IOException {
+			this.socket = socket;
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+		}
+
+		/**
+		 * Handles the client's requests until it disconnects.
+		 */
+		public void run() {
+			Logger.log("Client " + socket.getRemoteSocketAddress() + " connected");
+			try {
+				synchronized(out) {
+					out.write(ident);
+					out.flush();
+				}
+				while (running) {
+					PlayerCaptureMessage msg = PlayerCaptureMessage.receive(in, epoch);
+					if (msg.getType() == PLAYER_MSGTYPE_REQ) {
+						if (msg.getInterf() == PLAYER_PLAYER_CODE)
+							handlePlayerRequest(msg);
+						else
+							handleDeviceRequest(msg);
+					} else if (msg.getType() == PLAYER_MSGTYPE_CMD)
+						numCommands++;
+				}
+			} catch(EOFException e) {
+				Logger.log("Client " + socket.getRemoteSocketAddress() + " disconnected");
+			} catch(SocketException e) {
+				Logger.log("Client " + socket.getRemoteSocketAddress() + " disconnected: " + e.getMessage());
+			} catch(IOException e) {
+				Logger.logErr("Error while serving client " + socket.getRemoteSocketAddress() + ": " + e);
+			}
+			stop();
+		}
+
+		/**
+		 * Stops the session and closes the connection.
+		 */
+		private void stop() {
+			running = false;
+			synchronized(this) {
+				notifyAll();
+			}
+			try {
+				socket.close();
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+			Thread t = replayThread;
+			if (t != null) {
+				LockSupport.unpark(t);
+				try {
+					t.join();
+				} catch(InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		/**
+		 * Answers a request to the Player server itself.
+		 */
+		private void handlePlayerRequest(PlayerCaptureMessage req) throws IOException {
+			byte[] bytes = req.getBytes();
+			int payload = bytes.length - req.getPayloadSize();
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			DataOutputStream reply = new DataOutputStream(bos);
+
+			switch (req.getSubtype()) {
+			case PLAYER_PLAYER_REQ_DEVLIST: {
+				Integer[] keys = devices.toArray(new Integer[0]);
+				reply.writeInt(keys.length);                   // devices_count
+				reply.writeInt(keys.length);                   // array count
+				for (int i = 0; i < keys.length; i++)
+					reply.write(deviceAddrs.get(keys[i]));
+				break;
+			}
+			case PLAYER_PLAYER_REQ_DRIVERINFO: {
+				Integer key = getDeviceKey(bytes, payload);
+				if (!deviceAddrs.containsKey(key)) {
+					sendResponse(bytes, PLAYER_MSGTYPE_RESP_NACK, null);
+					return;
+				}
+				reply.write(deviceAddrs.get(key));
+				writeDriverName(reply, key);
+				break;
+			}
+			case PLAYER_PLAYER_REQ_DEV: {
+				Integer key = getDeviceKey(bytes, payload);
+				int access = PlayerCaptureMessage.getInt(bytes, payload + PlayerDevAddr.PLAYERXDR_DEVADDR_SIZE);
+				if (!deviceAddrs.containsKey(key)) {
+					sendResponse(bytes, PLAYER_MSGTYPE_RESP_NACK, null);
+					return;
+				}
+				reply.write(deviceAddrs.get(key));
+				reply.writeInt(access);                        // the granted access
+				writeDriverName(reply, key);
+
+				if (access == PLAYER_OPEN_MODE) {
+					if (!subscribed.contains(key))
+						subscribed.add(key);
+				} else if (access == PLAYER_CLOSE_MODE)
+					subscribed.remove(key);
+
+				// Send the acknowledgment before the first data message
+				sendResponse(bytes, PLAYER_MSGTYPE_RESP_ACK, bos.toByteArray());
+				if (access == PLAYER_OPEN_MODE && replayThread == null) {
+					replaying = true;
+					replayThread = new Thread(Thread.currentThread().getName() + "-data") {
+						public void run() {
+							replay();
+						}
+					};
+					replayThread.start();
+				}
+				return;
+			}
+			case PLAYER_PLAYER_REQ_DATAMODE: {
+				datamode = PlayerCaptureMessage.getInt(bytes, payload);
+				synchronized(this) {
+					notifyAll();
+				}
+				break;
+			}
+			case PLAYER_PLAYER_REQ_DATA: {
+				sendResponse(bytes, PLAYER_MSGTYPE_RESP_ACK, null);
+				synchronized(this) {
+					if (replaying) {
+						pendingRounds++;
+						notifyAll();
+						return;
+					}
+				}
+				// Before subscribing or after the end of the capture, the round is empty
+				sendSynch();
+				return;
+			}
+			}
+			sendResponse(bytes, PLAYER_MSGTYPE_RESP_ACK, bos.toByteArray());
+		}
+
+		/**
+		 * Answers a request to a device with the recorded response.
+		 */
+		private void handleDeviceRequest(PlayerCaptureMessage req) throws IOException {
+			PlayerCaptureMessage response = deviceResponses.get(getRequestKey(req.getDeviceKey(), req.getSubtype()));
+			if (response != null) {
+				synchronized(out) {
+					response.sendTo(out, System.currentTimeMillis() / 1000.0);
+					out.flush();
+				}
+			} else
+				sendResponse(req.getBytes(), PLAYER_MSGTYPE_RESP_NACK, null);
+		}
+
+		/**
+		 * @return The key of the device whose address is at an offset in a message.
+		 */
+		private Integer getDeviceKey(byte[] bytes, int offset) {
+			return PlayerCaptureMessage.getDeviceKey(PlayerCaptureMessage.getInt(bytes, offset + 8),
+					PlayerCaptureMessage.getInt(bytes, offset + 12));
+		}
+
+		/**
+		 * Writes the name of a device's driver, as an XDR variable-length array of bytes.
+		 */
+		private void writeDriverName(DataOutputStream reply, Integer key) throws IOException {
+			String name = driverNames.get(key);
+			byte[] nameBytes = (name != null ? name : "replay").getBytes();
+			reply.writeInt(nameBytes.length);                  // driver_name_count
+			reply.writeInt(nameBytes.length);                  // array count
+			reply.write(nameBytes);
+			for (int i = nameBytes.length; i % 4 != 0; i++)
+				reply.write(0);
+		}
+
+		/**
+		 * Sends a response to a request.
+		 *
+		 * @param req The bytes of the request, whose address and subtype are used.
+		 * @param type PLAYER_MSGTYPE_RESP_ACK or PLAYER_MSGTYPE_RESP_NACK.
+		 * @param payload The payload, or null if there is none.
+		 */
+		private void sendResponse(byte[] req, int type, byte[] payload) throws IOException {
+			sendMessage(req, type, PlayerCaptureMessage.getInt(req, PlayerCaptureMessage.SUBTYPE_OFFSET), payload);
+		}
+
+		/**
+		 * Sends a PLAYER_MSGTYPE_SYNCH, which ends a round of data in PLAYER_DATAMODE_PULL.
+		 */
+		private void sendSynch() throws IOException {
+			byte[] addr = new byte[PlayerDevAddr.PLAYERXDR_DEVADDR_SIZE];
+			PlayerCaptureMessage.putInt(addr, PlayerCaptureMessage.INTERF_OFFSET, PLAYER_PLAYER_CODE);
+			sendMessage(addr, PLAYER_MSGTYPE_SYNCH, 0, null);
+		}
+
+		/**
+		 * Sends a message.
+		 *
+		 * @param addr The bytes starting with the address of the device sending the message.
+		 * @param type The type of the message.
+		 * @param subtype The subtype of the message.
+		 * @param payload The payload, or null if there is none.
+		 */
+		private void sendMessage(byte[] addr, int type, int subtype, byte[] payload) throws IOException {
+			synchronized(out) {
+				out.write(addr, 0, PlayerDevAddr.PLAYERXDR_DEVADDR_SIZE);
+				out.writeInt(type);
+				out.writeInt(subtype);
+				out.writeDouble(System.currentTimeMillis() / 1000.0);
+				out.writeInt(0);                               // seq
+				out.writeInt(payload != null ? payload.length : 0);
+				if (payload != null)
+					out.write(payload);
+				out.flush();
+			}
+		}
+
+		/**
+		 * Replays the data messages of the subscribed devices until the session stops.
+		 */
+		private void replay() {
+			replayStart = System.nanoTime();
+			try {
+				do {
+					replayCapture();
+					logStats();
+				} while (loop && running);
+
+				// Answer the requests for data that are still pending with empty rounds
+				int rounds;
+				synchronized(this) {
+					replaying = false;
+					rounds = pendingRounds;
+					pendingRounds = 0;
+				}
+				for (int i = 0; i < rounds; i++)
+					sendSynch();
+			} catch(IOException e) {
+				if (running)
+					Logger.logErr("Error while replaying " + fileName + ": " + e);
+			}
+		}
+
+		/**
+		 * Replays the capture once.
+		 */
+		private void replayCapture() throws IOException {
+			PlayerCaptureReader reader = new PlayerCaptureReader(fileName);
+			try {
+				long start = System.nanoTime();
+				long firstDataTime = -1;
+				// The latest due message of each device, and when it was due, in PLAYER_DATAMODE_PULL
+				Vector<Integer> round = new Vector<Integer>();
+				Hashtable<Integer, PlayerCaptureMessage> roundMsgs = new Hashtable<Integer, PlayerCaptureMessage>();
+				Hashtable<Integer, Long> roundDue = new Hashtable<Integer, Long>();
+				PlayerCaptureMessage msg = null;
+
+				while (running) {
+					if (msg == null) {
+						msg = reader.read();
+						if (msg == null) {
+							sendRound(round, roundMsgs, roundDue);
+							return;
+						}
+						if (msg.getType() != PLAYER_MSGTYPE_DATA) {
+							msg = null;
+							continue;
+						}
+						if (firstDataTime == -1)
+							firstDataTime = msg.getTime();
+						if (!subscribed.contains(msg.getDeviceKey())) {
+							msg = null;
+							continue;
+						}
+					}
+
+					long due = (speed > 0) ? start + (long)((msg.getTime() - firstDataTime) / speed) : System.nanoTime();
+
+					if (datamode == PLAYER_DATAMODE_PULL) {
+						synchronized(this) {
+							while (running && datamode == PLAYER_DATAMODE_PULL && pendingRounds == 0) {
+								try {
+									wait();
+								} catch(InterruptedException e) {
+									e.printStackTrace();
+								}
+							}
+						}
+						if (datamode != PLAYER_DATAMODE_PULL || !running)
+							continue;
+
+						// Collect the messages that are due, replacing older ones from the same device.
+						// The round ends at the first message that is not yet due, or, when replaying
+						// as fast as possible, at the second message from the same device.
+						Integer key = msg.getDeviceKey();
+						if (due - System.nanoTime() <= 0 && !(speed == 0 && roundMsgs.containsKey(key))) {
+							if (roundMsgs.put(key, msg) != null)
+								numReplaced++;
+							else
+								round.add(key);
+							roundDue.put(key, due);
+							msg = null;
+							continue;
+						}
+						sendRound(round, roundMsgs, roundDue);
+						sendSynch();
+						synchronized(this) {
+							pendingRounds--;
+						}
+						continue;
+					} else if (!round.isEmpty()) {
+						// The client switched to PLAYER_DATAMODE_PUSH in the middle of a round
+						sendRound(round, roundMsgs, roundDue);
+					}
+
+					long delay;
+					while (running && (delay = due - System.nanoTime()) > 0)
+						LockSupport.parkNanos(this, delay);
+
+					send(msg, due);
+					msg = null;
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		/**
+		 * Sends the messages collected for a round of PLAYER_DATAMODE_PULL and
+		 * clears the round.
+		 *
+		 * @param round The keys of the devices in the order their first message was due.
+		 * @param roundMsgs The latest message of each device.
+		 * @param roundDue When each message was due.
+		 */
+		private void sendRound(Vector<Integer> round, Hashtable<Integer, PlayerCaptureMessage> roundMsgs,
+				Hashtable<Integer, Long> roundDue) throws IOException
+		{
+			for (int i = 0; i < round.size(); i++) {
+				Integer key = round.get(i);
+				send(roundMsgs.get(key), roundDue.get(key));
+			}
+			round.clear();
+			roundMsgs.clear();
+			roundDue.clear();
+		}
+
+		/**
+		 * Sends a recorded data message with the current time as its timestamp.
+		 *
+		 * @param msg The message.
+		 * @param due The value of System.nanoTime() at which the message was due.
+		 */
+		private void send(PlayerCaptureMessage msg, long due) throws IOException {
+			synchronized(out) {
+				msg.sendTo(out, System.currentTimeMillis() / 1000.0);
+				out.flush();
+			}
+			if (speed > 0)
+				lag.record(System.nanoTime() - due);
+			numSent++;
+			numBytesSent += msg.getBytes().length;
+		}
+
+		/**
+		 * Logs the throughput and lag of the replay so far.
+		 */
+		private void logStats() {
+			double seconds = (System.nanoTime() - replayStart) / 1e9;
+			Logger.log("Replayed " + numSent + " messages (" + numBytesSent + " bytes) to "
+					+ socket.getRemoteSocketAddress() + " in " + Math.round(seconds * 1000) + "ms: "
+					+ Math.round(numSent / seconds) + " msgs/s, " + Math.round(numBytesSent / seconds / 1024)
+					+ " KB/s, " + numReplaced + " replaced, " + numCommands + " commands received"
+					+ (speed > 0 ? "\n\t" + lag : ""));
+		}
+	}
+
+	private static void print(String msg) {
+		System.out.println(msg);
+	}
+
+	private static void usage() {
+		print("Usage: " + PlayerReplayServer.class.getName() + " <options>\n");
+		print("Where <options> include:");
+		print("\t-file <file name>: The capture file recorded by the PlayerStreamRecorder (required)");
+		print("\t-port <port number>: The port on which to accept clients (default 6665)");
+		print("\t-speed <factor>: Replay this many times faster than recorded, 0 for as fast as possible (default 1)");
+		print("\t-loop: Replay the capture again when its end is reached");
+		print("\t-debug: enable debug mode");
+	}
+
+	public static void main(String[] args) {
+		String fileName = null;
+		int port = 6665;
+		double speed = 1;
+		boolean loop = false;
+
+		try {
+			for (int i=0; i < args.length; i++) {
+				if (args[i].equals("-file")) {
+					fileName = args[++i];
+				}
+				else if (args[i].equals("-port")) {
+					port = Integer.valueOf(args[++i]);
+				}
+				else if (args[i].equals("-speed")) {
+					speed = Double.valueOf(args[++i]);
+				}
+				else if (args[i].equals("-loop")) {
+					loop = true;
+				}
+				else if (args[i].equals("-debug") || args[i].equals("-d")) {
+					System.setProperty ("PharosMiddleware.debug", "true");
+				}
+				else {
+					usage();
+					System.exit(1);
+				}
+			}
+		} catch(Exception e) {
+			e.printStackTrace();
+			usage();
+			System.exit(1);
+		}
+
+		if (fileName == null || speed < 0) {
+			usage();
+			System.exit(1);
+		}
+
+		try {
+			new PlayerReplayServer(fileName, port, speed, loop).run();
+		} catch(IOException e) {
+			Logger.logErr("Unable to replay " + fileName + " on port " + port + ": " + e);
+			System.exit(1);
+		}
+	}
+}
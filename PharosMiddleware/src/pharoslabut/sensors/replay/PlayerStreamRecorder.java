@@ -0,0 +1,241 @@
+package pharoslabut.sensors.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Vector;
+
+import playerclient3.structures.PlayerConstants;
+
+import pharoslabut.logger.Logger;
+
+/**
+ * Records the messages that a Player server sends to a client, along with the
+ * time at which each message arrived, in a capture file that can be replayed
+ * by the PlayerReplayServer.
+ *
+ * <p>The recorder is a proxy that sits between the client and the Player
+ * server.  It listens on a local port, and for each client that connects, it
+ * connects to the Player server and forwards everything in both directions,
+ * recording the messages from the server.  To record the stream of a robot,
+ * start the recorder on the robot and point the client, e.g., the
+ * PharosExpServer's -playerPort option, at the recorder's local port.</p>
+ *
+ * <p>The first client's messages are recorded in the given capture file.  If
+ * more clients connect, their messages are recorded in files named after the
+ * capture file followed by "." and the number of the client.</p>
+ *
+ * @see PlayerCaptureWriter
+ * @see PlayerReplayServer
+ */
+public class PlayerStreamRecorder implements PlayerConstants {
+
+	private String serverName;
+	private int serverPort;
+	private String fileName;
+	private ServerSocket serverSocket;
+
+	/**
+	 * The captures that are being recorded, which are closed when the JVM exits.
+	 */
+	private Vector<PlayerCaptureWriter> writers = new Vector<PlayerCaptureWriter>();
+
+	/**
+	 * The constructor.
+	 *
+	 * @param serverName The name of the host running the Player server.
+	 * @param serverPort The port of the Player server.
+	 * @param localPort The port on which to accept clients.
+	 * @param fileName The name of the capture file.
+	 */
+	public PlayerStreamRecorder(String serverName, int serverPort, int localPort, String fileName)
+		throws IOException
+	{
+		this.serverName = serverName;
+		this.serverPort = serverPort;
+		this.fileName = fileName;
+		serverSocket = new ServerSocket(localPort);
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				PlayerCaptureWriter[] currWriters = writers.toArray(new PlayerCaptureWriter[0]);
+				for (int i = 0; i < currWriters.length; i++) {
+					try {
+						currWriters[i].close();
+					} catch(IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Accepts clients until the JVM exits.  Each client is served by its own thread.
+	 */
+	public void run() {
+		Logger.log("Waiting for clients on port " + serverSocket.getLocalPort() + ", Player server is "
+				+ serverName + ":" + serverPort);
+		int clientNum = 0;
+		while (true) {
+			try {
+				final Socket client = serverSocket.accept();
+				final String captureFile = (clientNum == 0) ? fileName : fileName + "." + clientNum;
+				clientNum++;
+				new Thread("PlayerStreamRecorder-" + clientNum) {
+					public void run() {
+						record(client, captureFile);
+					}
+				}.start();
+			} catch(IOException e) {
+				Logger.logErr("Failed to accept client: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Forwards the messages between a client and the Player server, recording
+	 * the messages from the server.
+	 *
+	 * @param client The socket connected to the client.
+	 * @param captureFile The name of the capture file.
+	 */
+	private void record(final Socket client, String captureFile) {
+		Socket server = null;
+		PlayerCaptureWriter writer = null;
+		long epoch = System.nanoTime();
+		try {
+			Logger.log("Recording client " + client.getRemoteSocketAddress() + " in " + captureFile);
+			server = new Socket(serverName, serverPort);
+			server.setTcpNoDelay(true);
+			client.setTcpNoDelay(true);
+
+			// Forward everything from the client to the server without recording it
+			final InputStream fromClient = client.getInputStream();
+			final OutputStream toServer = server.getOutputStream();
+			final Socket serverConn = server;
+			new Thread(Thread.currentThread().getName() + "-requests") {
+				public void run() {
+					byte[] buffer = new byte[8192];
+					try {
+						int n;
+						while ((n = fromClient.read(buffer)) != -1) {
+							toServer.write(buffer, 0, n);
+							toServer.flush();
+						}
+					} catch(IOException e) {
+						Logger.logDbg("Stopped forwarding requests: " + e);
+					}
+					// Closing the server's socket ends the recording
+					try {
+						serverConn.close();
+					} catch(IOException e) {
+					}
+				}
+			}.start();
+
+			DataInputStream fromServer = new DataInputStream(new BufferedInputStream(server.getInputStream()));
+			OutputStream toClient = new BufferedOutputStream(client.getOutputStream(), 64 * 1024);
+
+			byte[] ident = new byte[PLAYER_IDENT_STRLEN];
+			fromServer.readFully(ident);
+			toClient.write(ident);
+			toClient.flush();
+			writer = new PlayerCaptureWriter(captureFile, ident);
+			writers.add(writer);
+
+			while (true) {
+				PlayerCaptureMessage msg = PlayerCaptureMessage.receive(fromServer, epoch);
+
+				// Forward the message before recording it so the client is not delayed
+				toClient.write(msg.getBytes());
+				if (fromServer.available() == 0)
+					toClient.flush();
+				writer.write(msg);
+			}
+		} catch(EOFException e) {
+			Logger.log("Connection closed");
+		} catch(SocketException e) {
+			Logger.log("Connection closed: " + e.getMessage());
+		} catch(IOException e) {
+			Logger.logErr("Error while recording: " + e);
+		} finally {
+			try {
+				client.close();
+				if (server != null)
+					server.close();
+				if (writer != null) {
+					writer.close();
+					writers.remove(writer);
+					Logger.log("Recorded " + writer.getNumMessages() + " messages (" + writer.getNumBytes()
+							+ " bytes) in " + (System.nanoTime() - epoch) / 1000000 + "ms to " + captureFile);
+				}
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static void print(String msg) {
+		System.out.println(msg);
+	}
+
+	private static void usage() {
+		print("Usage: " + PlayerStreamRecorder.class.getName() + " <options>\n");
+		print("Where <options> include:");
+		print("\t-server <ip address>: The IP address of the Player Server (default localhost)");
+		print("\t-port <port number>: The Player Server's port number (default 6665)");
+		print("\t-localPort <port number>: The port on which clients connect to the recorder (default 6666)");
+		print("\t-file <file name>: The capture file (default player.capture)");
+		print("\t-debug: enable debug mode");
+	}
+
+	public static void main(String[] args) {
+		String serverName = "localhost";
+		int serverPort = 6665;
+		int localPort = 6666;
+		String fileName = "player.capture";
+
+		try {
+			for (int i=0; i < args.length; i++) {
+				if (args[i].equals("-server")) {
+					serverName = args[++i];
+				}
+				else if (args[i].equals("-port")) {
+					serverPort = Integer.valueOf(args[++i]);
+				}
+				else if (args[i].equals("-localPort")) {
+					localPort = Integer.valueOf(args[++i]);
+				}
+				else if (args[i].equals("-file")) {
+					fileName = args[++i];
+				}
+				else if (args[i].equals("-debug") || args[i].equals("-d")) {
+					System.setProperty ("PharosMiddleware.debug", "true");
+				}
+				else {
+					usage();
+					System.exit(1);
+				}
+			}
+		} catch(Exception e) {
+			e.printStackTrace();
+			usage();
+			System.exit(1);
+		}
+
+		try {
+			new PlayerStreamRecorder(serverName, serverPort, localPort, fileName).run();
+		} catch(IOException e) {
+			Logger.logErr("Unable to listen on port " + localPort + ": " + e);
+			System.exit(1);
+		}
+	}
+}
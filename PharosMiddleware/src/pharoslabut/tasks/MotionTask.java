@@ -15,6 +15,15 @@ public class MotionTask extends Task {
 	private double speed;
 	private double steeringAngle;
 	
+	/**
+	 * The arrival times, from System.nanoTime(), of the compass and GPS readings
+	 * that this task was calculated from, or 0 if unknown.  These are only meaningful
+	 * on the host that received the readings.
+	 * 
+	 * @see pharoslabut.logger.LatencyTracer
+	 */
+	private transient long headingArrivalTime, locationArrivalTime;
+	
 	/**
 	 * Creates a MotionTask with priority FIRST, velocity 0.0, and heading 0.0.
 	 */
@@ -36,9 +45,26 @@ public class MotionTask extends Task {
 	}
 	
 	public synchronized void update(Priority priority, double speed, double steeringAngle) {
+		update(priority, speed, steeringAngle, 0, 0);
+	}
+	
+	/**
+	 * Updates this task with a motion that was calculated from sensor readings.
+	 * 
+	 * @param priority The priority of the task.
+	 * @param speed The velocity in m/s.
+	 * @param steeringAngle The heading in rad/s.
+	 * @param headingArrivalTime The arrival time of the compass reading used, or 0 if unknown.
+	 * @param locationArrivalTime The arrival time of the GPS reading used, or 0 if unknown.
+	 */
+	public synchronized void update(Priority priority, double speed, double steeringAngle, 
+			long headingArrivalTime, long locationArrivalTime) 
+	{
 		setPriority(priority);
 		this.speed = speed;
 		this.steeringAngle = steeringAngle;
+		this.headingArrivalTime = headingArrivalTime;
+		this.locationArrivalTime = locationArrivalTime;
 	}
 	
 //	public void setSpeed(double speed) {
@@ -57,6 +83,20 @@ public class MotionTask extends Task {
 		return steeringAngle;
 	}
 	
+	/**
+	 * @return The arrival time of the compass reading this task was calculated from, or 0 if unknown.
+	 */
+	public synchronized long getHeadingArrivalTime() {
+		return headingArrivalTime;
+	}
+	
+	/**
+	 * @return The arrival time of the GPS reading this task was calculated from, or 0 if unknown.
+	 */
+	public synchronized long getLocationArrivalTime() {
+		return locationArrivalTime;
+	}
+	
 	public boolean isStop() {
 		return speed == STOP_SPEED && steeringAngle == STOP_STEERING_ANGLE;
 	}
@@ -0,0 +1,327 @@
+package pharoslabut.tests;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import pharoslabut.demo.autoIntersection.clientDaemons.V2I.ExitingMsg;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2I.GrantAccessMsg;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2I.RequestAccessMsg;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2IReservation.RequestReservationMsg;
+import pharoslabut.demo.autoIntersection.intersectionSpecs.EntryPoint;
+import pharoslabut.demo.autoIntersection.intersectionSpecs.ExitPoint;
+import pharoslabut.demo.autoIntersection.intersectionSpecs.IntersectionSpecs;
+import pharoslabut.demo.autoIntersection.intersectionSpecs.TwoLaneFourWayIntersectionSpecs;
+import pharoslabut.demo.autoIntersection.server.ParallelDaemon;
+import pharoslabut.demo.autoIntersection.server.ReservationDaemon;
+import pharoslabut.demo.autoIntersection.server.SequentialDaemon;
+import pharoslabut.demo.autoIntersection.server.ServerDaemon;
+import pharoslabut.demo.autoIntersection.server.TrafficLightDaemon;
+import pharoslabut.io.Message;
+import pharoslabut.io.MessageReceiver;
+import pharoslabut.io.NioNetworkInterface;
+
+/**
+ * A load generator for the autonomous intersection server.  It starts a server
+ * daemon and simulates a fleet of vehicles that repeatedly request access to
+ * the intersection, cross it once granted, and send an ExitingMsg.  A vehicle
+ * that is not granted access re-sends its request periodically, as the
+ * V2IClientDaemon does.  At the end it reports the grant latency, measured from
+ * a vehicle's first request to its grant, and the response latency, measured
+ * from the request that was granted to the grant.
+ *
+ * <p>The server identifies vehicles by IP address and port, so each simulated
+ * vehicle uses its own loopback address (127.0.x.y) and all of them share one
+ * listening port.  This relies on the whole 127.0.0.0/8 block being routed to
+ * the loopback interface, which is the case on Linux.</p>
+ *
+ * <p>The daemons log every message they handle.  Since console output would
+ * dominate the measurement, standard output is discarded while the test runs
+ * unless -verbose is given.</p>
+ */
+public class TestAutoIntersectionLoad implements MessageReceiver {
+
+	private static final PrintStream console = System.out;
+
+	private IntersectionSpecs specs = TwoLaneFourWayIntersectionSpecs.getSpecs();
+	private NioNetworkInterface fleetInterface;
+	private InetAddress serverIP;
+	private int serverPort;
+	private boolean reservation;
+	private long crossTime;
+	private long retryInterval;
+	private long thinkTime;
+	private ScheduledExecutorService scheduler;
+	private Random random = new Random(42);
+	private volatile boolean running = true;
+
+	/**
+	 * The simulated vehicles indexed by IP address.
+	 */
+	private ConcurrentHashMap<InetAddress, SimVehicle> vehicles = new ConcurrentHashMap<InetAddress, SimVehicle>();
+
+	private long[] grantLatencies = new long[1024];
+	private long[] responseLatencies = new long[1024];
+	private int numGrants = 0;
+	private int numRequests = 0;
+
+	public TestAutoIntersectionLoad(int numVehicles, InetAddress serverIP, int serverPort, boolean reservation,
+			long crossTime, long retryInterval, long thinkTime, int numEventLoops) throws Exception
+	{
+		this.serverIP = serverIP;
+		this.serverPort = serverPort;
+		this.reservation = reservation;
+		this.crossTime = crossTime;
+		this.retryInterval = retryInterval;
+		this.thinkTime = thinkTime;
+
+		fleetInterface = new NioNetworkInterface(-1, numEventLoops);
+		fleetInterface.registerMsgListener(this);
+		scheduler = Executors.newScheduledThreadPool(2);
+
+		EntryPoint[] entries = specs.getEntryPoints().toArray(new EntryPoint[0]);
+		ExitPoint[] exits = specs.getExitPoints().toArray(new ExitPoint[0]);
+		for (int i = 0; i < numVehicles; i++) {
+			InetAddress ip = InetAddress.getByAddress(new byte[] {127, 0, (byte)(1 + i / 250), (byte)(1 + i % 250)});
+			EntryPoint entry = entries[i % entries.length];
+			ExitPoint exit;
+			do {
+				exit = exits[random.nextInt(exits.length)];
+			} while (exit.getID().substring(1).equals(entry.getID().substring(1)));  // no U-turns
+			vehicles.put(ip, new SimVehicle(ip, entry.getID(), exit.getID()));
+		}
+	}
+
+	/**
+	 * Starts all vehicles at random times within the first think time.
+	 */
+	public void start() {
+		for (final SimVehicle v : vehicles.values()) {
+			scheduler.schedule(new Runnable() {
+				public void run() {
+					v.approach();
+				}
+			}, random.nextInt((int)Math.max(1, thinkTime)), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void stop() {
+		running = false;
+		scheduler.shutdownNow();
+		fleetInterface.stop();
+	}
+
+	@Override
+	public void newMessage(Message msg) {
+		if (msg instanceof GrantAccessMsg) {
+			GrantAccessMsg grant = (GrantAccessMsg)msg;
+			SimVehicle v = vehicles.get(grant.getIP());
+			if (v != null)
+				v.granted();
+		}
+	}
+
+	private synchronized void recordRequest() {
+		numRequests++;
+	}
+
+	private synchronized void recordGrant(long grantLatency, long responseLatency) {
+		if (numGrants == grantLatencies.length) {
+			grantLatencies = Arrays.copyOf(grantLatencies, numGrants * 2);
+			responseLatencies = Arrays.copyOf(responseLatencies, numGrants * 2);
+		}
+		grantLatencies[numGrants] = grantLatency;
+		responseLatencies[numGrants] = responseLatency;
+		numGrants++;
+	}
+
+	private static double percentile(long[] sorted, int n, double p) {
+		if (n == 0)
+			return Double.NaN;
+		int i = (int)Math.ceil(p / 100 * n) - 1;
+		return sorted[Math.max(0, Math.min(n - 1, i))] / 1e6;
+	}
+
+	public synchronized void printResults(PrintStream ps, long durationMs) {
+		long[] grants = Arrays.copyOf(grantLatencies, numGrants);
+		long[] responses = Arrays.copyOf(responseLatencies, numGrants);
+		Arrays.sort(grants);
+		Arrays.sort(responses);
+		ps.println("Vehicles: " + vehicles.size() + ", requests: " + numRequests + ", grants: " + numGrants
+				+ " (" + String.format("%.1f", numGrants * 1000.0 / durationMs) + " grants/s)");
+		ps.println(String.format("Grant latency (ms):    p50=%.2f p99=%.2f max=%.2f",
+				percentile(grants, numGrants, 50), percentile(grants, numGrants, 99), percentile(grants, numGrants, 100)));
+		ps.println(String.format("Response latency (ms): p50=%.2f p99=%.2f max=%.2f",
+				percentile(responses, numGrants, 50), percentile(responses, numGrants, 99), percentile(responses, numGrants, 100)));
+	}
+
+	/**
+	 * A simulated vehicle.
+	 */
+	private class SimVehicle {
+		final InetAddress ip;
+		final String entryID;
+		final String exitID;
+
+		boolean waiting = false;
+		long firstRequestTime;
+		long lastRequestTime;
+
+		SimVehicle(InetAddress ip, String entryID, String exitID) {
+			this.ip = ip;
+			this.entryID = entryID;
+			this.exitID = exitID;
+		}
+
+		/**
+		 * Starts requesting access to the intersection.
+		 */
+		synchronized void approach() {
+			waiting = true;
+			firstRequestTime = System.nanoTime();
+			request();
+		}
+
+		synchronized void request() {
+			if (!waiting || !running)
+				return;
+			lastRequestTime = System.nanoTime();
+			int port = fleetInterface.getLocalPort();
+			Message msg = reservation ? new RequestReservationMsg(ip, port, entryID, exitID, crossTime)
+				: new RequestAccessMsg(ip, port, entryID, exitID);
+			fleetInterface.sendMessage(serverIP, serverPort, msg);
+			recordRequest();
+
+			scheduler.schedule(new Runnable() {
+				public void run() {
+					request();
+				}
+			}, retryInterval, TimeUnit.MILLISECONDS);
+		}
+
+		synchronized void granted() {
+			if (!waiting)
+				return;  // a duplicate grant
+			waiting = false;
+			long now = System.nanoTime();
+			recordGrant(now - firstRequestTime, now - lastRequestTime);
+
+			// Cross the intersection, exit, and come back later.
+			scheduler.schedule(new Runnable() {
+				public void run() {
+					fleetInterface.sendMessage(serverIP, serverPort, new ExitingMsg(ip, fleetInterface.getLocalPort()));
+					scheduler.schedule(new Runnable() {
+						public void run() {
+							approach();
+						}
+					}, thinkTime, TimeUnit.MILLISECONDS);
+				}
+			}, crossTime, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static void usage() {
+		console.println("Usage: " + TestAutoIntersectionLoad.class.getName() + " <options>\n");
+		console.println("Where <options> include:");
+		console.println("\t-type <sequential|parallel|trafficlight|reservation>: The server daemon to test (default parallel)");
+		console.println("\t-vehicles <number>: The number of simulated vehicles (default 300)");
+		console.println("\t-duration <seconds>: The length of the test (default 20)");
+		console.println("\t-cross <ms>: The time a vehicle spends in the intersection (default 20)");
+		console.println("\t-retry <ms>: The interval at which a waiting vehicle re-sends its request (default 100)");
+		console.println("\t-think <ms>: The time between a vehicle's exit and its next request (default 500)");
+		console.println("\t-loops <number>: The number of event loops of the fleet's network interface (default 2)");
+		console.println("\t-server <ip:port>: Use a running server instead of starting a daemon");
+		console.println("\t-verbose: Do not discard the daemons' log output");
+	}
+
+	public static void main(String[] args) throws Exception {
+		String type = "parallel";
+		int numVehicles = 300;
+		int duration = 20;
+		long crossTime = 20, retryInterval = 100, thinkTime = 500;
+		int numEventLoops = NioNetworkInterface.DEFAULT_NUM_EVENT_LOOPS;
+		String server = null;
+		boolean verbose = false;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-type"))
+					type = args[++i].toLowerCase();
+				else if (args[i].equals("-vehicles"))
+					numVehicles = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-duration"))
+					duration = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-cross"))
+					crossTime = Long.parseLong(args[++i]);
+				else if (args[i].equals("-retry"))
+					retryInterval = Long.parseLong(args[++i]);
+				else if (args[i].equals("-think"))
+					thinkTime = Long.parseLong(args[++i]);
+				else if (args[i].equals("-loops"))
+					numEventLoops = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-server"))
+					server = args[++i];
+				else if (args[i].equals("-verbose"))
+					verbose = true;
+				else {
+					console.println("Unknown argument " + args[i]);
+					usage();
+					System.exit(1);
+				}
+			}
+		} catch(Exception e) {
+			e.printStackTrace();
+			usage();
+			System.exit(1);
+		}
+
+		if (!verbose) {
+			System.setOut(new PrintStream(new OutputStream() {
+				public void write(int b) {}
+				public void write(byte[] b, int off, int len) {}
+			}));
+		}
+
+		InetAddress serverIP = InetAddress.getByName("127.0.0.1");
+		int serverPort;
+		ServerDaemon daemon = null;
+		if (server != null) {
+			serverIP = InetAddress.getByName(server.substring(0, server.indexOf(':')));
+			serverPort = Integer.parseInt(server.substring(server.indexOf(':') + 1));
+		} else {
+			java.net.ServerSocket probe = new java.net.ServerSocket(0);
+			serverPort = probe.getLocalPort();
+			probe.close();
+
+			IntersectionSpecs specs = TwoLaneFourWayIntersectionSpecs.getSpecs();
+			if (type.equals("sequential"))
+				daemon = new SequentialDaemon(specs, serverPort);
+			else if (type.equals("trafficlight"))
+				daemon = new TrafficLightDaemon(specs, serverPort);
+			else if (type.equals("reservation"))
+				daemon = new ReservationDaemon(specs, serverPort);
+			else
+				daemon = new ParallelDaemon(specs, serverPort);
+			daemon.start();
+		}
+
+		TestAutoIntersectionLoad test = new TestAutoIntersectionLoad(numVehicles, serverIP, serverPort,
+				type.equals("reservation"), crossTime, retryInterval, thinkTime, numEventLoops);
+		console.println("Simulating " + numVehicles + " vehicles against the " + type + " daemon on port "
+				+ serverPort + " for " + duration + "s...");
+		test.start();
+		Thread.sleep(duration * 1000L);
+		test.stop();
+		if (daemon != null)
+			daemon.stop();
+
+		test.printResults(console, duration * 1000L);
+		System.exit(0);
+	}
+}
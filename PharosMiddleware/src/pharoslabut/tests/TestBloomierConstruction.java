@@ -0,0 +1,107 @@
+package pharoslabut.tests;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import edu.utexas.ece.mpc.bloomier.BloomierHashFunction;
+import edu.utexas.ece.mpc.bloomier.ImmutableBloomierFilter;
+
+/**
+ * A microbenchmark that measures how long it takes to construct the
+ * ImmutableBloomierFilter used by the context summaries.  For each number of
+ * keys, m/n ratio, and k, it reports the median construction time and the number
+ * of hash seeds that were tried, for each hash function.  It also checks that
+ * every key can be read back from the filter.
+ *
+ * <p>Usage: java pharoslabut.tests.TestBloomierConstruction [repetitions] [max keys]</p>
+ */
+public class TestBloomierConstruction {
+
+	/**
+	 * The number of bits per entry, which is what BloomierContextSummary uses.
+	 */
+	public static final int Q = (int)(Integer.SIZE * 1.30);
+
+	/**
+	 * The ratios of m to the number of keys.  BloomierContextSummary uses 1.2.
+	 */
+	public static final double[] M_RATIOS = {1.2, 1.5, 2.5};
+
+	public static final int[] KS = {2, 3};
+
+	/**
+	 * The time allowed for one construction.  Peeling rarely succeeds with k = 2
+	 * unless m is more than twice the number of keys, so those configurations
+	 * time out once the key set is large.
+	 */
+	public static final int TIMEOUT_MS = 5000;
+
+	private static Map<String, Integer> createMap(int numKeys) {
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for (int i = 0; i < numKeys; i++)
+			map.put("context.key." + i, i);
+		return map;
+	}
+
+	public static void main(String[] args) {
+		int repetitions = 5;
+		int maxKeys = 4096;
+		if (args.length > 0)
+			repetitions = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			maxKeys = Integer.parseInt(args[1]);
+
+		System.out.println("Cores: " + Runtime.getRuntime().availableProcessors() + ", q = " + Q);
+		System.out.println("hash\tkeys\tm/n\tk\tms (median)\tseeds tried\tcorrect");
+
+		for (BloomierHashFunction hashFunction : BloomierHashFunction.values()) {
+			// Warm up the JIT so the first configuration is not penalized
+			for (int i = 0; i < 3; i++)
+				construct(createMap(256), 308, 3, hashFunction);
+
+			for (int numKeys = 16; numKeys <= maxKeys; numKeys *= 4) {
+				Map<String, Integer> map = createMap(numKeys);
+				for (double ratio : M_RATIOS) {
+					int m = Math.max(1, (int)(numKeys * ratio));
+					for (int k : KS) {
+						double[] times = new double[repetitions];
+						long seedsTried = 0;
+						boolean correct = true;
+						for (int r = 0; r < repetitions; r++) {
+							long start = System.nanoTime();
+							ImmutableBloomierFilter<String, Integer> filter = construct(map, m, k, hashFunction);
+							times[r] = (System.nanoTime() - start) / 1e6;
+							if (filter == null) {
+								Arrays.fill(times, Double.NaN);
+								correct = false;
+								break;
+							}
+							seedsTried = filter.getHashSeed() - Long.MIN_VALUE + 1;
+							for (Map.Entry<String, Integer> entry : map.entrySet()) {
+								if (!entry.getValue().equals(filter.get(entry.getKey())))
+									correct = false;
+							}
+						}
+						Arrays.sort(times);
+						System.out.println(hashFunction + "\t" + numKeys + "\t" + ratio + "\t" + k + "\t"
+								+ String.format("%.2f", times[repetitions / 2]) + "\t" + seedsTried + "\t" + correct);
+					}
+				}
+			}
+		}
+	}
+
+	private static ImmutableBloomierFilter<String, Integer> construct(Map<String, Integer> map, int m, int k,
+			BloomierHashFunction hashFunction)
+	{
+		try {
+			return new ImmutableBloomierFilter<String, Integer>(map, m, k, Q, Integer.class, TIMEOUT_MS,
+					Long.MIN_VALUE, hashFunction);
+		} catch (TimeoutException e) {
+			System.err.println("Timed out: keys = " + map.size() + ", m = " + m + ", k = " + k);
+			return null;
+		}
+	}
+}
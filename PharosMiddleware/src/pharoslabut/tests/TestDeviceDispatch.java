@@ -0,0 +1,118 @@
+package pharoslabut.tests;
+
+import java.util.Vector;
+
+import playerclient3.PlayerDevAddrMap;
+import playerclient3.structures.PlayerDevAddr;
+
+/**
+ * A microbenchmark that measures the cost of finding the device a Player
+ * message is addressed to as a function of the number of subscribed devices.
+ * It compares the linear scan over a Vector that PlayerClient used to do with
+ * the PlayerDevAddrMap it uses now.
+ *
+ * <p>Usage: java pharoslabut.tests.TestDeviceDispatch [lookups per round]</p>
+ */
+public class TestDeviceDispatch {
+
+	/**
+	 * The device counts to measure.
+	 */
+	public static final int[] DEVICE_COUNTS = {1, 2, 4, 8, 16, 24, 32, 64};
+
+	/**
+	 * The number of rounds to run for each device count.  The first round
+	 * warms up the JIT and is not reported.
+	 */
+	public static final int NUM_ROUNDS = 6;
+
+	/**
+	 * Prevents the JIT from discarding the lookups.
+	 */
+	private static int sink = 0;
+
+	/**
+	 * Creates device addresses spread over several interfaces, the way a robot
+	 * subscribes to a few indices of each of its interfaces.
+	 */
+	private static PlayerDevAddr[] createAddresses(int numDevices) {
+		PlayerDevAddr[] result = new PlayerDevAddr[numDevices];
+		for (int i = 0; i < numDevices; i++) {
+			PlayerDevAddr addr = new PlayerDevAddr();
+			addr.setHost(0);
+			addr.setRobot(0);
+			addr.setInterf(4 + (i % 16) * 3);
+			addr.setIndex(i / 16);
+			result[i] = addr;
+		}
+		return result;
+	}
+
+	/**
+	 * Finds a device the way PlayerClient.readDataDevice() used to.
+	 */
+	private static PlayerDevAddr linearLookup(Vector<PlayerDevAddr> deviceList, PlayerDevAddr devAddr) {
+		for (int i = 0; i < deviceList.size(); i++) {
+			PlayerDevAddr currAddr = deviceList.get(i);
+			if (currAddr.getHost() == devAddr.getHost()
+					&& currAddr.getIndex() == devAddr.getIndex()
+					&& currAddr.getInterf() == devAddr.getInterf()
+					&& currAddr.getRobot() == devAddr.getRobot())
+				return currAddr;
+		}
+		return null;
+	}
+
+	private static double timeLinear(Vector<PlayerDevAddr> deviceList, PlayerDevAddr[] msgs, int numLookups) {
+		long start = System.nanoTime();
+		for (int i = 0; i < numLookups; i++) {
+			if (linearLookup(deviceList, msgs[i % msgs.length]) != null)
+				sink++;
+		}
+		return (double)(System.nanoTime() - start) / numLookups;
+	}
+
+	private static double timeMap(PlayerDevAddrMap<PlayerDevAddr> deviceTable, PlayerDevAddr[] msgs, int numLookups) {
+		long start = System.nanoTime();
+		for (int i = 0; i < numLookups; i++) {
+			if (deviceTable.get(msgs[i % msgs.length]) != null)
+				sink++;
+		}
+		return (double)(System.nanoTime() - start) / numLookups;
+	}
+
+	public static void main(String[] args) {
+		int numLookups = 2000000;
+		if (args.length > 0)
+			numLookups = Integer.parseInt(args[0]);
+
+		System.out.println("Devices\tLinear (ns/msg)\tMap (ns/msg)");
+		for (int numDevices : DEVICE_COUNTS) {
+			PlayerDevAddr[] addrs = createAddresses(numDevices);
+			Vector<PlayerDevAddr> deviceList = new Vector<PlayerDevAddr>();
+			PlayerDevAddrMap<PlayerDevAddr> deviceTable = new PlayerDevAddrMap<PlayerDevAddr>();
+			for (PlayerDevAddr addr : addrs) {
+				deviceList.add(addr);
+				deviceTable.put(addr, addr);
+			}
+
+			// The incoming messages carry freshly decoded copies of the addresses.
+			PlayerDevAddr[] msgs = createAddresses(numDevices);
+
+			double linear = 0, map = 0;
+			for (int round = 0; round < NUM_ROUNDS; round++) {
+				double l = timeLinear(deviceList, msgs, numLookups);
+				double m = timeMap(deviceTable, msgs, numLookups);
+				if (round > 0) {
+					linear += l;
+					map += m;
+				}
+			}
+			System.out.printf("%d\t%.1f\t%.1f%n", numDevices,
+					linear / (NUM_ROUNDS - 1), map / (NUM_ROUNDS - 1));
+		}
+
+		if (sink == 0)
+			System.out.println("No devices found!");
+	}
+}
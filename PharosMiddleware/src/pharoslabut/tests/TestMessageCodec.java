@@ -0,0 +1,103 @@
+package pharoslabut.tests;
+
+import java.net.InetAddress;
+
+import pharoslabut.demo.autoIntersection.clientDaemons.V2I.RequestAccessMsg;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2IReservation.GrantAccessReservationMsg;
+import pharoslabut.demo.autoIntersection.clientDaemons.V2IReservation.RequestReservationMsg;
+import pharoslabut.demo.mrpatrol2.msgs.TeammateStatusMsg;
+import pharoslabut.experiment.ExpType;
+import pharoslabut.io.BinaryMessageFormat;
+import pharoslabut.io.Message;
+import pharoslabut.io.MessageFormat;
+import pharoslabut.io.PharosAckMsg;
+import pharoslabut.io.SerializedMessageFormat;
+import pharoslabut.io.SetTimeMsg;
+import pharoslabut.io.StartExpMsg;
+import pharoslabut.io.StopExpMsg;
+
+/**
+ * A microbenchmark that compares the BinaryMessageFormat with the Java
+ * serialization the Pharos Middleware originally used.  For each message type
+ * it reports the number of bytes on the wire and the time needed to encode
+ * and decode a message.  It also checks that each message survives a round trip.
+ *
+ * <p>Usage: java pharoslabut.tests.TestMessageCodec [iterations per round]</p>
+ */
+public class TestMessageCodec {
+
+	/**
+	 * The number of rounds to run for each message.  The first round
+	 * warms up the JIT and is not reported.
+	 */
+	public static final int NUM_ROUNDS = 6;
+
+	/**
+	 * Prevents the JIT from discarding the work.
+	 */
+	private static int sink = 0;
+
+	private static double timeEncode(MessageFormat format, Message msg, int iterations) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			sink += format.toBytes(msg).length;
+		return (double)(System.nanoTime() - start) / iterations;
+	}
+
+	private static double timeDecode(MessageFormat format, byte[] bytes, int iterations) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			if (format.fromBytes(bytes, 0, bytes.length) != null)
+				sink++;
+		}
+		return (double)(System.nanoTime() - start) / iterations;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = 20000;
+		if (args.length > 0)
+			iterations = Integer.parseInt(args[0]);
+
+		InetAddress addr = InetAddress.getByName("10.11.12.13");
+		Message[] msgs = {
+			new StartExpMsg("M42-Exp5", ExpType.FOLLOW_GPS_MOTION_SCRIPT, 5000),
+			new SetTimeMsg(),
+			new StopExpMsg(),
+			PharosAckMsg.getAckMsg(),
+			new RequestAccessMsg(addr, 55555, "E1", "X3"),
+			new RequestReservationMsg(addr, 55555, "E1", "X3", 2500),
+			new GrantAccessReservationMsg(addr, 55555, System.currentTimeMillis()),
+			new TeammateStatusMsg("lonestar", 17)
+		};
+
+		MessageFormat serialized = new SerializedMessageFormat();
+		MessageFormat binary = new BinaryMessageFormat();
+
+		System.out.println("Message\tSerialized (bytes)\tBinary (bytes)\tSerialized enc/dec (ns)\tBinary enc/dec (ns)");
+		for (Message msg : msgs) {
+			byte[] sBytes = serialized.toBytes(msg);
+			byte[] bBytes = binary.toBytes(msg);
+
+			Message decoded = binary.fromBytes(bBytes, 0, bBytes.length);
+			if (decoded.getClass() != msg.getClass() || !decoded.toString().equals(msg.toString()))
+				System.out.println("Round trip FAILED: " + msg + " became " + decoded);
+
+			double sEnc = 0, sDec = 0, bEnc = 0, bDec = 0;
+			for (int round = 0; round < NUM_ROUNDS; round++) {
+				double se = timeEncode(serialized, msg, iterations);
+				double sd = timeDecode(serialized, sBytes, iterations);
+				double be = timeEncode(binary, msg, iterations);
+				double bd = timeDecode(binary, bBytes, iterations);
+				if (round > 0) {
+					sEnc += se; sDec += sd; bEnc += be; bDec += bd;
+				}
+			}
+			int n = NUM_ROUNDS - 1;
+			System.out.printf("%s\t%d\t%d\t%.0f/%.0f\t%.0f/%.0f%n", msg.getClass().getSimpleName(),
+					sBytes.length, bBytes.length, sEnc / n, sDec / n, bEnc / n, bDec / n);
+		}
+
+		if (sink == 0)
+			System.out.println("Nothing was encoded!");
+	}
+}
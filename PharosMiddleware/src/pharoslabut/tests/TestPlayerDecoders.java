@@ -0,0 +1,667 @@
+package pharoslabut.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.Vector;
+
+import playerclient3.FiducialInterface;
+import playerclient3.GPSInterface;
+import playerclient3.LaserInterface;
+import playerclient3.PlayerClient;
+import playerclient3.PlayerClientUtils;
+import playerclient3.PlayerDevice;
+import playerclient3.PointCloud3DInterface;
+import playerclient3.Position2DInterface;
+import playerclient3.RangerInterface;
+import playerclient3.structures.PlayerConstants;
+import playerclient3.structures.PlayerDevAddr;
+import playerclient3.structures.PlayerMsgHdr;
+import playerclient3.xdr.OncRpcException;
+import playerclient3.xdr.XdrBufferDecodingStream;
+import playerclient3.xdr.XdrBufferEncodingStream;
+
+import pharoslabut.sensors.replay.PlayerCaptureReader;
+
+/**
+ * A benchmark harness for the playerclient3 XDR codecs and the readData()
+ * methods of the Laser, Ranger, Position2D, GPS, Fiducial, and PointCloud3D
+ * interfaces.  The interfaces are benchmarked by replaying a Player byte stream,
+ * i.e., the messages exactly as they arrive from a Player server, through a
+ * PlayerClient that reads from memory instead of a socket.  Each data message is
+ * decoded by the device it is addressed to, cycling through the stream's messages.
+ * The stream may be a raw Player byte stream or a capture file recorded by the
+ * PlayerStreamRecorder.  If no captured stream is given, a synthetic one is
+ * generated containing typical messages of each interface.
+ *
+ * <p>Each benchmark runs for a number of warm-up iterations followed by measured
+ * iterations of fixed duration.  For each benchmark, the harness reports the
+ * throughput in operations per second with its standard deviation over the
+ * measured iterations, and the rate and amount of memory allocated per operation.</p>
+ *
+ * <p>Usage: java pharoslabut.tests.TestPlayerDecoders [options]</p>
+ *
+ * <p>This is also run by "ant bench", which passes the value of the bench.args
+ * property as the options.</p>
+ */
+public class TestPlayerDecoders implements PlayerConstants {
+
+	/**
+	 * The number of operations between checks of the clock.
+	 */
+	public static final int BATCH_SIZE = 64;
+
+	/**
+	 * The number of messages of each interface in the synthetic stream.
+	 */
+	public static final int NUM_SYNTHETIC_MESSAGES = 16;
+
+	/**
+	 * Prevents the JIT from discarding the decoded values.
+	 */
+	private static long sink = 0;
+
+	/**
+	 * The number of bytes allocated by the current thread, or -1 if unsupported.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotspotBean = (com.sun.management.ThreadMXBean)bean;
+			if (hotspotBean.isThreadAllocatedMemorySupported()) {
+				hotspotBean.setThreadAllocatedMemoryEnabled(true);
+				return hotspotBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * A benchmark.  Each call to op(...) is one operation.
+	 */
+	private static abstract class Benchmark {
+		final String name;
+
+		Benchmark(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Performs one operation.
+		 *
+		 * @param i The number of operations performed so far in this iteration.
+		 */
+		abstract void op(int i) throws Exception;
+	}
+
+	/**
+	 * An InputStream over a region of a byte array that can be reset to a new region.
+	 */
+	private static class ReplayInputStream extends InputStream {
+		private byte[] data;
+		private int pos, end;
+
+		void set(byte[] data, int offset, int length) {
+			this.data = data;
+			this.pos = offset;
+			this.end = offset + length;
+		}
+
+		public int read() {
+			return pos < end ? data[pos++] & 0xFF : -1;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (pos >= end)
+				return -1;
+			int n = Math.min(len, end - pos);
+			System.arraycopy(data, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		public int available() {
+			return end - pos;
+		}
+	}
+
+	/**
+	 * A PlayerClient whose devices read from a ReplayInputStream.
+	 */
+	private static class ReplayClient extends PlayerClient {
+		ReplayClient(ReplayInputStream in) {
+			super(in, new ByteArrayOutputStream());
+		}
+	}
+
+	/**
+	 * Makes the constructor of Position2DInterface, which is normally only called by
+	 * PlayerClient, accessible.
+	 */
+	private static class ReplayPosition2D extends Position2DInterface {
+		ReplayPosition2D(PlayerClient client) {
+			super(client);
+		}
+	}
+
+	/**
+	 * A Player message in a stream.
+	 */
+	private static class Message {
+		final PlayerMsgHdr header;
+		final byte[] stream;
+		final int payloadOffset;
+
+		Message(PlayerMsgHdr header, byte[] stream, int payloadOffset) {
+			this.header = header;
+			this.stream = stream;
+			this.payloadOffset = payloadOffset;
+		}
+	}
+
+	/**
+	 * Splits a Player byte stream into its messages.  The stream may start with
+	 * the identification string that the server sends when a client connects.
+	 */
+	private static Vector<Message> parseStream(byte[] stream) throws OncRpcException, IOException {
+		Vector<Message> result = new Vector<Message>();
+		int pos = 0;
+		if (stream.length >= PLAYER_IDENT_STRLEN && new String(stream, 0, 6, "US-ASCII").equals("Player"))
+			pos = PLAYER_IDENT_STRLEN;
+
+		XdrBufferDecodingStream xdr = new XdrBufferDecodingStream(new byte[PlayerMsgHdr.PLAYERXDR_MSGHDR_SIZE]);
+		byte[] headerBytes = new byte[PlayerMsgHdr.PLAYERXDR_MSGHDR_SIZE];
+		while (pos + PlayerMsgHdr.PLAYERXDR_MSGHDR_SIZE <= stream.length) {
+			System.arraycopy(stream, pos, headerBytes, 0, headerBytes.length);
+			xdr.setXdrData(headerBytes, headerBytes.length);
+			xdr.beginDecoding();
+			PlayerDevAddr addr = new PlayerDevAddr();
+			addr.setHost(xdr.xdrDecodeInt());
+			addr.setRobot(xdr.xdrDecodeInt());
+			addr.setInterf(xdr.xdrDecodeShort());
+			addr.setIndex(xdr.xdrDecodeShort());
+			PlayerMsgHdr header = new PlayerMsgHdr();
+			header.setAddr(addr);
+			header.setType(xdr.xdrDecodeByte());
+			header.setSubtype(xdr.xdrDecodeByte());
+			header.setTimestamp(xdr.xdrDecodeDouble());
+			header.setSeq(xdr.xdrDecodeInt());
+			header.setSize(xdr.xdrDecodeInt());
+			xdr.endDecoding();
+
+			pos += PlayerMsgHdr.PLAYERXDR_MSGHDR_SIZE;
+			if (pos + header.getSize() > stream.length) {
+				System.err.println("Ignoring truncated message at the end of the stream.");
+				break;
+			}
+			result.add(new Message(header, stream, pos));
+			pos += header.getSize();
+		}
+		return result;
+	}
+
+	/**
+	 * Appends a message to a synthetic stream.
+	 */
+	private static void appendMessage(ByteArrayOutputStream stream, int interf, int subtype,
+			int seq, XdrBufferEncodingStream payload) throws OncRpcException, IOException
+	{
+		payload.endEncoding();
+		XdrBufferEncodingStream xdr = new XdrBufferEncodingStream(PlayerMsgHdr.PLAYERXDR_MSGHDR_SIZE);
+		xdr.beginEncoding(null, 0);
+		xdr.xdrEncodeInt(0);                   // host
+		xdr.xdrEncodeInt(6665);                // robot
+		xdr.xdrEncodeShort((short)interf);
+		xdr.xdrEncodeShort((short)0);          // index
+		xdr.xdrEncodeByte((byte)PLAYER_MSGTYPE_DATA);
+		xdr.xdrEncodeByte((byte)subtype);
+		xdr.xdrEncodeDouble(seq * 0.1);        // timestamp
+		xdr.xdrEncodeInt(seq);
+		xdr.xdrEncodeInt(payload.getXdrLength());
+		xdr.endEncoding();
+		stream.write(xdr.getXdrData(), 0, xdr.getXdrLength());
+		stream.write(payload.getXdrData(), 0, payload.getXdrLength());
+	}
+
+	/**
+	 * Generates a stream with typical messages of each benchmarked interface.
+	 */
+	private static byte[] createSyntheticStream() throws OncRpcException, IOException {
+		Random rand = new Random(1);
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for (int seq = 0; seq < NUM_SYNTHETIC_MESSAGES; seq++) {
+			// A 181 degree laser scan at 0.5 degree resolution with intensities
+			int numBeams = 361;
+			XdrBufferEncodingStream xdr = new XdrBufferEncodingStream(numBeams * 8 + 64);
+			xdr.beginEncoding(null, 0);
+			xdr.xdrEncodeFloat((float)(-Math.PI / 2));
+			xdr.xdrEncodeFloat((float)(Math.PI / 2));
+			xdr.xdrEncodeFloat((float)(Math.PI / 360));
+			xdr.xdrEncodeFloat(8);
+			xdr.xdrEncodeInt(numBeams);
+			float[] ranges = new float[numBeams];
+			for (int i = 0; i < numBeams; i++)
+				ranges[i] = 8 * rand.nextFloat();
+			xdr.xdrEncodeFloatVector(ranges);
+			xdr.xdrEncodeInt(numBeams);
+			byte[] intensities = new byte[numBeams];
+			rand.nextBytes(intensities);
+			xdr.xdrEncodeByteVector(intensities);
+			xdr.xdrEncodeInt(seq);
+			appendMessage(stream, PLAYER_LASER_CODE, PLAYER_LASER_DATA_SCAN, seq, xdr);
+
+			// A Hokuyo URG-04LX range scan
+			int numRanges = 682;
+			xdr = new XdrBufferEncodingStream(numRanges * 8 + 8);
+			xdr.beginEncoding(null, 0);
+			xdr.xdrEncodeInt(numRanges);
+			double[] rangerRanges = new double[numRanges];
+			for (int i = 0; i < numRanges; i++)
+				rangerRanges[i] = 4 * rand.nextDouble();
+			xdr.xdrEncodeDoubleVector(rangerRanges);
+			appendMessage(stream, PLAYER_RANGER_CODE, PLAYER_RANGER_DATA_RANGE, seq, xdr);
+
+			// Odometry or compass data
+			xdr = new XdrBufferEncodingStream(52);
+			xdr.beginEncoding(null, 0);
+			for (int i = 0; i < 6; i++)
+				xdr.xdrEncodeDouble(rand.nextDouble());
+			xdr.xdrEncodeByte((byte)0);
+			appendMessage(stream, PLAYER_POSITION2D_CODE, PLAYER_POSITION2D_DATA_STATE, seq, xdr);
+
+			// A GPS fix
+			xdr = new XdrBufferEncodingStream(68);
+			xdr.beginEncoding(null, 0);
+			xdr.xdrEncodeInt(1300000000 + seq);
+			xdr.xdrEncodeInt(0);
+			xdr.xdrEncodeInt(302861000 + rand.nextInt(1000));
+			xdr.xdrEncodeInt(-977365000 + rand.nextInt(1000));
+			xdr.xdrEncodeInt(150000);
+			xdr.xdrEncodeDouble(621000 + rand.nextDouble());
+			xdr.xdrEncodeDouble(3351000 + rand.nextDouble());
+			xdr.xdrEncodeInt(1);
+			xdr.xdrEncodeInt(8);
+			xdr.xdrEncodeInt(12);
+			xdr.xdrEncodeInt(15);
+			xdr.xdrEncodeDouble(2.5);
+			xdr.xdrEncodeDouble(4);
+			appendMessage(stream, PLAYER_GPS_CODE, PLAYER_GPS_DATA_STATE, seq, xdr);
+
+			// A few fiducials in view
+			int numFiducials = 4;
+			xdr = new XdrBufferEncodingStream(numFiducials * 100 + 8);
+			xdr.beginEncoding(null, 0);
+			xdr.xdrEncodeInt(numFiducials);
+			xdr.xdrEncodeInt(numFiducials);
+			for (int i = 0; i < numFiducials; i++) {
+				xdr.xdrEncodeInt(i);
+				for (int j = 0; j < 12; j++)
+					xdr.xdrEncodeDouble(rand.nextDouble());
+			}
+			appendMessage(stream, PLAYER_FIDUCIAL_CODE, PLAYER_FIDUCIAL_DATA_SCAN, seq, xdr);
+
+			// A colored point cloud
+			int numPoints = 1000;
+			xdr = new XdrBufferEncodingStream(numPoints * 40 + 8);
+			xdr.beginEncoding(null, 0);
+			xdr.xdrEncodeInt(numPoints);
+			xdr.xdrEncodeInt(numPoints);
+			for (int i = 0; i < numPoints; i++) {
+				xdr.xdrEncodeDouble(rand.nextDouble());
+				xdr.xdrEncodeDouble(rand.nextDouble());
+				xdr.xdrEncodeDouble(rand.nextDouble());
+				for (int j = 0; j < 4; j++)
+					xdr.xdrEncodeByte((byte)rand.nextInt(256));
+			}
+			appendMessage(stream, PLAYER_POINTCLOUD3D_CODE, PLAYER_POINTCLOUD3D_DATA_STATE, seq, xdr);
+		}
+		return stream.toByteArray();
+	}
+
+	/**
+	 * Creates the device that decodes the data of an interface.
+	 *
+	 * @return The device, or null if the interface is not benchmarked.
+	 */
+	@SuppressWarnings("deprecation")
+	private static PlayerDevice createDevice(PlayerClient client, int interf) {
+		switch (interf) {
+		case PLAYER_LASER_CODE:        return new LaserInterface(client);
+		case PLAYER_RANGER_CODE:       return new RangerInterface(client);
+		case PLAYER_POSITION2D_CODE:   return new ReplayPosition2D(client);
+		case PLAYER_GPS_CODE:          return new GPSInterface(client);
+		case PLAYER_FIDUCIAL_CODE:     return new FiducialInterface(client);
+		case PLAYER_POINTCLOUD3D_CODE: return new PointCloud3DInterface(client);
+		default:                       return null;
+		}
+	}
+
+	/**
+	 * @return The name of an interface.
+	 */
+	private static String getInterfaceName(PlayerClientUtils pcu, int interf) {
+		switch (interf) {
+		case PLAYER_LASER_CODE:        return "Laser";
+		case PLAYER_RANGER_CODE:       return "Ranger";
+		case PLAYER_POSITION2D_CODE:   return "Position2D";
+		case PLAYER_GPS_CODE:          return "GPS";
+		case PLAYER_FIDUCIAL_CODE:     return "Fiducial";
+		case PLAYER_POINTCLOUD3D_CODE: return "PointCloud3D";
+		default:                       return pcu.lookupName(interf);
+		}
+	}
+
+	/**
+	 * Creates a benchmark that decodes the data messages of one interface.
+	 */
+	private static Benchmark createDecoderBenchmark(String name, final ReplayInputStream in,
+			final PlayerDevice device, final Vector<Message> messages)
+	{
+		final Message[] msgs = messages.toArray(new Message[0]);
+		int totalBytes = 0;
+		for (Message m : msgs)
+			totalBytes += m.header.getSize();
+		return new Benchmark(name + " (" + totalBytes / msgs.length + "B)") {
+			void op(int i) {
+				Message m = msgs[i % msgs.length];
+				in.set(m.stream, m.payloadOffset, m.header.getSize());
+				device.readData(m.header);
+				sink += (long)device.getTimestamp();
+			}
+		};
+	}
+
+	/**
+	 * Creates the benchmarks that replay a stream through the interfaces' decoders.
+	 */
+	@SuppressWarnings("deprecation")
+	private static Vector<Benchmark> createDecoderBenchmarks(byte[] stream) throws Exception {
+		Vector<Message> messages = parseStream(stream);
+		ReplayInputStream in = new ReplayInputStream();
+		ReplayClient client = new ReplayClient(in);
+		PlayerClientUtils pcu = new PlayerClientUtils();
+
+		// Group the data messages by interface, in the order in which they first appear
+		Vector<Integer> interfs = new Vector<Integer>();
+		Vector<Vector<Message>> byInterf = new Vector<Vector<Message>>();
+		for (Message m : messages) {
+			if (m.header.getType() != PLAYER_MSGTYPE_DATA)
+				continue;
+			int interf = m.header.getAddr().getInterf();
+			int indx = interfs.indexOf(interf);
+			if (indx == -1) {
+				interfs.add(interf);
+				byInterf.add(new Vector<Message>());
+				indx = interfs.size() - 1;
+			}
+			byInterf.get(indx).add(m);
+		}
+
+		Vector<Benchmark> result = new Vector<Benchmark>();
+		for (int i = 0; i < interfs.size(); i++) {
+			int interf = interfs.get(i);
+			PlayerDevice device = createDevice(client, interf);
+			if (device == null) {
+				System.out.println("Skipping " + byInterf.get(i).size() + " messages of unsupported interface "
+						+ getInterfaceName(pcu, interf));
+				continue;
+			}
+			result.add(createDecoderBenchmark(getInterfaceName(pcu, interf), in, device, byInterf.get(i)));
+			if (interf == PLAYER_LASER_CODE) {
+				LaserInterface pooledLaser = new LaserInterface(client);
+				pooledLaser.setPooledDecoding(true);
+				result.add(createDecoderBenchmark(getInterfaceName(pcu, interf) + " pooled", in, pooledLaser, byInterf.get(i)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the benchmarks of the XDR codecs on the vectors that dominate the
+	 * laser and ranger messages.
+	 */
+	private static Vector<Benchmark> createCodecBenchmarks() throws Exception {
+		Vector<Benchmark> result = new Vector<Benchmark>();
+		Random rand = new Random(2);
+
+		final float[] floats = new float[361];
+		for (int i = 0; i < floats.length; i++)
+			floats[i] = rand.nextFloat();
+		final double[] doubles = new double[682];
+		for (int i = 0; i < doubles.length; i++)
+			doubles[i] = rand.nextDouble();
+		final int[] ints = new int[64];
+		for (int i = 0; i < ints.length; i++)
+			ints[i] = rand.nextInt();
+
+		final XdrBufferEncodingStream floatEnc = new XdrBufferEncodingStream(floats.length * 4 + 4);
+		final XdrBufferEncodingStream doubleEnc = new XdrBufferEncodingStream(doubles.length * 8 + 4);
+		final XdrBufferEncodingStream intEnc = new XdrBufferEncodingStream(ints.length * 4);
+
+		result.add(new Benchmark("XDR encode float[" + floats.length + "]") {
+			void op(int i) throws Exception {
+				floatEnc.beginEncoding(null, 0);
+				floatEnc.xdrEncodeFloatVector(floats);
+				floatEnc.endEncoding();
+				sink += floatEnc.getXdrLength();
+			}
+		});
+		result.add(new Benchmark("XDR encode double[" + doubles.length + "]") {
+			void op(int i) throws Exception {
+				doubleEnc.beginEncoding(null, 0);
+				doubleEnc.xdrEncodeDoubleVector(doubles);
+				doubleEnc.endEncoding();
+				sink += doubleEnc.getXdrLength();
+			}
+		});
+		result.add(new Benchmark(ints.length + " XDR encode int") {
+			void op(int i) throws Exception {
+				intEnc.beginEncoding(null, 0);
+				for (int j = 0; j < ints.length; j++)
+					intEnc.xdrEncodeInt(ints[j]);
+				intEnc.endEncoding();
+				sink += intEnc.getXdrLength();
+			}
+		});
+
+		// The decoders decode what the encoders produced
+		floatEnc.beginEncoding(null, 0);
+		floatEnc.xdrEncodeFloatVector(floats);
+		floatEnc.endEncoding();
+		doubleEnc.beginEncoding(null, 0);
+		doubleEnc.xdrEncodeDoubleVector(doubles);
+		doubleEnc.endEncoding();
+		intEnc.beginEncoding(null, 0);
+		for (int j = 0; j < ints.length; j++)
+			intEnc.xdrEncodeInt(ints[j]);
+		intEnc.endEncoding();
+		final XdrBufferDecodingStream floatDec = new XdrBufferDecodingStream(floatEnc.getXdrData().clone());
+		final XdrBufferDecodingStream doubleDec = new XdrBufferDecodingStream(doubleEnc.getXdrData().clone());
+		final XdrBufferDecodingStream intDec = new XdrBufferDecodingStream(intEnc.getXdrData().clone());
+
+		result.add(new Benchmark("XDR decode float[" + floats.length + "]") {
+			void op(int i) throws Exception {
+				floatDec.beginDecoding();
+				sink += floatDec.xdrDecodeFloatVector().length;
+				floatDec.endDecoding();
+			}
+		});
+		result.add(new Benchmark("XDR decode double[" + doubles.length + "]") {
+			void op(int i) throws Exception {
+				doubleDec.beginDecoding();
+				sink += doubleDec.xdrDecodeDoubleVector().length;
+				doubleDec.endDecoding();
+			}
+		});
+		final float[] floatArray = new float[floats.length];
+		result.add(new Benchmark("XDR decode float[" + floats.length + "] into array") {
+			void op(int i) throws Exception {
+				floatDec.beginDecoding();
+				sink += floatDec.xdrDecodeFloatVector(floatArray);
+				floatDec.endDecoding();
+			}
+		});
+		final double[] doubleArray = new double[doubles.length];
+		result.add(new Benchmark("XDR decode double[" + doubles.length + "] into array") {
+			void op(int i) throws Exception {
+				doubleDec.beginDecoding();
+				sink += doubleDec.xdrDecodeDoubleVector(doubleArray);
+				doubleDec.endDecoding();
+			}
+		});
+		result.add(new Benchmark(ints.length + " XDR decode int") {
+			void op(int i) throws Exception {
+				intDec.beginDecoding();
+				for (int j = 0; j < ints.length; j++)
+					sink += intDec.xdrDecodeInt();
+				intDec.endDecoding();
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Runs a benchmark for a fixed amount of time.
+	 *
+	 * @return The number of operations, the elapsed time in nanoseconds, and the
+	 * number of bytes allocated (-1 if unknown).
+	 */
+	private static long[] runIteration(Benchmark b, long durationMs) throws Exception {
+		long allocStart = allocatedBytes();
+		long start = System.nanoTime();
+		long deadline = start + durationMs * 1000000L;
+		int ops = 0;
+		long now;
+		do {
+			for (int i = 0; i < BATCH_SIZE; i++)
+				b.op(ops++);
+		} while ((now = System.nanoTime()) < deadline);
+		long allocEnd = allocatedBytes();
+		return new long[] {ops, now - start, allocStart < 0 ? -1 : allocEnd - allocStart};
+	}
+
+	/**
+	 * Runs a benchmark and prints its results.
+	 */
+	private static void measure(Benchmark b, int numWarmup, int numIterations, long durationMs) throws Exception {
+		for (int i = 0; i < numWarmup; i++)
+			runIteration(b, durationMs);
+
+		double[] opsPerSec = new double[numIterations];
+		long totalOps = 0, totalNs = 0, totalAlloc = 0;
+		for (int i = 0; i < numIterations; i++) {
+			long[] result = runIteration(b, durationMs);
+			opsPerSec[i] = result[0] * 1e9 / result[1];
+			totalOps += result[0];
+			totalNs += result[1];
+			totalAlloc = (totalAlloc < 0 || result[2] < 0) ? -1 : totalAlloc + result[2];
+		}
+
+		double mean = 0;
+		for (double x : opsPerSec)
+			mean += x / numIterations;
+		double variance = 0;
+		for (double x : opsPerSec)
+			variance += (x - mean) * (x - mean) / Math.max(1, numIterations - 1);
+
+		if (totalAlloc < 0)
+			System.out.printf("%-32s %12.0f %10.0f %12s %10s%n", b.name, mean, Math.sqrt(variance), "n/a", "n/a");
+		else
+			System.out.printf("%-32s %12.0f %10.0f %12.1f %10.1f%n", b.name, mean, Math.sqrt(variance),
+					totalAlloc * 1e9 / totalNs / (1024 * 1024), (double)totalAlloc / totalOps);
+	}
+
+	private static byte[] readFile(String fileName) throws IOException {
+		File file = new File(fileName);
+		byte[] result = new byte[(int)file.length()];
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			int pos = 0, n;
+			while (pos < result.length && (n = fis.read(result, pos, result.length - pos)) > 0)
+				pos += n;
+		} finally {
+			fis.close();
+		}
+		return result;
+	}
+
+	private static void print(String msg) {
+		System.out.println(msg);
+	}
+
+	private static void usage() {
+		print("Usage: " + TestPlayerDecoders.class.getName() + " <options>\n");
+		print("Where <options> include:");
+		print("\t-capture <file name>: A Player byte stream or PlayerStreamRecorder capture to replay (default synthetic)");
+		print("\t-warmup <number>: The number of warm-up iterations (default 3)");
+		print("\t-iterations <number>: The number of measured iterations (default 5)");
+		print("\t-time <ms>: The duration of each iteration (default 1000)");
+		print("\t-filter <string>: Only run the benchmarks whose names contain this string");
+	}
+
+	public static void main(String[] args) {
+		String captureFile = null;
+		String filter = null;
+		int numWarmup = 3;
+		int numIterations = 5;
+		long durationMs = 1000;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-capture"))
+					captureFile = args[++i];
+				else if (args[i].equals("-warmup"))
+					numWarmup = Integer.valueOf(args[++i]);
+				else if (args[i].equals("-iterations"))
+					numIterations = Integer.valueOf(args[++i]);
+				else if (args[i].equals("-time"))
+					durationMs = Long.valueOf(args[++i]);
+				else if (args[i].equals("-filter"))
+					filter = args[++i];
+				else {
+					usage();
+					System.exit(1);
+				}
+			}
+		} catch(Exception e) {
+			e.printStackTrace();
+			usage();
+			System.exit(1);
+		}
+
+		try {
+			byte[] stream;
+			if (captureFile != null) {
+				if (PlayerCaptureReader.isCaptureFile(captureFile))
+					stream = PlayerCaptureReader.readStream(captureFile);
+				else
+					stream = readFile(captureFile);
+				print("Replaying " + stream.length + " bytes from " + captureFile);
+			} else {
+				stream = createSyntheticStream();
+				print("Replaying a synthetic stream of " + stream.length + " bytes");
+			}
+
+			Vector<Benchmark> benchmarks = createDecoderBenchmarks(stream);
+			benchmarks.addAll(createCodecBenchmarks());
+
+			System.out.printf("%-32s %12s %10s %12s %10s%n", "Benchmark", "ops/s", "stdev", "alloc MB/s", "alloc B/op");
+			for (Benchmark b : benchmarks) {
+				if (filter == null || b.name.contains(filter))
+					measure(b, numWarmup, numIterations, durationMs);
+			}
+		} catch(Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		if (sink == 42)
+			print("");
+	}
+}
@@ -0,0 +1,16 @@
+package pharoslabut.util;
+
+/**
+ * A periodic activity, such as a navigation or motion control loop, that is
+ * run by the ControlLoopScheduler.
+ *
+ * @see ControlLoopScheduler
+ */
+public interface ControlLoop {
+
+	/**
+	 * Performs one iteration of the loop.  This is called once per period, and
+	 * should return well within the period.
+	 */
+	public void tick();
+}
@@ -0,0 +1,108 @@
+package pharoslabut.util;
+
+import java.util.Vector;
+
+import pharoslabut.logger.Logger;
+
+/**
+ * Runs control loops at fixed rates.  All loops are released on a grid that
+ * starts at a common epoch: a loop with period P and phase offset F is released
+ * at epoch + F + kP.  Release times are computed from the grid rather than
+ * from when the previous iteration finished, so a loop's period does not drift
+ * by the time each iteration takes, and loops with related periods keep a fixed
+ * phase relative to each other.
+ *
+ * <p>Each loop runs on its own thread whose priority is the loop's priority.  A
+ * loop that blocks, e.g., on a write to the Player server, therefore only delays
+ * itself.  If an iteration finishes after the loop's next release, the releases
+ * that were missed are skipped rather than run back-to-back, and are counted as
+ * deadline misses.  The delay between each release and the start of its iteration
+ * is recorded as the loop's jitter.</p>
+ *
+ * @see ControlLoop
+ * @see ScheduledControlLoop
+ */
+public class ControlLoopScheduler {
+
+	/**
+	 * The scheduler shared by all control loops.
+	 */
+	private static ControlLoopScheduler scheduler = null;
+
+	/**
+	 * The time from which the release times of all loops are computed, in nanoseconds.
+	 */
+	private final long epoch = System.nanoTime();
+
+	/**
+	 * The loops that are running.
+	 */
+	private Vector<ScheduledControlLoop> loops = new Vector<ScheduledControlLoop>();
+
+	/**
+	 * @return The scheduler shared by all control loops.
+	 */
+	public static synchronized ControlLoopScheduler getScheduler() {
+		if (scheduler == null)
+			scheduler = new ControlLoopScheduler();
+		return scheduler;
+	}
+
+	/**
+	 * Starts running a control loop.
+	 *
+	 * @param name The name of the loop, which is used in log messages and thread names.
+	 * @param loop The loop.
+	 * @param period The period of the loop in milliseconds.
+	 * @param phase The offset of the loop's releases from the common grid in milliseconds.
+	 * @param priority The priority of the loop, between Thread.MIN_PRIORITY and Thread.MAX_PRIORITY.
+	 * @return The scheduled loop, which provides its statistics and stops it.
+	 */
+	public ScheduledControlLoop schedule(String name, ControlLoop loop, long period, long phase, int priority) {
+		if (period <= 0)
+			throw new IllegalArgumentException("Invalid period " + period + " for control loop " + name);
+
+		ScheduledControlLoop scheduledLoop = new ScheduledControlLoop(this, name, loop, period, phase, priority);
+		loops.add(scheduledLoop);
+		scheduledLoop.start();
+		Logger.logDbg("Scheduled " + scheduledLoop);
+		return scheduledLoop;
+	}
+
+	/**
+	 * Removes a loop that was cancelled.
+	 *
+	 * @param scheduledLoop The loop.
+	 */
+	void remove(ScheduledControlLoop scheduledLoop) {
+		loops.remove(scheduledLoop);
+	}
+
+	/**
+	 * @return The time from which the release times of all loops are computed, in nanoseconds.
+	 */
+	long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return The loops that are running.
+	 */
+	public ScheduledControlLoop[] getLoops() {
+		return loops.toArray(new ScheduledControlLoop[0]);
+	}
+
+	/**
+	 * @return The statistics of every loop that is running, one per line.
+	 */
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		ScheduledControlLoop[] currLoops = getLoops();
+		for (int i=0; i < currLoops.length; i++) {
+			if (i > 0)
+				sb.append("\n");
+			sb.append(currLoops[i].toString());
+		}
+		return sb.toString();
+	}
+}
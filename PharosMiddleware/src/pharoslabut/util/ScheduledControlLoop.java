@@ -0,0 +1,231 @@
+package pharoslabut.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+import pharoslabut.logger.Logger;
+
+/**
+ * A control loop that is being run by the ControlLoopScheduler.  It records
+ * how well the loop keeps to its period.
+ *
+ * @see ControlLoopScheduler
+ */
+public class ScheduledControlLoop implements Runnable {
+
+	private final ControlLoopScheduler scheduler;
+	private final String name;
+	private final ControlLoop loop;
+	private final long periodNs;
+	private final long phaseNs;
+	private final int priority;
+
+	private Thread thread;
+	private volatile boolean running = true;
+
+	/**
+	 * Whether an extra iteration was requested by trigger().
+	 */
+	private volatile boolean triggered = false;
+
+	private volatile long numTicks = 0;
+	private volatile long numTriggered = 0;
+	private volatile long numMissed = 0;
+	private volatile long totalJitterNs = 0;
+	private volatile long maxJitterNs = 0;
+	private volatile long maxTickNs = 0;
+
+	/**
+	 * The constructor.  The loop does not run until start() is called.
+	 */
+	ScheduledControlLoop(ControlLoopScheduler scheduler, String name, ControlLoop loop, long period,
+			long phase, int priority)
+	{
+		this.scheduler = scheduler;
+		this.name = name;
+		this.loop = loop;
+		this.periodNs = period * 1000000L;
+		this.phaseNs = (phase % period) * 1000000L;
+		this.priority = Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, priority));
+	}
+
+	/**
+	 * Starts the thread that runs the loop.
+	 */
+	synchronized void start() {
+		thread = new Thread(this, "ControlLoop-" + name);
+		thread.setPriority(priority);
+		thread.start();
+	}
+
+	/**
+	 * Stops running the loop.  If an iteration is in progress on another thread,
+	 * this waits for it to finish.  This may be called from within the loop.
+	 */
+	public void cancel() {
+		running = false;
+		scheduler.remove(this);
+
+		Thread t;
+		synchronized(this) {
+			t = thread;
+		}
+		if (t != null && t != Thread.currentThread()) {
+			LockSupport.unpark(t);
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		Logger.logDbg("Cancelled " + this);
+	}
+
+	/**
+	 * Runs an extra iteration of the loop as soon as possible, e.g., because the
+	 * input of the loop changed.  This does not shift the loop's periodic releases.
+	 */
+	public void trigger() {
+		triggered = true;
+		Thread t = thread;
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+
+	/**
+	 * Runs the loop until it is cancelled.
+	 */
+	public void run() {
+		// The first release is the next point on the loop's grid
+		long epoch = scheduler.getEpoch() + phaseNs;
+		long now = System.nanoTime();
+		long release = epoch + ((now - epoch) / periodNs + 1) * periodNs;
+
+		while (running) {
+			long delay;
+			while (running && !triggered && (delay = release - System.nanoTime()) > 0)
+				LockSupport.parkNanos(this, delay);
+			if (!running)
+				break;
+			triggered = false;
+
+			long start = System.nanoTime();
+			boolean periodic = start - release >= 0;
+			if (periodic) {
+				long jitterNs = start - release;
+				totalJitterNs += jitterNs;
+				if (jitterNs > maxJitterNs)
+					maxJitterNs = jitterNs;
+				numTicks++;
+			} else
+				numTriggered++;
+
+			try {
+				loop.tick();
+			} catch(RuntimeException e) {
+				Logger.logErr("RuntimeException in control loop " + name + ": " + e);
+				e.printStackTrace();
+			}
+
+			long end = System.nanoTime();
+			if (end - start > maxTickNs)
+				maxTickNs = end - start;
+
+			if (periodic) {
+				release += periodNs;
+				if (end - release > 0) {
+					// The iteration overran its deadline, skip the releases that were missed
+					long missed = (end - release) / periodNs + 1;
+					release += missed * periodNs;
+					long prevMissed = numMissed;
+					numMissed += missed;
+					if (Long.highestOneBit(numMissed) != Long.highestOneBit(prevMissed))  // 1, 2, 4, 8...
+						Logger.logWarn("Control loop " + name + " missed " + numMissed + " deadlines so far, "
+								+ "last iteration took " + (end - start) / 1000 + "us (period = "
+								+ periodNs / 1000 + "us).");
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The name of the loop.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The period of the loop in milliseconds.
+	 */
+	public long getPeriod() {
+		return periodNs / 1000000L;
+	}
+
+	/**
+	 * @return The phase offset of the loop in milliseconds.
+	 */
+	public long getPhase() {
+		return phaseNs / 1000000L;
+	}
+
+	/**
+	 * @return The priority of the loop.
+	 */
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * @return The number of periodic iterations run.
+	 */
+	public long getNumTicks() {
+		return numTicks;
+	}
+
+	/**
+	 * @return The number of extra iterations run because of trigger().
+	 */
+	public long getNumTriggered() {
+		return numTriggered;
+	}
+
+	/**
+	 * @return The number of releases that were skipped because an iteration did
+	 * not finish before the next release.
+	 */
+	public long getNumMissed() {
+		return numMissed;
+	}
+
+	/**
+	 * @return The average delay between a release and the start of its iteration in microseconds.
+	 */
+	public double getAvgJitter() {
+		long n = numTicks;
+		return n == 0 ? 0 : totalJitterNs / 1000.0 / n;
+	}
+
+	/**
+	 * @return The largest delay between a release and the start of its iteration in microseconds.
+	 */
+	public double getMaxJitter() {
+		return maxJitterNs / 1000.0;
+	}
+
+	/**
+	 * @return The longest time taken by an iteration in microseconds.
+	 */
+	public double getMaxTickTime() {
+		return maxTickNs / 1000.0;
+	}
+
+	/**
+	 * @return A String representation of this class.
+	 */
+	public String toString() {
+		return name + ": period = " + getPeriod() + "ms, phase = " + getPhase() + "ms, priority = " + priority
+			+ ", ticks = " + numTicks + ", triggered = " + numTriggered + ", missed = " + numMissed
+			+ ", avg jitter = " + (long)getAvgJitter() + "us, max jitter = " + (long)getMaxJitter()
+			+ "us, max tick = " + (long)getMaxTickTime() + "us";
+	}
+}
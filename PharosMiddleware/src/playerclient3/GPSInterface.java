@@ -22,11 +22,10 @@
 package playerclient3;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import playerclient3.structures.PlayerMsgHdr;
 import playerclient3.structures.gps.PlayerGpsData;
-import playerclient3.xdr.OncRpcException;
-import playerclient3.xdr.XdrBufferDecodingStream;
 
 /**
  * The gps interface provides access to an absolute position system, such as GPS.
@@ -60,31 +59,25 @@ public class GPSInterface extends PlayerDevice {
 
                     pgdata = new PlayerGpsData ();
 
-                    // Buffer for player_gps_data
-                    byte[] buffer = new byte[68];
                     // Read player_gps_data
-                    is.readFully (buffer, 0, 68);
-
-                    // Begin decoding the XDR buffer
-                    XdrBufferDecodingStream xdr = new XdrBufferDecodingStream (buffer);
-                    xdr.beginDecoding ();
-                    pgdata.setTime_sec  (xdr.xdrDecodeInt ());
-                    pgdata.setTime_usec (xdr.xdrDecodeInt ());
-                    pgdata.setLatitude  (xdr.xdrDecodeInt ());
-                    pgdata.setLongitude (xdr.xdrDecodeInt ());
-                    pgdata.setAltitude  (xdr.xdrDecodeInt ());
-                    pgdata.setUtm_e     (xdr.xdrDecodeDouble ());
-                    pgdata.setUtm_n     (xdr.xdrDecodeDouble ());
-                    pgdata.setQuality   (xdr.xdrDecodeInt ());
-                    pgdata.setNum_sats  (xdr.xdrDecodeInt ());
-                    pgdata.setHdop      (xdr.xdrDecodeInt ());
-                    pgdata.setVdop      (xdr.xdrDecodeInt ());
-                    pgdata.setErr_horz  (xdr.xdrDecodeDouble ());
-                    pgdata.setErr_vert  (xdr.xdrDecodeDouble ());
-                    xdr.endDecoding   ();
-                    xdr.close ();
+                    ByteBuffer bb = readPayload (68);
+                    pgdata.setTime_sec  (bb.getInt ());
+                    pgdata.setTime_usec (bb.getInt ());
+                    pgdata.setLatitude  (bb.getInt ());
+                    pgdata.setLongitude (bb.getInt ());
+                    pgdata.setAltitude  (bb.getInt ());
+                    pgdata.setUtm_e     (bb.getDouble ());
+                    pgdata.setUtm_n     (bb.getDouble ());
+                    pgdata.setQuality   (bb.getInt ());
+                    pgdata.setNum_sats  (bb.getInt ());
+                    pgdata.setHdop      (bb.getInt ());
+                    pgdata.setVdop      (bb.getInt ());
+                    pgdata.setErr_horz  (bb.getDouble ());
+                    pgdata.setErr_vert  (bb.getDouble ());
+                    pgdata.setArrivalTime (header.getArrivalTime ());
 
                     readyPgdata = true;
+                    publishData (pgdata);
                     break;
                 }
             }
@@ -92,10 +85,6 @@ public class GPSInterface extends PlayerDevice {
             throw new PlayerException
                 ("[GPS] : Error reading payload: " +
                         e.toString(), e);
-        } catch (OncRpcException e) {
-            throw new PlayerException
-                ("[GPS] : Error while XDR-decoding payload: " +
-                        e.toString(), e);
         }
     }
 
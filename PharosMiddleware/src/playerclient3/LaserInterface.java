@@ -22,6 +22,7 @@
 package playerclient3;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +31,7 @@ import playerclient3.structures.laser.PlayerLaserConfig;
 import playerclient3.structures.laser.PlayerLaserData;
 import playerclient3.structures.laser.PlayerLaserDataScanpose;
 import playerclient3.structures.laser.PlayerLaserGeom;
+import playerclient3.structures.laser.PlayerLaserScan;
 import playerclient3.xdr.OncRpcException;
 import playerclient3.xdr.XdrBufferDecodingStream;
 import playerclient3.xdr.XdrBufferEncodingStream;
@@ -71,6 +73,26 @@ public class LaserInterface extends PlayerDevice {
     private PlayerLaserGeom         plgeom;
     private boolean                 readyPlgeom     = false;
 
+    // Number of pooled scans. A published scan is not overwritten until
+    // SCAN_POOL_SIZE - 1 further scans have been received.
+    private static final int SCAN_POOL_SIZE = 3;
+    // The largest scan payload that is decoded: min/max_angle, resolution,
+    // max_range, ranges_count, ranges, intensity_count, intensities and id
+    private static final int MAX_SCAN_SIZE  = PLAYER_LASER_MAX_SAMPLES * 5 + 36;
+
+    // Pooled decoding of PLAYER_LASER_DATA_SCAN messages
+    private boolean                 pooledDecoding  = false;
+    private PlayerLaserScan[]       scanPool;
+    private int                     scanPoolIndx    = 0;
+    private volatile PlayerLaserScan scan;
+    private boolean                 readyScan       = false;
+    // cos/sin of each beam angle for the current (min_angle, resolution, count)
+    private float[]                 cosTable;
+    private float[]                 sinTable;
+    private float                   trigMinAngle    = Float.NaN;
+    private float                   trigResolution  = Float.NaN;
+    private int                     trigCount       = -1;
+
 
     /**
      * Constructor for LaserInterface.
@@ -172,6 +194,100 @@ public class LaserInterface extends PlayerDevice {
         return pld;
     }
 
+    /**
+     * Enables or disables pooled decoding of laser scans.
+     * <br><br>
+     * When enabled, PLAYER_LASER_DATA_SCAN messages are decoded into a small
+     * pool of reusable {@link PlayerLaserScan} objects instead of a new
+     * PlayerLaserData, and the cartesian coordinates of the beams are
+     * computed into primitive arrays using a cached sin/cos table. The scans
+     * are then available through {@link #isScanReady()} and {@link #getScan()},
+     * not {@link #isDataReady()} and {@link #getData()}.
+     * They are also published to the data listener, which is called on the
+     * reading thread and must not keep a scan after it returns.
+     * @param enabled true to enable pooled decoding
+     */
+    public synchronized void setPooledDecoding (boolean enabled) {
+        if (enabled && scanPool == null) {
+            scanPool = new PlayerLaserScan[SCAN_POOL_SIZE];
+            for (int i = 0; i < SCAN_POOL_SIZE; i++)
+                scanPool[i] = new PlayerLaserScan ();
+
+            cosTable   = new float[PLAYER_LASER_MAX_SAMPLES];
+            sinTable   = new float[PLAYER_LASER_MAX_SAMPLES];
+        }
+        this.pooledDecoding = enabled;
+    }
+
+    /**
+     * Recomputes the sin/cos table if the scan geometry changed.
+     */
+    private void updateTrigTable (float minAngle, float resolution, int count) {
+        if (minAngle == trigMinAngle && resolution == trigResolution && count == trigCount)
+            return;
+        for (int i = 0; i < count; i++) {
+            double angle = minAngle + (double)i * resolution;
+            cosTable[i] = (float)Math.cos (angle);
+            sinTable[i] = (float)Math.sin (angle);
+        }
+        trigMinAngle   = minAngle;
+        trigResolution = resolution;
+        trigCount      = count;
+    }
+
+    /**
+     * Decodes a PLAYER_LASER_DATA_SCAN payload into a pooled scan.
+     */
+    private void readLaserScan (PlayerLaserScan pls, int size) throws IOException {
+        if (size > MAX_SCAN_SIZE) {
+            // Consume the payload so the next header is read from the right place
+            is.skipBytes (size);
+            throw new PlayerException ("[Laser] : Scan of " + size +
+                    " bytes exceeds PLAYER_LASER_MAX_SAMPLES");
+        }
+        ByteBuffer bb = readPayload (size);
+        int end = bb.position () + size;
+
+        float minAngle    = bb.getFloat ();
+        float maxAngle    = bb.getFloat ();
+        float resolution  = bb.getFloat ();
+        float maxRange    = bb.getFloat ();
+        int   rangesCount = bb.getInt   ();
+        bb.getInt ();                                 // array count
+        if (rangesCount < 0 || rangesCount > PLAYER_LASER_MAX_SAMPLES) {
+            bb.position (end);
+            throw new PlayerException ("[Laser] : Invalid ranges count " + rangesCount);
+        }
+
+        float[] ranges = pls.getRanges ();
+        bb.asFloatBuffer ().get (ranges, 0, rangesCount);
+        bb.position (bb.position () + rangesCount * 4);
+
+        int intensityCount = bb.getInt ();
+        bb.getInt ();                                 // array count
+        if (intensityCount < 0 || intensityCount > PLAYER_LASER_MAX_SAMPLES) {
+            bb.position (end);
+            throw new PlayerException ("[Laser] : Invalid intensity count " + intensityCount);
+        }
+        bb.get (pls.getIntensity (), 0, intensityCount);
+        // Skip the residual zero bytes
+        bb.position (bb.position () + ((4 - (intensityCount % 4)) % 4));
+        pls.setIntensityCount (intensityCount);
+        pls.setId (bb.getInt ());
+        bb.position (end);
+
+        pls.setGeometry (minAngle, maxAngle, resolution, maxRange, rangesCount);
+
+        // Compute the cartesian coordinates X and Y
+        updateTrigTable (minAngle, resolution, rangesCount);
+        float[] x = pls.getX ();
+        float[] y = pls.getY ();
+        for (int i = 0; i < rangesCount; i++) {
+            x[i] = ranges[i] * cosTable[i];
+            y[i] = ranges[i] * sinTable[i];
+        }
+    }
+
     /**
      * Read the laser data packet.
      */
@@ -181,8 +297,19 @@ public class LaserInterface extends PlayerDevice {
                 case PLAYER_LASER_DATA_SCAN: {
                     this.timestamp = header.getTimestamp();
 
-                    pldata = readLaserData ();
-                    readyPldata = true;
+                    if (pooledDecoding) {
+                        PlayerLaserScan pls = scanPool[scanPoolIndx];
+                        scanPoolIndx = (scanPoolIndx + 1) % SCAN_POOL_SIZE;
+                        readLaserScan (pls, header.getSize ());
+                        pls.setTimestamp (header.getTimestamp ());
+                        scan = pls;
+                        readyScan = true;
+                        publishData (pls);
+                    } else {
+                        pldata = readLaserData ();
+                        readyPldata = true;
+                        publishData (pldata);
+                    }
                     break;
                 }
                 case PLAYER_LASER_DATA_SCANPOSE: {
@@ -231,6 +358,29 @@ public class LaserInterface extends PlayerDevice {
      */
     public PlayerLaserData getData () { return this.pldata; }
 
+    /**
+     * Get the latest pooled laser scan. This method does not lock, and the
+     * returned scan stays intact until two more scans have been received, so
+     * a consumer should copy what it needs before the next laser period.
+     * @return the latest scan, or null if pooled decoding is disabled or no
+     * scan has been received yet
+     * @see #setPooledDecoding(boolean)
+     */
+    public PlayerLaserScan getScan () { return this.scan; }
+
+    /**
+     * Check if a pooled laser scan is available.
+     * @return true if ready, false if not ready
+     * @see #getScan()
+     */
+    public boolean isScanReady () {
+        if (readyScan) {
+            readyScan = false;
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Check if data is available.
      * @return true if ready, false if not ready
@@ -0,0 +1,201 @@
+package playerclient3;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+import playerclient3.structures.PlayerDevAddr;
+import playerclient3.structures.PlayerMsgHdr;
+
+/**
+ * An alternative transport to the Player server built on a SocketChannel and
+ * a single reusable direct ByteBuffer. Bytes are pulled from the channel in
+ * large chunks, so a burst of small messages costs one system call, and
+ * message headers are decoded in place from the buffer without allocating a
+ * byte[] or an XdrBufferDecodingStream per message.
+ * <br><br>
+ * The transport is also an InputStream, which lets the existing per-interface
+ * readData () methods keep reading through PlayerDevice.is unchanged. The
+ * periodic data messages of the Laser, Ranger, Position2D and GPS interfaces
+ * are instead read through PlayerDevice.readPayload (), which calls
+ * {@link #payload(int)} and decodes the XDR data straight out of the buffer.
+ * Geometry, configuration and the remaining interfaces still copy into a
+ * byte[] since they are rare or not used by Pharos.
+ * <br><br>
+ * XDR is big-endian and four-byte aligned, which is exactly how a ByteBuffer
+ * reads by default, so XDR ints, floats and doubles map onto getInt (),
+ * getFloat () and getDouble (). XDR shorts and bytes occupy four bytes each.
+ * @see PlayerClient#PlayerClient(String, int, boolean)
+ */
+public class PlayerChannelTransport extends InputStream {
+
+    /**
+     * The default size of the receive buffer. It must be able to hold the
+     * largest payload that is decoded in place.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private SocketChannel channel;
+
+    /**
+     * The receive buffer. Between calls it is kept in "read mode": the bytes
+     * between position and limit have been received but not yet consumed.
+     */
+    private ByteBuffer    buffer;
+
+    /**
+     * Opens a blocking SocketChannel to the Player server.
+     * @param serverName url of the host running Player
+     * @param portNumber the port number of the Player server
+     * @param bufferSize the size of the receive buffer in bytes
+     * @throws IOException if the connection cannot be established
+     */
+    public PlayerChannelTransport (String serverName, int portNumber,
+            int bufferSize) throws IOException {
+        channel = SocketChannel.open (new InetSocketAddress (serverName, portNumber));
+        channel.configureBlocking (true);
+        channel.socket ().setTcpNoDelay (true);
+
+        buffer = ByteBuffer.allocateDirect (bufferSize);
+        buffer.flip ();    // start out empty
+    }
+
+    /**
+     * @return the socket underlying the channel
+     */
+    public Socket getSocket () {
+        return channel.socket ();
+    }
+
+    /**
+     * @return the size of the receive buffer, which is the largest payload
+     * that {@link #payload(int)} can return in place
+     */
+    public int getBufferSize () {
+        return buffer.capacity ();
+    }
+
+    /**
+     * @return an unbuffered output stream that writes to the channel
+     */
+    public OutputStream getOutputStream () {
+        return Channels.newOutputStream (channel);
+    }
+
+    /**
+     * Makes sure at least <b>size</b> unconsumed bytes are in the receive
+     * buffer, reading from the channel as needed.
+     * @param size the number of bytes required
+     * @return the receive buffer, positioned at the first unconsumed byte
+     * @throws IOException if the channel is closed or size exceeds the buffer
+     */
+    public ByteBuffer require (int size) throws IOException {
+        if (buffer.remaining () >= size)
+            return buffer;
+        if (size > buffer.capacity ())
+            throw new IOException ("[PlayerChannelTransport]: " + size +
+                    " bytes do not fit in a " + buffer.capacity () +
+                    " byte receive buffer");
+
+        // Move the unconsumed bytes to the front and top up the buffer
+        buffer.compact ();
+        try {
+            while (buffer.position () < size)
+                if (channel.read (buffer) < 0)
+                    throw new EOFException ();
+        } finally {
+            buffer.flip ();
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the receive buffer positioned at a payload of <b>size</b>
+     * bytes. The caller must consume exactly <b>size</b> bytes with the
+     * relative get methods before reading anything else from the transport.
+     * @param size the size of the payload in bytes
+     * @return the receive buffer, positioned at the payload
+     * @throws IOException if the payload cannot be read
+     */
+    public ByteBuffer payload (int size) throws IOException {
+        return require (size);
+    }
+
+    /**
+     * Reads and decodes the next Player message header in place.
+     * @param header the header to fill in; its address must not be null
+     * @return the header that was passed in
+     * @throws IOException if the header cannot be read
+     */
+    public PlayerMsgHdr readHeader (PlayerMsgHdr header) throws IOException {
+        ByteBuffer bb = require (PlayerMsgHdr.PLAYERXDR_MSGHDR_SIZE);
+
+        PlayerDevAddr devaddr = header.getAddr ();
+        devaddr.setHost     (bb.getInt ());
+        devaddr.setRobot    (bb.getInt ());
+        devaddr.setInterf   ((short)bb.getInt ());
+        devaddr.setIndex    ((short)bb.getInt ());
+
+        header.setType      ((byte)bb.getInt ());
+        header.setSubtype   ((byte)bb.getInt ());
+        header.setTimestamp (bb.getDouble ());
+        header.setSeq       (bb.getInt ());
+        header.setSize      (bb.getInt ());
+        return header;
+    }
+
+    /**
+     * Refills an empty receive buffer with whatever the channel has.
+     * @return the number of bytes read, or -1 at end of stream
+     */
+    private int fill () throws IOException {
+        buffer.clear ();
+        int n;
+        try {
+            n = channel.read (buffer);
+        } finally {
+            buffer.flip ();
+        }
+        return n;
+    }
+
+    public int read () throws IOException {
+        if (!buffer.hasRemaining () && fill () < 0)
+            return -1;
+        return buffer.get () & 0xFF;
+    }
+
+    public int read (byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!buffer.hasRemaining () && fill () < 0)
+            return -1;
+        int n = Math.min (len, buffer.remaining ());
+        buffer.get (b, off, n);
+        return n;
+    }
+
+    public long skip (long n) throws IOException {
+        if (n <= 0)
+            return 0;
+        if (!buffer.hasRemaining () && fill () < 0)
+            return 0;
+        int skipped = (int)Math.min (n, buffer.remaining ());
+        buffer.position (buffer.position () + skipped);
+        return skipped;
+    }
+
+    public int available () {
+        return buffer.remaining ();
+    }
+
+    public void close () throws IOException {
+        channel.close ();
+    }
+}
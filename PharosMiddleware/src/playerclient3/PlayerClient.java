@@ -28,6 +28,8 @@ import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.Vector;
 import java.util.logging.Level;
@@ -89,8 +91,20 @@ public class PlayerClient extends Thread implements PlayerConstants {
      */
     protected DataOutputStream os;
 
+    /**
+     * The NIO transport, or null if the blocking socket streams are used.
+     */
+    protected PlayerChannelTransport transport;
+
+    // Header reused for every message when running on the NIO transport
+    private PlayerMsgHdr channelHeader;
+
     protected Vector<PlayerDevice> deviceList = new Vector<PlayerDevice>();
 
+    // The subscribed devices indexed by address, used to dispatch messages
+    protected PlayerDevAddrMap<PlayerDevice> deviceTable =
+        new PlayerDevAddrMap<PlayerDevice>();
+
     private boolean receivedAuthentication = false;
     private boolean readyPortNumber        = false;
 
@@ -116,16 +130,42 @@ public class PlayerClient extends Thread implements PlayerConstants {
      * @param portNumber the port number of the Player server
      */
     public PlayerClient (String serverName, int portNumber) {
+        this (serverName, portNumber, false);
+    }
+
+    /**
+     * The PlayerClient constructor. Once called, it will connect to the Player
+     * server running on host <b>servername</b> on port <b>portNumber</b>.
+     * <br><br>
+     * If <b>useChannel</b> is true, the connection is made through a
+     * {@link PlayerChannelTransport}, which reads from a SocketChannel into a
+     * reusable direct buffer and decodes message headers in place instead of
+     * allocating new buffers for every message.
+     * @param serverName url of the host running Player
+     * @param portNumber the port number of the Player server
+     * @param useChannel whether to use the NIO transport
+     */
+    public PlayerClient (String serverName, int portNumber, boolean useChannel) {
         try {
             // init
             isThreaded = false;
             isRunning  = false;
 
-            // initialize network connection
-            socket = new Socket (serverName, portNumber);
-            // open the proper streams (I/O)
-            is     = new DataInputStream (socket.getInputStream ());
-            buffer = new BufferedOutputStream (socket.getOutputStream (), 128);
+            // initialize network connection and open the proper streams (I/O)
+            if (useChannel) {
+                transport = new PlayerChannelTransport (serverName, portNumber,
+                        PlayerChannelTransport.DEFAULT_BUFFER_SIZE);
+                socket = transport.getSocket ();
+                is     = new DataInputStream (transport);
+                buffer = new BufferedOutputStream (transport.getOutputStream (), 128);
+
+                channelHeader = new PlayerMsgHdr ();
+                channelHeader.setAddr (new PlayerDevAddr ());
+            } else {
+                socket = new Socket (serverName, portNumber);
+                is     = new DataInputStream (socket.getInputStream ());
+                buffer = new BufferedOutputStream (socket.getOutputStream (), 128);
+            }
             os     = new DataOutputStream (new DataOutputStream (buffer));
 
             String ident = "";
@@ -194,6 +234,22 @@ public class PlayerClient extends Thread implements PlayerConstants {
 
     }
 
+    /**
+     * Creates a PlayerClient that reads from and writes to the given streams
+     * instead of a Player server, e.g., to feed a recorded Player stream to
+     * the devices' readData () methods. No handshake is performed and no
+     * devices are requested.
+     * @param in the stream from which the devices read their data
+     * @param out the stream to which the devices write their commands
+     */
+    protected PlayerClient (InputStream in, OutputStream out) {
+        isThreaded = false;
+        isRunning  = false;
+        is     = new DataInputStream (in);
+        buffer = new BufferedOutputStream (out, 128);
+        os     = new DataOutputStream (buffer);
+    }
+
     /**
      * The PlayerClient "destructor". Once called, it will close all the open
      * streams/sockets with the Player server.
@@ -289,6 +345,14 @@ public class PlayerClient extends Thread implements PlayerConstants {
         return this.logger;
     }
 
+    /**
+     * Return the NIO transport.
+     * @return the NIO transport, or null if the blocking socket streams are used
+     */
+    public PlayerChannelTransport getChannelTransport () {
+        return this.transport;
+    }
+
     /**
      * Sends a Player message header filled with the given values.
      * @param type type of message (DATA, CMD, REQ, RESP_ACK, SYNCH, RESP_NACK)
@@ -343,8 +407,23 @@ public class PlayerClient extends Thread implements PlayerConstants {
 
     /**
      * Reads the Player message header from the network.
+     * <br><br>
+     * On the NIO transport the same header object is returned for every
+     * message, so devices must not hold on to it after readData () returns.
      */
     private PlayerMsgHdr readHeader () {
+        if (transport != null) {
+            try {
+                PlayerMsgHdr header = transport.readHeader (channelHeader);
+                header.setArrivalTime (System.nanoTime ());
+                return header;
+            } catch (IOException e) {
+                throw new PlayerException
+                    ("[PlayerClient]: Error reading header: "
+                        + e.toString (), e);
+            }
+        }
+
         // Create two new empty structures to hold the header
         PlayerMsgHdr  header  = new PlayerMsgHdr  ();
         PlayerDevAddr devaddr = new PlayerDevAddr ();
@@ -373,6 +452,7 @@ public class PlayerClient extends Thread implements PlayerConstants {
             header.setSize      (xdr.xdrDecodeInt    ());
             xdr.endDecoding ();
             xdr.close ();
+            header.setArrivalTime (System.nanoTime ());
         } catch (IOException e) {
             throw new PlayerException
                 ("[PlayerClient]: Error reading header: "
@@ -1165,19 +1245,9 @@ public class PlayerClient extends Thread implements PlayerConstants {
      * @param header Player header
      */
     private void readDataDevice (PlayerMsgHdr header) {
-        PlayerDevAddr devAddr = header.getAddr ();
-
-        for (int i = 0; i < deviceList.size (); i++) {
-            PlayerDevAddr currAddr = ((PlayerDevice)deviceList.get (i)).getDeviceAddress ();
-            if ( currAddr.getHost   () == devAddr.getHost   () &&
-                 currAddr.getIndex  () == devAddr.getIndex  () &&
-                 currAddr.getInterf () == devAddr.getInterf () &&
-                 currAddr.getRobot  () == devAddr.getRobot  ()
-               ) {
-                ((PlayerDevice)deviceList.get (i)).readData (header);
-                break;
-            }
-        }
+        PlayerDevice pd = deviceTable.get (header.getAddr ());
+        if (pd != null)
+            pd.readData (header);
     }
 
     /**
@@ -1185,20 +1255,9 @@ public class PlayerClient extends Thread implements PlayerConstants {
      * @param header Player header
      */
     private void handleRequestsDevice (PlayerMsgHdr header) {
-        PlayerDevAddr devAddr = header.getAddr ();
-
-        for (int i = 0; i < deviceList.size (); i++) {
-            PlayerDevAddr currAddr = ((PlayerDevice)deviceList.get (i)).getDeviceAddress ();
-            if ( currAddr.getHost   () == devAddr.getHost   () &&
-                 currAddr.getIndex  () == devAddr.getIndex  () &&
-                 currAddr.getInterf () == devAddr.getInterf () &&
-                 currAddr.getRobot  () == devAddr.getRobot  ()
-               ) {
-                ((PlayerDevice)deviceList.get (i)).handleResponse (header);
-                break;
-            }
-
-        }
+        PlayerDevice pd = deviceTable.get (header.getAddr ());
+        if (pd != null)
+            pd.handleResponse (header);
     }
 
     /**
@@ -1407,6 +1466,7 @@ public class PlayerClient extends Thread implements PlayerConstants {
             newpd.setDeviceDriverName (driverName);
             // add the device to the list
             deviceList.add (newpd);
+            deviceTable.put (devAddr, newpd);
         }
         return newpd;
     }
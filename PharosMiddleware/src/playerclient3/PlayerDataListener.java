@@ -0,0 +1,20 @@
+package playerclient3;
+
+/**
+ * Receives the data decoded by a PlayerDevice as soon as readData () has
+ * decoded it, instead of polling the device's isDataReady () method.
+ * <br><br>
+ * The listener is called on the thread that reads from the Player server,
+ * so it must return quickly; hand the data off to another thread for any
+ * real work.
+ * @see PlayerDevice#setDataListener(PlayerDataListener)
+ */
+public interface PlayerDataListener {
+
+    /**
+     * Called when a device has decoded a new data message.
+     * @param device the device that received the data
+     * @param data the decoded data structure, e.g. a PlayerPosition2dData
+     */
+    public void newPlayerData (PlayerDevice device, Object data);
+}
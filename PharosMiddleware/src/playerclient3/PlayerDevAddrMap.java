@@ -0,0 +1,141 @@
+package playerclient3;
+
+import playerclient3.structures.PlayerDevAddr;
+
+/**
+ * A map from Player device addresses to values with constant-time lookup.
+ * <br><br>
+ * The interface, index and robot fields of an address are packed into one
+ * primitive long key and the host is compared on a key match, so lookups
+ * neither allocate nor compare PlayerDevAddr objects. The table is stored in
+ * open-addressed arrays that are replaced as a whole on every put (devices
+ * are subscribed rarely and looked up on every message), which lets get ()
+ * run without locking while another thread subscribes to a device.
+ * @param <T> the type of the mapped values
+ */
+public class PlayerDevAddrMap<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * An immutable snapshot of the hash table.
+     */
+    private static final class Table {
+        final long[]   keys;
+        final int[]    hosts;
+        final Object[] values;
+        final int      mask;
+
+        Table (int capacity) {
+            keys   = new long[capacity];
+            hosts  = new int[capacity];
+            values = new Object[capacity];
+            mask   = capacity - 1;
+        }
+    }
+
+    private volatile Table table = new Table (INITIAL_CAPACITY);
+    private int            size;
+
+    /**
+     * Packs the interface, index and robot of a device address into a key.
+     */
+    private static long key (int robot, int interf, int index) {
+        return ((long)(interf & 0xFFFF) << 48)
+             | ((long)(index  & 0xFFFF) << 32)
+             | (robot & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Spreads the key bits over the slot index (the MurmurHash3 finalizer).
+     */
+    private static int slot (long key, int host, int mask) {
+        long h = key ^ ((long)host * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int)h & mask;
+    }
+
+    /**
+     * Returns the value mapped to a device address.
+     * @param host the "host" on which the device resides
+     * @param robot the "robot" or device collection in which the device resides
+     * @param interf the interface provided by the device
+     * @param index which device of that interface
+     * @return the mapped value, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public T get (int host, int robot, int interf, int index) {
+        Table t = table;
+        long k  = key (robot, interf, index);
+        for (int i = slot (k, host, t.mask); t.values[i] != null; i = (i + 1) & t.mask) {
+            if (t.keys[i] == k && t.hosts[i] == host)
+                return (T)t.values[i];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value mapped to a device address.
+     * @param addr the device address
+     * @return the mapped value, or null if there is none
+     */
+    public T get (PlayerDevAddr addr) {
+        return get (addr.getHost (), addr.getRobot (), addr.getInterf (), addr.getIndex ());
+    }
+
+    /**
+     * Maps a device address to a value, replacing any previous mapping.
+     * @param addr the device address
+     * @param value the value, must not be null
+     */
+    public synchronized void put (PlayerDevAddr addr, T value) {
+        if (value == null)
+            throw new IllegalArgumentException ("[PlayerDevAddrMap]: null value");
+
+        Table old = table;
+        // keep the load factor at or below one half
+        int capacity = old.keys.length;
+        while ((size + 1) * 2 > capacity)
+            capacity *= 2;
+
+        Table t = new Table (capacity);
+        int count = 0;
+        for (int i = 0; i < old.values.length; i++) {
+            if (old.values[i] != null)
+                count += insert (t, old.keys[i], old.hosts[i], old.values[i]);
+        }
+        count += insert (t, key (addr.getRobot (), addr.getInterf (), addr.getIndex ()),
+                addr.getHost (), value);
+
+        size  = count;
+        table = t;
+    }
+
+    /**
+     * Inserts an entry into a table that is not yet published.
+     * @return 1 if the entry was added, 0 if it replaced an existing one
+     */
+    private static int insert (Table t, long key, int host, Object value) {
+        int i = slot (key, host, t.mask);
+        while (t.values[i] != null) {
+            if (t.keys[i] == key && t.hosts[i] == host) {
+                t.values[i] = value;
+                return 0;
+            }
+            i = (i + 1) & t.mask;
+        }
+        t.keys[i]   = key;
+        t.hosts[i]  = host;
+        t.values[i] = value;
+        return 1;
+    }
+
+    /**
+     * @return the number of mapped device addresses
+     */
+    public synchronized int size () {
+        return size;
+    }
+}
@@ -24,6 +24,7 @@ package playerclient3;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -57,6 +58,13 @@ public abstract class PlayerDevice implements PlayerConstants {
     protected DataInputStream  is;
     protected DataOutputStream os;
 
+    // Receives newly decoded data, may be null
+    private volatile PlayerDataListener dataListener;
+
+    // Reusable buffer for a payload when not on the NIO transport
+    private byte[]     payloadBytes;
+    private ByteBuffer payloadBuffer;
+
     
     /**
      * Abstract constructor for each PlayerDevice.
@@ -120,6 +128,51 @@ public abstract class PlayerDevice implements PlayerConstants {
      */
     public synchronized void readData (PlayerMsgHdr header) { }
 
+    /**
+     * Set the listener that receives data as soon as it is decoded.
+     * @param listener the listener, or null to remove the current one
+     */
+    public void setDataListener (PlayerDataListener listener) {
+        this.dataListener = listener;
+    }
+
+    /**
+     * Passes newly decoded data to the data listener, if there is one.
+     * Called by the interfaces at the end of readData ().
+     * @param data the decoded data structure
+     */
+    protected void publishData (Object data) {
+        PlayerDataListener listener = dataListener;
+        if (listener != null)
+            listener.newPlayerData (this, data);
+    }
+
+    /**
+     * Returns the payload of a message as a ByteBuffer, either in place on the
+     * NIO transport or copied into a reusable buffer. Payloads that do not fit
+     * in the transport's receive buffer are copied as well. The caller must consume
+     * exactly <b>size</b> bytes with the relative get methods before reading
+     * anything else, and must not keep the buffer after readData () returns.
+     * @param size the size of the payload in bytes
+     * @return a big-endian buffer positioned at the payload
+     * @throws IOException if the payload cannot be read
+     * @see PlayerChannelTransport#payload(int)
+     */
+    protected ByteBuffer readPayload (int size) throws IOException {
+        PlayerChannelTransport transport = pc.getChannelTransport ();
+        if (transport != null && size <= transport.getBufferSize ())
+            return transport.payload (size);
+
+        if (payloadBytes == null || payloadBytes.length < size) {
+            payloadBytes  = new byte[size];
+            payloadBuffer = ByteBuffer.wrap (payloadBytes);
+        }
+        is.readFully (payloadBytes, 0, size);
+        payloadBuffer.clear ();
+        payloadBuffer.limit (size);
+        return payloadBuffer;
+    }
+
     /**
      * Abstract handleNARMessage method.
      */
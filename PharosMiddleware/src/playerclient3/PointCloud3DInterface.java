@@ -22,6 +22,7 @@
 package playerclient3;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -87,29 +88,31 @@ public class PointCloud3DInterface extends PlayerDevice {
                     xdr.endDecoding ();
                     xdr.close ();
 
+                    // Read all points at once: point, color (24 + 16 bytes each)
+                    buffer = new byte[pointsCount * 40];
+                    is.readFully (buffer, 0, pointsCount * 40);
+
+                    // XDR is big-endian, like a ByteBuffer, and bytes occupy four bytes
+                    ByteBuffer bb = ByteBuffer.wrap (buffer);
                     PlayerPointCloud3DElement[] points = new PlayerPointCloud3DElement[pointsCount];
                     for (int i = 0; i < pointsCount; i++) {
+                        // Decode the point before creating the objects that hold it
+                        double px    = bb.getDouble ();
+                        double py    = bb.getDouble ();
+                        double pz    = bb.getDouble ();
+                        byte   alpha = (byte)bb.getInt ();
+                        byte   red   = (byte)bb.getInt ();
+                        byte   green = (byte)bb.getInt ();
+                        byte   blue  = (byte)bb.getInt ();
+
                         PlayerPointCloud3DElement pt = new PlayerPointCloud3DElement ();
 
-                        PlayerPoint3d point = new PlayerPoint3d ();
+                        PlayerPoint3d point = new PlayerPoint3d (px, py, pz);
                         PlayerColor color = new PlayerColor ();
-
-                        // Buffer for reading point, color (24 + 16)
-                        buffer = new byte[40];
-                        // Read point, color
-                        is.readFully (buffer, 0, 40);
-
-                        xdr = new XdrBufferDecodingStream (buffer);
-                        xdr.beginDecoding ();
-                        point.setPx    (xdr.xdrDecodeDouble ());
-                        point.setPy    (xdr.xdrDecodeDouble ());
-                        point.setPz    (xdr.xdrDecodeDouble ());
-                        color.setAlpha (xdr.xdrDecodeByte ());
-                        color.setRed   (xdr.xdrDecodeByte ());
-                        color.setGreen (xdr.xdrDecodeByte ());
-                        color.setBlue  (xdr.xdrDecodeByte ());
-                        xdr.endDecoding ();
-                        xdr.close ();
+                        color.setAlpha (alpha);
+                        color.setRed   (red);
+                        color.setGreen (green);
+                        color.setBlue  (blue);
 
                         pt.setPoint (point);
                         pt.setColor (color);
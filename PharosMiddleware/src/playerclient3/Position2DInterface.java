@@ -22,6 +22,7 @@
 package playerclient3;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -70,38 +71,31 @@ public class Position2DInterface extends AbstractPositionDevice {
             case PLAYER_POSITION2D_DATA_STATE:
                 this.timestamp = header.getTimestamp();
 
-                // Buffer for reading pos, vel and stall (24 + 24 + 4)
-                byte[] buffer = new byte[52];
-
-                // Read pos, vel and stall
-                is.readFully (buffer, 0, 52);
+                // Read pos, vel and stall (24 + 24 + 4)
+                ByteBuffer bb = readPayload (52);
 
                 pp2ddata = new PlayerPosition2dData();
                 PlayerPose2d pos = new PlayerPose2d();
                 PlayerPose2d vel = new PlayerPose2d();
 
-                // Begin decoding the XDR buffer
-                XdrBufferDecodingStream xdr = new XdrBufferDecodingStream(buffer);
-                xdr.beginDecoding();
-
                 // position [m, m, rad]
-                pos.setPx(xdr.xdrDecodeDouble());
-                pos.setPy(xdr.xdrDecodeDouble());
-                pos.setPa(xdr.xdrDecodeDouble());
+                pos.setPx(bb.getDouble());
+                pos.setPy(bb.getDouble());
+                pos.setPa(bb.getDouble());
                 pp2ddata.setPos(pos);
 
                 // translational velocities [m/s, m/s, rad/s]
-                vel.setPx(xdr.xdrDecodeDouble());
-                vel.setPy(xdr.xdrDecodeDouble());
-                vel.setPa(xdr.xdrDecodeDouble());
+                vel.setPx(bb.getDouble());
+                vel.setPy(bb.getDouble());
+                vel.setPa(bb.getDouble());
                 pp2ddata.setVel(vel);
 
-                // motors stall
-                pp2ddata.setStall(xdr.xdrDecodeByte());
-                xdr.endDecoding();
-                xdr.close();
+                // motors stall, an XDR byte occupies four bytes
+                pp2ddata.setStall((byte)bb.getInt());
+                pp2ddata.setArrivalTime(header.getArrivalTime());
 
                 readyPp2ddata = true;
+                publishData (pp2ddata);
                 break;
             case PLAYER_POSITION2D_DATA_GEOM:
                 this.timestamp = header.getTimestamp();
@@ -114,10 +108,6 @@ public class Position2DInterface extends AbstractPositionDevice {
             throw new PlayerException
                 ("[Position2D] : Error reading payload: " +
                         e.toString(), e);
-        } catch (OncRpcException e) {
-            throw new PlayerException
-                ("[Position2D] : Error while XDR-decoding payload: " +
-                        e.toString(), e);
         }
     }
 
@@ -22,6 +22,7 @@
 package playerclient3;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -77,67 +78,41 @@ public class RangerInterface extends PlayerDevice {
                 case PLAYER_RANGER_DATA_RANGE: {
                     this.timestamp = header.getTimestamp();
 
-                    // Buffer for reading ranges_count
-                    byte[] buffer = new byte[4];
-
                     // Read ranges_count
-                    is.readFully (buffer, 0, 4);
-
-                    // Begin decoding the XDR buffer
-                    XdrBufferDecodingStream xdr = new XdrBufferDecodingStream (buffer);
-                    xdr.beginDecoding ();
-                    int rangesCount = xdr.xdrDecodeInt ();
-                    xdr.endDecoding   ();
-                    xdr.close ();
+                    int rangesCount = readPayload (4).getInt ();
 
-                    // Buffer for reading range values
-                    buffer = new byte[rangesCount * 8 + 4];
-
-                    // Read range values
-                    is.readFully (buffer, 0, rangesCount * 8 + 4);
-                    xdr = new XdrBufferDecodingStream (buffer);
-                    xdr.beginDecoding ();
-                    double[] ranges = xdr.xdrDecodeDoubleVector ();
-                    xdr.endDecoding   ();
-                    xdr.close ();
+                    // Read range values, preceded by the array count
+                    ByteBuffer bb = readPayload (rangesCount * 8 + 4);
+                    bb.getInt ();
+                    double[] ranges = new double[rangesCount];
+                    bb.asDoubleBuffer ().get (ranges, 0, rangesCount);
+                    bb.position (bb.position () + rangesCount * 8);
 
                     prdata = new PlayerRangerData ();
                     prdata.setRanges (ranges);
 
                     readyPrdata = true;
+                    publishData (prdata);
                     break;
                 }
                 case PLAYER_RANGER_DATA_INTNS: {
                     this.timestamp = header.getTimestamp();
 
-                    // Buffer for reading intens_count
-                    byte[] buffer = new byte[4];
-
                     // Read intens_count
-                    is.readFully (buffer, 0, 4);
+                    int intensCount = readPayload (4).getInt ();
 
-                    // Begin decoding the XDR buffer
-                    XdrBufferDecodingStream xdr = new XdrBufferDecodingStream (buffer);
-                    xdr.beginDecoding ();
-                    int intensCount = xdr.xdrDecodeInt ();
-                    xdr.endDecoding   ();
-                    xdr.close ();
-
-                    // Buffer for reading intensity values
-                    buffer = new byte[intensCount * 8 + 4];
-
-                    // Read intensity values
-                    is.readFully (buffer, 0, intensCount * 8 + 4);
-                    xdr = new XdrBufferDecodingStream (buffer);
-                    xdr.beginDecoding ();
-                    double[] intens = xdr.xdrDecodeDoubleVector ();
-                    xdr.endDecoding   ();
-                    xdr.close ();
+                    // Read intensity values, preceded by the array count
+                    ByteBuffer bb = readPayload (intensCount * 8 + 4);
+                    bb.getInt ();
+                    double[] intens = new double[intensCount];
+                    bb.asDoubleBuffer ().get (intens, 0, intensCount);
+                    bb.position (bb.position () + intensCount * 8);
 
                     printn = new PlayerRangerDataIntns ();
                     printn.setIntns (intens);
 
                     readyPrintn = true;
+                    publishData (printn);
                     break;
                 }
 
@@ -146,10 +121,6 @@ public class RangerInterface extends PlayerDevice {
             throw new PlayerException
                 ("[Ranger] : Error reading payload: " +
                         e.toString(), e);
-        } catch (OncRpcException e) {
-            throw new PlayerException
-                ("[Ranger] : Error while XDR-decoding payload: " +
-                        e.toString(), e);
         }
     }
 
@@ -47,6 +47,8 @@ public class PlayerMsgHdr {
     private int           seq;
     /* Size in bytes of the payload to follow */
     private int           size;
+    // System.nanoTime () when the header was read (not part of the message)
+    private long          arrivalTime;
 
 
     /**
@@ -133,4 +135,20 @@ public class PlayerMsgHdr {
     public synchronized void setSize (int newSize) {
         this.size = newSize;
     }
+
+    /**
+     * @return The value of System.nanoTime () when the header was read from
+     * the Player server, or 0 if it was not read from a server
+     */
+    public synchronized long getArrivalTime () {
+        return this.arrivalTime;
+    }
+
+    /**
+     * @param newArrivalTime The value of System.nanoTime () when the header
+     * was read from the Player server
+     */
+    public synchronized void setArrivalTime (long newArrivalTime) {
+        this.arrivalTime = newArrivalTime;
+    }
 }
@@ -66,6 +66,8 @@ public class PlayerGpsData implements PlayerConstants {
     private double err_horz;
     // Vertical error [m]
     private double err_vert;
+    // When the data arrived from the Player server (not part of the message)
+    private long arrivalTime;
 
 
     /**
@@ -259,6 +261,22 @@ public class PlayerGpsData implements PlayerConstants {
     public synchronized void setErr_vert (double newErr_vert) {
         this.err_vert = newErr_vert;
     }
+
+    /**
+     * @return  System.nanoTime () when the message containing this data was
+     * read from the Player server, or 0 if it is unknown.
+     */
+    public synchronized long getArrivalTime () {
+        return this.arrivalTime;
+    }
+
+    /**
+     * @param newArrivalTime  System.nanoTime () when the message containing
+     * this data was read from the Player server.
+     */
+    public synchronized void setArrivalTime (long newArrivalTime) {
+        this.arrivalTime = newArrivalTime;
+    }
     
     public String toString() { 
         return "(PlayerGpsData time_sec=" + time_sec + " time_usec=" + time_usec + " latitude=" + latitude
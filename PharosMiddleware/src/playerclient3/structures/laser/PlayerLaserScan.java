@@ -0,0 +1,134 @@
+package playerclient3.structures.laser;
+
+import playerclient3.structures.*;
+
+/**
+ * A reusable laser scan that is decoded in place by the LaserInterface when
+ * pooled decoding is enabled. Unlike PlayerLaserData, the range readings and
+ * their cartesian coordinates are kept in parallel primitive arrays that are
+ * allocated once and overwritten by later scans.
+ * <br><br>
+ * Only the first getCount () elements of the arrays are valid. The arrays are
+ * returned as-is (not copied), so a consumer must finish with a scan before
+ * the LaserInterface reuses it; see LaserInterface.getScan ().
+ * @see playerclient3.LaserInterface#setPooledDecoding(boolean)
+ */
+public class PlayerLaserScan implements PlayerConstants {
+
+    // Start and end angles for the laser scan [rad].
+    private float   minAngle;
+    private float   maxAngle;
+    // Angular resolution [rad].
+    private float   resolution;
+    // Maximum range [m].
+    private float   maxRange;
+    // Number of range readings.
+    private int     count;
+    // Range readings [m].
+    private float[] ranges    = new float[PLAYER_LASER_MAX_SAMPLES];
+    // X,Y cartesian position of scanned data [m]
+    private float[] x         = new float[PLAYER_LASER_MAX_SAMPLES];
+    private float[] y         = new float[PLAYER_LASER_MAX_SAMPLES];
+    // Number of intensity readings
+    private int     intensityCount;
+    // Intensity readings.
+    private byte[]  intensity = new byte[PLAYER_LASER_MAX_SAMPLES];
+    // A unique, increasing, ID for the scan
+    private int     id;
+    // Time associated with the scan (seconds since epoch)
+    private double  timestamp;
+
+    /**
+     * Sets the scan geometry.
+     * @param minAngle start angle for the laser scan [rad]
+     * @param maxAngle end angle for the laser scan [rad]
+     * @param resolution angular resolution [rad]
+     * @param maxRange maximum range [m]
+     * @param count number of range readings
+     */
+    public void setGeometry (float minAngle, float maxAngle, float resolution,
+            float maxRange, int count) {
+        this.minAngle   = minAngle;
+        this.maxAngle   = maxAngle;
+        this.resolution = resolution;
+        this.maxRange   = maxRange;
+        this.count      = count;
+    }
+
+    /**
+     * @return Start angle for the laser scan [rad].
+     */
+    public float getMinAngle () { return minAngle; }
+
+    /**
+     * @return End angle for the laser scan [rad].
+     */
+    public float getMaxAngle () { return maxAngle; }
+
+    /**
+     * @return Angular resolution [rad].
+     */
+    public float getResolution () { return resolution; }
+
+    /**
+     * @return Maximum range [m].
+     */
+    public float getMaxRange () { return maxRange; }
+
+    /**
+     * @return Number of range readings.
+     */
+    public int getCount () { return count; }
+
+    /**
+     * @return Range readings [m], valid up to getCount ().
+     */
+    public float[] getRanges () { return ranges; }
+
+    /**
+     * @return X coordinates of the readings [m], valid up to getCount ().
+     */
+    public float[] getX () { return x; }
+
+    /**
+     * @return Y coordinates of the readings [m], valid up to getCount ().
+     */
+    public float[] getY () { return y; }
+
+    /**
+     * @return Number of intensity readings.
+     */
+    public int getIntensityCount () { return intensityCount; }
+
+    /**
+     * @param newIntensityCount Number of intensity readings.
+     */
+    public void setIntensityCount (int newIntensityCount) {
+        this.intensityCount = newIntensityCount;
+    }
+
+    /**
+     * @return Intensity readings, valid up to getIntensityCount ().
+     */
+    public byte[] getIntensity () { return intensity; }
+
+    /**
+     * @return A unique, increasing, ID for the scan
+     */
+    public int getId () { return id; }
+
+    /**
+     * @param newId A unique, increasing, ID for the scan
+     */
+    public void setId (int newId) { this.id = newId; }
+
+    /**
+     * @return Time associated with the scan (seconds since epoch)
+     */
+    public double getTimestamp () { return timestamp; }
+
+    /**
+     * @param newTimestamp Time associated with the scan (seconds since epoch)
+     */
+    public void setTimestamp (double newTimestamp) { this.timestamp = newTimestamp; }
+}
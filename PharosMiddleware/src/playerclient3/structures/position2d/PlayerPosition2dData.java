@@ -42,6 +42,8 @@ public class PlayerPosition2dData implements PlayerConstants {
     private PlayerPose2d vel;
     // Are the motors stalled?
     private byte stall;
+    // When the data arrived from the Player server (not part of the message)
+    private long arrivalTime;
 
 
     /**
@@ -85,6 +87,22 @@ public class PlayerPosition2dData implements PlayerConstants {
     public synchronized void setStall (byte newStall) {
         this.stall = newStall;
     }
+
+    /**
+     * @return  System.nanoTime () when the message containing this data was
+     * read from the Player server, or 0 if it is unknown.
+     */
+    public synchronized long getArrivalTime () {
+        return this.arrivalTime;
+    }
+
+    /**
+     * @param newArrivalTime  System.nanoTime () when the message containing
+     * this data was read from the Player server.
+     */
+    public synchronized void setArrivalTime (long newArrivalTime) {
+        this.arrivalTime = newArrivalTime;
+    }
     
     /**
      * Returns a string representation of this class.
@@ -45,6 +45,7 @@ package playerclient3.xdr;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 
 /**
  * The <code>XdrBufferDecodingStream</code> class provides the necessary
@@ -104,6 +105,7 @@ public class XdrBufferDecodingStream extends XdrDecodingStream {
         }
         this.buffer = buffer;
         this.encodedLength = encodedLength;
+        bufferView = null;
         bufferIndex = 0;
         bufferHighmark = -4;
     }
@@ -175,6 +177,7 @@ public class XdrBufferDecodingStream extends XdrDecodingStream {
     public void close()
            throws OncRpcException, IOException {
         buffer = null;
+        bufferView = null;
     }
 
     /**
@@ -285,6 +288,35 @@ public class XdrBufferDecodingStream extends XdrDecodingStream {
         bufferIndex += alignedLength;
     }
 
+    /**
+     * Retrieves the next <code>length</code> bytes of encoded XDR data for
+     * bulk decoding of vectors.
+     *
+     * <p>This method overrides {@link XdrDecodingStream#xdrDecodeBulk}. It
+     * checks the bounds once for the whole vector and returns a view of the
+     * buffer in place, so the data is not copied.
+     *
+     * @param length Number of bytes to retrieve, a multiple of four.
+     *
+     * @return Big-endian view of the encoded data.
+     *
+     * @throws OncRpcException if an ONC/RPC error occurs.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected ByteBuffer xdrDecodeBulk(int length)
+           throws OncRpcException, IOException {
+        if ( bufferIndex > bufferHighmark - length + 4 ) {
+            throw(new OncRpcException(OncRpcException.RPC_BUFFERUNDERFLOW));
+        }
+        if ( bufferView == null ) {
+            bufferView = ByteBuffer.wrap(buffer);
+        }
+        bufferView.limit(bufferIndex + length);
+        bufferView.position(bufferIndex);
+        bufferIndex += length;
+        return bufferView;
+    }
+
     /**
      * The buffer which will be filled from the datagram socket and then
      * be used to supply the information when decoding data.
@@ -307,6 +339,12 @@ public class XdrBufferDecodingStream extends XdrDecodingStream {
      */
     private int bufferHighmark;
 
+    /**
+     * Big-endian view of <code>buffer</code> used for bulk decoding, created
+     * when first needed.
+     */
+    private ByteBuffer bufferView;
+
 }
 
 // End of XdrBufferDecodingStream.java
@@ -45,6 +45,7 @@ package playerclient3.xdr;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 
 /**
  * Defines the abstract base class for all decoding XDR streams. A decoding
@@ -57,6 +58,13 @@ import java.net.InetAddress;
  * {@link #xdrDecodeOpaque(byte[], int, int)} methods to make this complete
  * mess workable.
  *
+ * <p>Vectors of ints, floats and doubles are decoded in bulk: the encoded
+ * elements are fetched with a single call to {@link #xdrDecodeBulk(int)} and
+ * converted in one pass through a big-endian <code>ByteBuffer</code> view,
+ * rather than element by element through {@link #xdrDecodeInt()}. Derived
+ * classes whose data is already in memory should override
+ * {@link #xdrDecodeBulk(int)} to return a view of it in place.
+ *
  * @version $Revision: 125 $ $Date: 2011-03-23 21:24:05 -0500 (Wed, 23 Mar 2011) $ $State$ $Locker$
  * @author Harald Albrecht
  */
@@ -433,12 +441,30 @@ public abstract class XdrDecodingStream {
            throws OncRpcException, IOException {
         int length = xdrDecodeInt();
         int [] value = new int[length];
-        for ( int i = 0; i < length; ++i ) {
-            value[i] = xdrDecodeInt();
-        }
+        xdrDecodeIntFixedVector(value, 0, length);
         return value;
     }
 
+    /**
+     * Decodes (aka "deserializes") a vector of ints read from a XDR stream
+     * into an existing array, so that nothing is allocated.
+     *
+     * @param value Array which will receive the decoded ints, starting at
+     *   index 0.
+     *
+     * @return Number of ints decoded.
+     *
+     * @throws OncRpcException if an ONC/RPC error occurs, for instance if
+     *   the vector is longer than the array.
+     * @throws IOException if an I/O error occurs.
+     */
+    public final int xdrDecodeIntVector(int [] value)
+           throws OncRpcException, IOException {
+        int length = xdrDecodeInt();
+        xdrDecodeIntFixedVector(value, 0, length);
+        return length;
+    }
+
     /**
      * Decodes (aka "deserializes") a vector of ints read from a XDR stream.
      *
@@ -452,12 +478,28 @@ public abstract class XdrDecodingStream {
     public final int [] xdrDecodeIntFixedVector(int length)
            throws OncRpcException, IOException {
         int [] value = new int[length];
-        for ( int i = 0; i < length; ++i ) {
-            value[i] = xdrDecodeInt();
-        }
+        xdrDecodeIntFixedVector(value, 0, length);
         return value;
     }
 
+    /**
+     * Decodes (aka "deserializes") a vector of ints of known length read
+     * from a XDR stream into an existing array.
+     *
+     * @param value Array which will receive the decoded ints.
+     * @param offset Index in the array of the first decoded int.
+     * @param length Number of ints to decode.
+     *
+     * @throws OncRpcException if an ONC/RPC error occurs, for instance if
+     *   the array cannot hold <code>length</code> ints from <code>offset</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    public final void xdrDecodeIntFixedVector(int [] value, int offset, int length)
+           throws OncRpcException, IOException {
+        checkVectorBounds(value.length, offset, length);
+        xdrDecodeBulk(length * 4).asIntBuffer().get(value, offset, length);
+    }
+
     /**
      * Decodes (aka "deserializes") a vector of longs read from a XDR stream.
      *
@@ -508,12 +550,30 @@ public abstract class XdrDecodingStream {
            throws OncRpcException, IOException {
         int length = xdrDecodeInt();
         float [] value = new float[length];
-        for ( int i = 0; i < length; ++i ) {
-            value[i] = xdrDecodeFloat();
-        }
+        xdrDecodeFloatFixedVector(value, 0, length);
         return value;
     }
 
+    /**
+     * Decodes (aka "deserializes") a vector of floats read from a XDR stream
+     * into an existing array, so that nothing is allocated.
+     *
+     * @param value Array which will receive the decoded floats, starting at
+     *   index 0.
+     *
+     * @return Number of floats decoded.
+     *
+     * @throws OncRpcException if an ONC/RPC error occurs, for instance if
+     *   the vector is longer than the array.
+     * @throws IOException if an I/O error occurs.
+     */
+    public final int xdrDecodeFloatVector(float [] value)
+           throws OncRpcException, IOException {
+        int length = xdrDecodeInt();
+        xdrDecodeFloatFixedVector(value, 0, length);
+        return length;
+    }
+
     /**
      * Decodes (aka "deserializes") a vector of floats read from a XDR stream.
      *
@@ -527,12 +587,28 @@ public abstract class XdrDecodingStream {
     public final float [] xdrDecodeFloatFixedVector(int length)
            throws OncRpcException, IOException {
         float [] value = new float[length];
-        for ( int i = 0; i < length; ++i ) {
-            value[i] = xdrDecodeFloat();
-        }
+        xdrDecodeFloatFixedVector(value, 0, length);
         return value;
     }
 
+    /**
+     * Decodes (aka "deserializes") a vector of floats of known length read
+     * from a XDR stream into an existing array.
+     *
+     * @param value Array which will receive the decoded floats.
+     * @param offset Index in the array of the first decoded float.
+     * @param length Number of floats to decode.
+     *
+     * @throws OncRpcException if an ONC/RPC error occurs, for instance if
+     *   the array cannot hold <code>length</code> floats from <code>offset</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    public final void xdrDecodeFloatFixedVector(float [] value, int offset, int length)
+           throws OncRpcException, IOException {
+        checkVectorBounds(value.length, offset, length);
+        xdrDecodeBulk(length * 4).asFloatBuffer().get(value, offset, length);
+    }
+
     /**
      * Decodes (aka "deserializes") a vector of doubles read from a XDR stream.
      *
@@ -545,12 +621,30 @@ public abstract class XdrDecodingStream {
            throws OncRpcException, IOException {
         int length = xdrDecodeInt();
         double [] value = new double[length];
-        for ( int i = 0; i < length; ++i ) {
-            value[i] = xdrDecodeDouble();
-        }
+        xdrDecodeDoubleFixedVector(value, 0, length);
         return value;
     }
 
+    /**
+     * Decodes (aka "deserializes") a vector of doubles read from a XDR stream
+     * into an existing array, so that nothing is allocated.
+     *
+     * @param value Array which will receive the decoded doubles, starting at
+     *   index 0.
+     *
+     * @return Number of doubles decoded.
+     *
+     * @throws OncRpcException if an ONC/RPC error occurs, for instance if
+     *   the vector is longer than the array.
+     * @throws IOException if an I/O error occurs.
+     */
+    public final int xdrDecodeDoubleVector(double [] value)
+           throws OncRpcException, IOException {
+        int length = xdrDecodeInt();
+        xdrDecodeDoubleFixedVector(value, 0, length);
+        return length;
+    }
+
     /**
      * Decodes (aka "deserializes") a vector of doubles read from a XDR stream.
      *
@@ -564,12 +658,28 @@ public abstract class XdrDecodingStream {
     public final double [] xdrDecodeDoubleFixedVector(int length)
            throws OncRpcException, IOException {
         double [] value = new double[length];
-        for ( int i = 0; i < length; ++i ) {
-            value[i] = xdrDecodeDouble();
-        }
+        xdrDecodeDoubleFixedVector(value, 0, length);
         return value;
     }
 
+    /**
+     * Decodes (aka "deserializes") a vector of doubles of known length read
+     * from a XDR stream into an existing array.
+     *
+     * @param value Array which will receive the decoded doubles.
+     * @param offset Index in the array of the first decoded double.
+     * @param length Number of doubles to decode.
+     *
+     * @throws OncRpcException if an ONC/RPC error occurs, for instance if
+     *   the array cannot hold <code>length</code> doubles from <code>offset</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    public final void xdrDecodeDoubleFixedVector(double [] value, int offset, int length)
+           throws OncRpcException, IOException {
+        checkVectorBounds(value.length, offset, length);
+        xdrDecodeBulk(length * 8).asDoubleBuffer().get(value, offset, length);
+    }
+
     /**
      * Decodes (aka "deserializes") a vector of booleans read from a XDR stream.
      *
@@ -644,6 +754,50 @@ public abstract class XdrDecodingStream {
         return value;
     }
 
+    /**
+     * Makes sure that a vector of <code>length</code> elements fits into an
+     * array of <code>capacity</code> elements from <code>offset</code> on,
+     * before anything is consumed from the XDR stream.
+     *
+     * @throws OncRpcException if the vector does not fit.
+     */
+    private static void checkVectorBounds(int capacity, int offset, int length)
+           throws OncRpcException {
+        if ( (offset < 0) || (length < 0) || (length > capacity - offset) ) {
+            throw(new OncRpcException(OncRpcException.RPC_BUFFEROVERFLOW));
+        }
+    }
+
+    /**
+     * Retrieves the next <code>length</code> bytes of encoded XDR data in
+     * one go, for bulk decoding of vectors. The returned buffer is big-endian
+     * (network order), its position is at the first byte and its limit is
+     * right after the last one. It is only valid until the next decoding
+     * call on this stream.
+     *
+     * <p>This implementation copies the data with
+     * {@link #xdrDecodeOpaque(byte[], int, int)} into a buffer that is reused
+     * between calls. Derived classes which hold the encoded data in memory
+     * should override it to return a view of that data instead.
+     *
+     * @param length Number of bytes to retrieve, a multiple of four.
+     *
+     * @return Buffer holding the encoded data.
+     *
+     * @throws OncRpcException if an ONC/RPC error occurs.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected ByteBuffer xdrDecodeBulk(int length)
+           throws OncRpcException, IOException {
+        if ( (bulkBuffer == null) || (bulkBuffer.capacity() < length) ) {
+            bulkBuffer = ByteBuffer.allocate(length);
+        }
+        xdrDecodeOpaque(bulkBuffer.array(), 0, length);
+        bulkBuffer.clear();
+        bulkBuffer.limit(length);
+        return bulkBuffer;
+    }
+
     /**
      * Set the character encoding for deserializing strings.
      *
@@ -670,6 +824,11 @@ public abstract class XdrDecodingStream {
      */
     private String characterEncoding = null;
 
+    /**
+     * Buffer reused by {@link #xdrDecodeBulk(int)} to hold encoded vectors.
+     */
+    private ByteBuffer bulkBuffer = null;
+
 }
 
 // End of XdrDecodingStream.java